@@ -0,0 +1,62 @@
+package nl.ing.lovebird.sitemanagement.accessmeans;
+
+import com.yolt.securityutils.crypto.SecretKey;
+import org.bouncycastle.util.encoders.Hex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of encrypting and decrypting access means.  Run with {@code -prof gc} (the default of the benchmarks
+ * profile) to see the allocation per operation ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@SuppressWarnings("deprecation")
+public class AesEncryptionUtilBenchmark {
+
+    private static final SecretKey SECRET_KEY = SecretKey.from(Hex.decode("a591a6d40bf420404a011733cfb7b190d62c65bf0bcda32b57b277d9ad9f146e"));
+
+    /**
+     * The size of the (unencrypted) access means in characters, most stored access means are between 1 and 4 KB.
+     */
+    @Param({"512", "2048", "8192"})
+    public int accessMeansLength;
+
+    private String accessMeans;
+    private String encryptedAccessMeans;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder("{\"accessToken\":\"");
+        while (sb.length() < accessMeansLength - 2) {
+            sb.append((char) ('a' + sb.length() % 26));
+        }
+        accessMeans = sb.append("\"}").toString();
+        encryptedAccessMeans = AesEncryptionUtil.encrypt(accessMeans, SECRET_KEY);
+    }
+
+    @Benchmark
+    public String encrypt() {
+        return AesEncryptionUtil.encrypt(accessMeans, SECRET_KEY);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return AesEncryptionUtil.decrypt(encryptedAccessMeans, SECRET_KEY);
+    }
+}
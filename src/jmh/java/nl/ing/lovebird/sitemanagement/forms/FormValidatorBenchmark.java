@@ -0,0 +1,130 @@
+package nl.ing.lovebird.sitemanagement.forms;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.ing.lovebird.providershared.form.*;
+import nl.ing.lovebird.sitemanagement.configuration.SiteManagementDebugProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of validating a posted login, as done by {@code CreateOrUpdateUserSiteService.validateFormStep}, with and
+ * without the {@link FormValidationPlanCache}.  Run with {@code -prof gc} (the default of the benchmarks profile) to
+ * see the allocation per operation ({@code gc.alloc.rate.norm}).
+ * <p>
+ * The forms are the ones of the tests: a typical scraping form with a choice, a form with all types of components and
+ * a form with nested choices, which is the worst case for the message of an invalid login.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormValidatorBenchmark {
+
+    @Param({"textFieldAndChoice", "allVariations", "nestedChoices"})
+    public String formName;
+
+    private final FormValidator formValidator = new FormValidator(false, new SiteManagementDebugProperties());
+    private final FormValidationPlanCache formValidationPlanCache = new FormValidationPlanCache(new SimpleMeterRegistry(), 100);
+
+    private Form form;
+    private FilledInUserSiteFormValues validValues;
+    private FilledInUserSiteFormValues invalidValues;
+
+    @Setup
+    public void setUp() {
+        switch (formName) {
+            case "textFieldAndChoice" -> {
+                form = new Form(TestFormUtil.createTextFieldAndChoiceComponent(), null, null);
+                validValues = values("LOGIN", "surname", "OP_LOGIN1", "123456", "OP_PASSWORD", "12345");
+                invalidValues = values("LOGIN", "surname", "OP_LOGIN1", "123456", "OP_LOGIN2", "1234567890123456");
+            }
+            case "allVariations" -> {
+                form = new Form(TestFormUtil.createAllVariationsOfFormComponents(), null, null);
+                validValues = values("user1", "bla", "password1", "bla", "multi-user1", "1", "multi-password1", "2",
+                        "multi-select1", "option1", "select1", "option2", "main-multi-user1", "bla", "main-multi-user2", "bla",
+                        "radioId", "option1", "age", "1990-03-23", "someNumber", "1");
+                // None of the required choice is filled in.
+                invalidValues = values("user1", "bla", "password1", "bla", "select1", "option2",
+                        "main-multi-user1", "bla", "main-multi-user2", "bla", "radioId", "option1", "age", "1990-03-23", "someNumber", "1");
+            }
+            case "nestedChoices" -> {
+                form = new Form(List.of(nestedChoice(6)), null, null);
+                validValues = values("choice-6-a", "a");
+                invalidValues = values("choice-6-a", "a", "choice-6-b", "b");
+            }
+            default -> throw new IllegalArgumentException("Unknown form " + formName);
+        }
+    }
+
+    @Benchmark
+    public FormValidationPlan validateWithoutPlanCache() throws FormValidationException {
+        FormValidationPlan plan = FormValidationPlan.compile(form);
+        formValidator.validateValues(form, plan, validValues);
+        return plan;
+    }
+
+    @Benchmark
+    public FormValidationPlan validateWithPlanCache() throws FormValidationException {
+        FormValidationPlan plan = formValidationPlanCache.get(form);
+        formValidator.validateValues(form, plan, validValues);
+        return plan;
+    }
+
+    @Benchmark
+    public String validateInvalidWithoutPlanCache() {
+        return validateInvalid(FormValidationPlan.compile(form));
+    }
+
+    @Benchmark
+    public String validateInvalidWithPlanCache() {
+        return validateInvalid(formValidationPlanCache.get(form));
+    }
+
+    private String validateInvalid(FormValidationPlan plan) {
+        try {
+            formValidator.validateValues(form, plan, invalidValues);
+            throw new IllegalStateException("The invalid values of " + formName + " are valid");
+        } catch (FormValidationException e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * A choice between two optional fields and a multi of a field and the choice of the next level.
+     */
+    private static FormComponent nestedChoice(int level) {
+        ChoiceFormComponent choice = new ChoiceFormComponent();
+        choice.addComponent(new TextField("choice-" + level + "-a", "A", 20, 20, true, null, false));
+        choice.addComponent(new TextField("choice-" + level + "-b", "B", 20, 20, true, null, false));
+        if (level > 0) {
+            MultiFormComponent multi = new MultiFormComponent();
+            multi.setOptional(true);
+            multi.addComponent(new TextField("multi-" + level, "Multi", 20, 20, false, null, false));
+            multi.addComponent(nestedChoice(level - 1));
+            choice.addComponent(multi);
+        }
+        return choice;
+    }
+
+    private static FilledInUserSiteFormValues values(String... idsAndValues) {
+        FilledInUserSiteFormValues filledInUserSiteFormValues = new FilledInUserSiteFormValues();
+        for (int i = 0; i < idsAndValues.length; i += 2) {
+            filledInUserSiteFormValues.add(idsAndValues[i], idsAndValues[i + 1]);
+        }
+        return filledInUserSiteFormValues;
+    }
+}
@@ -25,6 +25,7 @@ import java.time.Instant;
 import java.util.Date;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -93,6 +94,62 @@ public class AccessMeansManager {
         }
     }
 
+    /**
+     * Variant of {@link #retrieveValidAccessMeans(ClientUserToken, PostgresUserSite, Instant, String)} that uses the
+     * access means that were read beforehand with {@link #loadUserSiteAccessMeans(UUID)}, instead of querying them.
+     * This allows a caller to read the access means of all user-sites at once, and to handle the user-sites concurrently.
+     */
+    public AccessMeansResult retrieveValidAccessMeans(
+            @NonNull final ClientUserToken clientUserToken,
+            @NonNull final PostgresUserSite userSite,
+            @NonNull final Instant requestStartTime,
+            @Nullable final String psuIpAddress,
+            @NonNull final StoredUserSiteAccessMeans storedUserSiteAccessMeans
+    ) {
+        if (!isScrapingSite(userSite.getProvider())) {
+            return manageForDirectConnectionProvider(clientUserToken, userSite, psuIpAddress, requestStartTime, storedUserSiteAccessMeans.get(userSite));
+        } else {
+            return manageForScrapingProvider(clientUserToken, userSite.getProvider(), userSite.getUserId(), requestStartTime);
+        }
+    }
+
+    /**
+     * Read the (encrypted) {@link UserSiteAccessMeans} of all user-sites of a user with a single query.
+     */
+    public StoredUserSiteAccessMeans loadUserSiteAccessMeans(@NonNull UUID userId) {
+        return new StoredUserSiteAccessMeans(userSiteAccessMeansRepository.getForUser(userId).stream()
+                .collect(Collectors.toMap(UserSiteAccessMeans::getUserSiteId, it -> it, (first, second) -> first)));
+    }
+
+    /**
+     * Renew the access means of a direct connection user-site ahead of time, if they expire before {@code renewBefore}.
+     * Access means that remain valid until after that moment are returned as-is.
+     * <p>
+     * This is used to renew access means in the background, so a later refresh of the user-site does not have to wait
+     * for the renewal.  Like {@link #retrieveValidAccessMeans}, this does not update {@link UserSiteAccessMeans#getCreated()}.
+     */
+    public AccessMeansResult renewAccessMeansExpiringBefore(
+            @NonNull final ClientUserToken clientUserToken,
+            @NonNull final PostgresUserSite userSite,
+            @NonNull final Instant renewBefore
+    ) {
+        if (isScrapingSite(userSite.getProvider())) {
+            throw new IllegalArgumentException("Renewing access means ahead of time is only supported for direct connection providers.");
+        }
+        return manageForDirectConnectionProvider(clientUserToken, userSite, null, renewBefore);
+    }
+
+    /**
+     * @return the ids of the user-sites of the user with access means that expire before the given moment
+     */
+    public Set<UUID> findUserSitesWithAccessMeansExpiringBefore(@NonNull UUID userId, @NonNull Instant expiringBefore) {
+        return userSiteAccessMeansRepository.getForUser(userId).stream()
+                .filter(userSiteAccessMeans -> userSiteAccessMeans.getExpireTime() != null)
+                .filter(userSiteAccessMeans -> isCloseToExpiry(userSiteAccessMeans.getExpireTime(), expiringBefore))
+                .map(UserSiteAccessMeans::getUserSiteId)
+                .collect(Collectors.toSet());
+    }
+
     public AccessMeansHolder createUserForScrapingProvider(
             PostgresUserSite userSite,
             @NonNull ClientUserToken clientUserToken
@@ -214,13 +271,23 @@ public class AccessMeansManager {
             @Nullable String psuIpAddress,
             Instant requestStartTime
     ) {
-        ClientId clientId = new ClientId(clientUserToken.getClientIdClaim());
-        UUID siteId = userSite.getSiteId();
         Optional<UserSiteAccessMeans> optionalUserSiteAccessMeans = userSiteAccessMeansRepository.get(
                 userSite.getUserId(),
                 userSite.getUserSiteId(),
                 userSite.getProvider()
         );
+        return manageForDirectConnectionProvider(clientUserToken, userSite, psuIpAddress, requestStartTime, optionalUserSiteAccessMeans);
+    }
+
+    private AccessMeansResult manageForDirectConnectionProvider(
+            @NonNull ClientUserToken clientUserToken,
+            PostgresUserSite userSite,
+            @Nullable String psuIpAddress,
+            Instant requestStartTime,
+            Optional<UserSiteAccessMeans> optionalUserSiteAccessMeans
+    ) {
+        ClientId clientId = new ClientId(clientUserToken.getClientIdClaim());
+        UUID siteId = userSite.getSiteId();
         if (optionalUserSiteAccessMeans.isEmpty()) {
             return new AccessMeansResult(ACCESS_MEANS_DO_NOT_EXIST);
         }
@@ -358,6 +425,23 @@ public class AccessMeansManager {
         return requestStartTime.plus(of(1, MINUTES)).isAfter(expiryTime.toInstant());
     }
 
+    /**
+     * The stored {@link UserSiteAccessMeans} of the user-sites of one user, see {@link #loadUserSiteAccessMeans(UUID)}.
+     */
+    public static class StoredUserSiteAccessMeans {
+
+        private final Map<UUID, UserSiteAccessMeans> byUserSiteId;
+
+        private StoredUserSiteAccessMeans(Map<UUID, UserSiteAccessMeans> byUserSiteId) {
+            this.byUserSiteId = byUserSiteId;
+        }
+
+        Optional<UserSiteAccessMeans> get(PostgresUserSite userSite) {
+            return Optional.ofNullable(byUserSiteId.get(userSite.getUserSiteId()))
+                    .filter(userSiteAccessMeans -> userSite.getProvider().equals(userSiteAccessMeans.getProvider()));
+        }
+    }
+
     @Value
     public static class AccessMeansResult {
 
@@ -3,9 +3,6 @@ package nl.ing.lovebird.sitemanagement.accessmeans;
 
 import com.yolt.securityutils.crypto.SecretKey;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.util.encoders.DecoderException;
-import org.bouncycastle.util.encoders.EncoderException;
-import org.bouncycastle.util.encoders.Hex;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -14,9 +11,14 @@ import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
-import java.security.spec.AlgorithmParameterSpec;
 
 /**
+ * Encrypts and decrypts access means as the hex encoded {@code iv || ciphertext} that is stored in cassandra.
+ * <p>
+ * This runs for every access means that is loaded or renewed, so it avoids the per call overhead: every thread reuses
+ * its own {@link Cipher} (a provider lookup is expensive and a cipher is not thread-safe), all threads share one
+ * {@link SecureRandom}, and the hex encoding is done on a single buffer instead of on intermediate strings.
+ *
  * @deprecated This only exists so we can deal with data that is already stored in cassandra.
  * There are other encryption methods available that are better suited. See security-utils library.
  */
@@ -28,30 +30,34 @@ public class AesEncryptionUtil {
     private static final String MODE = "GCM";
     private static final String PADDING = "NoPadding";
     private static final String TRANSFORMATION = ALGORITHM + "/" + MODE + "/" + PADDING;
+    private static final int IV_LENGTH = 256 >> 3;
+    private static final int HEX_IV_LENGTH = IV_LENGTH * 2;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
 
     static {
         Security.addProvider(new BouncyCastleProvider());
     }
 
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+    private static final ThreadLocal<Cipher> CIPHER = ThreadLocal.withInitial(AesEncryptionUtil::createCipher);
+
     private AesEncryptionUtil() {
 
     }
 
     public static String encrypt(String input, SecretKey secretKey) {
         try {
-            Key key = secretKey.getKey();
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION, PROVIDER);
-            SecureRandom secureRandom = new SecureRandom();
-            byte[] iv = new byte[256 >> 3];
-            secureRandom.nextBytes(iv);
-            AlgorithmParameterSpec paramSpec = new IvParameterSpec(iv);
-            cipher.init(Cipher.ENCRYPT_MODE, key, paramSpec);
-            byte[] inputBytes = input.getBytes(StandardCharsets.UTF_8);
-            byte[] encryptedBytes = cipher.doFinal(inputBytes);
-            return new String(Hex.encode(iv)) + new String(Hex.encode(encryptedBytes));
-        } catch (EncoderException | DecoderException | NoSuchAlgorithmException |
-                InvalidKeyException | NoSuchPaddingException |
-                InvalidAlgorithmParameterException | NoSuchProviderException |
+            byte[] iv = new byte[IV_LENGTH];
+            SECURE_RANDOM.nextBytes(iv);
+            Cipher cipher = CIPHER.get();
+            cipher.init(Cipher.ENCRYPT_MODE, secretKey.getKey(), new IvParameterSpec(iv));
+            byte[] encryptedBytes = cipher.doFinal(input.getBytes(StandardCharsets.UTF_8));
+
+            byte[] hex = new byte[HEX_IV_LENGTH + encryptedBytes.length * 2];
+            encodeHex(iv, hex, 0);
+            encodeHex(encryptedBytes, hex, HEX_IV_LENGTH);
+            return new String(hex, StandardCharsets.US_ASCII);
+        } catch (InvalidKeyException | InvalidAlgorithmParameterException |
                 BadPaddingException | IllegalBlockSizeException e) {
             throw new RuntimeException("Exception while encrypting", e);
         }
@@ -59,18 +65,49 @@ public class AesEncryptionUtil {
 
     public static String decrypt(String encrypted, SecretKey secretKey) {
         try {
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-            byte[] iv = Hex.decode(encrypted.substring(0, 64));
-            byte[] encryptedData = Hex.decode(encrypted.substring(64));
-            AlgorithmParameterSpec paramSpec = new IvParameterSpec(iv);
-            Key key = secretKey.getKey();
-            cipher.init(Cipher.DECRYPT_MODE, key, paramSpec);
-            byte[] decryptedBytes = cipher.doFinal(encryptedData);
+            if (encrypted.length() < HEX_IV_LENGTH) {
+                throw new IllegalArgumentException("encrypted value is shorter than the iv");
+            }
+            byte[] ivAndEncryptedData = decodeHex(encrypted);
+            Cipher cipher = CIPHER.get();
+            cipher.init(Cipher.DECRYPT_MODE, secretKey.getKey(), new IvParameterSpec(ivAndEncryptedData, 0, IV_LENGTH));
+            byte[] decryptedBytes = cipher.doFinal(ivAndEncryptedData, IV_LENGTH, ivAndEncryptedData.length - IV_LENGTH);
             return new String(decryptedBytes, StandardCharsets.UTF_8);
-        } catch (DecoderException | NoSuchAlgorithmException | BadPaddingException | NoSuchPaddingException |
-                InvalidAlgorithmParameterException | InvalidKeyException | IllegalBlockSizeException e) {
+        } catch (IllegalArgumentException | BadPaddingException | InvalidAlgorithmParameterException |
+                InvalidKeyException | IllegalBlockSizeException e) {
             throw new RuntimeException("Exception while decrypting", e);
         }
     }
 
+    private static Cipher createCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION, PROVIDER);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException e) {
+            throw new IllegalStateException("Cipher " + TRANSFORMATION + " is not available", e);
+        }
+    }
+
+    private static void encodeHex(byte[] bytes, byte[] hex, int offset) {
+        for (int i = 0; i < bytes.length; i++) {
+            hex[offset + 2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[offset + 2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+    }
+
+    private static byte[] decodeHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("hex string has an odd length");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("invalid hex character at position " + 2 * i);
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
 }
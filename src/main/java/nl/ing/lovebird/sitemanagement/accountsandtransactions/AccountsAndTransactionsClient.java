@@ -36,6 +36,14 @@ public class AccountsAndTransactionsClient {
     }
 
     public List<AccountDTOv1> getAccounts(@NonNull ClientUserToken clientUserToken) {
+        return getAccounts(clientUserToken, Duration.ofSeconds(2));
+    }
+
+    /**
+     * Like {@link #getAccounts(ClientUserToken)}, but waits at most the given timeout for the accounts.  The request is
+     * aborted when the timeout expires, so the connection is not held after the caller gave up.
+     */
+    public List<AccountDTOv1> getAccounts(@NonNull ClientUserToken clientUserToken, @NonNull Duration timeout) {
         var userIdString = clientUserToken.getUserIdClaim();
 
         return webClient.get()
@@ -44,7 +52,7 @@ public class AccountsAndTransactionsClient {
                 .retrieve()
                 .bodyToMono(new ParameterizedTypeReference<List<AccountDTOv1>>() {
                 })
-                .block(Duration.ofSeconds(2));
+                .block(timeout);
     }
 
 }
@@ -0,0 +1,87 @@
+package nl.ing.lovebird.sitemanagement.batch;
+
+import lombok.Getter;
+import org.springframework.lang.Nullable;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The progress of a batch job that processes its rows in chunks.  Updated by the thread that runs the job and read by
+ * the {@link BatchJobProgressTracker}, hence the atomics.
+ */
+public class BatchJobProgress {
+
+    private final Clock clock;
+    @Getter
+    private final String job;
+    @Getter
+    private final boolean dryrun;
+    @Getter
+    private final Instant startedAt;
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    @Nullable
+    private volatile UUID resumedAfter;
+    @Nullable
+    private volatile UUID lastId;
+    @Nullable
+    private volatile Instant finishedAt;
+
+    public BatchJobProgress(Clock clock, String job, boolean dryrun) {
+        this.clock = clock;
+        this.job = job;
+        this.dryrun = dryrun;
+        this.startedAt = Instant.now(clock);
+    }
+
+    void resumedAfter(UUID id) {
+        this.resumedAfter = id;
+        this.lastId = id;
+    }
+
+    void chunkProcessed(long processedRows, UUID chunkLastId) {
+        rows.addAndGet(processedRows);
+        chunks.incrementAndGet();
+        lastId = chunkLastId;
+    }
+
+    void finished() {
+        finishedAt = Instant.now(clock);
+    }
+
+    /**
+     * @return the number of rows that were processed by this run, so excluding the rows of the run that was resumed
+     */
+    public long getRows() {
+        return rows.get();
+    }
+
+    public long getChunks() {
+        return chunks.get();
+    }
+
+    @Nullable
+    public UUID getResumedAfter() {
+        return resumedAfter;
+    }
+
+    @Nullable
+    public UUID getLastId() {
+        return lastId;
+    }
+
+    @Nullable
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public double getRowsPerSecond() {
+        Instant end = finishedAt != null ? finishedAt : Instant.now(clock);
+        long millis = Duration.between(startedAt, end).toMillis();
+        return millis == 0 ? 0 : rows.get() * 1000.0 / millis;
+    }
+}
@@ -0,0 +1,36 @@
+package nl.ing.lovebird.sitemanagement.batch;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Value
+@Schema(name = "BatchJobProgress", description = "The progress of the last run of a batch job that processes rows in chunks")
+public class BatchJobProgressDTO {
+
+    @Schema(description = "The name of the job")
+    String job;
+    @Schema(description = "Whether the changes are rolled back")
+    boolean dryrun;
+    @Schema(description = "When the run started")
+    Instant startedAt;
+    @Schema(description = "When the run finished, empty if it is still running or if it failed")
+    Instant finishedAt;
+    @Schema(description = "The checkpoint at which the run resumed an earlier run, empty if it started at the beginning")
+    UUID resumedAfter;
+    @Schema(description = "The id of the last row that was processed")
+    UUID lastId;
+    @Schema(description = "The number of chunks that were processed")
+    long chunks;
+    @Schema(description = "The number of rows that were processed")
+    long rows;
+    @Schema(description = "The number of rows that were processed per second")
+    double rowsPerSecond;
+
+    static BatchJobProgressDTO from(BatchJobProgress progress) {
+        return new BatchJobProgressDTO(progress.getJob(), progress.isDryrun(), progress.getStartedAt(), progress.getFinishedAt(),
+                progress.getResumedAfter(), progress.getLastId(), progress.getChunks(), progress.getRows(), progress.getRowsPerSecond());
+    }
+}
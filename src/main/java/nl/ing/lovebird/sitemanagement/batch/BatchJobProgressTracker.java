@@ -0,0 +1,48 @@
+package nl.ing.lovebird.sitemanagement.batch;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the progress of the last run of every chunked batch job of this pod, so it can be reported by the
+ * {@link PeriodicBatchController} and as metrics.
+ */
+@Component
+@RequiredArgsConstructor
+public class BatchJobProgressTracker {
+
+    private final Clock clock;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, BatchJobProgress> lastRuns = new ConcurrentHashMap<>();
+
+    public BatchJobProgress start(String job, boolean dryrun) {
+        var progress = new BatchJobProgress(clock, job, dryrun);
+        if (lastRuns.put(job, progress) == null) {
+            // The gauges look the job up, so they follow the latest run.
+            Gauge.builder("batch_job_processed_rows", lastRuns, runs -> runs.get(job).getRows())
+                    .tag("job", job)
+                    .register(meterRegistry);
+            Gauge.builder("batch_job_rows_per_second", lastRuns, runs -> runs.get(job).getRowsPerSecond())
+                    .tag("job", job)
+                    .register(meterRegistry);
+        }
+        return progress;
+    }
+
+    /**
+     * @return the progress of the last run of every job, most recently started first
+     */
+    public List<BatchJobProgress> getLastRuns() {
+        return lastRuns.values().stream()
+                .sorted(Comparator.comparing(BatchJobProgress::getStartedAt).reversed())
+                .toList();
+    }
+}
@@ -8,33 +8,45 @@ import nl.ing.lovebird.sitemanagement.legacy.aismigration.MigrationStatus;
 import org.hibernate.SessionFactory;
 import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
+import org.hibernate.query.NativeQuery;
 import org.hibernate.type.CustomType;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
-import javax.persistence.Tuple;
+import java.sql.Timestamp;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 @Slf4j
 @Repository
 public class BatchUserSiteRepository {
 
     public static final CustomType MIGRATION_STATUS_TYPE = new CustomType(new PostgreSQLEnumType(MigrationStatus.class));
+    private static final UUID NIL_UUID = new UUID(0, 0);
     private final Clock clock;
+    private final int chunkSize;
+    private final Duration pauseBetweenChunks;
 
     @PersistenceContext(unitName = "batchEntityManager")
     private final EntityManager batchEntityManager;
 
     public BatchUserSiteRepository(Clock clock,
-                                   @Qualifier("batchEntityManager") EntityManager batchEntityManager) {
+                                   @Qualifier("batchEntityManager") EntityManager batchEntityManager,
+                                   @Value("${lovebird.batch.disconnectUserSites.chunkSize:1000}") int chunkSize,
+                                   @Value("${lovebird.batch.disconnectUserSites.pauseBetweenChunks:PT0.1S}") Duration pauseBetweenChunks) {
         this.clock = clock;
         this.batchEntityManager = batchEntityManager;
+        this.chunkSize = chunkSize;
+        this.pauseBetweenChunks = pauseBetweenChunks;
     }
 
     /**
@@ -42,30 +54,15 @@ public class BatchUserSiteRepository {
      * respectively {@code LOGIN_FAILED}, {@code CONSENT_EXPIRED}, {@code DISCONNECTED} and {@code CONSENT_EXPIRED},
      * thereby making it obvious to the user that the user-site can no longer be used.
      *
-     * @param siteId the id of the site to disconnect all user-sites for
-     * @param dryrun whether to rollback changes
-     * @return the list of affected user-sites
+     * @param siteId   the id of the site to disconnect all user-sites for
+     * @param dryrun   whether to rollback changes
+     * @param progress the progress of the job, see {@link #disconnectInChunks}
+     * @return the number of affected user-sites
      */
-    long disconnectUserSitesForSite(final UUID siteId, boolean dryrun) {
-        var sql = """
-                UPDATE user_site u
-                    SET connection_status = 'DISCONNECTED',
-                        failure_reason = 'CONSENT_EXPIRED'
-                FROM (
-                    SELECT id FROM user_site
-                    WHERE site_id = :siteId AND
-                          connection_status != 'DISCONNECTED' AND
-                          is_deleted = false
-                ) AS prev
-                WHERE u.id = prev.id;""";
-
-        try (StatelessSession statelessSession = createStatelessSession()) {
-            try (TransactionWrapper transactionWrapper = TransactionWrapper.wrap(statelessSession.beginTransaction(), dryrun)) {
-                return statelessSession.createNativeQuery(sql, Tuple.class)
-                        .setParameter("siteId", siteId)
-                        .executeUpdate();
-            }
-        }
+    long disconnectUserSitesForSite(final UUID siteId, boolean dryrun, BatchJobProgress progress) {
+        return disconnectInChunks("site_id = :siteId",
+                query -> query.setParameter("siteId", siteId),
+                dryrun, progress);
     }
 
     /**
@@ -75,32 +72,18 @@ public class BatchUserSiteRepository {
      *
      * @param migrationStatuses the migration statuses for which to disconnect the user-sites
      * @param dryrun            whether to rollback changes
-     * @return the list of affected user-sites
+     * @param progress          the progress of the job, see {@link #disconnectInChunks}
+     * @return the number of affected user-sites
      */
-    long disconnectUserSitesWithMigrationStatus(List<MigrationStatus> migrationStatuses, boolean dryrun) {
+    long disconnectUserSitesWithMigrationStatus(List<MigrationStatus> migrationStatuses, boolean dryrun, BatchJobProgress progress) {
         if (migrationStatuses.isEmpty()) {
+            progress.finished();
             return 0L;
         }
 
-        var sql = """
-                UPDATE user_site u
-                    SET connection_status = 'DISCONNECTED',
-                        failure_reason = 'CONSENT_EXPIRED'
-                FROM (
-                    SELECT id FROM user_site
-                    WHERE migration_status IN ( :migration_statuses ) AND
-                          connection_status != 'DISCONNECTED' AND
-                          is_deleted = false
-                ) AS prev
-                WHERE u.id = prev.id;""";
-
-        try (StatelessSession statelessSession = createStatelessSession()) {
-            try (TransactionWrapper transactionWrapper = TransactionWrapper.wrap(statelessSession.beginTransaction(), dryrun)) {
-                return statelessSession.createNativeQuery(sql, Tuple.class)
-                        .setParameterList("migration_statuses", migrationStatuses, MIGRATION_STATUS_TYPE)
-                        .executeUpdate();
-            }
-        }
+        return disconnectInChunks("migration_status IN ( :migration_statuses )",
+                query -> query.setParameterList("migration_statuses", migrationStatuses, MIGRATION_STATUS_TYPE),
+                dryrun, progress);
     }
 
     /**
@@ -109,31 +92,157 @@ public class BatchUserSiteRepository {
      * and {@code CONSENT_EXPIRED}, thereby making it obvious to the user that the user-site can no longer be used.
      * The PPS site is ignored because it does not require explicit consent from the user. All yolt app users give implicit consent.
      *
-     * @param dryrun whether to rollback changes
-     * @return the list of affected user-sites
+     * @param dryrun   whether to rollback changes
+     * @param progress the progress of the job, see {@link #disconnectInChunks}
+     * @return the number of affected user-sites
      */
-    long disconnectUserSitesNotRefreshedFor90Days(boolean dryrun) {
+    long disconnectUserSitesNotRefreshedFor90Days(boolean dryrun, BatchJobProgress progress) {
         //TODO remove filter on PPS site_id (b1fa25e2-f696-45c1-b59b-59c5fd40c175) in selection after app support drops
-        var sql = """
-                UPDATE user_site u
-                    SET connection_status = 'DISCONNECTED',
-                        failure_reason = 'CONSENT_EXPIRED'
-                FROM (
-                    SELECT id FROM user_site
-                    WHERE (last_data_fetch < :instant OR last_data_fetch IS NULL) AND
+        var instant = Instant.now(clock).minus(90, ChronoUnit.DAYS);
+        return disconnectInChunks("""
+                        (last_data_fetch < :instant OR last_data_fetch IS NULL) AND
                         created < :instant AND
-                        connection_status != 'DISCONNECTED' AND
-                        is_deleted = false AND
-                        site_id != 'b1fa25e2-f696-45c1-b59b-59c5fd40c175'
-                ) AS prev
-                WHERE u.id = prev.id""";
+                        site_id != 'b1fa25e2-f696-45c1-b59b-59c5fd40c175'""",
+                query -> query.setParameter("instant", instant),
+                dryrun, progress);
+    }
+
+    /**
+     * Disconnects the user-sites that match the condition (and are not disconnected or deleted yet) in chunks of
+     * {@link #chunkSize} user-sites, ordered by id.  Every chunk is updated in its own short transaction, and we pause
+     * between chunks, so we never hold the locks on many user-sites at once and other updates of user-sites can
+     * continue while this job runs.
+     * <p>
+     * The id of the last user-site of a chunk is stored as a checkpoint of the job (named by the progress) in the same
+     * transaction.  If the job is interrupted, the next run of the job continues after the checkpoint.  The checkpoint
+     * is removed when the job is done, so the run after that starts at the beginning again.  A dry run rolls back every
+     * chunk, and does not read or write the checkpoint.
+     * <p>
+     * The chunk moves the user-sites between the counters of the user-site statistics (see
+     * {@code UserSiteStatisticsRepository}) in the same statement.  The user-sites of the chunk are locked before their
+     * old status is read, so a concurrent status change cannot make the counters drift.
+     *
+     * @return the number of affected user-sites in this run
+     */
+    private long disconnectInChunks(String condition, Consumer<NativeQuery<?>> parameters, boolean dryrun, BatchJobProgress progress) {
+        var sql = """
+                WITH chunk AS (
+                    SELECT id, client_id, site_id, connection_status, failure_reason FROM user_site
+                    WHERE %s AND
+                          connection_status != 'DISCONNECTED' AND
+                          is_deleted = false AND
+                          id > :afterId
+                    ORDER BY id
+                    LIMIT :chunkSize
+                    FOR UPDATE
+                ), updated AS (
+                    UPDATE user_site u
+                        SET connection_status = 'DISCONNECTED',
+                            failure_reason = 'CONSENT_EXPIRED'
+                    FROM chunk
+                    WHERE u.id = chunk.id
+                    RETURNING u.id, chunk.client_id, chunk.site_id, chunk.connection_status, chunk.failure_reason
+                ), statistics AS (
+                    INSERT INTO user_site_statistics_status_delta (client_id, site_id, connection_status, failure_reason, user_sites)
+                        SELECT client_id, site_id, cast(connection_status as varchar), coalesce(cast(failure_reason as varchar), ''), -count(*)
+                            FROM updated
+                            GROUP BY client_id, site_id, connection_status, failure_reason
+                        UNION ALL
+                        SELECT client_id, site_id, 'DISCONNECTED', 'CONSENT_EXPIRED', count(*)
+                            FROM updated
+                            GROUP BY client_id, site_id
+                )
+                SELECT cast((SELECT id FROM chunk ORDER BY id DESC LIMIT 1) as varchar),
+                       (SELECT count(*) FROM chunk),
+                       (SELECT count(*) FROM updated)""".formatted(condition);
 
         try (StatelessSession statelessSession = createStatelessSession()) {
-            try (TransactionWrapper transactionWrapper = TransactionWrapper.wrap(statelessSession.beginTransaction(), dryrun)) {
-                return statelessSession.createNativeQuery(sql, Tuple.class)
-                        .setParameter("instant", Instant.now(clock).minus(90, ChronoUnit.DAYS))
-                        .executeUpdate();
+            UUID afterId = dryrun ? null : findCheckpoint(statelessSession, progress.getJob());
+            if (afterId != null) {
+                log.info("Resuming {} after user-site {}.", progress.getJob(), afterId);
+                progress.resumedAfter(afterId);
             }
+
+            long affected = 0;
+            while (true) {
+                long selected;
+                try (TransactionWrapper transactionWrapper = TransactionWrapper.wrap(statelessSession.beginTransaction(), dryrun)) {
+                    var query = statelessSession.createNativeQuery(sql);
+                    parameters.accept(query);
+                    Object[] row = (Object[]) query
+                            // The nil uuid is not a valid user-site id, so this selects all user-sites.
+                            .setParameter("afterId", afterId != null ? afterId : NIL_UUID)
+                            .setParameter("chunkSize", chunkSize)
+                            .getSingleResult();
+                    selected = ((Number) row[1]).longValue();
+                    if (selected == 0) {
+                        break;
+                    }
+                    long updated = ((Number) row[2]).longValue();
+                    afterId = UUID.fromString((String) row[0]);
+                    if (!dryrun) {
+                        saveCheckpoint(statelessSession, progress.getJob(), afterId, updated);
+                    }
+                    affected += updated;
+                    progress.chunkProcessed(updated, afterId);
+                }
+                if (selected < chunkSize) {
+                    break;
+                }
+                pause();
+            }
+
+            if (!dryrun) {
+                deleteCheckpoint(statelessSession, progress.getJob());
+            }
+            progress.finished();
+            return affected;
+        }
+    }
+
+    @Nullable
+    private static UUID findCheckpoint(StatelessSession statelessSession, String job) {
+        Transaction transaction = statelessSession.beginTransaction();
+        @SuppressWarnings("unchecked")
+        List<String> lastIds = statelessSession.createNativeQuery("SELECT cast(last_id as varchar) FROM batch_job_checkpoint WHERE job = :job")
+                .setParameter("job", job)
+                .getResultList();
+        transaction.commit();
+        return lastIds.stream().findFirst().map(UUID::fromString).orElse(null);
+    }
+
+    private void saveCheckpoint(StatelessSession statelessSession, String job, UUID lastId, long processedRows) {
+        var sql = """
+                INSERT INTO batch_job_checkpoint (job, last_id, processed_rows, updated_at)
+                    VALUES (:job, :lastId, :processedRows, :now)
+                    ON CONFLICT (job) DO UPDATE
+                        SET last_id = excluded.last_id,
+                            processed_rows = batch_job_checkpoint.processed_rows + excluded.processed_rows,
+                            updated_at = excluded.updated_at""";
+
+        statelessSession.createNativeQuery(sql)
+                .setParameter("job", job)
+                .setParameter("lastId", lastId)
+                .setParameter("processedRows", processedRows)
+                .setParameter("now", Timestamp.from(Instant.now(clock)))
+                .executeUpdate();
+    }
+
+    private static void deleteCheckpoint(StatelessSession statelessSession, String job) {
+        Transaction transaction = statelessSession.beginTransaction();
+        statelessSession.createNativeQuery("DELETE FROM batch_job_checkpoint WHERE job = :job")
+                .setParameter("job", job)
+                .executeUpdate();
+        transaction.commit();
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(pauseBetweenChunks.toMillis());
+        } catch (InterruptedException e) {
+            // The checkpoint makes sure the next run continues where we stopped.
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while disconnecting user-sites", e);
         }
     }
 
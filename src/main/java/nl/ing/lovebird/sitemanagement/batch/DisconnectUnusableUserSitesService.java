@@ -20,15 +20,21 @@ import static java.util.concurrent.CompletableFuture.completedFuture;
 @Service
 @RequiredArgsConstructor
 public class DisconnectUnusableUserSitesService {
+    static final String IN_MIGRATION_JOB = "disconnect-user-sites-in-migration";
+    static final String NOT_REFRESHED_FOR_90_DAYS_JOB = "disconnect-user-sites-not-refreshed-for-90-days";
+
     private final SiteService siteService;
     private final BatchUserSiteRepository batchUserSiteRepository;
     private final SiteManagementMetrics metrics;
+    private final BatchJobProgressTracker progressTracker;
 
     /**
      * Marks user-sites {@link ConnectionStatus#DISCONNECTED} when they are no longer usable. This is the case when the
      * related site is blacklisted, the related site is no longer supported, the user-site is in migration (we don't
      * expect those anymore) or the user-site has not been refreshed for at least 90 days. These are cases that are
      * skipped by the flywheel, with the last case to catch any unforseen cases (although that should not happen).
+     * <p>
+     * The user-sites are disconnected in chunks, the progress of the jobs is kept by the {@link BatchJobProgressTracker}.
      *
      * @return the number of affected user-sites
      */
@@ -41,11 +47,13 @@ public class DisconnectUnusableUserSitesService {
 
         final var affectedUnusableSite = allSites.stream()
                 .filter(s -> false) // This was done based on 'noLongerSupported' property which is removed. If this batch needs to be reused, consider hardcoding siteId or via config properties.
-                .flatMap(site -> Stream.of(batchUserSiteRepository.disconnectUserSitesForSite(site.getId(), dryrun)))
+                .flatMap(site -> Stream.of(batchUserSiteRepository.disconnectUserSitesForSite(site.getId(), dryrun, progressTracker.start("disconnect-user-sites-for-site-" + site.getId(), dryrun))))
                 .reduce(0L, Long::sum);
 
-        final var affectedInMigration = batchUserSiteRepository.disconnectUserSitesWithMigrationStatus(MigrationConstants.IN_MIGRATION_STATUSES, dryrun);
-        final var affectedNotRefreshedFor90Days = batchUserSiteRepository.disconnectUserSitesNotRefreshedFor90Days(dryrun);
+        final var affectedInMigration = batchUserSiteRepository.disconnectUserSitesWithMigrationStatus(MigrationConstants.IN_MIGRATION_STATUSES, dryrun,
+                progressTracker.start(IN_MIGRATION_JOB, dryrun));
+        final var affectedNotRefreshedFor90Days = batchUserSiteRepository.disconnectUserSitesNotRefreshedFor90Days(dryrun,
+                progressTracker.start(NOT_REFRESHED_FOR_90_DAYS_JOB, dryrun));
 
         metrics.incrementDisconnectedUserSiteNotRefreshedFor90Days(affectedNotRefreshedFor90Days);
 
@@ -36,6 +36,7 @@ public class PeriodicBatchController {
     private final DisconnectUnusableUserSitesService disconnectUnusableUserSitesService;
     private final BatchUserSiteDeleteService batchUserSiteDeleteService;
     private final ConsentTestingService consentTestingService;
+    private final BatchJobProgressTracker batchJobProgressTracker;
 
 
     @Internal(batchTrigger)
@@ -90,4 +91,13 @@ public class PeriodicBatchController {
         return ResponseEntity.accepted().build();
     }
 
+    @Internal(batchTrigger)
+    @Operation(summary = "Show the progress of the last run of the jobs that disconnect unusable user-sites")
+    @GetMapping(value = "/batch/user-sites/disconnect-unusable/progress", produces = APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<BatchJobProgressDTO>> getDisconnectUnusableUserSitesProgress() {
+        return ResponseEntity.ok(batchJobProgressTracker.getLastRuns().stream()
+                .map(BatchJobProgressDTO::from)
+                .toList());
+    }
+
 }
@@ -1,5 +1,7 @@
 package nl.ing.lovebird.sitemanagement.clientconfiguration;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.SneakyThrows;
@@ -12,37 +14,84 @@ import org.springframework.context.SmartLifecycle;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+/**
+ * Keeps the sites of every client in memory.
+ * <p>
+ * The full list of client sites is only retrieved from clients at startup (and whenever clients sends an update
+ * signal without content).  Changes to the sites of a single client are received on the client-sites-updates topic
+ * and only replace the sites of that client.  The index is copy-on-write: readers always see a consistent map without
+ * locking, writers replace it as a whole.
+ * <p>
+ * A full retrieval that was started before the update of a single client does not overwrite the sites of that client.
+ * <p>
+ * After every full retrieval the client sites are written to a snapshot file on local disk.  If that file is recent
+ * enough, a restarting pod loads it and becomes ready immediately, while the full retrieval runs in the background and
+ * is retried with a backoff until it succeeds.  The snapshot only helps if the file survives the restart: the default
+ * path is on the {@code /tmp} emptyDir volume, which survives a restart of the container but not a new pod.
+ */
 @Slf4j
 @Component
 public class ClientSitesProvider implements SmartLifecycle {
 
+    private static final TypeReference<Map<UUID, List<ClientSiteDTO>>> SNAPSHOT_TYPE = new TypeReference<>() {
+    };
+    private static final Duration INITIAL_RETRY_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAX_RETRY_BACKOFF = Duration.ofMinutes(1);
+
     private final Clock clock;
     private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
     private final RestTemplate clientsRestTemplate;
+    private final Optional<Path> snapshotFile;
+    private final Duration snapshotMaxAge;
+    private final ScheduledExecutorService backgroundUpdater;
 
-    private Map<UUID, Map<UUID, ClientSiteDTO>> clientSiteDTOPerClient = Map.of();
+    private volatile Map<UUID, Map<UUID, ClientSiteDTO>> clientSiteDTOPerClient = Map.of();
+
+    /**
+     * Incremented on every update of a single client.  {@link #clientUpdates} holds the value at the last update of
+     * each client, so a full retrieval knows which clients were updated while it was running.
+     */
+    private long updateSequence = 0;
+    private final Map<UUID, Long> clientUpdates = new HashMap<>();
 
     volatile boolean loaded = false;
-    private Instant lastLoaded = Instant.EPOCH;
+    private volatile Instant lastLoaded = Instant.EPOCH;
 
-    public ClientSitesProvider(Clock clock, MeterRegistry meterRegistry, RestTemplateBuilder builder,
-                               @Value("${service.clients.url}") String endpointBaseUrl) {
+    public ClientSitesProvider(Clock clock, MeterRegistry meterRegistry, ObjectMapper objectMapper, RestTemplateBuilder builder,
+                               @Value("${service.clients.url}") String endpointBaseUrl,
+                               @Value("${lovebird.clientSites.snapshotFile:}") String snapshotFile,
+                               @Value("${lovebird.clientSites.snapshotMaxAge:PT1H}") Duration snapshotMaxAge) {
         this.clock = clock;
         this.meterRegistry = meterRegistry;
+        this.objectMapper = objectMapper;
         this.clientsRestTemplate = builder
                 .rootUri(endpointBaseUrl)
                 .setReadTimeout(Duration.ofSeconds(81)) // Match the read-timeout of clients plus some margin
                 .build();
+        this.snapshotFile = Optional.of(snapshotFile).filter(it -> !it.isBlank()).map(Path::of);
+        this.snapshotMaxAge = snapshotMaxAge;
+        var threadFactory = new CustomizableThreadFactory("client-sites-update-");
+        threadFactory.setDaemon(true);
+        this.backgroundUpdater = Executors.newSingleThreadScheduledExecutor(threadFactory);
     }
 
     public Map<UUID, ClientSiteDTO> getClientSites(ClientId clientId) {
@@ -66,6 +115,10 @@ public class ClientSitesProvider implements SmartLifecycle {
     @Override
     public void start() {
         registerMetric();
+        if (restoreSnapshot()) {
+            backgroundUpdater.execute(() -> updateUntilSucceeded(INITIAL_RETRY_BACKOFF));
+            return;
+        }
         while (!loaded) {
             update();
             Thread.sleep(1_000);
@@ -80,28 +133,118 @@ public class ClientSitesProvider implements SmartLifecycle {
     @Override
     public void stop() {
         loaded = false;
+        backgroundUpdater.shutdownNow();
     }
 
-    void update() {
+    /**
+     * Retrieve the sites of all clients and replace the in-memory client sites.
+     *
+     * @return false if the client sites could not be retrieved
+     */
+    boolean update() {
         try {
+            long startedAt = currentUpdateSequence();
             var clientSites = clientsRestTemplate.exchange("/internal/v2/sites-per-client", HttpMethod.GET, HttpEntity.EMPTY, new ParameterizedTypeReference<Map<UUID, List<ClientSiteDTO>>>() {
             }).getBody();
 
-            clientSiteDTOPerClient = clientSites.entrySet()
-                    .stream().collect(Collectors.toMap(Map.Entry::getKey,
-                            entry -> entry.getValue().stream().collect(Collectors.toMap(ClientSiteDTO::getId, it -> it))));
-            this.loaded = true;
-            this.lastLoaded = Instant.now(clock);
+            replaceAll(clientSites, Instant.now(clock), startedAt);
             log.info("loaded client sites for {} clients", clientSiteDTOPerClient.size());
+            writeSnapshot(clientSiteDTOPerClient);
+            return true;
         } catch (RuntimeException e) {
             log.warn("Failed to call clients/internal/v2/sites-per-client", e);
+            return false;
+        }
+    }
+
+    /**
+     * Replace the sites of a single client, leaving the sites of all other clients untouched.
+     */
+    synchronized void update(UUID clientId, List<ClientSiteDTO> clientSites) {
+        var updated = new HashMap<>(clientSiteDTOPerClient);
+        updated.put(clientId, indexById(clientSites));
+        clientSiteDTOPerClient = Collections.unmodifiableMap(updated);
+        clientUpdates.put(clientId, ++updateSequence);
+        log.info("updated {} client sites for client {}", clientSites.size(), clientId);
+    }
+
+    private void updateUntilSucceeded(Duration backoff) {
+        if (!loaded || update()) {
+            return;
+        }
+        Duration nextBackoff = backoff.multipliedBy(2).compareTo(MAX_RETRY_BACKOFF) > 0 ? MAX_RETRY_BACKOFF : backoff.multipliedBy(2);
+        log.info("Serving client sites restored from snapshot, retrying to load them in {}", backoff);
+        backgroundUpdater.schedule(() -> updateUntilSucceeded(nextBackoff), backoff.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized long currentUpdateSequence() {
+        return updateSequence;
+    }
+
+    /**
+     * @param startedAt the {@link #updateSequence} when the retrieval of {@code clientSites} started, clients that were
+     *                  updated after that keep their current sites
+     */
+    private synchronized void replaceAll(Map<UUID, List<ClientSiteDTO>> clientSites, Instant loadedAt, long startedAt) {
+        var replaced = new HashMap<UUID, Map<UUID, ClientSiteDTO>>();
+        clientSites.forEach((clientId, sites) -> replaced.put(clientId, indexById(sites)));
+        clientUpdates.forEach((clientId, updatedAt) -> {
+            if (updatedAt > startedAt) {
+                replaced.put(clientId, clientSiteDTOPerClient.getOrDefault(clientId, Map.of()));
+            }
+        });
+        clientUpdates.values().removeIf(updatedAt -> updatedAt <= startedAt);
+
+        clientSiteDTOPerClient = Collections.unmodifiableMap(replaced);
+        this.loaded = true;
+        this.lastLoaded = loadedAt;
+    }
+
+    private static Map<UUID, ClientSiteDTO> indexById(List<ClientSiteDTO> clientSites) {
+        return clientSites.stream().collect(Collectors.toUnmodifiableMap(ClientSiteDTO::getId, it -> it));
+    }
+
+    /**
+     * @return true if the client sites were loaded from a snapshot that is younger than {@link #snapshotMaxAge}
+     */
+    boolean restoreSnapshot() {
+        if (snapshotFile.isEmpty() || !Files.isRegularFile(snapshotFile.get())) {
+            return false;
+        }
+        try {
+            Instant snapshotTime = Files.getLastModifiedTime(snapshotFile.get()).toInstant();
+            if (snapshotTime.isBefore(Instant.now(clock).minus(snapshotMaxAge))) {
+                log.info("Not restoring client sites from snapshot {}, it was written at {}", snapshotFile.get(), snapshotTime);
+                return false;
+            }
+            replaceAll(objectMapper.readValue(snapshotFile.get().toFile(), SNAPSHOT_TYPE), snapshotTime, currentUpdateSequence());
+            log.info("restored client sites for {} clients from snapshot {}", clientSiteDTOPerClient.size(), snapshotFile.get());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to restore client sites from snapshot {}", snapshotFile.get(), e);
+            return false;
         }
     }
 
+    private void writeSnapshot(Map<UUID, Map<UUID, ClientSiteDTO>> clientSiteDTOPerClient) {
+        if (snapshotFile.isEmpty()) {
+            return;
+        }
+        Map<UUID, List<ClientSiteDTO>> clientSites = clientSiteDTOPerClient.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> List.copyOf(entry.getValue().values())));
+        try {
+            // Write to a temporary file first, so a pod that is killed halfway never leaves a corrupt snapshot behind.
+            Path tempFile = Files.createTempFile(snapshotFile.get().toAbsolutePath().getParent(), "client-sites", ".tmp");
+            objectMapper.writeValue(tempFile.toFile(), clientSites);
+            Files.move(tempFile, snapshotFile.get(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to write client sites snapshot {}", snapshotFile.get(), e);
+        }
+    }
 
     /**
-     * Site details are retrieved every seven minutes.  During normal operation this gauge value should always be at
-     * most 7 minutes.
+     * Age of the last full retrieval of the client sites (or of the snapshot it was restored from).  Updates of single
+     * clients do not reset this age.
      */
     private void registerMetric() {
         Gauge.builder("client_site_details_age_minutes", () -> {
@@ -0,0 +1,20 @@
+package nl.ing.lovebird.sitemanagement.clientconfiguration;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The sites of a single client, as published on the client-sites-updates topic when the sites of that client change.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class ClientSitesUpdateDTO {
+
+    private UUID clientId;
+    private List<ClientSiteDTO> sites;
+}
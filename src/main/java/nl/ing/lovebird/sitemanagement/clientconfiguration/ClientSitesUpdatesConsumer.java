@@ -1,18 +1,26 @@
 package nl.ing.lovebird.sitemanagement.clientconfiguration;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 
+import java.util.Optional;
+
 @RequiredArgsConstructor
 @Component
 @Slf4j
 class ClientSitesUpdatesConsumer {
 
     private final ClientSitesProvider clientSitesProvider;
+    private final ObjectMapper objectMapper;
 
+    /**
+     * If the message contains the sites of a client, only the sites of that client are replaced.  Any other message is
+     * a signal that something changed, in which case we retrieve the sites of all clients.
+     */
     @KafkaListener(
             topics = "${yolt.kafka.topics.client-sites-updates.topic-name}",
             concurrency = "${yolt.kafka.topics.client-sites-updates.listener-concurrency}",
@@ -21,10 +29,27 @@ class ClientSitesUpdatesConsumer {
     void updateSignal(@Payload final Object event) {
 
         try {
-            log.info("got signal on client sites updates topic. Refreshing client sites.");
-            clientSitesProvider.update();
+            Optional<ClientSitesUpdateDTO> clientSitesUpdate = parse(event);
+            if (clientSitesUpdate.isPresent()) {
+                log.info("got client sites on client sites updates topic. Updating sites of client {}.", clientSitesUpdate.get().getClientId());
+                clientSitesProvider.update(clientSitesUpdate.get().getClientId(), clientSitesUpdate.get().getSites());
+            } else {
+                log.info("got signal on client sites updates topic. Refreshing client sites.");
+                clientSitesProvider.update();
+            }
         } catch (Exception e) {
             log.error("Unexpected exception updating client sites provider: {}", e.getMessage(), e);
         }
     }
+
+    private Optional<ClientSitesUpdateDTO> parse(Object event) {
+        try {
+            ClientSitesUpdateDTO update = event instanceof String json
+                    ? objectMapper.readValue(json, ClientSitesUpdateDTO.class)
+                    : objectMapper.convertValue(event, ClientSitesUpdateDTO.class);
+            return Optional.ofNullable(update).filter(it -> it.getClientId() != null && it.getSites() != null);
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
 }
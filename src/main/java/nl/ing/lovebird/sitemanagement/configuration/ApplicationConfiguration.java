@@ -1,11 +1,14 @@
 package nl.ing.lovebird.sitemanagement.configuration;
 
 import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.swagger.v3.core.converter.AnnotatedType;
 import io.swagger.v3.core.converter.ModelConverters;
 import lombok.extern.slf4j.Slf4j;
 import nl.ing.lovebird.providershared.form.SelectOptionValue;
+import nl.ing.lovebird.sitemanagement.flywheel.FlywheelDispatchProperties;
 import nl.ing.lovebird.sitemanagement.forms.*;
 import nl.ing.lovebird.sitemanagement.health.dspipeline.UserContext;
 import nl.ing.lovebird.sitemanagement.providercallback.CallbackConfiguration;
@@ -15,6 +18,7 @@ import nl.ing.lovebird.sitemanagement.usersite.UrlLoginDTO;
 import nl.ing.lovebird.sitemanagement.usersite.encryption.JWEFormStepEncryptionDetailsDTO;
 import nl.ing.lovebird.sitemanagement.usersite.encryption.NoFormStepEncryptionDetailsDTO;
 import org.springdoc.core.customizers.OpenApiCustomiser;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -23,12 +27,17 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.EnableAspectJAutoProxy;
 import org.springframework.core.convert.converter.Converter;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.lang.Nullable;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Configuration
@@ -50,45 +59,109 @@ public class ApplicationConfiguration {
     }
 
     @Bean(ASYNC_EXECUTOR)
-    public ThreadPoolTaskExecutor asyncExecutor(TaskExecutorBuilder builder) {
-        return builder
-                .corePoolSize(10)
-                .maxPoolSize(10)
-                .queueCapacity(100)
-                .threadNamePrefix(ASYNC_EXECUTOR + "-")
-                .build();
+    public AsyncTaskExecutor asyncExecutor(TaskExecutorBuilder builder, ObjectProvider<TaskDecorator> taskDecorator,
+                                           ExecutorProperties executorProperties, MeterRegistry meterRegistry) {
+        var limits = executorProperties.getAsync();
+        return createExecutor(ASYNC_EXECUTOR, limits.getMaxConcurrency(), limits.getQueueCapacity(), builder, taskDecorator.getIfUnique(), executorProperties, meterRegistry);
     }
 
     public static final String BATCH_JOB_EXECUTOR = "batchExecutor";
 
     @Bean(BATCH_JOB_EXECUTOR)
-    public ThreadPoolTaskExecutor batchExecutor(TaskExecutorBuilder builder) {
-        return builder
-                .corePoolSize(3)
-                .maxPoolSize(3)
-                .queueCapacity(0)
-                .threadNamePrefix(BATCH_JOB_EXECUTOR + "-")
-                .build();
+    public AsyncTaskExecutor batchExecutor(TaskExecutorBuilder builder, ObjectProvider<TaskDecorator> taskDecorator,
+                                           ExecutorProperties executorProperties, MeterRegistry meterRegistry) {
+        var limits = executorProperties.getBatch();
+        return createExecutor(BATCH_JOB_EXECUTOR, limits.getMaxConcurrency(), limits.getQueueCapacity(), builder, taskDecorator.getIfUnique(), executorProperties, meterRegistry);
     }
 
     public static final String INTERNAL_FLYWHEEL_PER_USER_EXECUTOR = "internalFlywheelPerUserExecutor";
 
+    /**
+     * The queue is bounded by the FlywheelDispatcher, which stops handing over users once `workers + queueCapacity` are
+     * handed over.  The executor queue is therefore never full.
+     */
     @Bean(INTERNAL_FLYWHEEL_PER_USER_EXECUTOR)
-    public ThreadPoolTaskExecutor internalFlywheelPerUserExecutor(TaskExecutorBuilder builder) {
+    public AsyncTaskExecutor internalFlywheelPerUserExecutor(TaskExecutorBuilder builder, ObjectProvider<TaskDecorator> taskDecorator,
+                                                             ExecutorProperties executorProperties, MeterRegistry meterRegistry,
+                                                             FlywheelDispatchProperties dispatchProperties) {
+        return createExecutor(INTERNAL_FLYWHEEL_PER_USER_EXECUTOR, dispatchProperties.getWorkers(), dispatchProperties.getQueueCapacity(),
+                builder, taskDecorator.getIfUnique(), executorProperties, meterRegistry);
+    }
+
+    public static final String ACCESS_MEANS_RENEWAL_EXECUTOR = "accessMeansRenewalExecutor";
+
+    /**
+     * Runs the renewal of access means ahead of the internal flywheel, which takes most of a minute.  There is one
+     * thread and no queue, so a renewal that is triggered while the previous one still runs is rejected.
+     */
+    @Bean(ACCESS_MEANS_RENEWAL_EXECUTOR)
+    public AsyncTaskExecutor accessMeansRenewalExecutor(TaskExecutorBuilder builder, ObjectProvider<TaskDecorator> taskDecorator,
+                                                        ExecutorProperties executorProperties, MeterRegistry meterRegistry) {
+        return createExecutor(ACCESS_MEANS_RENEWAL_EXECUTOR, 1, 0, builder, taskDecorator.getIfUnique(), executorProperties, meterRegistry);
+    }
+
+    public static final String USER_SITE_REFRESH_EXECUTOR = "userSiteRefreshExecutor";
+
+    /**
+     * Used to trigger the data fetches of the user-sites of one activity concurrently.  There is no queue: if all threads
+     * are busy the refreshing thread triggers the data fetches itself.
+     */
+    @Bean(USER_SITE_REFRESH_EXECUTOR)
+    public AsyncTaskExecutor userSiteRefreshExecutor(TaskExecutorBuilder builder, ObjectProvider<TaskDecorator> taskDecorator,
+                                                     ExecutorProperties executorProperties, MeterRegistry meterRegistry,
+                                                     @Value("${lovebird.userSiteRefresh.threads:20}") int threads) {
+        return createExecutor(USER_SITE_REFRESH_EXECUTOR, threads, 0, builder, taskDecorator.getIfUnique(), executorProperties, meterRegistry);
+    }
+
+    /**
+     * Both kinds of executors report how long tasks wait before they run ({@code executor_queue_wait}) and how many
+     * tasks are rejected because the executor is full ({@code executor_rejected_tasks}).
+     *
+     * @param taskDecorator the decorator that spring boot configures on the {@link TaskExecutorBuilder}, if any.  It
+     *                      is applied in both modes, inside the decorator that records the queue wait.
+     */
+    private static AsyncTaskExecutor createExecutor(String name, int maxConcurrency, int queueCapacity, TaskExecutorBuilder builder,
+                                                    @Nullable TaskDecorator taskDecorator, ExecutorProperties executorProperties,
+                                                    MeterRegistry meterRegistry) {
+        Timer queueWait = Timer.builder("executor_queue_wait")
+                .description("time between submitting a task and the start of its execution")
+                .tag("executor", name)
+                .register(meterRegistry);
+        Counter rejectedTasks = Counter.builder("executor_rejected_tasks")
+                .description("number of tasks that were rejected because the executor was full")
+                .tag("executor", name)
+                .register(meterRegistry);
+        TaskDecorator recordQueueWait = task -> {
+            long submittedAt = System.nanoTime();
+            Runnable decorated = taskDecorator == null ? task : taskDecorator.decorate(task);
+            return () -> {
+                queueWait.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                decorated.run();
+            };
+        };
+
+        if (executorProperties.getMode() == ExecutorProperties.Mode.THREAD_PER_TASK) {
+            return new BoundedThreadPerTaskExecutor(name, maxConcurrency, queueCapacity, recordQueueWait, rejectedTasks);
+        }
+
         /*
          * Note: we set core- and max pool to the same value. The default behaviour of {@link ThreadPoolTaskExecutor} is
          * to first fill up the entire queue and only when the queue is full to scale up the corePool thread count to
          * at most the maxPool thread count.  We want the following behaviour: first start up a thread and only if all
-         * threads are busy put a task in the queue.  To achieve this we set corePoolSize and maxPoolSize to be equal
-         * to the method argument poolSize and we set setAllowCoreThreadTimeOut to true so the system scales
-         * down threads that aren't in use at any one time.
+         * threads are busy put a task in the queue.  To achieve this we set corePoolSize and maxPoolSize to be equal.
          */
-        return builder
-                .corePoolSize(3)
-                .maxPoolSize(3)
-                .queueCapacity(10_000)
-                .threadNamePrefix(INTERNAL_FLYWHEEL_PER_USER_EXECUTOR + "-")
+        ThreadPoolTaskExecutor executor = builder
+                .corePoolSize(maxConcurrency)
+                .maxPoolSize(maxConcurrency)
+                .queueCapacity(queueCapacity)
+                .threadNamePrefix(name + "-")
+                .taskDecorator(recordQueueWait)
                 .build();
+        executor.setRejectedExecutionHandler((task, threadPoolExecutor) -> {
+            rejectedTasks.increment();
+            throw new RejectedExecutionException("Executor " + name + " is full");
+        });
+        return executor;
     }
 
     @Bean
@@ -0,0 +1,114 @@
+package nl.ing.lovebird.sitemanagement.configuration;
+
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs every task on a new thread.  The threads are virtual threads if the JVM supports them, otherwise platform threads.
+ * <p>
+ * Nearly all our asynchronous work is waiting on http calls and databases.  Instead of sizing a thread pool we limit
+ * the number of tasks that run at the same time with a semaphore ({@code maxConcurrency}).  Tasks that are submitted
+ * while that limit is reached wait for a permit, up to {@code queueCapacity} tasks.  Beyond that, tasks are rejected,
+ * exactly like a full queue of a thread pool.
+ */
+@Slf4j
+class BoundedThreadPerTaskExecutor implements AsyncTaskExecutor {
+
+    private final String name;
+    private final ThreadFactory threadFactory;
+    private final TaskDecorator taskDecorator;
+    private final Counter rejectedTasks;
+    private final Semaphore running;
+    private final Semaphore admitted;
+
+    BoundedThreadPerTaskExecutor(String name, int maxConcurrency, int queueCapacity, TaskDecorator taskDecorator, Counter rejectedTasks) {
+        this.name = name;
+        this.threadFactory = createThreadFactory(name + "-");
+        this.taskDecorator = taskDecorator;
+        this.rejectedTasks = rejectedTasks;
+        this.running = new Semaphore(maxConcurrency, true);
+        this.admitted = new Semaphore(maxConcurrency + queueCapacity);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!admitted.tryAcquire()) {
+            rejectedTasks.increment();
+            throw new TaskRejectedException("Executor " + name + " did not accept task: all running and waiting slots are taken");
+        }
+        Runnable decorated = taskDecorator.decorate(task);
+        try {
+            threadFactory.newThread(() -> {
+                try {
+                    running.acquire();
+                    try {
+                        decorated.run();
+                    } finally {
+                        running.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("Executor {} was interrupted while waiting to run a task, the task is cancelled", name);
+                    // Otherwise the caller of submit() would wait forever for a future that is never run.
+                    if (task instanceof Future<?> future) {
+                        future.cancel(false);
+                    }
+                } finally {
+                    admitted.release();
+                }
+            }).start();
+        } catch (RuntimeException | OutOfMemoryError e) {
+            admitted.release();
+            rejectedTasks.increment();
+            throw new TaskRejectedException("Executor " + name + " could not start a thread", e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void execute(Runnable task, long startTimeout) {
+        execute(task);
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        FutureTask<Object> future = new FutureTask<>(task, null);
+        execute(future);
+        return future;
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        execute(future);
+        return future;
+    }
+
+    /**
+     * Virtual threads are only available as of Java 21, while we compile against Java 17.  We therefore look them up
+     * reflectively, so the same build uses them as soon as it runs on a newer JVM.
+     */
+    private static ThreadFactory createThreadFactory(String threadNamePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            log.info("Virtual threads are not supported by this JVM, using platform threads for {}", threadNamePrefix);
+            var threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+            threadFactory.setDaemon(true);
+            return threadFactory;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package nl.ing.lovebird.sitemanagement.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@Data
+@ConfigurationProperties(prefix = "lovebird.executors")
+public class ExecutorProperties {
+    /**
+     * How the executors in {@link ApplicationConfiguration} run their tasks.
+     */
+    private Mode mode = Mode.POOL;
+    /**
+     * Limits of {@link ApplicationConfiguration#ASYNC_EXECUTOR}.
+     */
+    private Limits async = new Limits(10, 100);
+    /**
+     * Limits of {@link ApplicationConfiguration#BATCH_JOB_EXECUTOR}.
+     */
+    private Limits batch = new Limits(3, 0);
+
+    public enum Mode {
+        /**
+         * A fixed number of platform threads with a bounded queue.
+         */
+        POOL,
+        /**
+         * A new thread for every task, virtual if the JVM supports virtual threads.  The number of tasks that run at the
+         * same time is limited by a semaphore instead of by the number of threads.
+         */
+        THREAD_PER_TASK
+    }
+
+    @Data
+    public static class Limits {
+        /**
+         * Maximum number of tasks that run at the same time.
+         */
+        private int maxConcurrency;
+        /**
+         * Maximum number of tasks that wait for one of the running tasks to finish.  Tasks are rejected once this
+         * number is reached.
+         */
+        private int queueCapacity;
+
+        public Limits() {
+        }
+
+        public Limits(int maxConcurrency, int queueCapacity) {
+            this.maxConcurrency = maxConcurrency;
+            this.queueCapacity = queueCapacity;
+        }
+    }
+}
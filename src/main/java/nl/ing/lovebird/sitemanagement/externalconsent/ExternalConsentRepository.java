@@ -6,6 +6,7 @@ import com.datastax.driver.core.querybuilder.Select;
 import nl.ing.lovebird.cassandra.CassandraRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -30,6 +31,12 @@ class ExternalConsentRepository extends CassandraRepository<ExternalConsent> {
         return selectOne(selectByUidQuery);
     }
 
+    List<ExternalConsent> findAllBy(UUID userId) {
+        Select.Where selectByUserIdQuery = createSelect()
+                .where(eq(ExternalConsent.USER_ID_COLUMN, userId));
+        return select(selectByUserIdQuery);
+    }
+
     void delete(UUID userId, UUID siteId, UUID userSiteId) {
 
         Delete deleteQuery = createDelete();
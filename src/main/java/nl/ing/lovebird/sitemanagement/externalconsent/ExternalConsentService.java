@@ -11,9 +11,13 @@ import javax.validation.constraints.NotNull;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
+
 
 @Service
 @Slf4j
@@ -43,6 +47,16 @@ public class ExternalConsentService {
                 .map(ExternalConsent::getExpiryTimestamp);
     }
 
+    /**
+     * All consents of the user, by site-id and user-site id.  The consents of a user are in one partition, so this is a
+     * single read however many user-sites the user has.  Use this instead of {@link #findConsentExpiryBy} when looking at
+     * all user-sites of a user.
+     */
+    public Map<ConsentKey, ExternalConsent> findAllByUserId(@NotNull UUID userId) {
+        return consentRepository.findAllBy(userId).stream()
+                .collect(toMap(consent -> new ConsentKey(consent.getSiteId(), consent.getUserSiteId()), identity()));
+    }
+
     public void createOrUpdateConsent(@NotNull UUID userId, @NotNull Site site, @NotNull UUID userSiteId, @Nullable String externalConsentId) {
 
         Integer expiryInDays = site.getConsentExpiryInDays();
@@ -81,4 +95,9 @@ public class ExternalConsentService {
                 .orElse(null);
     }
 
+    /**
+     * The key of a consent within the consents of a user, the same as {@link #findById} looks up.
+     */
+    public record ConsentKey(@NotNull UUID siteId, @NotNull UUID userSiteId) {
+    }
 }
@@ -0,0 +1,27 @@
+package nl.ing.lovebird.sitemanagement.flywheel;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Component
+@Data
+@ConfigurationProperties(prefix = "lovebird.flywheel.internal.access-means-renewal")
+class AccessMeansRenewalProperties {
+    /**
+     * Whether access means are renewed in the background ahead of the flywheel.
+     */
+    private boolean enabled = false;
+    /**
+     * How far ahead of the flywheel we renew access means.  Every minute, the access means of the users that the
+     * flywheel refreshes this much later are renewed.
+     */
+    private Duration lookahead = Duration.ofMinutes(5);
+    /**
+     * Access means that expire within this period after the flywheel slot of the user are renewed as well, so they
+     * are still valid when the refresh (and the data fetch at the bank) happens.
+     */
+    private Duration validityMargin = Duration.ofMinutes(5);
+}
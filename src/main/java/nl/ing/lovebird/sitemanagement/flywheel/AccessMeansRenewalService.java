@@ -0,0 +1,147 @@
+package nl.ing.lovebird.sitemanagement.flywheel;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.ing.lovebird.clienttokens.ClientUserToken;
+import nl.ing.lovebird.clienttokens.requester.service.ClientTokenRequesterService;
+import nl.ing.lovebird.sitemanagement.accessmeans.AccessMeansManager;
+import nl.ing.lovebird.sitemanagement.configuration.ApplicationConfiguration;
+import nl.ing.lovebird.sitemanagement.legacy.aismigration.MigrationConstants;
+import nl.ing.lovebird.sitemanagement.legacy.logging.LogBaggage;
+import nl.ing.lovebird.sitemanagement.users.StatusType;
+import nl.ing.lovebird.sitemanagement.users.User;
+import nl.ing.lovebird.sitemanagement.users.UserService;
+import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSite;
+import nl.ing.lovebird.sitemanagement.usersite.UserSiteNeededAction;
+import nl.ing.lovebird.sitemanagement.usersite.UserSiteService;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static nl.ing.lovebird.sitemanagement.usersite.UserSiteDerivedAttributes.isScrapingSite;
+
+/**
+ * Renews access means that are about to expire before the flywheel refreshes the user-site.
+ * <p>
+ * A refresh with expired (or nearly expired) access means first has to renew them at the provider, which costs an
+ * extra blocking round-trip on the refresh path.  This service runs every minute for the users the flywheel will
+ * refresh {@link AccessMeansRenewalProperties#getLookahead()} later, and renews their access means if those would have
+ * expired by then.  The renewals count towards the same per provider limits as the flywheel refreshes.
+ * <p>
+ * Refresh tokens can only be used once, so a user-site is only renewed while we hold its lock.  User-sites that are
+ * locked by a refresh are skipped, that refresh renews the access means itself if needed.
+ * <p>
+ * Nothing is marked as failed here: if a renewal fails, the refresh path tries again and handles the failure.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+class AccessMeansRenewalService {
+
+    private final Clock clock;
+    private final AccessMeansRenewalProperties properties;
+    private final InternalFlywheelProperties flywheelProperties;
+    private final FlywheelPlanner flywheelPlanner;
+    private final UserService userService;
+    private final UserSiteService userSiteService;
+    private final AccessMeansManager accessMeansManager;
+    private final ClientTokenRequesterService clientTokenRequesterService;
+    private final FlywheelProviderLimiter providerLimiter;
+    private final MeterRegistry meterRegistry;
+
+    boolean isEnabled() {
+        return properties.isEnabled() && flywheelProperties.isEnabled();
+    }
+
+    /**
+     * Renew the access means of the users that the flywheel refreshes {@link AccessMeansRenewalProperties#getLookahead()}
+     * after {@code nowUtc}.
+     */
+    @Async(ApplicationConfiguration.ACCESS_MEANS_RENEWAL_EXECUTOR)
+    void renewAheadOfFlywheelAsync(final LocalTime nowUtc) {
+        try {
+            LocalTime slot = nowUtc.plus(properties.getLookahead());
+            Instant renewBefore = Instant.now(clock).plus(properties.getLookahead()).plus(properties.getValidityMargin());
+            AtomicInteger users = new AtomicInteger();
+            try (Stream<UUID> userIds = flywheelPlanner.usersToRefresh(slot)) {
+                Iterator<UUID> iterator = userIds.iterator();
+                while (iterator.hasNext() && !Thread.currentThread().isInterrupted()) {
+                    users.incrementAndGet();
+                    renewForUser(iterator.next(), renewBefore);
+                }
+            }
+            log.info("Checked the access means of {} users that are refreshed at {} within internal flywheel", users.get(), slot);
+        } catch (RuntimeException e) {
+            log.error("Error while renewing access means ahead of internal flywheel: {}", e.getMessage(), e);
+        }
+    }
+
+    void renewForUser(UUID userId, Instant renewBefore) {
+        try (LogBaggage ignored = LogBaggage.builder().userId(userId).build()) {
+            Set<UUID> expiringUserSiteIds = accessMeansManager.findUserSitesWithAccessMeansExpiringBefore(userId, renewBefore);
+            if (expiringUserSiteIds.isEmpty()) {
+                return;
+            }
+            Optional<User> user = userService.getUser(userId);
+            if (user.isEmpty() || StatusType.BLOCKED.equals(user.get().getStatus())) {
+                return;
+            }
+
+            List<PostgresUserSite> userSites = userSiteService.getNonDeletedUserSites(userId).stream()
+                    .filter(userSite -> expiringUserSiteIds.contains(userSite.getUserSiteId()))
+                    .filter(this::shouldRenew)
+                    .toList();
+            if (userSites.isEmpty()) {
+                return;
+            }
+
+            ClientUserToken clientUserToken = clientTokenRequesterService.getClientUserToken(userSites.get(0).getClientId().unwrap(), userId);
+            for (PostgresUserSite userSite : userSites) {
+                renew(clientUserToken, userSite, renewBefore);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to renew access means ahead of internal flywheel for user {}", userId, e);
+        }
+    }
+
+    private void renew(ClientUserToken clientUserToken, PostgresUserSite userSite, Instant renewBefore) {
+        String provider = userSite.getProvider();
+        if (!userSiteService.attemptLock(userSite, UUID.randomUUID())) {
+            meterRegistry.counter("flywheel_access_means_renewals", "provider", provider, "result", "LOCKED").increment();
+            return;
+        }
+        try {
+            if (!providerLimiter.tryAcquire(provider, 1)) {
+                meterRegistry.counter("flywheel_access_means_renewals", "provider", provider, "result", "THROTTLED").increment();
+                return;
+            }
+            try (LogBaggage ignored = new LogBaggage(userSite)) {
+                var result = accessMeansManager.renewAccessMeansExpiringBefore(clientUserToken, userSite, renewBefore);
+                meterRegistry.counter("flywheel_access_means_renewals", "provider", provider, "result", result.getResultCode().name()).increment();
+            } finally {
+                providerLimiter.release(provider);
+            }
+        } finally {
+            userSiteService.unlock(userSite);
+        }
+    }
+
+    private boolean shouldRenew(PostgresUserSite userSite) {
+        UserSiteNeededAction neededAction = userSite.determineUserSiteNeededAction();
+        return !isScrapingSite(userSite.getProvider())
+                && !flywheelProperties.getBlacklistedProviders().contains(userSite.getProvider())
+                && (neededAction == null || neededAction == UserSiteNeededAction.TRIGGER_REFRESH)
+                && !MigrationConstants.IN_MIGRATION_STATUSES.contains(userSite.getMigrationStatus());
+    }
+}
@@ -0,0 +1,48 @@
+package nl.ing.lovebird.sitemanagement.flywheel;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Component
+@Data
+@ConfigurationProperties(prefix = "lovebird.flywheel.internal.dispatch")
+public class FlywheelDispatchProperties {
+    /**
+     * Number of threads that refresh users in parallel.
+     */
+    private int workers = 3;
+    /**
+     * Number of users that may wait for a free worker.  When the queue is full the flywheel stops reading new users
+     * until a worker becomes available.
+     */
+    private int queueCapacity = 100;
+    /**
+     * Default maximum number of refreshes that may be in-flight towards a single provider.
+     */
+    private int maxConcurrentRequestsPerProvider = 5;
+    /**
+     * Default maximum number of user-site refreshes that may be started per second towards a single provider.
+     * A value of 0 or below disables rate limiting.
+     */
+    private double requestsPerSecondPerProvider = 5.0;
+    /**
+     * Per provider overrides of {@link #maxConcurrentRequestsPerProvider}.
+     */
+    private Map<String, Integer> maxConcurrentRequests = new HashMap<>();
+    /**
+     * Per provider overrides of {@link #requestsPerSecondPerProvider}.
+     */
+    private Map<String, Double> requestsPerSecond = new HashMap<>();
+
+    int maxConcurrentRequestsFor(String provider) {
+        return maxConcurrentRequests.getOrDefault(provider, maxConcurrentRequestsPerProvider);
+    }
+
+    double requestsPerSecondFor(String provider) {
+        return requestsPerSecond.getOrDefault(provider, requestsPerSecondPerProvider);
+    }
+}
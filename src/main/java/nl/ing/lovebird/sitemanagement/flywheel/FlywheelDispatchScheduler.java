@@ -0,0 +1,33 @@
+package nl.ing.lovebird.sitemanagement.flywheel;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the dispatches of the flywheel on a single dedicated thread, each at the offset of its user within the spread
+ * window (see {@link FlywheelPlanner}).
+ * <p>
+ * The flywheel run gives its batch executor thread back straight away.  A minute of users is not queued here up front:
+ * the run reads the next user only after the previous one is dispatched and keeps a single task scheduled at a time,
+ * see {@link InternalFlywheelService}.
+ */
+@Component
+class FlywheelDispatchScheduler {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("flywheel-dispatch-"));
+
+    void schedule(Runnable dispatch, Duration delay) {
+        scheduler.schedule(dispatch, Math.max(0, delay.toMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
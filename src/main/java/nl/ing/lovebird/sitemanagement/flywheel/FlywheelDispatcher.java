@@ -0,0 +1,98 @@
+package nl.ing.lovebird.sitemanagement.flywheel;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import nl.ing.lovebird.sitemanagement.configuration.ApplicationConfiguration;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands users to the flywheel workers.
+ * <p>
+ * At most {@link FlywheelDispatchProperties#getWorkers()} + {@link FlywheelDispatchProperties#getQueueCapacity()}
+ * users are handed over at a time.  This replaces a queue that was large enough to hold a full minute of users.  The
+ * flywheel run uses {@link #tryDispatch(UUID, boolean, boolean)} and stops reading users while the dispatcher is full.
+ */
+@Slf4j
+@Component
+class FlywheelDispatcher {
+
+    private final TaskExecutor executor;
+    private final InternalFlywheelRefreshService internalFlywheelRefreshService;
+    private final Semaphore capacity;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+
+    FlywheelDispatcher(@Qualifier(ApplicationConfiguration.INTERNAL_FLYWHEEL_PER_USER_EXECUTOR) TaskExecutor executor,
+                       InternalFlywheelRefreshService internalFlywheelRefreshService,
+                       FlywheelDispatchProperties properties,
+                       MeterRegistry meterRegistry) {
+        this.executor = executor;
+        this.internalFlywheelRefreshService = internalFlywheelRefreshService;
+        this.capacity = new Semaphore(properties.getWorkers() + properties.getQueueCapacity());
+
+        Gauge.builder("flywheel_dispatch_queue_depth", queued, AtomicInteger::get)
+                .description("number of users waiting for a flywheel worker")
+                .register(meterRegistry);
+        Gauge.builder("flywheel_dispatch_running", running, AtomicInteger::get)
+                .description("number of users being refreshed by a flywheel worker")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return false if the user could not be handed over, either because the thread got interrupted while waiting
+     * or because the executor rejected the task
+     */
+    boolean dispatch(UUID userId, boolean oneOffAisUser, boolean forceRefresh) {
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while waiting for a flywheel worker, user {} is not refreshed.", userId);
+            return false;
+        }
+        return handOver(userId, oneOffAisUser, forceRefresh);
+    }
+
+    /**
+     * Like {@link #dispatch(UUID, boolean, boolean)}, but returns false straight away if all workers are busy and the
+     * queue is full, so the caller can hold on to the user and decide itself when to try again.
+     */
+    boolean tryDispatch(UUID userId, boolean oneOffAisUser, boolean forceRefresh) {
+        if (!capacity.tryAcquire()) {
+            return false;
+        }
+        return handOver(userId, oneOffAisUser, forceRefresh);
+    }
+
+    private boolean handOver(UUID userId, boolean oneOffAisUser, boolean forceRefresh) {
+        queued.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                queued.decrementAndGet();
+                running.incrementAndGet();
+                try {
+                    internalFlywheelRefreshService.refreshForUser(userId, oneOffAisUser, forceRefresh);
+                } catch (RuntimeException e) {
+                    log.error("Failed to refresh user-sites for user {}", userId, e);
+                } finally {
+                    running.decrementAndGet();
+                    capacity.release();
+                }
+            });
+            return true;
+        } catch (TaskRejectedException e) {
+            queued.decrementAndGet();
+            capacity.release();
+            log.error("Flywheel executor rejected user {}, the executor queue is smaller than the dispatch queue.", userId, e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package nl.ing.lovebird.sitemanagement.flywheel;
+
+import com.google.common.collect.Iterators;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.ing.lovebird.sitemanagement.lib.types.ClientId;
+import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteRepository;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toSet;
+import static nl.ing.lovebird.sitemanagement.flywheel.FlywheelUserUUIDRangeSelector.toBigInt;
+
+/**
+ * Determines which users the flywheel should refresh in a given minute.
+ * <p>
+ * Clients are grouped in tiers by their number of refreshes per day (see {@link UserRefreshProperties}).  All clients in a
+ * tier share the same {@link FlywheelUserUUIDRangeSelector.UUIDRange} for a given minute, so the users of a whole tier are
+ * fetched with one (paginated) query instead of one query per client.
+ * <p>
+ * The set of clients with at least one user-site requires a scan over the whole user_site table.  It rarely changes, so it
+ * is reused for {@link UserRefreshProperties#getClientIdsCacheDuration()}.  A client that onboards its first user is
+ * therefore picked up by the flywheel with a small delay.
+ * <p>
+ * With a {@link UserRefreshProperties#getSpreadWindow()} every user is given an offset within the minute, based on its
+ * position in the {@link FlywheelUserUUIDRangeSelector.UUIDRange} of its tier.  User-ids are uniformly distributed, so
+ * the users of a minute are spread evenly over the window.  The offset of a user is the same every day, so the
+ * per-day refresh guarantees of the range selector are not affected.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+class FlywheelPlanner {
+
+    /**
+     * The number of user-ids that are fetched from the database at once.  Users beyond this number are fetched in subsequent pages.
+     */
+    static final int USER_IDS_PAGE_SIZE = 1000;
+    private static final Duration MAX_SPREAD_WINDOW = Duration.ofMinutes(1);
+
+    private final Clock clock;
+    private final PostgresUserSiteRepository postgresUserSiteRepository;
+    private final UserRefreshProperties userRefreshProperties;
+    private final FlywheelUserUUIDRangeSelector flywheelUserUUIDRangeSelector;
+
+    private volatile CachedClientIds cachedClientIds;
+
+    /**
+     * Lazily stream the users to refresh in the given minute, tier by tier.  A user belongs to exactly one client, and
+     * therefore to exactly one tier, so the concatenated streams do not contain duplicates.
+     */
+    Stream<UUID> usersToRefresh(LocalTime nowUtc) {
+        return getClientIdsByRefreshesPerDay().entrySet().stream()
+                .flatMap(tier -> {
+                    AtomicInteger usersInTier = new AtomicInteger();
+                    return usersToRefreshForTier(tier.getKey(), tier.getValue(), nowUtc)
+                            .peek(userId -> usersInTier.incrementAndGet())
+                            .onClose(() -> log.info("Got {} users to be refreshed at {} within internal flywheel for {} clients with {} refreshes per day", usersInTier.get(), nowUtc, tier.getValue().size(), tier.getKey())); //NOSHERIFF
+                });
+    }
+
+    /**
+     * Lazily stream the users to refresh in the given minute together with the offset from the start of the minute at
+     * which they should be dispatched, ordered by that offset.
+     */
+    Stream<ScheduledUser> scheduleUsersToRefresh(LocalTime nowUtc) {
+        Duration window = spreadWindow();
+        if (window.isZero()) {
+            return usersToRefresh(nowUtc).map(userId -> new ScheduledUser(userId, Duration.ZERO));
+        }
+
+        List<Stream<ScheduledUser>> tiers = getClientIdsByRefreshesPerDay().entrySet().stream()
+                .map(tier -> {
+                    FlywheelUserUUIDRangeSelector.UUIDRange uuidRange = flywheelUserUUIDRangeSelector.getUUIRange(tier.getKey(), nowUtc);
+                    return UserIdRangeIterator.stream(postgresUserSiteRepository, tier.getValue(), uuidRange, USER_IDS_PAGE_SIZE)
+                            .map(userId -> new ScheduledUser(userId, offsetWithinWindow(uuidRange, userId, window)));
+                })
+                .toList();
+
+        // The user-ids of a tier are ordered, and so are their offsets.  Merging the tiers keeps that order over all tiers.
+        Iterator<ScheduledUser> merged = Iterators.mergeSorted(tiers.stream().map(Stream::iterator).toList(), Comparator.comparing(ScheduledUser::offset));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> tiers.forEach(Stream::close));
+    }
+
+    static Duration offsetWithinWindow(FlywheelUserUUIDRangeSelector.UUIDRange uuidRange, UUID userId, Duration window) {
+        BigInteger left = toBigInt(uuidRange.left());
+        BigInteger width = toBigInt(uuidRange.right()).subtract(left);
+        long windowMillis = window.toMillis();
+        long offsetMillis = toBigInt(userId).subtract(left)
+                .multiply(BigInteger.valueOf(windowMillis))
+                .divide(width)
+                .longValue();
+        return Duration.ofMillis(Math.max(0, Math.min(offsetMillis, windowMillis - 1)));
+    }
+
+    private Duration spreadWindow() {
+        Duration window = userRefreshProperties.getSpreadWindow();
+        if (window == null || window.isNegative()) {
+            return Duration.ZERO;
+        }
+        return window.compareTo(MAX_SPREAD_WINDOW) > 0 ? MAX_SPREAD_WINDOW : window;
+    }
+
+    Stream<UUID> usersToRefreshForTier(int refreshesPerDay, Set<ClientId> clientIds, LocalTime nowUtc) {
+        FlywheelUserUUIDRangeSelector.UUIDRange uuidRange = flywheelUserUUIDRangeSelector.getUUIRange(refreshesPerDay, nowUtc);
+
+        return UserIdRangeIterator.stream(postgresUserSiteRepository, clientIds, uuidRange, USER_IDS_PAGE_SIZE);
+    }
+
+    /**
+     * Group all clients with at least one user-site by their number of refreshes per day.  Clients that should not be
+     * refreshed (0 refreshes per day) are omitted.
+     */
+    Map<Integer, Set<ClientId>> getClientIdsByRefreshesPerDay() {
+        return getClientIdsWithUserSite().stream()
+                .filter(clientId -> refreshesPerDay(clientId) > 0)
+                .collect(groupingBy(this::refreshesPerDay, toSet()));
+    }
+
+    private int refreshesPerDay(ClientId clientId) {
+        return userRefreshProperties.getRefreshesPerDay()
+                .getOrDefault(clientId.unwrap(), userRefreshProperties.getDefaultRefreshesPerDay());
+    }
+
+    private Set<ClientId> getClientIdsWithUserSite() {
+        Instant now = Instant.now(clock);
+        CachedClientIds cached = cachedClientIds;
+        if (cached == null || !now.isBefore(cached.loadedAt().plus(userRefreshProperties.getClientIdsCacheDuration()))) {
+            cached = new CachedClientIds(postgresUserSiteRepository.getClientIdsWithUserSite(), now);
+            cachedClientIds = cached;
+        }
+        return cached.clientIds();
+    }
+
+    record ScheduledUser(UUID userId, Duration offset) {
+    }
+
+    private record CachedClientIds(Set<ClientId> clientIds, Instant loadedAt) {
+    }
+}
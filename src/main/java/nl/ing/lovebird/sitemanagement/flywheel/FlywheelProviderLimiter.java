@@ -0,0 +1,85 @@
+package nl.ing.lovebird.sitemanagement.flywheel;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of flywheel refreshes that are in-flight towards a provider and the rate at which they are started.
+ * <p>
+ * Providers (and the banks behind them) have their own limits.  Without this a single slow provider would occupy all
+ * flywheel workers, or a provider would receive a minute worth of refreshes in a burst.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+class FlywheelProviderLimiter {
+
+    private final Clock clock;
+    private final FlywheelDispatchProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, ProviderLimit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * Acquires a slot for the provider and {@code userSites} tokens from its rate limit if the provider has capacity
+     * right now.  This never waits: a waiting flywheel worker would hold up the users of other providers.  Every
+     * successful call has to be followed by a call to {@link #release(String)}.
+     *
+     * @return false if the provider has no capacity left
+     */
+    boolean tryAcquire(String provider, int userSites) {
+        ProviderLimit limit = limits.computeIfAbsent(provider, this::createLimit);
+        if (!limit.inFlight.tryAcquire()) {
+            throttled(provider, "concurrency");
+            return false;
+        }
+        if (limit.rate.isPresent() && !limit.rate.get().tryAcquire(userSites)) {
+            limit.inFlight.release();
+            throttled(provider, "rate");
+            return false;
+        }
+        return true;
+    }
+
+    void release(String provider) {
+        ProviderLimit limit = limits.get(provider);
+        if (limit != null) {
+            limit.inFlight.release();
+        }
+    }
+
+    private void throttled(String provider, String reason) {
+        log.info("Provider {} has no flywheel capacity left ({}).", provider, reason);
+        meterRegistry.counter("flywheel_provider_throttled", "provider", provider, "reason", reason).increment();
+    }
+
+    private ProviderLimit createLimit(String provider) {
+        int maxConcurrentRequests = properties.maxConcurrentRequestsFor(provider);
+        double requestsPerSecond = properties.requestsPerSecondFor(provider);
+        ProviderLimit limit = new ProviderLimit(
+                maxConcurrentRequests,
+                new Semaphore(maxConcurrentRequests, true),
+                requestsPerSecond > 0 ? Optional.of(new TokenBucket(clock, requestsPerSecond)) : Optional.empty()
+        );
+        Gauge.builder("flywheel_provider_in_flight_requests", limit, ProviderLimit::inFlightRequests)
+                .description("number of flywheel refreshes in-flight towards a provider")
+                .tag("provider", provider)
+                .register(meterRegistry);
+        return limit;
+    }
+
+    private record ProviderLimit(int maxConcurrentRequests, Semaphore inFlight, Optional<TokenBucket> rate) {
+        double inFlightRequests() {
+            return maxConcurrentRequests - inFlight.availablePermits();
+        }
+    }
+}
@@ -53,7 +53,7 @@ import static java.util.stream.Collectors.toMap;
 @Service
 public class FlywheelUserUUIDRangeSelector {
 
-    private static final BigInteger MAX_UUID = BigInteger.TWO.pow(128).subtract(BigInteger.ONE);
+    static final BigInteger MAX_UUID = BigInteger.TWO.pow(128).subtract(BigInteger.ONE);
     private static final int MINUTES_IN_DAY = 24 * 60;
 
     private final Map<Integer, Map<Integer, UUIDRange>> uuidRangeByMinuteByRefreshesADay;
@@ -115,6 +115,13 @@ public class FlywheelUserUUIDRangeSelector {
         return UUID.fromString(withDashes);
     }
 
+    /**
+     * Inverse of {@link #fromBigInt(BigInteger)}: interprets the UUID as an unsigned 128 bit number, as postgres does.
+     */
+    public static BigInteger toBigInt(UUID uuid) {
+        return new BigInteger(uuid.toString().replace("-", ""), 16);
+    }
+
     static record UUIDRange(UUID left, UUID right) {
     }
 }
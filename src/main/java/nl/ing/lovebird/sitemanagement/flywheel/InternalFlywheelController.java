@@ -4,6 +4,7 @@ import io.swagger.v3.oas.annotations.Operation;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import nl.ing.lovebird.sitemanagement.lib.documentation.Internal;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -23,13 +24,26 @@ public class InternalFlywheelController {
 
     private final Clock clock;
     private final InternalFlywheelService internalFlywheelService;
+    private final AccessMeansRenewalService accessMeansRenewalService;
 
     @Internal(batchTrigger)
     @Operation(description = "Internal flywheel to refresh user sites (not accessible from security proxy)")
     @PostMapping("/flywheel/internal")
     public ResponseEntity<Void> refreshAllUserSites() {
         log.debug("Controller started internal flywheel");
-        internalFlywheelService.refreshUserSitesAsync(LocalTime.now(clock));
+        LocalTime now = LocalTime.now(clock);
+        try {
+            internalFlywheelService.refreshUserSitesAsync(now);
+        } catch (TaskRejectedException e) {
+            log.warn("Not running internal flywheel for {}, the batch executor is full.", now);
+        }
+        if (accessMeansRenewalService.isEnabled()) {
+            try {
+                accessMeansRenewalService.renewAheadOfFlywheelAsync(now);
+            } catch (TaskRejectedException e) {
+                log.warn("Not renewing access means ahead of internal flywheel, the previous renewal is still running.");
+            }
+        }
         return ResponseEntity.accepted().build();
     }
 
@@ -4,22 +4,23 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import nl.ing.lovebird.clienttokens.ClientUserToken;
 import nl.ing.lovebird.clienttokens.requester.service.ClientTokenRequesterService;
-import nl.ing.lovebird.sitemanagement.configuration.ApplicationConfiguration;
 import nl.ing.lovebird.sitemanagement.legacy.aismigration.MigrationConstants;
 import nl.ing.lovebird.sitemanagement.lib.types.ClientId;
 import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSite;
 import nl.ing.lovebird.sitemanagement.usersite.UserSiteNeededAction;
 import nl.ing.lovebird.sitemanagement.usersite.UserSiteRefreshService;
 import nl.ing.lovebird.sitemanagement.usersite.UserSiteService;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
 import java.time.Clock;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
 import static nl.ing.lovebird.sitemanagement.usersite.UserSiteActionType.FLYWHEEL_REFRESH;
 
 @Slf4j
@@ -32,7 +33,16 @@ class InternalFlywheelRefreshService {
     private final ClientTokenRequesterService clientTokenRequesterService;
     private final UserSiteRefreshService userSiteRefreshService;
 
-    @Async(ApplicationConfiguration.INTERNAL_FLYWHEEL_PER_USER_EXECUTOR)
+    private final FlywheelProviderLimiter providerLimiter;
+
+    /**
+     * Refreshes the user-sites of a user that are due.  This blocks until the refreshes have been triggered, and is
+     * executed on a flywheel worker by the {@link FlywheelDispatcher}.
+     * <p>
+     * User-sites of a provider that is at its flywheel limit are skipped, they are picked up in a next cycle.  The
+     * slot of a provider is released as soon as its own user-sites are handled, not when those of the slowest provider
+     * of the user are.
+     */
     public void refreshForUser(UUID userId, boolean oneOffAisUser, boolean forceRefresh) {
 
         List<PostgresUserSite> userSites = userSiteService.getNonDeletedUserSites(userId).stream()
@@ -42,17 +52,53 @@ class InternalFlywheelRefreshService {
         if (userSites.isEmpty()) {
             return;
         }
-        ClientId clientId = userSites.get(0).getClientId();
-        final ClientUserToken clientUserToken = clientTokenRequesterService.getClientUserToken(clientId.unwrap(), userId);
-
-        userSiteRefreshService.refreshUserSitesBlocking(
-                userSites,
-                oneOffAisUser,
-                clientUserToken,
-                FLYWHEEL_REFRESH,
-                null,
-                null
-        );
+
+        // The provider of the user-site is also the key of the AccessMeansRenewalService, so both share the same limits.
+        Map<String, List<PostgresUserSite>> userSitesByProvider = userSites.stream()
+                .collect(groupingBy(PostgresUserSite::getProvider, TreeMap::new, toList()));
+        // The number of user-sites per acquired provider that still have to be handled.
+        Map<String, AtomicInteger> pendingUserSitesByProvider = new ConcurrentHashMap<>();
+        try {
+            List<PostgresUserSite> permittedUserSites = new ArrayList<>();
+            userSitesByProvider.forEach((provider, providerUserSites) -> {
+                if (providerLimiter.tryAcquire(provider, providerUserSites.size())) {
+                    pendingUserSitesByProvider.put(provider, new AtomicInteger(providerUserSites.size()));
+                    permittedUserSites.addAll(providerUserSites);
+                } else {
+                    log.info("Skipping {} user-site(s) with provider {} because the provider is at its flywheel limit.", providerUserSites.size(), provider);
+                }
+            });
+
+            if (permittedUserSites.isEmpty()) {
+                return;
+            }
+            ClientId clientId = permittedUserSites.get(0).getClientId();
+            final ClientUserToken clientUserToken = clientTokenRequesterService.getClientUserToken(clientId.unwrap(), userId);
+
+            userSiteRefreshService.refreshUserSitesBlocking(
+                    permittedUserSites,
+                    oneOffAisUser,
+                    clientUserToken,
+                    FLYWHEEL_REFRESH,
+                    null,
+                    null,
+                    userSite -> {
+                        AtomicInteger pending = pendingUserSitesByProvider.get(userSite.getProvider());
+                        if (pending != null && pending.decrementAndGet() == 0) {
+                            release(pendingUserSitesByProvider, userSite.getProvider());
+                        }
+                    }
+            );
+        } finally {
+            // The providers of user-sites that could not be locked, or that were skipped after a failure.
+            List.copyOf(pendingUserSitesByProvider.keySet()).forEach(provider -> release(pendingUserSitesByProvider, provider));
+        }
+    }
+
+    private void release(Map<String, AtomicInteger> pendingUserSitesByProvider, String provider) {
+        if (pendingUserSitesByProvider.remove(provider) != null) {
+            providerLimiter.release(provider);
+        }
     }
 
     private boolean shouldRefresh(final PostgresUserSite userSite, final boolean oneOffAisUser, final boolean forceRefresh) {
@@ -7,32 +7,38 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import nl.ing.lovebird.sitemanagement.configuration.ApplicationConfiguration;
 import nl.ing.lovebird.sitemanagement.legacy.logging.LogBaggage;
-import nl.ing.lovebird.sitemanagement.lib.types.ClientId;
 import nl.ing.lovebird.sitemanagement.site.SiteService;
 import nl.ing.lovebird.sitemanagement.users.StatusType;
 import nl.ing.lovebird.sitemanagement.users.User;
 import nl.ing.lovebird.sitemanagement.users.UserService;
-import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteRepository;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalTime;
-import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 class InternalFlywheelService {
+
+    private static final Duration MINUTE = Duration.ofMinutes(1);
+    private static final Duration SATURATED_RETRY_DELAY = Duration.ofMillis(100);
+
+    private final Clock clock;
     private final InternalFlywheelProperties properties;
     private final UserService userService;
-    private final PostgresUserSiteRepository postgresUserSiteRepository;
     private final brave.Tracer braveTracer;
     private final SiteService siteService;
-    private final InternalFlywheelRefreshService internalFlywheelRefreshService;
-    private final UserRefreshProperties userRefreshProperties;
-    private final FlywheelUserUUIDRangeSelector flywheelUserUUIDRangeSelector;
+    private final FlywheelDispatcher flywheelDispatcher;
+    private final FlywheelPlanner flywheelPlanner;
+    private final FlywheelDispatchScheduler dispatchScheduler;
 
     @Async(ApplicationConfiguration.BATCH_JOB_EXECUTOR)
     void refreshUserSitesAsync(final LocalTime nowUtc) {
@@ -55,78 +61,125 @@ class InternalFlywheelService {
 
             final User user = userService.getUserOrThrow(userId);
 
-            internalFlywheelRefreshService.refreshForUser(userId, user.isOneOffAis(), true);
-
-            log.info("Finished internal flywheel for user {}", userId);
+            if (flywheelDispatcher.dispatch(userId, user.isOneOffAis(), true)) {
+                log.info("Dispatched internal flywheel for user {}", userId);
+            }
         } catch (RuntimeException e) {
             log.error("Error in internal flywheel for user {}: {}", userId, e.getMessage(), e);
         }
     }
 
 
+    /**
+     * Starts the dispatch of the users of the minute on the {@link FlywheelDispatchScheduler} and returns straight
+     * away, see {@link MinuteRun}.
+     */
     @VisibleForTesting
     void processRefreshesForCurrentMinute(final LocalTime nowUtc) {
-        Set<UUID> userIds = getUserIdsForCurrentMinute(nowUtc);
-
-        log.info("Got a total of {} users to be refreshed at {} within internal flywheel", userIds.size(), nowUtc);
-
-        userIds.forEach(userId -> {
-            Span newUserSpan = this.braveTracer.newTrace();
-            try (Tracer.SpanInScope ignored = this.braveTracer.withSpanInScope(newUserSpan.start());
-                 LogBaggage b = LogBaggage.builder().userId(userId).build()) {
-
-                final Optional<User> optionalUser = userService.getUser(userId);
-                if (optionalUser.isEmpty()) {
-                    log.info("Skipping flywheel for this user, couldn't find user anymore.");
-                    return;
-                }
-
-                final User user = optionalUser.get();
-
-                if (StatusType.BLOCKED.equals(user.getStatus())) {
-                    log.info("Skipping refresh because user is blocked.");
-                    return;
-                }
-
-                internalFlywheelRefreshService.refreshForUser(userId, user.isOneOffAis(), false);
+        Instant start = Instant.now(clock);
+        Stream<FlywheelPlanner.ScheduledUser> users = flywheelPlanner.scheduleUsersToRefresh(nowUtc);
+        try {
+            dispatchScheduler.schedule(new MinuteRun(nowUtc, start, users), Duration.ZERO);
+        } catch (RuntimeException e) {
+            users.close();
+            throw e;
+        }
+    }
 
-            } catch (Exception e) {
-                log.error("Failed to send user-sites for refresh for user {}", userId, e);
-            } finally {
-                newUserSpan.finish();
+    /**
+     * @return false if the dispatcher is full and the user should be tried again later, true if the user was handed
+     * over or does not need a refresh
+     */
+    private boolean refreshForUser(UUID userId) {
+        Span newUserSpan = this.braveTracer.newTrace();
+        try (Tracer.SpanInScope ignored = this.braveTracer.withSpanInScope(newUserSpan.start());
+             LogBaggage b = LogBaggage.builder().userId(userId).build()) {
+
+            final Optional<User> optionalUser = userService.getUser(userId);
+            if (optionalUser.isEmpty()) {
+                log.info("Skipping flywheel for this user, couldn't find user anymore.");
+                return true;
             }
-        });
-    }
 
-    private Set<UUID> getUserIdsForCurrentMinute(LocalTime nowUtc) {
+            final User user = optionalUser.get();
 
-        // We need to know all clientIds, because for some clients we need to refresh once a day, and sometimes 4 times a day. So the range of user uuids that we need to refresh
-        // are different per client.
-        Set<ClientId> clientIdsWithAtLeastOneUserSite = postgresUserSiteRepository.getClientIdsWithUserSite();
+            if (StatusType.BLOCKED.equals(user.getStatus())) {
+                log.info("Skipping refresh because user is blocked.");
+                return true;
+            }
 
-        Map<ClientId, List<UUID>> usersPerClient = clientIdsWithAtLeastOneUserSite.stream()
-                .collect(Collectors.toMap(Function.identity(), clientId -> usersToRefreshForClient(clientId, nowUtc)));
+            return flywheelDispatcher.tryDispatch(userId, user.isOneOffAis(), false);
 
-        usersPerClient.forEach((client, userIds) -> {
-            log.info("Got {} users to be refreshed at {} within internal flywheel for client {}", userIds.size(), nowUtc, client); //NOSHERIFF
-        });
-        return usersPerClient.entrySet().stream().flatMap(it -> it.getValue().stream()).collect(Collectors.toSet());
+        } catch (Exception e) {
+            log.error("Failed to send user-sites for refresh for user {}", userId, e);
+            return true;
+        } finally {
+            newUserSpan.finish();
+        }
     }
 
-
-    @VisibleForTesting
-    List<UUID> usersToRefreshForClient(ClientId clientId, LocalTime nowUtc) {
-        final int clientRefreshesPerDay = userRefreshProperties.getRefreshesPerDay()
-                .getOrDefault(clientId.unwrap(), userRefreshProperties.getDefaultRefreshesPerDay());
-
-        if (clientRefreshesPerDay == 0) {
-            return Collections.emptyList();
+    /**
+     * Dispatches the users of one flywheel minute, each at its offset within the spread window.
+     * <p>
+     * The run reads the next user from the planner only once the previous one is handed to the {@link FlywheelDispatcher}
+     * and then reschedules itself at the offset of that user.  It therefore holds at most one page of user-ids per tier
+     * (see {@link UserIdRangeIterator}) and one scheduled task, however many users the minute has.  While the dispatcher
+     * is full the run keeps its current user and tries again after {@link #SATURATED_RETRY_DELAY}.  If the dispatcher is
+     * still full when the next minute starts, the remaining users of this minute are skipped until their next turn.
+     */
+    private final class MinuteRun implements Runnable {
+
+        private final LocalTime nowUtc;
+        private final Instant start;
+        private final Stream<FlywheelPlanner.ScheduledUser> users;
+        private final Iterator<FlywheelPlanner.ScheduledUser> iterator;
+        private FlywheelPlanner.ScheduledUser next;
+        private int processed;
+
+        private MinuteRun(LocalTime nowUtc, Instant start, Stream<FlywheelPlanner.ScheduledUser> users) {
+            this.nowUtc = nowUtc;
+            this.start = start;
+            this.users = users;
+            this.iterator = users.iterator();
         }
 
-        FlywheelUserUUIDRangeSelector.UUIDRange uuidRange = flywheelUserUUIDRangeSelector.getUUIRange(clientRefreshesPerDay, nowUtc);
-
-        List<UUID> userIdsInRange = postgresUserSiteRepository.getUserIdsBetween(uuidRange.left(), uuidRange.right(), clientId);
-
-        return userIdsInRange;
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    if (next == null) {
+                        if (!iterator.hasNext()) {
+                            log.info("Got a total of {} users to be refreshed at {} within internal flywheel", processed, nowUtc);
+                            users.close();
+                            return;
+                        }
+                        next = iterator.next();
+                    }
+
+                    Instant now = Instant.now(clock);
+                    Instant dispatchAt = start.plus(next.offset());
+                    if (now.isBefore(dispatchAt)) {
+                        dispatchScheduler.schedule(this, Duration.between(now, dispatchAt));
+                        return;
+                    }
+
+                    if (!refreshForUser(next.userId())) {
+                        if (!now.isBefore(start.plus(MINUTE))) {
+                            log.warn("Flywheel dispatcher is still full after a minute, skipping the remaining users of {} after {} users.", nowUtc, processed);
+                            users.close();
+                            return;
+                        }
+                        dispatchScheduler.schedule(this, SATURATED_RETRY_DELAY);
+                        return;
+                    }
+                    processed++;
+                    next = null;
+                }
+                users.close();
+            } catch (RuntimeException e) {
+                log.error("Error in internal flywheel at {}: {}", nowUtc, e.getMessage(), e);
+                users.close();
+            }
+        }
     }
 }
@@ -0,0 +1,56 @@
+package nl.ing.lovebird.sitemanagement.flywheel;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Token bucket that refills at a fixed rate and holds at most one second worth of tokens.
+ * <p>
+ * Taking tokens never waits.  A caller that takes more tokens than the bucket can hold is allowed to once the bucket is
+ * full, the balance then goes negative and later callers get tokens again once that debt is paid off.  Together the
+ * callers never take more than the configured rate.
+ */
+class TokenBucket {
+
+    private final Clock clock;
+    private final double tokensPerSecond;
+    private final double capacity;
+
+    private double available;
+    private Instant lastRefill;
+
+    TokenBucket(Clock clock, double tokensPerSecond) {
+        if (tokensPerSecond <= 0) {
+            throw new IllegalArgumentException("tokensPerSecond should be positive, got " + tokensPerSecond);
+        }
+        this.clock = clock;
+        this.tokensPerSecond = tokensPerSecond;
+        this.capacity = Math.max(1, tokensPerSecond);
+        this.available = capacity;
+        this.lastRefill = Instant.now(clock);
+    }
+
+    /**
+     * Takes {@code tokens} tokens if they are available now.
+     *
+     * @return false if the tokens are not available, nothing is taken in that case
+     */
+    synchronized boolean tryAcquire(int tokens) {
+        refill();
+        if (available < Math.min(tokens, capacity)) {
+            return false;
+        }
+        available -= tokens;
+        return true;
+    }
+
+    private void refill() {
+        Instant now = Instant.now(clock);
+        if (now.isAfter(lastRefill)) {
+            double refilled = Duration.between(lastRefill, now).toNanos() * tokensPerSecond / 1_000_000_000d;
+            available = Math.min(capacity, available + refilled);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package nl.ing.lovebird.sitemanagement.flywheel;
+
+import nl.ing.lovebird.sitemanagement.lib.types.ClientId;
+import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteRepository;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static nl.ing.lovebird.sitemanagement.flywheel.FlywheelUserUUIDRangeSelector.MAX_UUID;
+import static nl.ing.lovebird.sitemanagement.flywheel.FlywheelUserUUIDRangeSelector.fromBigInt;
+import static nl.ing.lovebird.sitemanagement.flywheel.FlywheelUserUUIDRangeSelector.toBigInt;
+
+/**
+ * Iterates over the user-ids of one or more clients within a {@link FlywheelUserUUIDRangeSelector.UUIDRange} using keyset pagination.
+ * <p>
+ * Only one page of user-ids is held in memory at any time, no matter how many users fall in the range.  The next page
+ * starts right after the last user-id of the previous page, so there is no upper limit on the number of users that are
+ * returned for a range.
+ */
+class UserIdRangeIterator implements Iterator<UUID> {
+
+    private final PostgresUserSiteRepository postgresUserSiteRepository;
+    private final Collection<ClientId> clientIds;
+    private final UUID maxExclusive;
+    private final int pageSize;
+
+    /**
+     * The lower bound of the next page to fetch, or null if there are no more pages.
+     */
+    private UUID nextPageMinInclusive;
+    private Iterator<UUID> currentPage = Collections.emptyIterator();
+
+    UserIdRangeIterator(PostgresUserSiteRepository postgresUserSiteRepository,
+                        Collection<ClientId> clientIds,
+                        FlywheelUserUUIDRangeSelector.UUIDRange uuidRange,
+                        int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be greater then zero.");
+        }
+        this.postgresUserSiteRepository = postgresUserSiteRepository;
+        this.clientIds = clientIds;
+        this.maxExclusive = uuidRange.right();
+        this.pageSize = pageSize;
+        this.nextPageMinInclusive = uuidRange.left();
+    }
+
+    static Stream<UUID> stream(PostgresUserSiteRepository postgresUserSiteRepository,
+                               Collection<ClientId> clientIds,
+                               FlywheelUserUUIDRangeSelector.UUIDRange uuidRange,
+                               int pageSize) {
+        var iterator = new UserIdRangeIterator(postgresUserSiteRepository, clientIds, uuidRange, pageSize);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!currentPage.hasNext() && nextPageMinInclusive != null) {
+            fetchNextPage();
+        }
+        return currentPage.hasNext();
+    }
+
+    @Override
+    public UUID next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentPage.next();
+    }
+
+    private void fetchNextPage() {
+        List<UUID> page = postgresUserSiteRepository.getUserIdsBetween(nextPageMinInclusive, maxExclusive, clientIds, pageSize);
+        if (page.size() < pageSize) {
+            // A partial page means we have reached the end of the range.
+            nextPageMinInclusive = null;
+        } else {
+            BigInteger lastUserId = toBigInt(page.get(page.size() - 1));
+            nextPageMinInclusive = lastUserId.equals(MAX_UUID) ? null : fromBigInt(lastUserId.add(BigInteger.ONE));
+        }
+        currentPage = page.iterator();
+    }
+}
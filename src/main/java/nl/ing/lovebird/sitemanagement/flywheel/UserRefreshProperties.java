@@ -4,6 +4,7 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.Map;
 import java.util.UUID;
 
@@ -13,4 +14,14 @@ import java.util.UUID;
 class UserRefreshProperties {
     private int defaultRefreshesPerDay;
     private Map<UUID, Integer> refreshesPerDay;
+    /**
+     * How long the set of clients with at least one user-site is reused by the {@link FlywheelPlanner} before it is queried again.
+     */
+    private Duration clientIdsCacheDuration = Duration.ofMinutes(10);
+    /**
+     * The users of a minute are dispatched evenly over this window instead of all at once, to avoid a burst of
+     * refreshes towards the providers at the start of every minute.  {@link Duration#ZERO} dispatches all users at
+     * once.  Values above a minute are capped at a minute.
+     */
+    private Duration spreadWindow = Duration.ZERO;
 }
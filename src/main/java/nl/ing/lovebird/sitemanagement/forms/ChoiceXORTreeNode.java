@@ -2,10 +2,7 @@ package nl.ing.lovebird.sitemanagement.forms;
 
 import nl.ing.lovebird.providershared.form.FilledInUserSiteFormValues;
 
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * See {@link FormValidator} for an explanation.
@@ -18,30 +15,34 @@ public class ChoiceXORTreeNode extends FormExpressionTreeNode {
 
     @Override
     public EvaluationResult eval(FilledInUserSiteFormValues filledInUserSiteFormValues) {
-        List<FormExpressionTreeNode> children = this.getChildren();
-
-        Map<EvaluationResult, List<EvaluatedNode>> evaluatedNodes = children.stream()
-                .map(it -> new EvaluatedNode(it, it.evaluate(filledInUserSiteFormValues)))
-                .collect(Collectors.groupingBy(EvaluatedNode::getEvaluationResult));
-
-        List<EvaluatedNode> chosenNodes = evaluatedNodes.getOrDefault(EvaluationResult.CHOSEN, Collections.emptyList());
-        List<EvaluatedNode> maybeChosenNodes = evaluatedNodes.getOrDefault(EvaluationResult.MAYBE, Collections.emptyList());
-        List<EvaluatedNode> invalidNodes = evaluatedNodes.getOrDefault(EvaluationResult.INVALID, Collections.emptyList());
+        int chosenNodes = 0;
+        int maybeChosenNodes = 0;
+        int invalidNodes = 0;
+        for (FormExpressionTreeNode child : this.getChildren()) {
+            switch (child.evaluate(filledInUserSiteFormValues)) {
+                case CHOSEN -> chosenNodes++;
+                case MAYBE -> maybeChosenNodes++;
+                case INVALID -> invalidNodes++;
+                default -> {
+                    // NOT_CHOSEN does not affect the result.
+                }
+            }
+        }
 
-        if (!invalidNodes.isEmpty()) {
+        if (invalidNodes > 0) {
             // propagate as 'invalid'.
             return EvaluationResult.INVALID;
         }
-        if (chosenNodes.size() == 1) {
+        if (chosenNodes == 1) {
             // propagate as 'chosen'.
             return EvaluationResult.CHOSEN;
         }
         // If there are more 'chosen'. It's invalid.
-        if (!chosenNodes.isEmpty()) {
+        if (chosenNodes > 0) {
             return EvaluationResult.INVALID;
         }
         // From here nothing is explicitely 'chosen'.
-        if (!maybeChosenNodes.isEmpty()) {
+        if (maybeChosenNodes > 0) {
             return EvaluationResult.MAYBE;
         }
         return EvaluationResult.NOT_CHOSEN;
@@ -1,13 +0,0 @@
-package nl.ing.lovebird.sitemanagement.forms;
-
-import lombok.Value;
-
-/**
- * See {@link FormValidator} for an explanation.
- */
-@Value
-public class EvaluatedNode  {
-
-    FormExpressionTreeNode formExpressionTreeNode;
-    FormExpressionTreeNode.EvaluationResult evaluationResult;
-}
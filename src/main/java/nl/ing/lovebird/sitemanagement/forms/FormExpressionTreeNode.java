@@ -1,6 +1,5 @@
 package nl.ing.lovebird.sitemanagement.forms;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import nl.ing.lovebird.providershared.form.FilledInUserSiteFormValues;
@@ -8,16 +7,25 @@ import nl.ing.lovebird.providershared.form.FilledInUserSiteFormValues;
 import java.util.List;
 
 
+/**
+ * A node of the tree that a {@link FormValidator} evaluates.  The tree is immutable, so it can be shared by the
+ * validations of a {@link FormValidationPlan}.
+ */
 @Slf4j
 @Getter
-@AllArgsConstructor
 public abstract class FormExpressionTreeNode {
 
-    private boolean isOptional;
+    private final boolean isOptional;
 
-    private List<FormExpressionTreeNode> children;
+    private final List<FormExpressionTreeNode> children;
 
-    private String id;
+    private final String id;
+
+    protected FormExpressionTreeNode(boolean isOptional, List<FormExpressionTreeNode> children, String id) {
+        this.isOptional = isOptional;
+        this.children = List.copyOf(children);
+        this.id = id;
+    }
 
     protected abstract EvaluationResult eval(FilledInUserSiteFormValues filledInUserSiteFormValues);
 
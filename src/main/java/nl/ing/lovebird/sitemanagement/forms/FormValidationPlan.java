@@ -0,0 +1,326 @@
+package nl.ing.lovebird.sitemanagement.forms;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import lombok.Getter;
+import nl.ing.lovebird.providershared.form.*;
+import org.apache.commons.lang3.NotImplementedException;
+import org.springframework.lang.Nullable;
+
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A {@link Form} prepared for validation by a {@link FormValidator}: the expression tree and the fields of every
+ * container, and the compiled regexes, date formats and options of every field.  A plan is immutable, so it can be
+ * reused for every login on the same form, see {@link FormValidationPlanCache}.
+ * <p>
+ * Two forms that have the same {@link #fingerprint(Form)} validate the same, so they can share a plan.
+ */
+public final class FormValidationPlan {
+
+    @Getter
+    private final List<ComponentPlan> components;
+
+    private FormValidationPlan(List<ComponentPlan> components) {
+        this.components = List.copyOf(components);
+    }
+
+    public static FormValidationPlan compile(Form form) {
+        return new FormValidationPlan(form.getFormComponents().stream()
+                .map(FormValidationPlan::compile)
+                .toList());
+    }
+
+    /**
+     * @return a hash of everything in the form that affects its validation, so not of display names, default values,
+     * the explanation field or the state id
+     */
+    public static String fingerprint(Form form) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(form.getFormComponents().size());
+        for (FormComponent formComponent : form.getFormComponents()) {
+            putComponent(hasher, formComponent);
+        }
+        return hasher.hash().toString();
+    }
+
+    private static ComponentPlan compile(FormComponent formComponent) {
+        if (formComponent.getComponentType().equals(FormComponent.ComponentType.FIELD)) {
+            return new FieldPlan((FormField) formComponent);
+        }
+        FormContainer formContainer = (FormContainer) formComponent;
+        List<FieldPlan> fields = flattenToFormFields(formContainer).map(FieldPlan::new).toList();
+        return new ContainerPlan(formContainer, mapToExpressionTree(formContainer), fields);
+    }
+
+    private static Stream<FormField> flattenToFormFields(FormComponent formComponent) {
+        if (formComponent.getComponentType().equals(FormComponent.ComponentType.FIELD)) {
+            return Stream.of((FormField) formComponent);
+        }
+        return ((FormContainer) formComponent).getChildComponents().stream().flatMap(FormValidationPlan::flattenToFormFields);
+    }
+
+    private static FormExpressionTreeNode mapToExpressionTree(FormComponent formComponent) {
+        if (formComponent.getComponentType().equals(FormComponent.ComponentType.CONTAINER)) {
+            FormContainer formContainer = (FormContainer) formComponent;
+            List<FormExpressionTreeNode> childNodes = formContainer.getChildComponents().stream()
+                    .map(FormValidationPlan::mapToExpressionTree)
+                    .toList();
+            boolean optional = Boolean.TRUE.equals(formComponent.isOptional());
+            return switch (formContainer.getContainerType()) {
+                case CHOICE -> new ChoiceXORTreeNode(optional, childNodes, "CHOICE-" + containerId(formContainer));
+                case MULTI -> new MultiAndTreeNode(optional, childNodes, "MULTI-" + containerId(formContainer));
+                case SECTION -> new MultiAndTreeNode(optional, childNodes, "SECTION-" + containerId(formContainer));
+                default -> throw new NotImplementedException("Not implemented for component type " + formContainer.getContainerType());
+            };
+        } else {
+            FormField formField = (FormField) formComponent;
+            return new FieldLeafTreeNode(Boolean.TRUE.equals(formComponent.isOptional()), Collections.emptyList(), formField.getId());
+        }
+    }
+
+    @Nullable
+    private static String containerId(FormContainer formContainer) {
+        return switch (formContainer.getContainerType()) {
+            case CHOICE -> ((ChoiceFormComponent) formContainer).getId();
+            case MULTI -> ((MultiFormComponent) formContainer).getId();
+            case SECTION -> ((SectionFormComponent) formContainer).getId();
+            default -> null;
+        };
+    }
+
+    /**
+     * Recursive method.
+     * See explanation in {@link FormValidator}.
+     */
+    private static Set<Set<FormField>> determinePermutations(FormContainer formContainer) {
+        Set<Set<FormField>> permutations = new HashSet<>();
+        if (formContainer.getContainerType().equals(FormContainer.ContainerType.CHOICE)) {
+            Set<Set<FormField>> sets = determineChoicePermutations((ChoiceFormComponent) formContainer);
+            permutations.addAll(sets);
+        } else {
+            Set<Set<FormField>> sets = determineMultiOrSectionPermutations(formContainer);
+            permutations.addAll(sets);
+        }
+        return permutations;
+    }
+
+    private static Set<Set<FormField>> determineChoicePermutations(ChoiceFormComponent choiceFormComponent) {
+        Set<Set<FormField>> permutations = new HashSet<>();
+
+        // Choice.. That means the permutations/choices are simple all the children added to the list.
+        for (FormComponent childComponent : choiceFormComponent.getChildComponents()) {
+            if (childComponent.getComponentType().equals(FormComponent.ComponentType.CONTAINER)) {
+                permutations.addAll(determinePermutations((FormContainer) childComponent));
+            } else {
+                permutations.add(Collections.singleton((FormField) childComponent));
+            }
+        }
+        return permutations;
+    }
+
+    private static Set<Set<FormField>> determineMultiOrSectionPermutations(FormContainer formContainer) {
+        // Multi or section. That means it's an AND. The permutations for a multi/section only containing fields, is simply 1 fieldset:
+        // All those fields. If there's a list of permutations coming from a child-container, we have to add the direct fields to these
+        // permutations.
+        Set<Set<FormField>> permutations = new HashSet<>();
+        long nrOfChildContainers = formContainer.getChildComponents().stream().filter(it -> !it.getComponentType().equals(FormComponent.ComponentType.FIELD)).count();
+        if (nrOfChildContainers == 0) {
+            Set<FormField> singleSet = new HashSet<>();
+            for (FormComponent childComponent : formContainer.getChildComponents()) {
+                singleSet.add((FormField) childComponent);
+            }
+            permutations.add(singleSet);
+            return permutations;
+        }
+
+        // There is at leas 1 other container.
+        Set<Set<FormField>> childContainerPermutations = new HashSet<>();
+        Set<FormField> childFields = new HashSet<>();
+        for (FormComponent childComponent : formContainer.getChildComponents()) {
+            if (childComponent.getComponentType().equals(FormComponent.ComponentType.CONTAINER)) {
+                childContainerPermutations.addAll(determinePermutations((FormContainer) childComponent));
+            } else {
+                childFields.add((FormField) childComponent);
+            }
+        }
+        for (Set<FormField> fieldsSet : childContainerPermutations) {
+            HashSet<FormField> combined = new HashSet<>(fieldsSet);
+            combined.addAll(childFields);
+            permutations.add(combined);
+        }
+        return permutations;
+    }
+
+    private static void putComponent(Hasher hasher, FormComponent formComponent) {
+        hasher.putString(formComponent.getClass().getName(), UTF_8);
+        putNullable(hasher, formComponent.isOptional());
+        if (formComponent.getComponentType().equals(FormComponent.ComponentType.CONTAINER)) {
+            FormContainer formContainer = (FormContainer) formComponent;
+            putNullable(hasher, formContainer.getContainerType());
+            putNullable(hasher, containerId(formContainer));
+            hasher.putInt(formContainer.getChildComponents().size());
+            for (FormComponent childComponent : formContainer.getChildComponents()) {
+                putComponent(hasher, childComponent);
+            }
+            return;
+        }
+
+        FormField formField = (FormField) formComponent;
+        putNullable(hasher, formField.getId());
+        putNullable(hasher, formField.getFieldType());
+        switch (formField.getFieldType()) {
+            case TEXT -> {
+                putNullable(hasher, ((TextField) formField).getMaxLength());
+                putNullable(hasher, ((TextField) formField).getRegex());
+            }
+            case PASSWORD -> {
+                putNullable(hasher, ((PasswordField) formField).getMaxLength());
+                putNullable(hasher, ((PasswordField) formField).getRegex());
+            }
+            case DATE -> {
+                putNullable(hasher, ((DateField) formField).getDateFormat());
+                putNullable(hasher, ((DateField) formField).getMinDate());
+                putNullable(hasher, ((DateField) formField).getMaxDate());
+            }
+            case NUMBER -> {
+                putNullable(hasher, ((NumberField) formField).getMin());
+                putNullable(hasher, ((NumberField) formField).getMax());
+                putNullable(hasher, ((NumberField) formField).getStepSize());
+            }
+            case SELECT -> putOptionValues(hasher, ((SelectField) formField).getSelectOptionValues());
+            case RADIO -> putOptionValues(hasher, ((RadioField) formField).getSelectOptionValues());
+            case TEXT_AREA -> putNullable(hasher, ((TextAreaField) formField).getMaxLength());
+            default -> {
+                // The other fields have nothing to validate.
+            }
+        }
+    }
+
+    private static void putOptionValues(Hasher hasher, List<SelectOptionValue> selectOptionValues) {
+        hasher.putInt(selectOptionValues.size());
+        for (SelectOptionValue selectOptionValue : selectOptionValues) {
+            putNullable(hasher, selectOptionValue.getValue());
+        }
+    }
+
+    private static void putNullable(Hasher hasher, @Nullable Object value) {
+        hasher.putBoolean(value != null);
+        if (value != null) {
+            // The separator makes sure that consecutive values cannot be shifted into each other.
+            hasher.putString(value.toString(), UTF_8).putChar('\0');
+        }
+    }
+
+    /**
+     * A component at the top level of the form.
+     */
+    sealed interface ComponentPlan permits FieldPlan, ContainerPlan {
+    }
+
+    /**
+     * A field with its compiled regex, date format and options.
+     */
+    @Getter
+    static final class FieldPlan implements ComponentPlan {
+        private final FormField field;
+        @Nullable
+        private final String regex;
+        @Nullable
+        private final Pattern pattern;
+        @Nullable
+        private final DateTimeFormatter dateTimeFormatter;
+        private final List<String> optionValues;
+
+        FieldPlan(FormField field) {
+            this.field = field;
+            this.regex = switch (field.getFieldType()) {
+                case TEXT -> ((TextField) field).getRegex();
+                case PASSWORD -> ((PasswordField) field).getRegex();
+                default -> null;
+            };
+            this.pattern = compilePattern(regex);
+            this.dateTimeFormatter = switch (field.getFieldType()) {
+                case DATE -> compileDateTimeFormatter(((DateField) field).getDateFormat());
+                default -> null;
+            };
+            this.optionValues = switch (field.getFieldType()) {
+                case SELECT -> ((SelectField) field).getSelectOptionValues().stream().map(SelectOptionValue::getValue).toList();
+                case RADIO -> ((RadioField) field).getSelectOptionValues().stream().map(SelectOptionValue::getValue).toList();
+                default -> List.of();
+            };
+        }
+
+        /**
+         * @return whether the value matches the regex; an invalid regex fails here, like it would without a plan
+         */
+        boolean matches(String value) {
+            return pattern != null ? pattern.matcher(value).matches() : value.matches(regex);
+        }
+
+        /**
+         * @return the formatter of the date format; an invalid date format fails here, like it would without a plan
+         */
+        DateTimeFormatter getDateTimeFormatter() {
+            return dateTimeFormatter != null ? dateTimeFormatter : DateTimeFormatter.ofPattern(((DateField) field).getDateFormat());
+        }
+
+        @Nullable
+        private static Pattern compilePattern(@Nullable String regex) {
+            try {
+                return regex == null ? null : Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                return null;
+            }
+        }
+
+        @Nullable
+        private static DateTimeFormatter compileDateTimeFormatter(@Nullable String dateFormat) {
+            try {
+                return dateFormat == null ? null : DateTimeFormatter.ofPattern(dateFormat);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * A container with its expression tree and all fields in it.
+     */
+    @Getter
+    static final class ContainerPlan implements ComponentPlan {
+        private final FormContainer container;
+        private final FormExpressionTreeNode expressionTree;
+        private final List<FieldPlan> fields;
+        @Nullable
+        private volatile String permutations;
+
+        ContainerPlan(FormContainer container, FormExpressionTreeNode expressionTree, List<FieldPlan> fields) {
+            this.container = container;
+            this.expressionTree = expressionTree;
+            this.fields = List.copyOf(fields);
+        }
+
+        /**
+         * @return the sets of fields that can be filled in, as a message for the user.  Determining the sets can be
+         * expensive for nested choices, so it is done once per plan, when a login fails for the first time.
+         */
+        String getPermutations() {
+            String result = permutations;
+            if (result == null) {
+                result = determinePermutations(container).stream()
+                        .map(set -> set.stream().map(FormField::getId).collect(Collectors.joining("+")))
+                        .collect(Collectors.joining(" | "));
+                permutations = result;
+            }
+            return result;
+        }
+    }
+}
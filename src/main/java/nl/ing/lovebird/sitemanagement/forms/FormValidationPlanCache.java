@@ -0,0 +1,47 @@
+package nl.ing.lovebird.sitemanagement.forms;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import nl.ing.lovebird.providershared.form.Form;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The {@link FormValidationPlan}s of the forms that were validated recently, by {@link FormValidationPlan#fingerprint(Form)}.
+ * <p>
+ * A scraping provider has a handful of forms per site that are shown to all users, so a small cache covers most logins.
+ */
+@Component
+public class FormValidationPlanCache {
+
+    private final Cache<String, FormValidationPlan> plans;
+
+    public FormValidationPlanCache(MeterRegistry meterRegistry,
+                                   @Value("${lovebird.forms.validationPlanCache.maximumSize:1000}") long maximumSize) {
+        this.plans = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        GuavaCacheMetrics.monitor(meterRegistry, plans, "form_validation_plans");
+    }
+
+    /**
+     * Goes through {@link Cache#get(Object, java.util.concurrent.Callable)} rather than the map view, so the hits and
+     * misses end up in the metrics.
+     */
+    public FormValidationPlan get(Form form) {
+        try {
+            return plans.get(FormValidationPlan.fingerprint(form), () -> FormValidationPlan.compile(form));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            // Compiling only throws unchecked exceptions, hand them to the caller as if there were no cache.
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException("Failed to compile the validation plan of a form", e.getCause());
+        }
+    }
+}
@@ -4,6 +4,9 @@ import lombok.extern.slf4j.Slf4j;
 import nl.ing.lovebird.providershared.form.*;
 import nl.ing.lovebird.sitemanagement.configuration.SiteManagementDebugProperties;
 import nl.ing.lovebird.sitemanagement.forms.FormExpressionTreeNode.EvaluationResult;
+import nl.ing.lovebird.sitemanagement.forms.FormValidationPlan.ComponentPlan;
+import nl.ing.lovebird.sitemanagement.forms.FormValidationPlan.ContainerPlan;
+import nl.ing.lovebird.sitemanagement.forms.FormValidationPlan.FieldPlan;
 import org.apache.commons.lang3.NotImplementedException;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.validator.routines.IBANValidator;
@@ -13,8 +16,6 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static nl.ing.lovebird.sitemanagement.forms.FormExpressionTreeNode.EvaluationResult.INVALID;
 import static nl.ing.lovebird.sitemanagement.forms.FormExpressionTreeNode.EvaluationResult.NOT_CHOSEN;
@@ -41,7 +42,7 @@ import static nl.ing.lovebird.sitemanagement.forms.FormExpressionTreeNode.Evalua
  *
  * This recursively goes up in the tree to eval whether the filled in values are valid. (whether choices are correct and
  * required fields are there).
- * We map it into some TreeNode to recursively eval it. Unfortunately this cannot be some binary operation tree because we have to
+ * We map it into some TreeNode to recursively eval it (once per form, see {@link FormValidationPlan}). Unfortunately this cannot be some binary operation tree because we have to
  * deal with non-determent optional fields.. Consider the following example:
  *                               CHOICE
  *           FIELD-A*                               CHOICE
@@ -81,9 +82,16 @@ public class FormValidator {
     }
 
     public void validateValues(Form form, FilledInUserSiteFormValues filledInUserSiteFormValues) throws FormValidationException {
+        validateValues(form, FormValidationPlan.compile(form), filledInUserSiteFormValues);
+    }
+
+    /**
+     * @param plan the plan of the form, see {@link FormValidationPlanCache}
+     */
+    public void validateValues(Form form, FormValidationPlan plan, FilledInUserSiteFormValues filledInUserSiteFormValues) throws FormValidationException {
         try {
-            for (FormComponent formComponent : form.getFormComponents()) {
-                validate(formComponent, filledInUserSiteFormValues);
+            for (ComponentPlan componentPlan : plan.getComponents()) {
+                validate(componentPlan, filledInUserSiteFormValues);
             }
         } catch (FormValidationException e) {
             if (siteManagementDebugProperties.isFormValidationDetailedErrors()) {
@@ -99,68 +107,33 @@ public class FormValidator {
         }
     }
 
-    private void validate(FormComponent formComponent, FilledInUserSiteFormValues filledInUserSiteFormValues) throws FormValidationException {
+    private void validate(ComponentPlan componentPlan, FilledInUserSiteFormValues filledInUserSiteFormValues) throws FormValidationException {
 
-        if (formComponent.getComponentType().equals(FormComponent.ComponentType.FIELD)) {
+        if (componentPlan instanceof FieldPlan fieldPlan) {
             // easy, validate the field.
-            validate((FormField) formComponent, filledInUserSiteFormValues);
-        } else if (formComponent.getComponentType().equals(FormComponent.ComponentType.CONTAINER)) {
+            validate(fieldPlan, filledInUserSiteFormValues);
+        } else if (componentPlan instanceof ContainerPlan containerPlan) {
             // See javadoc class.
-            FormContainer formContainer = (FormContainer) formComponent;
-            FormExpressionTreeNode formExpressionTreeNode = mapToExpressionTree(formContainer);
-            EvaluationResult result = formExpressionTreeNode.evaluate(filledInUserSiteFormValues);
+            FormContainer formContainer = containerPlan.getContainer();
+            EvaluationResult result = containerPlan.getExpressionTree().evaluate(filledInUserSiteFormValues);
             if (result.equals(INVALID) ||
                     // Nothing chosen while required.
                     (!Boolean.TRUE.equals(formContainer.isOptional()) && result.equals(NOT_CHOSEN))) {
-                Set<Set<FormField>> permutations = determinePermutations(formContainer);
-                String permutationAsString = permutations.stream()
-                        .map(set -> set.stream().map(FormField::getId).collect(Collectors.joining("+")))
-                        .collect(Collectors.joining(" | "));
                 throw new FormValidationException("You must at least fill in one of the following set of fields " +
-                        "(a set is seperated by '|' ) : " + permutationAsString);
+                        "(a set is seperated by '|' ) : " + containerPlan.getPermutations());
             }
             // We now know that the provided values are allowed to be provided, and there's no values missing. Now simply validate those
             // provided fields.
-            Set<FormField> formFieldsToValidate = flattenToFormFields(formComponent)
-                    .filter(it -> filledInUserSiteFormValues.getValueMap().containsKey(it.getId()))
-                    .collect(Collectors.toSet());
-
-            for (FormField field : formFieldsToValidate) {
-                validate(field, filledInUserSiteFormValues);
-            }
-        }
-    }
-
-    private static Stream<FormField> flattenToFormFields(FormComponent formComponent) {
-        if (formComponent.getComponentType().equals(FormComponent.ComponentType.FIELD)) {
-            return Stream.of((FormField) formComponent);
-        }
-        return ((FormContainer) formComponent).getChildComponents().stream().flatMap(FormValidator::flattenToFormFields);
-    }
-
-    private FormExpressionTreeNode mapToExpressionTree(FormComponent formComponent) {
-        if (formComponent.getComponentType().equals(FormComponent.ComponentType.CONTAINER)) {
-            FormContainer formContainer = (FormContainer) formComponent;
-            List<FormExpressionTreeNode> childNodes = ((FormContainer) formComponent).getChildComponents().stream()
-                    .map(this::mapToExpressionTree)
-                    .collect(Collectors.toList());
-            if (formContainer.getContainerType().equals(FormContainer.ContainerType.CHOICE)) {
-                return new ChoiceXORTreeNode(Boolean.TRUE.equals(formComponent.isOptional()), childNodes, "CHOICE-" + ((ChoiceFormComponent) formComponent).getId());
-            } else if (formContainer.getContainerType().equals(FormContainer.ContainerType.MULTI)) {
-                return new MultiAndTreeNode(Boolean.TRUE.equals(formComponent.isOptional()), childNodes, "MULTI-" + ((MultiFormComponent) formComponent).getId());
-            } else if (formContainer.getContainerType().equals(FormContainer.ContainerType.SECTION)) {
-                return new MultiAndTreeNode(Boolean.TRUE.equals(formComponent.isOptional()), childNodes, "SECTION-" + ((SectionFormComponent) formComponent).getId());
-            } else {
-                throw new NotImplementedException("Not implemented for component type " + formContainer.getContainerType());
+            for (FieldPlan field : containerPlan.getFields()) {
+                if (filledInUserSiteFormValues.getValueMap().containsKey(field.getField().getId())) {
+                    validate(field, filledInUserSiteFormValues);
+                }
             }
-        } else {
-            FormField formField = (FormField) formComponent;
-            return new FieldLeafTreeNode(Boolean.TRUE.equals(formComponent.isOptional()), Collections.emptyList(), formField.getId());
         }
     }
 
-
-    private void validate(FormField formField, FilledInUserSiteFormValues filledInUserSiteFormValues) throws FormValidationException {
+    private void validate(FieldPlan fieldPlan, FilledInUserSiteFormValues filledInUserSiteFormValues) throws FormValidationException {
+        FormField formField = fieldPlan.getField();
         validateRequiredField(formField, filledInUserSiteFormValues);
         if (onlyCheckRequiredFields) {
             return;
@@ -172,19 +145,19 @@ public class FormValidator {
         }
         switch (formField.getFieldType()) {
             case TEXT:
-                validate((TextField) formField, value);
+                validate((TextField) formField, fieldPlan, value);
                 break;
             case PASSWORD:
-                validate((PasswordField) formField, value);
+                validate((PasswordField) formField, fieldPlan, value);
                 break;
             case SELECT:
-                validate((SelectField) formField, value);
+                validate((SelectField) formField, fieldPlan, value);
                 break;
             case EXPLANATION:
                 // No validation, no user input.
                 break;
             case DATE:
-                validate((DateField) formField, value);
+                validate((DateField) formField, fieldPlan, value);
                 break;
             case NUMBER:
                 validate((NumberField) formField, value);
@@ -193,7 +166,7 @@ public class FormValidator {
                 validate((IbanField) formField, value);
                 break;
             case RADIO:
-                validate((RadioField) formField, value);
+                validate((RadioField) formField, fieldPlan, value);
                 break;
             case TEXT_AREA:
                 validate((TextAreaField) formField, value);
@@ -204,86 +177,23 @@ public class FormValidator {
         }
     }
 
-    /**
-     * Recursive method.
-     * See explanation in callee.
-     */
-    private Set<Set<FormField>> determinePermutations(FormContainer formContainer) {
-        Set<Set<FormField>> permutations = new HashSet<>();
-        if (formContainer.getContainerType().equals(FormContainer.ContainerType.CHOICE)) {
-            Set<Set<FormField>> sets = determineChoicePermutations((ChoiceFormComponent) formContainer);
-            permutations.addAll(sets);
-        } else {
-            Set<Set<FormField>> sets = determineMultiOrSectionPermutations(formContainer);
-            permutations.addAll(sets);
-        }
-        return permutations;
-    }
-
-    private Set<Set<FormField>> determineChoicePermutations(ChoiceFormComponent choiceFormComponent) {
-        Set<Set<FormField>> permutations = new HashSet<>();
-
-        // Choice.. That means the permutations/choices are simple all the children added to the list.
-        for (FormComponent childComponent : choiceFormComponent.getChildComponents()) {
-            if (childComponent.getComponentType().equals(FormComponent.ComponentType.CONTAINER)) {
-                permutations.addAll(determinePermutations((FormContainer) childComponent));
-            } else {
-                permutations.add(Collections.singleton((FormField) childComponent));
-            }
-        }
-        return permutations;
-    }
-
-    private Set<Set<FormField>> determineMultiOrSectionPermutations(FormContainer formContainer) {
-        // Multi or section. That means it's an AND. The permutations for a multi/section only containing fields, is simply 1 fieldset:
-        // All those fields. If there's a list of permutations coming from a child-container, we have to add the direct fields to these
-        // permutations.
-        Set<Set<FormField>> permutations = new HashSet<>();
-        long nrOfChildContainers = formContainer.getChildComponents().stream().filter(it -> !it.getComponentType().equals(FormComponent.ComponentType.FIELD)).count();
-        if (nrOfChildContainers == 0) {
-            Set<FormField> singleSet = new HashSet<>();
-            for (FormComponent childComponent : formContainer.getChildComponents()) {
-                singleSet.add((FormField) childComponent);
-            }
-            permutations.add(singleSet);
-            return permutations;
-        }
-
-        // There is at leas 1 other container.
-        Set<Set<FormField>> childContainerPermutations = new HashSet<>();
-        Set<FormField> childFields = new HashSet<>();
-        for (FormComponent childComponent : formContainer.getChildComponents()) {
-            if (childComponent.getComponentType().equals(FormComponent.ComponentType.CONTAINER)) {
-                childContainerPermutations.addAll(determinePermutations((FormContainer) childComponent));
-            } else {
-                childFields.add((FormField) childComponent);
-            }
-        }
-        for (Set<FormField> fieldsSet : childContainerPermutations) {
-            HashSet<FormField> combined = new HashSet<>(fieldsSet);
-            combined.addAll(childFields);
-            permutations.add(combined);
-        }
-        return permutations;
-    }
-
-    private static void validate(TextField textField, String value) throws FormValidationException {
+    private static void validate(TextField textField, FieldPlan fieldPlan, String value) throws FormValidationException {
         if (value != null) {
             validateMaxLength(value, textField.getMaxLength(), textField.getId());
-            validateRegex(value, textField.getRegex(), textField.getId());
+            validateRegex(value, fieldPlan, textField.getId());
         }
     }
 
-    private static void validate(PasswordField passwordField, String value) throws FormValidationException {
+    private static void validate(PasswordField passwordField, FieldPlan fieldPlan, String value) throws FormValidationException {
         if (value != null) {
             validateMaxLength(value, passwordField.getMaxLength(), passwordField.getId());
-            validateRegex(value, passwordField.getRegex(), passwordField.getId());
+            validateRegex(value, fieldPlan, passwordField.getId());
         }
     }
 
-    private static void validate(DateField dateField, String value) throws FormValidationException {
+    private static void validate(DateField dateField, FieldPlan fieldPlan, String value) throws FormValidationException {
         if (value != null) {
-            DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern(dateField.getDateFormat());
+            DateTimeFormatter dateTimeFormatter = fieldPlan.getDateTimeFormatter();
             try {
                 LocalDate ld = LocalDate.parse(value, dateTimeFormatter);
                 String result = ld.format(dateTimeFormatter);
@@ -339,9 +249,9 @@ public class FormValidator {
         }
     }
 
-    private static void validate(RadioField radioField, String value) throws FormValidationException {
+    private static void validate(RadioField radioField, FieldPlan fieldPlan, String value) throws FormValidationException {
         if (value != null) {
-            List<String> optionValuesStream = radioField.getSelectOptionValues().stream().map(SelectOptionValue::getValue).collect(Collectors.toList());
+            List<String> optionValuesStream = fieldPlan.getOptionValues();
             if (!optionValuesStream.contains(value)) {
                 throw new FormValidationException(FIELD_VALIDATION_MESSAGE_FIELD_INDICATION + radioField.getId() + " does not match any of the given " +
                         "options " + String.join(",", optionValuesStream));
@@ -349,9 +259,9 @@ public class FormValidator {
         }
     }
 
-    private static void validate(SelectField selectField, String value) throws FormValidationException {
+    private static void validate(SelectField selectField, FieldPlan fieldPlan, String value) throws FormValidationException {
         if (value != null) {
-            List<String> optionValuesStream = selectField.getSelectOptionValues().stream().map(SelectOptionValue::getValue).collect(Collectors.toList());
+            List<String> optionValuesStream = fieldPlan.getOptionValues();
             if (!optionValuesStream.contains(value)) {
                 throw new FormValidationException(FIELD_VALIDATION_MESSAGE_FIELD_INDICATION + selectField.getId() + " does not match any of the given " +
                         "options " + String.join(",", optionValuesStream));
@@ -363,9 +273,9 @@ public class FormValidator {
         validateMaxLength(value, textAreaField.getMaxLength(), textAreaField.getId());
     }
 
-    private static void validateRegex(String value, String regex, String id) throws FormValidationException {
-        if (regex != null && !value.matches(regex)) {
-            throw new FormValidationException(FIELD_VALIDATION_MESSAGE_FIELD_INDICATION + id + " does not match regex " + regex);
+    private static void validateRegex(String value, FieldPlan fieldPlan, String id) throws FormValidationException {
+        if (fieldPlan.getRegex() != null && !fieldPlan.matches(value)) {
+            throw new FormValidationException(FIELD_VALIDATION_MESSAGE_FIELD_INDICATION + id + " does not match regex " + fieldPlan.getRegex());
         }
     }
 
@@ -2,10 +2,7 @@ package nl.ing.lovebird.sitemanagement.forms;
 
 import nl.ing.lovebird.providershared.form.FilledInUserSiteFormValues;
 
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 public class MultiAndTreeNode extends FormExpressionTreeNode {
 
@@ -15,31 +12,35 @@ public class MultiAndTreeNode extends FormExpressionTreeNode {
 
     @Override
     public EvaluationResult eval(FilledInUserSiteFormValues filledInUserSiteFormValues) {
-        List<FormExpressionTreeNode> children = this.getChildren();
-
-        Map<EvaluationResult, List<EvaluatedNode>> evaluatedNodes = children.stream()
-                .map(it -> new EvaluatedNode(it, it.evaluate(filledInUserSiteFormValues)))
-                .collect(Collectors.groupingBy(EvaluatedNode::getEvaluationResult));
-
-        List<EvaluatedNode> chosenNodes = evaluatedNodes.getOrDefault(EvaluationResult.CHOSEN, Collections.emptyList());
-        List<EvaluatedNode> notChosenNodes = evaluatedNodes.getOrDefault(EvaluationResult.NOT_CHOSEN, Collections.emptyList());
-        List<EvaluatedNode> invalidNodes = evaluatedNodes.getOrDefault(EvaluationResult.INVALID, Collections.emptyList());
-        if (!invalidNodes.isEmpty()) {
+        int chosenNodes = 0;
+        int notChosenNodes = 0;
+        int invalidNodes = 0;
+        for (FormExpressionTreeNode child : this.getChildren()) {
+            switch (child.evaluate(filledInUserSiteFormValues)) {
+                case CHOSEN -> chosenNodes++;
+                case NOT_CHOSEN -> notChosenNodes++;
+                case INVALID -> invalidNodes++;
+                default -> {
+                    // MAYBE does not affect the result.
+                }
+            }
+        }
+        if (invalidNodes > 0) {
             // propagate as 'invalid'.
             return EvaluationResult.INVALID;
         }
 
 
         // A CHOSEN and NOT_CHOSEN cannot co-exist.
-        if (!chosenNodes.isEmpty() && !notChosenNodes.isEmpty()) {
+        if (chosenNodes > 0 && notChosenNodes > 0) {
             return EvaluationResult.INVALID;
         }
         // If all children are NOT_CHOSEN, this is NOT_CHOSEN.
-        if (!chosenNodes.isEmpty()) {
+        if (chosenNodes > 0) {
             return EvaluationResult.CHOSEN;
         }
 
-        if (!notChosenNodes.isEmpty()) {
+        if (notChosenNodes > 0) {
             return EvaluationResult.NOT_CHOSEN;
         }
         // otherwise, it's MAYBE (there are no CHOSEN, NOT_CHOSEN or INVALID members)
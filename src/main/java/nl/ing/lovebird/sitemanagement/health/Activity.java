@@ -22,6 +22,9 @@ import static nl.ing.lovebird.sitemanagement.health.Activity.TABLE;
  * If the activity has a {@link Activity#endTime} that is null, we consider the activity to still be running.
  * <p>
  * Activities only exist in our database for 7 days, see YCO-1431.
+ * <p>
+ * The table is partitioned by {@link #startTime}, so the primary key is ({@link #activityId}, {@link #startTime}).  A
+ * start event that is received twice has the same start time, so it still maps to the same row.
  */
 @Entity
 @Table(name = TABLE)
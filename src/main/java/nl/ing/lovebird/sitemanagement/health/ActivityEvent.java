@@ -7,6 +7,7 @@ import nl.ing.lovebird.activityevents.events.AbstractEvent;
 import org.hibernate.annotations.Type;
 import org.hibernate.annotations.TypeDef;
 import org.hibernate.annotations.TypeDefs;
+import org.springframework.data.domain.Persistable;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -34,6 +35,10 @@ import static nl.ing.lovebird.sitemanagement.health.ActivityEvent.TABLE;
  * We chose to use the POJO itself in this case because breaking changes will not occur for the {@link AbstractEvent}.
  * This POJO is used in all flows within Yolt and it is safe to assume only non-breaking changes are introduced when
  * updating the POJO.
+ * <p>
+ * The table is partitioned by {@link #eventTime}, so the primary key is ({@link #eventId}, {@link #eventTime}).  The
+ * event id is generated when the event is stored, so it is unique by itself.  An event is only ever inserted, it is
+ * {@link #isNew() always new}: saving it persists it without first looking it up by id in every partition.
  */
 @Entity
 @Table(name = TABLE)
@@ -42,7 +47,7 @@ import static nl.ing.lovebird.sitemanagement.health.ActivityEvent.TABLE;
 @NoArgsConstructor
 @AllArgsConstructor
 @TypeDefs(@TypeDef(name = "jsonb", typeClass = JsonBinaryType.class))
-public class ActivityEvent {
+public class ActivityEvent implements Persistable<UUID> {
     public static final String TABLE = "activity_events";
     public static final String EVENT_ID_COLUMN = "event_id";
     public static final String ACTIVITY_ID_COLUMN = "activity_id";
@@ -71,4 +76,14 @@ public class ActivityEvent {
     @Column(name = EVENT_TIME_COLUMN, nullable = false)
     @NonNull
     private Instant eventTime;
+
+    @Override
+    public UUID getId() {
+        return eventId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return true;
+    }
 }
@@ -0,0 +1,124 @@
+package nl.ing.lovebird.sitemanagement.health;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Manages the daily (UTC) partitions of the {@link Activity#TABLE} and {@link ActivityEvent#TABLE} tables.
+ * <p>
+ * A partition of a day is named {@code <table>_p<yyyyMMdd>}.  Rows that do not fall in one of these partitions end up in
+ * the default partition {@code <table>_default}.
+ */
+@Repository
+public class ActivityPartitionRepository {
+
+    /**
+     * The partitioned tables and their partition key.
+     */
+    public static final Map<String, String> PARTITIONED_TABLES = Map.of(
+            Activity.TABLE, Activity.START_TIME_COLUMN,
+            ActivityEvent.TABLE, ActivityEvent.EVENT_TIME_COLUMN
+    );
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    @PersistenceContext(unitName = "entityManager")
+    private final EntityManager entityManager;
+
+    public ActivityPartitionRepository(@Qualifier("entityManager") EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Creates the partition of the given day if it does not exist yet.
+     */
+    @Transactional
+    public void createPartition(String table, LocalDate day) {
+        requirePartitioned(table);
+        entityManager.createNativeQuery("create table if not exists %s partition of %s for values from ('%s 00:00:00+00') to ('%s 00:00:00+00')"
+                        .formatted(partitionName(table, day), table, day, day.plusDays(1)))
+                .executeUpdate();
+    }
+
+    /**
+     * @return the days of the existing partitions of the table, the default partition excluded
+     */
+    @Transactional(readOnly = true)
+    public List<LocalDate> findPartitionDays(String table) {
+        requirePartitioned(table);
+        var sql = """
+                select cast(child.relname as varchar)
+                    from pg_inherits
+                    join pg_class parent on parent.oid = pg_inherits.inhparent
+                    join pg_class child on child.oid = pg_inherits.inhrelid
+                    where parent.relname = :table
+                """;
+
+        @SuppressWarnings("unchecked")
+        List<String> partitions = entityManager.createNativeQuery(sql)
+                .setParameter("table", table)
+                .getResultList();
+
+        String prefix = table + "_p";
+        return partitions.stream()
+                .filter(partition -> partition.startsWith(prefix))
+                .map(partition -> parseDay(partition.substring(prefix.length())))
+                .flatMap(Optional::stream)
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Detaches and drops the partition of the given day.  This only locks the table briefly, unlike deleting the rows.
+     */
+    @Transactional
+    public void dropPartition(String table, LocalDate day) {
+        requirePartitioned(table);
+        String partition = partitionName(table, day);
+        entityManager.createNativeQuery("alter table %s detach partition %s".formatted(table, partition)).executeUpdate();
+        entityManager.createNativeQuery("drop table %s".formatted(partition)).executeUpdate();
+    }
+
+    /**
+     * Deletes the rows from the default partition that are older than the given moment.  The default partition only
+     * contains the odd row that did not fit in a daily partition, so this is cheap.
+     */
+    @Transactional
+    public int deleteFromDefaultPartitionBefore(String table, Instant before) {
+        requirePartitioned(table);
+        return entityManager.createNativeQuery("delete from %s_default where %s < :before".formatted(table, PARTITIONED_TABLES.get(table)))
+                .setParameter("before", Timestamp.from(before))
+                .executeUpdate();
+    }
+
+    static String partitionName(String table, LocalDate day) {
+        return table + "_p" + PARTITION_SUFFIX.format(day);
+    }
+
+    private static Optional<LocalDate> parseDay(String suffix) {
+        try {
+            return Optional.of(LocalDate.parse(suffix, PARTITION_SUFFIX));
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static void requirePartitioned(String table) {
+        // The table name ends up in the sql, so only allow our own tables.
+        if (!PARTITIONED_TABLES.containsKey(table)) {
+            throw new IllegalArgumentException("Table " + table + " is not partitioned.");
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package nl.ing.lovebird.sitemanagement.health;
+
+import lombok.NonNull;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The progress of the user-sites of an activity that is started with a
+ * {@link nl.ing.lovebird.activityevents.events.UserSiteStartEvent}.
+ * <p>
+ * This is a summary of the stored activity events that is kept up to date with every ingestion finished or refresh
+ * failed event, so we do not have to load (and deserialize) all events of an activity to know whether it is done.
+ *
+ * @param expectedUserSiteIds the user-sites that were part of the start event
+ * @param ingestedUserSiteIds the user-sites for which we received an ingestion finished event
+ * @param failedUserSiteIds   the user-sites for which the refresh failed
+ */
+public record ActivityProgress(@NonNull UUID activityId,
+                               @NonNull Set<UUID> expectedUserSiteIds,
+                               @NonNull Set<UUID> ingestedUserSiteIds,
+                               @NonNull Set<UUID> failedUserSiteIds) {
+
+    public boolean allUserSitesProcessed() {
+        Set<UUID> processed = new HashSet<>(ingestedUserSiteIds);
+        processed.addAll(failedUserSiteIds);
+        return processed.containsAll(expectedUserSiteIds);
+    }
+
+    public boolean anyUserSiteIngested() {
+        return !ingestedUserSiteIds.isEmpty();
+    }
+
+    public Set<UUID> pendingUserSiteIds() {
+        Set<UUID> pending = new HashSet<>(expectedUserSiteIds);
+        pending.removeAll(ingestedUserSiteIds);
+        pending.removeAll(failedUserSiteIds);
+        return pending;
+    }
+}
@@ -0,0 +1,118 @@
+package nl.ing.lovebird.sitemanagement.health;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.Date;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * This repository represents the database interface for the {@link ActivityProgress} of an activity.
+ * <p>
+ * Every update is a single statement that returns the updated progress, so concurrent events for the same activity
+ * never miss each other's update.
+ */
+@Repository
+public class ActivityProgressRepository {
+
+    private static final String INGESTED_USER_SITE_IDS_COLUMN = "ingested_user_site_ids";
+    private static final String FAILED_USER_SITE_IDS_COLUMN = "failed_user_site_ids";
+
+    @PersistenceContext(unitName = "entityManager")
+    private final EntityManager entityManager;
+
+    public ActivityProgressRepository(@Qualifier("entityManager") EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Start tracking the progress of an activity.  Does nothing if the activity is already tracked.
+     */
+    @Transactional
+    public void create(UUID activityId, Instant startTime, Collection<UUID> expectedUserSiteIds) {
+        var sql = """
+                insert into activity_progress (activity_id, start_time, expected_user_site_ids)
+                    values (:activityId, :startTime, cast(string_to_array(:expectedUserSiteIds, ',') as uuid[]))
+                    on conflict (activity_id) do nothing
+                """;
+
+        entityManager.createNativeQuery(sql)
+                .setParameter("activityId", activityId)
+                .setParameter("startTime", Date.from(startTime))
+                .setParameter("expectedUserSiteIds", expectedUserSiteIds.stream().map(UUID::toString).collect(joining(",")))
+                .executeUpdate();
+    }
+
+    /**
+     * @return the progress after registering the user-site as ingested, or empty if the activity is not tracked
+     */
+    @Transactional
+    public Optional<ActivityProgress> markIngested(UUID activityId, UUID userSiteId) {
+        return addUserSites(INGESTED_USER_SITE_IDS_COLUMN, activityId, List.of(userSiteId));
+    }
+
+    /**
+     * @return the progress after registering all user-sites as ingested, or empty if the activity is not tracked
+     */
+    @Transactional
+    public Optional<ActivityProgress> markIngested(UUID activityId, Collection<UUID> userSiteIds) {
+        return addUserSites(INGESTED_USER_SITE_IDS_COLUMN, activityId, userSiteIds);
+    }
+
+    /**
+     * @return the progress after registering the user-site as failed, or empty if the activity is not tracked
+     */
+    @Transactional
+    public Optional<ActivityProgress> markFailed(UUID activityId, UUID userSiteId) {
+        return addUserSites(FAILED_USER_SITE_IDS_COLUMN, activityId, List.of(userSiteId));
+    }
+
+    @Transactional
+    public int deleteOlderThanDays(int days) {
+        return entityManager.createNativeQuery("delete from activity_progress where start_time < now() - cast(:days || ' days' as interval)")
+                .setParameter("days", days)
+                .executeUpdate();
+    }
+
+    private Optional<ActivityProgress> addUserSites(String column, UUID activityId, Collection<UUID> userSiteIds) {
+        var sql = """
+                update activity_progress
+                    set %1$s = %1$s || array(select distinct u from unnest(cast(string_to_array(:userSiteIds, ',') as uuid[])) u where u <> all(%1$s))
+                    where activity_id = :activityId
+                    returning array_to_string(expected_user_site_ids, ','),
+                              array_to_string(ingested_user_site_ids, ','),
+                              array_to_string(failed_user_site_ids, ',')
+                """.formatted(column);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = entityManager.createNativeQuery(sql)
+                .setParameter("activityId", activityId)
+                .setParameter("userSiteIds", userSiteIds.stream().map(UUID::toString).collect(joining(",")))
+                .getResultList();
+
+        return rows.stream()
+                .findFirst()
+                .map(row -> new ActivityProgress(activityId, toUUIDs(row[0]), toUUIDs(row[1]), toUUIDs(row[2])));
+    }
+
+    private static Set<UUID> toUUIDs(Object commaSeparated) {
+        if (commaSeparated == null || ((String) commaSeparated).isEmpty()) {
+            return Set.of();
+        }
+        return Arrays.stream(((String) commaSeparated).split(","))
+                .map(UUID::fromString)
+                .collect(toSet());
+    }
+}
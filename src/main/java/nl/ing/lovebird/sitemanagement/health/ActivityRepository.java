@@ -1,8 +1,6 @@
 package nl.ing.lovebird.sitemanagement.health;
 
 import nl.ing.lovebird.activityevents.EventType;
-import org.springframework.data.jpa.repository.Modifying;
-import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.lang.NonNull;
 import org.springframework.transaction.annotation.Transactional;
@@ -15,8 +13,4 @@ public interface ActivityRepository extends CrudRepository<Activity, UUID> {
 
     @Transactional(readOnly = true)
     List<Activity> getAllByUserIdAndStartEventTypeIn(@NonNull UUID userId, Set<EventType> eventTypes);
-
-    @Modifying
-    @Query(nativeQuery = true, value = "delete from activity_events where event_time < now() - cast(?1 || ' days' as interval)")
-    int deleteActivityEventsOlderThanDays(int days);
 }
@@ -0,0 +1,65 @@
+package nl.ing.lovebird.sitemanagement.health;
+
+import com.vladmihalcea.hibernate.type.util.JacksonUtil;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static nl.ing.lovebird.sitemanagement.health.ActivityEvent.*;
+
+/**
+ * Stores many {@link ActivityEvent}s at once, next to the {@link EventRepository} that stores them one at a time.
+ * <p>
+ * The events are serialized with the same object mapper as the {@code jsonb} type of {@link ActivityEvent#getEvent()},
+ * so they read back the same as events stored by the {@link EventRepository}.
+ */
+@Repository
+public class EventBatchRepository {
+
+    /**
+     * Postgres allows 65535 parameters per statement, an event takes 5.
+     */
+    static final int MAX_EVENTS_PER_STATEMENT = 1000;
+
+    @PersistenceContext(unitName = "entityManager")
+    private final EntityManager entityManager;
+
+    public EventBatchRepository(@Qualifier("entityManager") EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Inserts the events with one multi-row insert per {@value #MAX_EVENTS_PER_STATEMENT} events.
+     */
+    @Transactional
+    public void insertAll(List<ActivityEvent> events) {
+        for (int from = 0; from < events.size(); from += MAX_EVENTS_PER_STATEMENT) {
+            insert(events.subList(from, Math.min(from + MAX_EVENTS_PER_STATEMENT, events.size())));
+        }
+    }
+
+    private void insert(List<ActivityEvent> events) {
+        var values = IntStream.range(0, events.size())
+                .mapToObj(i -> "(:eventId%1$d, :activityId%1$d, :userId%1$d, cast(:event%1$d as jsonb), :eventTime%1$d)".formatted(i))
+                .collect(Collectors.joining(", "));
+        Query query = entityManager.createNativeQuery("insert into %s (%s, %s, %s, %s, %s) values %s".formatted(
+                TABLE, EVENT_ID_COLUMN, ACTIVITY_ID_COLUMN, USER_ID_COLUMN, EVENT_COLUMN, EVENT_TIME_COLUMN, values));
+        for (int i = 0; i < events.size(); i++) {
+            ActivityEvent event = events.get(i);
+            query.setParameter("eventId" + i, event.getEventId())
+                    .setParameter("activityId" + i, event.getActivityId())
+                    .setParameter("userId" + i, event.getUserId())
+                    .setParameter("event" + i, JacksonUtil.toString(event.getEvent()))
+                    .setParameter("eventTime" + i, Timestamp.from(event.getEventTime()));
+        }
+        query.executeUpdate();
+    }
+}
@@ -1,17 +1,21 @@
 package nl.ing.lovebird.sitemanagement.health;
 
-import org.springframework.data.jpa.repository.Modifying;
-import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
+/**
+ * The events of an activity are looked up by activity id in every daily partition (see
+ * {@link ActivityPartitionRepository}).  The time of an event is set by the service that sends it, so there is no bound
+ * on how long before the start of the activity an event can be, and the queries do not prune partitions on it.
+ */
 public interface EventRepository extends CrudRepository<ActivityEvent, UUID> {
 
     List<ActivityEvent> findAllByActivityIdOrderByEventTimeAsc(UUID activityId);
 
-    @Modifying
-    @Query(nativeQuery = true, value = "delete from activity where start_time < now() - cast(?1 || ' days' as interval)")
-    int deleteActivitiesOlderThanDays(int days);
+    Optional<ActivityEvent> findFirstByActivityIdOrderByEventTimeAsc(UUID activityId);
+
+    long countByActivityId(UUID activityId);
 }
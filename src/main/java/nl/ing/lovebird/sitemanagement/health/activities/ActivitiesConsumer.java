@@ -10,13 +10,19 @@ import nl.ing.lovebird.activityevents.events.serializer.ActivityEventSerializer;
 import nl.ing.lovebird.clienttokens.ClientUserToken;
 import nl.ing.lovebird.clienttokens.requester.service.ClientTokenRequesterService;
 import nl.ing.lovebird.sitemanagement.health.HealthMetrics;
+import nl.ing.lovebird.sitemanagement.health.activities.ActivityService.ClientUserTokenAndEvent;
 import nl.ing.lovebird.sitemanagement.health.dspipeline.UserContext;
+import nl.ing.lovebird.sitemanagement.lib.spring.kafka.RecordHeaderConverter;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static nl.ing.lovebird.clienttokens.constants.ClientTokenConstants.CLIENT_TOKEN_HEADER_NAME;
@@ -29,48 +35,103 @@ class ActivitiesConsumer {
     private final ActivityService activityService;
     private final HealthMetrics healthMetrics;
     private final ClientTokenRequesterService clientTokenRequesterService;
+    private final RecordHeaderConverter recordHeaderConverter;
 
     @KafkaListener(
             topics = "${yolt.kafka.topics.activityEvents.topic-name}",
             concurrency = "${yolt.kafka.topics.activityEvents.listener-concurrency}",
-            groupId = "site-management-health-consumer"
+            groupId = "site-management-health-consumer",
+            autoStartup = "#{!${yolt.kafka.topics.activityEvents.batch-listener:false}}"
     )
     void activityUpdate(@Header(KafkaHeaders.RECEIVED_MESSAGE_KEY) @NonNull final String key,
                         @Header(value = UserContext.USER_CONTEXT_HEADER_KEY, required = false) final String userContextHeader,
                         @Header(value = CLIENT_TOKEN_HEADER_NAME, required = false) ClientUserToken clientUserToken,
                         @Payload final AbstractEvent event) {
         try {
-            // There is 1 case where we don't get a ClientUserToken, and that is upon receiving a TRANSACTIONS_ENRICHMENT_FINISHED
-            // event with status TIMEOUT from A&T.  It doesn't contain a ClientUserToken because A&T can't request one.
-            if (event instanceof TransactionsEnrichmentFinishedEvent tefe && tefe.getStatus() == TransactionsEnrichmentFinishedEvent.Status.TIMEOUT && clientUserToken == null) {
-                if (userContextHeader == null) {
-                    throw new IllegalStateException("Received a TransactionsEnrichmentFinishedEvent with status TIMEOUT without either a ClientUserToken or UserContext.  Expecting at least one.");
-                }
-                UserContext userContext = parse(userContextHeader);
-                log.info("Hack: requesting clientUserToken on behalf of accounts-and-transactions.");
-                clientUserToken = clientTokenRequesterService.getClientUserToken(userContext.getClientId(), userContext.getUserId());
-            }
+            clientUserToken = validate(key, userContextHeader, clientUserToken, event);
+
+            activityService.handleEvent(clientUserToken, event);
+
+        } catch (Exception e) {
+            log.error("Unexpected exception reading activities: {}", e.getMessage(), e);
+        }
+    }
 
-            if (clientUserToken == null) {
-                throw new IllegalStateException("Expected a ClientUserToken, did not receive it.");
+    /**
+     * Batch variant of {@link #activityUpdate}, started instead of it when
+     * {@code yolt.kafka.topics.activityEvents.batch-listener} is enabled.
+     * <p>
+     * The events are grouped per activity and every group is handled in the order of its records, see
+     * {@link ActivityService#handleEvents(UUID, List)}.  An event that cannot be read is logged and skipped, like the
+     * record listener does, and a group that fails does not stop the other groups.
+     */
+    @KafkaListener(
+            topics = "${yolt.kafka.topics.activityEvents.topic-name}",
+            concurrency = "${yolt.kafka.topics.activityEvents.listener-concurrency}",
+            groupId = "site-management-health-consumer",
+            autoStartup = "${yolt.kafka.topics.activityEvents.batch-listener:false}",
+            batch = "true"
+    )
+    void activityUpdates(@Header(KafkaHeaders.RECEIVED_MESSAGE_KEY) final List<String> keys,
+                         @Header(KafkaHeaders.BATCH_CONVERTED_HEADERS) final List<Map<String, Object>> headers,
+                         @Payload final List<AbstractEvent> events) {
+        Map<UUID, List<ClientUserTokenAndEvent>> eventsPerActivity = new LinkedHashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            AbstractEvent event = events.get(i);
+            try {
+                if (event == null) {
+                    throw new IllegalArgumentException("Could not convert the activity event with key " + keys.get(i));
+                }
+                ClientUserToken clientUserToken = validate(keys.get(i),
+                        recordHeaderConverter.convert(headers.get(i).get(UserContext.USER_CONTEXT_HEADER_KEY), String.class),
+                        recordHeaderConverter.convert(headers.get(i).get(CLIENT_TOKEN_HEADER_NAME), ClientUserToken.class),
+                        event);
+                eventsPerActivity.computeIfAbsent(event.getActivityId(), activityId -> new ArrayList<>())
+                        .add(new ClientUserTokenAndEvent(clientUserToken, event));
+            } catch (Exception e) {
+                log.error("Unexpected exception reading activities: {}", e.getMessage(), e);
             }
+        }
 
-            ActivityEventKey eventKey = ActivityEventSerializer.deserializeKey(key);
-            if (!eventKey.getActivityId().equals(event.getActivityId())) {
-                throw new IllegalArgumentException("activity event with eventKey.activityId != event.activityId");
+        eventsPerActivity.forEach((activityId, activityEvents) -> {
+            try {
+                activityService.handleEvents(activityId, activityEvents);
+            } catch (Exception e) {
+                log.error("Unexpected exception handling {} events of activity {}: {}", activityEvents.size(), activityId, e.getMessage(), e);
             }
+        });
+    }
 
-            if (eventKey.getRequestTraceId() != null && !eventKey.getRequestTraceId().equals(new UUID(0, 0))) {
-                log.warn("Received ActivityEventKey(type={}) with variable requestTraceId({}).", event.getType(), eventKey.getRequestTraceId());
+    /**
+     * @return the client-token to handle the event with
+     */
+    private ClientUserToken validate(final String key, final String userContextHeader, ClientUserToken clientUserToken, final AbstractEvent event) {
+        // There is 1 case where we don't get a ClientUserToken, and that is upon receiving a TRANSACTIONS_ENRICHMENT_FINISHED
+        // event with status TIMEOUT from A&T.  It doesn't contain a ClientUserToken because A&T can't request one.
+        if (event instanceof TransactionsEnrichmentFinishedEvent tefe && tefe.getStatus() == TransactionsEnrichmentFinishedEvent.Status.TIMEOUT && clientUserToken == null) {
+            if (userContextHeader == null) {
+                throw new IllegalStateException("Received a TransactionsEnrichmentFinishedEvent with status TIMEOUT without either a ClientUserToken or UserContext.  Expecting at least one.");
             }
+            UserContext userContext = parse(userContextHeader);
+            log.info("Hack: requesting clientUserToken on behalf of accounts-and-transactions.");
+            clientUserToken = clientTokenRequesterService.getClientUserToken(userContext.getClientId(), userContext.getUserId());
+        }
 
-            healthMetrics.incrementReceivedActivityEventOfType(event.getType());
+        if (clientUserToken == null) {
+            throw new IllegalStateException("Expected a ClientUserToken, did not receive it.");
+        }
 
-            activityService.handleEvent(clientUserToken, event);
+        ActivityEventKey eventKey = ActivityEventSerializer.deserializeKey(key);
+        if (!eventKey.getActivityId().equals(event.getActivityId())) {
+            throw new IllegalArgumentException("activity event with eventKey.activityId != event.activityId");
+        }
 
-        } catch (Exception e) {
-            log.error("Unexpected exception reading activities: {}", e.getMessage(), e);
+        if (eventKey.getRequestTraceId() != null && !eventKey.getRequestTraceId().equals(new UUID(0, 0))) {
+            log.warn("Received ActivityEventKey(type={}) with variable requestTraceId({}).", event.getType(), eventKey.getRequestTraceId());
         }
+
+        healthMetrics.incrementReceivedActivityEventOfType(event.getType());
+        return clientUserToken;
     }
 
     private UserContext parse(String userContextHeader) {
@@ -5,6 +5,7 @@ import nl.ing.lovebird.activityevents.events.AbstractEvent;
 import nl.ing.lovebird.activityevents.events.IngestionFinishedEvent;
 import nl.ing.lovebird.activityevents.events.RefreshedUserSiteEvent;
 import nl.ing.lovebird.activityevents.events.UserSiteStartEvent;
+import nl.ing.lovebird.sitemanagement.health.ActivityProgress;
 
 import java.util.HashSet;
 import java.util.List;
@@ -57,6 +58,30 @@ final class ActivityDoneChecker {
         }
     }
 
+    /**
+     * Same as {@link #isLastProcessedUserSite(List, AbstractEvent)}, but based on the incrementally maintained
+     * {@link ActivityProgress} instead of all events of the activity.
+     */
+    static boolean isLastProcessedUserSite(final ActivityProgress progress, AbstractEvent currentEvent) {
+        if (progress.expectedUserSiteIds().isEmpty()) {
+            throw new IllegalActivityStateException("Activity " + currentEvent.getActivityId() + " not ready yet. Got "
+                    + currentEvent.getClass().getSimpleName() + " while there are no expected user sites yet.");
+        }
+
+        if (progress.allUserSitesProcessed()) {
+            log.info("Activity {} is done. Ingested user sites {}, failed user sites {}.",
+                    currentEvent.getActivityId(),
+                    progress.ingestedUserSiteIds(),
+                    progress.failedUserSiteIds());
+            return true;
+        } else {
+            log.info("Activity {} is not done yet. Waiting for ingestion of usersites {}",
+                    currentEvent.getActivityId(),
+                    progress.pendingUserSiteIds());
+            return false;
+        }
+    }
+
     private static <T> Set<T> getDistinctEvents(final List<AbstractEvent> abstractEvents, Class<T> clazz) {
         //noinspection unchecked
         return abstractEvents.stream()
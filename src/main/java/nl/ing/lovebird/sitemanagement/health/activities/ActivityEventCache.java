@@ -0,0 +1,134 @@
+package nl.ing.lovebird.sitemanagement.health.activities;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.NonNull;
+import nl.ing.lovebird.activityevents.events.AbstractEvent;
+import nl.ing.lovebird.activityevents.events.AggregationFinishedEvent;
+import nl.ing.lovebird.activityevents.events.TransactionsEnrichmentFinishedEvent;
+import nl.ing.lovebird.sitemanagement.health.ActivityEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * In-memory cache of the deserialized events of the most recently used activities.
+ * <p>
+ * While an activity is running its events are read many times in a short period (done check, pipeline trigger,
+ * webhooks).  Deserializing the jsonb of all events every time is expensive, so we keep them here.
+ * <p>
+ * Events of an activity can be stored by any pod, so a cached entry is only used if it contains as many events as
+ * there are stored in the database.  Counting the events is cheap compared to loading them.  Events stored by this pod
+ * are added to the cache directly (write-through) so they do not invalidate the entry.
+ * <p>
+ * Entries expire {@link #ttl} after they were last written, or {@link #completedActivityTtl} after the activity
+ * finished.  At most {@link #maxActivities} activities are cached, the least recently used ones are removed first.
+ */
+@Component
+class ActivityEventCache {
+
+    private static final Comparator<ActivityEvent> BY_EVENT_TIME = Comparator.comparing(ActivityEvent::getEventTime);
+
+    private final Clock clock;
+    private final int maxActivities;
+    private final Duration ttl;
+    private final Duration completedActivityTtl;
+    private final Counter hits;
+    private final Counter misses;
+
+    private final LinkedHashMap<UUID, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    ActivityEventCache(Clock clock,
+                       MeterRegistry meterRegistry,
+                       @Value("${lovebird.health.activityEventCache.maxActivities:1000}") int maxActivities,
+                       @Value("${lovebird.health.activityEventCache.ttl:PT10M}") Duration ttl,
+                       @Value("${lovebird.health.activityEventCache.completedActivityTtl:PT1M}") Duration completedActivityTtl) {
+        this.clock = clock;
+        this.maxActivities = maxActivities;
+        this.ttl = ttl;
+        this.completedActivityTtl = completedActivityTtl;
+        this.hits = meterRegistry.counter("activity_events_cache_requests", "result", "hit");
+        this.misses = meterRegistry.counter("activity_events_cache_requests", "result", "miss");
+        Gauge.builder("activity_events_cache_size", this, ActivityEventCache::size)
+                .description("number of activities of which the events are cached")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param storedEvents the number of events of the activity in the database
+     * @return the cached events, or empty if the activity is not cached or the cached events are outdated
+     */
+    synchronized Optional<List<AbstractEvent>> get(@NonNull UUID activityId, long storedEvents) {
+        Entry entry = entries.get(activityId);
+        if (entry == null || entry.isExpired(Instant.now(clock)) || entry.events().size() != storedEvents) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry.events().stream().map(ActivityEvent::getEvent).toList());
+    }
+
+    /**
+     * @param events all events of the activity, ordered by event time
+     */
+    synchronized void put(@NonNull UUID activityId, @NonNull List<ActivityEvent> events) {
+        Duration timeToLive = events.stream().anyMatch(event -> isFinalEvent(event.getEvent())) ? completedActivityTtl : ttl;
+        entries.put(activityId, new Entry(List.copyOf(events), Instant.now(clock).plus(timeToLive)));
+        evictIfFull();
+    }
+
+    /**
+     * Adds a newly stored event to the cached events of its activity.  Nothing is cached if the activity is not
+     * cached yet, as we do not know its other events, or if the event is already cached because the activity was
+     * loaded from the database after the event was stored.
+     */
+    synchronized void append(@NonNull ActivityEvent event) {
+        Entry entry = entries.get(event.getActivityId());
+        if (entry == null || entry.events().stream().anyMatch(cached -> cached.getEventId().equals(event.getEventId()))) {
+            return;
+        }
+        List<ActivityEvent> events = new ArrayList<>(entry.events());
+        events.add(event);
+        // Stable sort, so events with the same time stay in the order in which they were stored.
+        events.sort(BY_EVENT_TIME);
+        Duration timeToLive = isFinalEvent(event.getEvent()) ? completedActivityTtl : ttl;
+        entries.put(event.getActivityId(), new Entry(List.copyOf(events), Instant.now(clock).plus(timeToLive)));
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void evictIfFull() {
+        if (entries.size() <= maxActivities) {
+            return;
+        }
+        Instant now = Instant.now(clock);
+        entries.values().removeIf(entry -> entry.isExpired(now));
+        var iterator = entries.entrySet().iterator();
+        while (entries.size() > maxActivities && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static boolean isFinalEvent(AbstractEvent event) {
+        return event instanceof AggregationFinishedEvent || event instanceof TransactionsEnrichmentFinishedEvent;
+    }
+
+    private record Entry(List<ActivityEvent> events, Instant expiresAt) {
+        boolean isExpired(Instant now) {
+            return !now.isBefore(expiresAt);
+        }
+    }
+}
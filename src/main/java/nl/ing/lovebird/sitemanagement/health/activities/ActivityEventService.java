@@ -4,13 +4,24 @@ import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import nl.ing.lovebird.activityevents.events.AbstractEvent;
+import nl.ing.lovebird.activityevents.events.IngestionFinishedEvent;
+import nl.ing.lovebird.activityevents.events.RefreshedUserSiteEvent;
+import nl.ing.lovebird.activityevents.events.StartEvent;
+import nl.ing.lovebird.activityevents.events.UserSiteStartEvent;
 import nl.ing.lovebird.sitemanagement.health.ActivityEvent;
+import nl.ing.lovebird.sitemanagement.health.ActivityProgress;
+import nl.ing.lovebird.sitemanagement.health.ActivityProgressRepository;
+import nl.ing.lovebird.sitemanagement.health.EventBatchRepository;
 import nl.ing.lovebird.sitemanagement.health.EventRepository;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -25,24 +36,110 @@ import static java.time.temporal.ChronoUnit.MILLIS;
 public class ActivityEventService {
 
     private final EventRepository eventRepository;
+    private final EventBatchRepository eventBatchRepository;
+    private final ActivityProgressRepository activityProgressRepository;
+    private final ActivityEventCache activityEventCache;
 
     void storeEvent(final @NonNull AbstractEvent event) {
         var eventId = UUID.randomUUID();
         var newEvent = new ActivityEvent(eventId, event.getActivityId(), event.getUserId(), event, getTruncatedInstant(event.getTime()));
         eventRepository.save(newEvent);
+        appendToCacheAfterCommit(List.of(newEvent));
+
+        if (event instanceof UserSiteStartEvent startEvent) {
+            activityProgressRepository.create(startEvent.getActivityId(), newEvent.getEventTime(), startEvent.getUserSiteIds());
+        }
     }
 
-    List<AbstractEvent> getAllEvents(final @NonNull UUID activityId) {
-        return eventRepository.findAllByActivityIdOrderByEventTimeAsc(activityId).stream()
+    /**
+     * Stores an {@link IngestionFinishedEvent} or {@link RefreshedUserSiteEvent} and registers its user-site as
+     * ingested or failed in the {@link ActivityProgress} of the activity.
+     *
+     * @return the progress of the activity including this event, or empty if the progress of the activity is not
+     * tracked (activities that started before the progress was introduced)
+     * <p>
+     * Public, because the transaction is only applied to public methods called through the Spring proxy.  The event
+     * and the progress are committed together.
+     */
+    @Transactional
+    public Optional<ActivityProgress> storeEventAndUpdateProgress(final @NonNull AbstractEvent event) {
+        storeEvent(event);
+
+        if (event instanceof IngestionFinishedEvent ingestionFinishedEvent) {
+            return activityProgressRepository.markIngested(event.getActivityId(), ingestionFinishedEvent.getUserSiteId());
+        } else if (event instanceof RefreshedUserSiteEvent refreshedUserSiteEvent) {
+            return activityProgressRepository.markFailed(event.getActivityId(), refreshedUserSiteEvent.getUserSiteId());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Same as {@link #storeEventAndUpdateProgress(AbstractEvent)} for many {@link IngestionFinishedEvent}s of one
+     * activity, with one insert for the events and one update of the {@link ActivityProgress}.
+     *
+     * @return the progress of the activity including these events, or empty if the progress of the activity is not
+     * tracked
+     * <p>
+     * Public, because the transaction is only applied to public methods called through the Spring proxy.  If the
+     * progress cannot be updated the events are not stored either, so they can be stored again one at a time.
+     */
+    @Transactional
+    public Optional<ActivityProgress> storeEventsAndUpdateProgress(final @NonNull UUID activityId, final @NonNull List<IngestionFinishedEvent> events) {
+        var newEvents = events.stream()
+                .map(event -> new ActivityEvent(UUID.randomUUID(), activityId, event.getUserId(), event, getTruncatedInstant(event.getTime())))
+                .toList();
+        eventBatchRepository.insertAll(newEvents);
+        appendToCacheAfterCommit(newEvents);
+
+        return activityProgressRepository.markIngested(activityId, events.stream().map(IngestionFinishedEvent::getUserSiteId).toList());
+    }
+
+    /**
+     * Only deserializes the first event of the activity, which is its start event.
+     */
+    Optional<StartEvent> getStartEvent(final @NonNull UUID activityId) {
+        return eventRepository.findFirstByActivityIdOrderByEventTimeAsc(activityId)
                 .map(ActivityEvent::getEvent)
-                .collect(Collectors.toList());
+                .filter(StartEvent.class::isInstance)
+                .map(StartEvent.class::cast);
+    }
+
+    /**
+     * Served from the {@link ActivityEventCache} if it is up-to-date, which only requires counting the stored events.
+     */
+    List<AbstractEvent> getAllEvents(final @NonNull UUID activityId) {
+        long storedEvents = eventRepository.countByActivityId(activityId);
+        return activityEventCache.get(activityId, storedEvents).orElseGet(() -> {
+            var events = eventRepository.findAllByActivityIdOrderByEventTimeAsc(activityId);
+            activityEventCache.put(activityId, events);
+            return events.stream()
+                    .map(ActivityEvent::getEvent)
+                    .collect(Collectors.toList());
+        });
+    }
+
+    /**
+     * Events of a transaction that is rolled back must not end up in the {@link ActivityEventCache}, so they are only
+     * appended once the transaction is committed.  Without a transaction the event is already stored.
+     */
+    private void appendToCacheAfterCommit(List<ActivityEvent> events) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            events.forEach(activityEventCache::append);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                events.forEach(activityEventCache::append);
+            }
+        });
     }
 
     private Instant getTruncatedInstant(ZonedDateTime zonedDateTime) {
         return zonedDateTime.toInstant().truncatedTo(MILLIS);
     }
 
-    int deleteActivitiesOlderThanDays(int days) {
-        return eventRepository.deleteActivitiesOlderThanDays(days);
+    int deleteActivityProgressOlderThanDays(int days) {
+        return activityProgressRepository.deleteOlderThanDays(days);
     }
 }
@@ -0,0 +1,96 @@
+package nl.ing.lovebird.sitemanagement.health.activities;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import nl.ing.lovebird.sitemanagement.health.ActivityPartitionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+
+import static nl.ing.lovebird.sitemanagement.health.ActivityPartitionRepository.PARTITIONED_TABLES;
+
+/**
+ * Keeps the daily partitions of the activity tables (see {@link ActivityPartitionRepository}) in shape: the partitions
+ * of the coming days are created ahead of time, and old activities are removed by dropping their partitions.
+ */
+@Slf4j
+@Service
+public class ActivityPartitionService {
+
+    private final Clock clock;
+    private final ActivityPartitionRepository activityPartitionRepository;
+    private final int daysAhead;
+    private final Counter failedPartitionCreations;
+
+    public ActivityPartitionService(Clock clock,
+                                    MeterRegistry meterRegistry,
+                                    ActivityPartitionRepository activityPartitionRepository,
+                                    @Value("${lovebird.health.activityPartitions.daysAhead:14}") int daysAhead) {
+        this.clock = clock;
+        this.activityPartitionRepository = activityPartitionRepository;
+        this.daysAhead = daysAhead;
+        this.failedPartitionCreations = meterRegistry.counter("activity_partitions_failed_creations");
+    }
+
+    /**
+     * Creates the missing partitions of today and the next {@link #daysAhead} days.
+     * <p>
+     * Creating a partition fails if the default partition already contains rows of that day.  Those rows (and new
+     * rows of that day) then stay in the default partition, which works but is not efficient, hence the metric.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${lovebird.health.activityPartitions.createCron:0 7 * * * *}")
+    public void createPartitionsAhead() {
+        LocalDate today = LocalDate.now(clock.withZone(ZoneOffset.UTC));
+        PARTITIONED_TABLES.keySet().forEach(table -> {
+            var existing = new HashSet<>(activityPartitionRepository.findPartitionDays(table));
+            for (LocalDate day = today; !day.isAfter(today.plusDays(daysAhead)); day = day.plusDays(1)) {
+                if (existing.contains(day)) {
+                    continue;
+                }
+                try {
+                    activityPartitionRepository.createPartition(table, day);
+                    log.info("Created partition of {} for {}", table, day);
+                } catch (RuntimeException e) {
+                    // Another pod might have created it at the same time.
+                    failedPartitionCreations.increment();
+                    log.warn("Failed to create partition of {} for {}", table, day, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the partitions that only contain rows older than the given number of days.  A partition is only dropped
+     * once the whole day is older, so rows are kept up to a day longer than requested.
+     *
+     * @return the number of dropped partitions
+     */
+    int dropPartitionsOlderThanDays(int days) {
+        Instant cutoff = Instant.now(clock).minus(Duration.ofDays(days));
+        LocalDate cutoffDay = LocalDate.ofInstant(cutoff, ZoneOffset.UTC);
+        int dropped = 0;
+        for (String table : PARTITIONED_TABLES.keySet()) {
+            for (LocalDate day : activityPartitionRepository.findPartitionDays(table)) {
+                // The partition holds [day, day + 1), so it can go if day + 1 <= the day of the cutoff.
+                if (day.plusDays(1).isAfter(cutoffDay)) {
+                    continue;
+                }
+                activityPartitionRepository.dropPartition(table, day);
+                dropped++;
+            }
+            activityPartitionRepository.deleteFromDefaultPartitionBefore(table, cutoff);
+        }
+        return dropped;
+    }
+}
@@ -6,7 +6,7 @@ import lombok.extern.slf4j.Slf4j;
 import nl.ing.lovebird.activityevents.events.*;
 import nl.ing.lovebird.clienttokens.ClientUserToken;
 import nl.ing.lovebird.sitemanagement.exception.UserSiteNotFoundException;
-import nl.ing.lovebird.sitemanagement.health.ActivityRepository;
+import nl.ing.lovebird.sitemanagement.health.ActivityProgress;
 import nl.ing.lovebird.sitemanagement.health.webhook.ClientWebhookService;
 import nl.ing.lovebird.sitemanagement.usersite.ConnectionStatus;
 import nl.ing.lovebird.sitemanagement.usersite.FailureReason;
@@ -14,13 +14,14 @@ import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSite;
 import nl.ing.lovebird.sitemanagement.usersite.UserSiteService;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
 import java.time.Clock;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
@@ -43,7 +44,7 @@ public class ActivityService {
 
     private final Clock clock;
 
-    private final ActivityRepository activityRepository;
+    private final ActivityPartitionService activityPartitionService;
     private final ActivityEventService activityEventService;
     private final AggregationFinishedService aggregationFinishedService;
     private final ClientWebhookService clientWebhookService;
@@ -55,7 +56,8 @@ public class ActivityService {
      * This method is used to determine whether we are done fetching data and/or ingesting the data we fetched for an activity.
      * <p>
      * The {@link ActivityDoneChecker} is used to determine if we received all expected events for the UserSites
-     * associated with this activity.
+     * associated with this activity, based on the {@link ActivityProgress} that is updated together with storing the event.
+     * All events of the activity are only loaded once the activity is done.
      * <p>
      * If we managed to ingest >= 1 UserSite, an activity is considered successful.
      * If we did not manage to ingest any UserSite we will push a webhook and register the endtime if the
@@ -70,8 +72,31 @@ public class ActivityService {
         var event = new RefreshedUserSiteEvent(clientUserToken.getUserIdClaim(), activityId, ZonedDateTime.now(clock), userSiteId,
                 map(connectionStatus), map(failureReason), status);
 
-        activityEventService.storeEvent(event);
+        var progress = activityEventService.storeEventAndUpdateProgress(event);
+        if (progress.isEmpty()) {
+            handleFailedRefreshWithoutProgress(clientUserToken, activityId, event);
+            return;
+        }
+
+        if (isLastProcessedUserSite(progress.get(), event)) {
+            var relatedEvents = getRelatedEvents(activityId);
+            if (progress.get().anyUserSiteIngested()) {
+                log.info("anyMatch: IngestionFinishedEvent: true");
+                aggregationFinishedService.trigger(clientUserToken, activityId, relatedEvents);
+            } else {
+                clientWebhookService.push(clientUserToken, relatedEvents, event);
+                persistedActivityService.setEndTimeIfActivityFailed(event);
+            }
+        }
+    }
 
+    /**
+     * Fallback for activities of which the {@link ActivityProgress} is not tracked, because they started before it
+     * was introduced.  Can be removed once those activities have been cleaned up.
+     */
+    private void handleFailedRefreshWithoutProgress(final @NonNull ClientUserToken clientUserToken,
+                                                    final @NonNull UUID activityId,
+                                                    final @NonNull RefreshedUserSiteEvent event) {
         var relatedEvents = getRelatedEvents(activityId);
 
         if (isLastProcessedUserSite(relatedEvents, event)) {
@@ -110,6 +135,83 @@ public class ActivityService {
         }
     }
 
+    /**
+     * Handles the events of one activity in the given order, as {@link #handleEvent(ClientUserToken, AbstractEvent)}
+     * does one at a time.  Consecutive {@link IngestionFinishedEvent}s are stored together, see
+     * {@link #handleIngestionFinishedEvents(UUID, List)}.
+     */
+    void handleEvents(final @NonNull UUID activityId, final @NonNull List<ClientUserTokenAndEvent> events) {
+        List<ClientUserTokenAndEvent> ingestionFinishedEvents = new ArrayList<>();
+        for (ClientUserTokenAndEvent event : events) {
+            if (event.event() instanceof IngestionFinishedEvent typedEvent && !isSpontaneousCallback(typedEvent)) {
+                ingestionFinishedEvents.add(event);
+                continue;
+            }
+            handleIngestionFinishedEvents(activityId, ingestionFinishedEvents);
+            ingestionFinishedEvents.clear();
+            handleEvent(event.clientUserToken(), event.event());
+        }
+        handleIngestionFinishedEvents(activityId, ingestionFinishedEvents);
+    }
+
+    /**
+     * Stores the events with one insert and evaluates once, with the last event, whether the activity is done.  A
+     * client still gets a {@code DATA_SAVED} webhook per user-site.
+     * <p>
+     * If the events cannot be stored together, none of them is stored and they are handled one at a time, so one
+     * faulty event does not take the others down with it.
+     */
+    private void handleIngestionFinishedEvents(final @NonNull UUID activityId, final @NonNull List<ClientUserTokenAndEvent> events) {
+        if (events.size() <= 1) {
+            events.forEach(event -> handleEvent(event.clientUserToken(), event.event()));
+            return;
+        }
+
+        List<IngestionFinishedEvent> ingestionFinishedEvents = events.stream()
+                .map(event -> (IngestionFinishedEvent) event.event())
+                .toList();
+        Optional<ActivityProgress> progress;
+        try {
+            progress = activityEventService.storeEventsAndUpdateProgress(activityId, ingestionFinishedEvents);
+        } catch (RuntimeException e) {
+            log.warn("Could not store {} events of activity {} at once, handling them one at a time.", events.size(), activityId, e);
+            events.forEach(event -> handleEvent(event.clientUserToken(), event.event()));
+            return;
+        }
+
+        events.forEach(event -> updateLastDataFetch(event.clientUserToken().getUserIdClaim(),
+                ((IngestionFinishedEvent) event.event()).getUserSiteId(), event.event().getTime()));
+
+        // Whether the activity is done only depends on the last event, it is evaluated (and the aggregation triggered)
+        // once for all of them.  The DATA_SAVED webhooks of the events before it only need the start event.
+        var lastEvent = events.get(events.size() - 1);
+        List<AbstractEvent> lastEventWebhookEvents;
+        if (progress.isEmpty()) {
+            // See handleIngestionFinishedEventWithoutProgress.
+            lastEventWebhookEvents = getRelatedEvents(activityId);
+            if (isLastProcessedUserSite(lastEventWebhookEvents, lastEvent.event())) {
+                aggregationFinishedService.trigger(lastEvent.clientUserToken(), activityId, lastEventWebhookEvents);
+            }
+        } else if (isLastProcessedUserSite(progress.get(), lastEvent.event())) {
+            lastEventWebhookEvents = getRelatedEvents(activityId);
+            aggregationFinishedService.trigger(lastEvent.clientUserToken(), activityId, lastEventWebhookEvents);
+        } else {
+            lastEventWebhookEvents = null;
+        }
+
+        var startEvent = activityEventService.getStartEvent(activityId);
+        List<AbstractEvent> webhookEvents;
+        if (startEvent.isPresent()) {
+            webhookEvents = List.of(startEvent.get());
+        } else {
+            webhookEvents = lastEventWebhookEvents != null ? lastEventWebhookEvents : getActivityEvents(activityId);
+        }
+        for (ClientUserTokenAndEvent event : events) {
+            boolean withAllEvents = event == lastEvent && lastEventWebhookEvents != null;
+            clientWebhookService.push(event.clientUserToken(), withAllEvents ? lastEventWebhookEvents : webhookEvents, event.event());
+        }
+    }
+
     public List<AbstractEvent> getActivityEvents(final UUID activityId) {
         return activityEventService.getAllEvents(activityId);
     }
@@ -148,8 +250,31 @@ public class ActivityService {
             return;
         }
 
-        activityEventService.storeEvent(event);
+        var activityId = event.getActivityId();
+        var progress = activityEventService.storeEventAndUpdateProgress(event);
+        if (progress.isEmpty()) {
+            handleIngestionFinishedEventWithoutProgress(clientUserToken, event);
+            return;
+        }
 
+        if (isLastProcessedUserSite(progress.get(), event)) {
+            var relatedEvents = getRelatedEvents(activityId);
+            aggregationFinishedService.trigger(clientUserToken, activityId, relatedEvents);
+            clientWebhookService.push(clientUserToken, relatedEvents, event);
+        } else {
+            // The DATA_SAVED webhook only needs the start event of the activity, no need to load all events.
+            var startEvent = activityEventService.getStartEvent(activityId);
+            List<AbstractEvent> webhookEvents = startEvent.isPresent() ? List.of(startEvent.get()) : getActivityEvents(activityId);
+            clientWebhookService.push(clientUserToken, webhookEvents, event);
+        }
+    }
+
+    /**
+     * Fallback for activities of which the {@link ActivityProgress} is not tracked, because they started before it
+     * was introduced.  Can be removed once those activities have been cleaned up.
+     */
+    private void handleIngestionFinishedEventWithoutProgress(final @NonNull ClientUserToken clientUserToken,
+                                                             final @NonNull IngestionFinishedEvent event) {
         var activityId = event.getActivityId();
         var relatedEvents = getRelatedEvents(activityId);
 
@@ -185,24 +310,27 @@ public class ActivityService {
 
     /**
      * Delete activities older than X days.
+     * <p>
+     * The activities and their events are removed by dropping the daily partitions they are in, see
+     * {@link ActivityPartitionService}.  Every partition is dropped in its own short transaction.  The number of
+     * removed activities is not known, only the number of dropped partitions is logged.
      */
     @Async
-    @Transactional
-    public CompletableFuture<Integer> deleteActivitiesOlderThanDays(int days) {
+    public CompletableFuture<Void> deleteActivitiesOlderThanDays(int days) {
         if (days <= 0) {
             throw new IllegalArgumentException("days must be > 0");
         }
 
         long msStart = System.currentTimeMillis();
-        int deletedActivityEvents = activityRepository.deleteActivityEventsOlderThanDays(days);
-        long msDeletedActivityEvents = System.currentTimeMillis();
-        int deletedActivities = activityEventService.deleteActivitiesOlderThanDays(days);
+        int droppedPartitions = activityPartitionService.dropPartitionsOlderThanDays(days);
+        long msDroppedPartitions = System.currentTimeMillis();
+        int deletedActivityProgress = activityEventService.deleteActivityProgressOlderThanDays(days);
         long msEnd = System.currentTimeMillis();
-        if (deletedActivityEvents + deletedActivities > 0) {
-            log.info("deleteActivitiesOlderThanDays: activity_events={} ({}ms) activity={} ({}ms)", deletedActivityEvents, msDeletedActivityEvents - msStart, deletedActivities, msEnd - msDeletedActivityEvents);
+        if (droppedPartitions + deletedActivityProgress > 0) {
+            log.info("deleteActivitiesOlderThanDays: dropped_partitions={} ({}ms) deleted_activity_progress={} ({}ms)", droppedPartitions, msDroppedPartitions - msStart, deletedActivityProgress, msEnd - msDroppedPartitions);
         }
 
-        return CompletableFuture.completedFuture(deletedActivities);
+        return CompletableFuture.completedFuture(null);
     }
 
     private List<AbstractEvent> getRelatedEvents(final @NonNull UUID activityId) {
@@ -281,4 +409,7 @@ public class ActivityService {
             case STEP_NEEDED -> nl.ing.lovebird.activityevents.events.ConnectionStatus.STEP_NEEDED;
         };
     }
+
+    record ClientUserTokenAndEvent(@NonNull ClientUserToken clientUserToken, @NonNull AbstractEvent event) {
+    }
 }
@@ -10,6 +10,7 @@ import org.springframework.stereotype.Service;
 
 import java.sql.Date;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 
@@ -33,10 +34,11 @@ public class AccountsServiceV1 {
      * Return the {@link Account}s grouped by {@link AccountDTOv1#type} wrapped as {@link AccountGroup}
      *
      * @param clientUserToken
+     * @param timeout         how long to wait for the accounts
      * @return a list of {@link AccountGroup}
      */
-    public List<AccountGroup> getAccountGroups(ClientUserToken clientUserToken) {
-        var groupedByAccountType = accountsAndTransactionsClient.getAccounts(clientUserToken)
+    public List<AccountGroup> getAccountGroups(ClientUserToken clientUserToken, Duration timeout) {
+        var groupedByAccountType = accountsAndTransactionsClient.getAccounts(clientUserToken, timeout)
                 .stream()
                 .collect(groupingBy(accountDTO -> accountDTO.type, mapping(accountDTO -> Account.builder()
                         .id(accountDTO.id)
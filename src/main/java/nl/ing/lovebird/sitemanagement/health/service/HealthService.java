@@ -1,6 +1,5 @@
 package nl.ing.lovebird.sitemanagement.health.service;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import nl.ing.lovebird.clienttokens.ClientUserToken;
 import nl.ing.lovebird.sitemanagement.accountsandtransactions.dtos.AccountDTOv1.UserSiteDTOv1;
@@ -12,16 +11,37 @@ import nl.ing.lovebird.sitemanagement.health.service.domain.UserHealth;
 import nl.ing.lovebird.sitemanagement.legacy.usersite.LegacyUserSiteService;
 import nl.ing.lovebird.sitemanagement.site.SiteService;
 import nl.ing.lovebird.sitemanagement.usersite.UserSiteService;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
+import static nl.ing.lovebird.sitemanagement.configuration.ApplicationConfiguration.ASYNC_EXECUTOR;
+
+/**
+ * The health of a user: the status of all user-sites of the user, with their accounts.
+ * <p>
+ * The accounts come from accounts-and-transactions, the user-sites (and their consent expiries) from our databases.
+ * Both are fetched at the same time, so the response time is the slowest of the two instead of their sum.  The accounts
+ * are awaited until the {@link #deadline} counted from the start of the request, after that the request fails.  The call
+ * to accounts-and-transactions gets the time that is left until the deadline as its timeout, so it does not outlive the
+ * request.
+ */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class HealthService {
 
     private final AccountsServiceV1 accountsService;
@@ -29,10 +49,30 @@ public class HealthService {
     private final LegacyUserSiteService legacyUserSiteService;
     private final UserSiteService userSiteService;
     private final SiteService siteService;
+    private final TaskExecutor executor;
+    private final Duration deadline;
+
+    public HealthService(AccountsServiceV1 accountsService,
+                         LegacyUserSiteService legacyUserSiteService,
+                         UserSiteService userSiteService,
+                         SiteService siteService,
+                         @Qualifier(ASYNC_EXECUTOR) TaskExecutor executor,
+                         @Value("${lovebird.health.userHealth.deadline:PT5S}") Duration deadline) {
+        this.accountsService = accountsService;
+        this.legacyUserSiteService = legacyUserSiteService;
+        this.userSiteService = userSiteService;
+        this.siteService = siteService;
+        this.executor = executor;
+        this.deadline = deadline;
+    }
 
     public UserHealth getUserHealth(ClientUserToken clientUserToken) {
-        List<AccountGroup> accountGroups = getAccountGroups(clientUserToken);
-        List<UserSiteWithAccounts> userSitesWithAccounts = getUserSitesWithAccounts(clientUserToken.getUserIdClaim(), accountGroups);
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        CompletableFuture<List<AccountGroup>> accountGroupsFuture = getAccountGroupsAsync(clientUserToken, deadlineNanos);
+
+        List<UserSiteWithAccounts> userSitesWithAccounts = getUserSites(clientUserToken.getUserIdClaim());
+        List<AccountGroup> accountGroups = await(accountGroupsFuture, deadlineNanos);
+        addAccounts(userSitesWithAccounts, accountGroups);
 
         List<LovebirdHealthCode> userSitesHealthCodes = userSitesWithAccounts.stream()
                 .map(UserSiteWithAccounts::getLovebirdHealthCode)
@@ -73,13 +113,54 @@ public class HealthService {
         return LovebirdHealthCode.UNKNOWN;
     }
 
-    private List<AccountGroup> getAccountGroups(ClientUserToken clientUserToken) {
-        return accountsService.getAccountGroups(clientUserToken);
+    /**
+     * Fetches the accounts on the executor, or on the calling thread if the executor is full.
+     */
+    private CompletableFuture<List<AccountGroup>> getAccountGroupsAsync(ClientUserToken clientUserToken, long deadlineNanos) {
+        Map<String, String> logContext = MDC.getCopyOfContextMap();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                if (logContext != null) {
+                    MDC.setContextMap(logContext);
+                }
+                try {
+                    return accountsService.getAccountGroups(clientUserToken, untilDeadline(deadlineNanos));
+                } finally {
+                    MDC.clear();
+                }
+            }, executor);
+        } catch (TaskRejectedException e) {
+            log.debug("user-health: no thread available to fetch the accounts concurrently");
+            return CompletableFuture.completedFuture(accountsService.getAccountGroups(clientUserToken, untilDeadline(deadlineNanos)));
+        }
+    }
+
+    private static Duration untilDeadline(long deadlineNanos) {
+        return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * Waits for the accounts until the deadline.  The call itself stops at the deadline by its own timeout, this only
+     * covers the time the fetch waited for a thread of the executor.
+     */
+    private static List<AccountGroup> await(CompletableFuture<List<AccountGroup>> accountGroupsFuture, long deadlineNanos) {
+        try {
+            return accountGroupsFuture.get(untilDeadline(deadlineNanos).toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while fetching the accounts", e);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Fetching the accounts took longer than the deadline of the user-health", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Failed to fetch the accounts", e.getCause());
+        }
     }
 
-    private List<UserSiteWithAccounts> getUserSitesWithAccounts(final UUID userId, final List<AccountGroup> accountGroups) {
-        var nonDeletedUserSites = userSiteService.getNonDeletedUserSites(userId).stream()
-                .map(legacyUserSiteService::createUserSiteDTO)
+    private List<UserSiteWithAccounts> getUserSites(final UUID userId) {
+        return legacyUserSiteService.createUserSiteDTOs(userId, userSiteService.getNonDeletedUserSites(userId)).stream()
                 .map(userSiteDTO -> new UserSiteWithAccounts(
                         userSiteDTO.getId(),
                         siteService.getSiteName(userSiteDTO.getSiteId()),
@@ -90,18 +171,19 @@ public class HealthService {
                         userSiteDTO.getMigrationStatus(),
                         userSiteDTO.isNoLongerSupported())
                 ).toList();
+    }
 
-        if (accountGroups != null) {
-            nonDeletedUserSites.forEach(userSite -> userSite.addAccounts(getAccountsForUserSite(userSite.getId(), accountGroups)));
+    /**
+     * Adds the accounts to their user-site, with a single pass over the accounts.
+     */
+    private static void addAccounts(final List<UserSiteWithAccounts> userSites, final List<AccountGroup> accountGroups) {
+        if (accountGroups == null) {
+            return;
         }
 
-        return nonDeletedUserSites;
-    }
-
-    private List<Account> getAccountsForUserSite(final UUID userSiteId, final List<AccountGroup> accountGroups) {
-        return accountGroups.stream()
+        Map<UUID, List<Account>> accountsByUserSiteId = accountGroups.stream()
                 .flatMap(ag -> ag.getAccounts().stream())
-                .filter(account -> account.getUserSiteId().equals(userSiteId))
-                .collect(Collectors.toList());
+                .collect(Collectors.groupingBy(Account::getUserSiteId));
+        userSites.forEach(userSite -> userSite.addAccounts(accountsByUserSiteId.getOrDefault(userSite.getId(), List.of())));
     }
 }
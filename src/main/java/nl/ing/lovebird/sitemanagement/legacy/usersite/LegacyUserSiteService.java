@@ -1,7 +1,9 @@
 package nl.ing.lovebird.sitemanagement.legacy.usersite;
 
 import lombok.RequiredArgsConstructor;
+import nl.ing.lovebird.sitemanagement.externalconsent.ExternalConsent;
 import nl.ing.lovebird.sitemanagement.externalconsent.ExternalConsentService;
+import nl.ing.lovebird.sitemanagement.externalconsent.ExternalConsentService.ConsentKey;
 
 import nl.ing.lovebird.sitemanagement.site.SiteService;
 import nl.ing.lovebird.sitemanagement.sites.Site;
@@ -12,7 +14,10 @@ import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 
 @Component
 @Deprecated
@@ -27,7 +32,27 @@ public class LegacyUserSiteService {
     public LegacyUserSiteDTO createUserSiteDTO(final PostgresUserSite userSite) {
 
         final Optional<Instant> consentExpiryBy = externalConsentService.findConsentExpiryBy(userSite.getUserId(), userSite.getSiteId(), userSite.getUserSiteId());
+        return createUserSiteDTO(userSite, consentExpiryBy);
+    }
+
+    /**
+     * Like {@link #createUserSiteDTO(PostgresUserSite)} for all given user-sites of the user, with a single lookup of the
+     * consents of the user instead of one per user-site.
+     */
+    @Deprecated
+    public List<LegacyUserSiteDTO> createUserSiteDTOs(final UUID userId, final List<PostgresUserSite> userSites) {
+        if (userSites.isEmpty()) {
+            return List.of();
+        }
+
+        final Map<ConsentKey, ExternalConsent> consents = externalConsentService.findAllByUserId(userId);
+        return userSites.stream()
+                .map(userSite -> createUserSiteDTO(userSite, Optional.ofNullable(consents.get(new ConsentKey(userSite.getSiteId(), userSite.getUserSiteId())))
+                        .map(ExternalConsent::getExpiryTimestamp)))
+                .toList();
+    }
 
+    private LegacyUserSiteDTO createUserSiteDTO(final PostgresUserSite userSite, final Optional<Instant> consentExpiryBy) {
         return LegacyUserSiteDTO.builder()
                 .id(userSite.getUserSiteId())
                 .siteId(userSite.getSiteId())
@@ -256,20 +256,19 @@ public class UserSiteController {
             @RequestParam(value = "fetchObject", required = false) final List<@Valid @Size(max = 256) String> fetchObjects) {
 
 
-        final List<LegacyUserSiteDTO> legacyUserSiteDTOS = userSiteService.getNonDeletedUserSites(userId)
+        final List<LegacyUserSiteDTO> legacyUserSiteDTOS = legacyUserSiteService.createUserSiteDTOs(userId, userSiteService.getNonDeletedUserSites(userId))
                 .stream()
-                .map(u -> createUserSiteDTOWithSiteInformationIfAvailable(fetchObjects, u))
+                .map(legacyUserSiteDTO -> addSiteInformationIfAvailable(fetchObjects, legacyUserSiteDTO))
                 .collect(Collectors.toList());
 
         return ResponseEntity.ok(legacyUserSiteDTOS);
     }
 
-    private LegacyUserSiteDTO createUserSiteDTOWithSiteInformationIfAvailable(List<String> fetchObjects, PostgresUserSite userSite) {
-        final LegacyUserSiteDTO legacyUserSiteDTO = legacyUserSiteService.createUserSiteDTO(userSite);
+    private LegacyUserSiteDTO addSiteInformationIfAvailable(List<String> fetchObjects, LegacyUserSiteDTO legacyUserSiteDTO) {
         HateoasHelper.enrichWithHateoasLinks(legacyUserSiteDTO);
 
         if (fetchObjects != null && fetchObjects.contains("site")) {
-            UUID siteId = userSite.getSiteId();
+            UUID siteId = legacyUserSiteDTO.getSiteId();
             final Site site = siteService.getSite(siteId);
             SiteWithCountryDTO siteWithCountryDTO = new SiteWithCountryDTO(
                     site.getId(),
@@ -313,7 +312,7 @@ public class UserSiteController {
         log.debug("Request to get user site with id {} for user id {}.", userSiteId, userId);
 
         final PostgresUserSite userSite = userSiteService.getUserSite(userId, userSiteId);
-        final LegacyUserSiteDTO legacyUserSiteDTO = createUserSiteDTOWithSiteInformationIfAvailable(fetchObjects, userSite);
+        final LegacyUserSiteDTO legacyUserSiteDTO = addSiteInformationIfAvailable(fetchObjects, legacyUserSiteService.createUserSiteDTO(userSite));
 
         return ResponseEntity.ok(legacyUserSiteDTO);
 
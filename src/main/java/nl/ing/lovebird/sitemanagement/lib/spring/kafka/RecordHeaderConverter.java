@@ -0,0 +1,49 @@
+package nl.ing.lovebird.sitemanagement.lib.spring.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the headers of the records that a batch listener receives.  Spring Kafka only converts the {@code @Header}
+ * arguments of a record listener, so this converts a header with the {@link Converter}s of the application context,
+ * which are the ones Spring Kafka uses for those arguments.
+ */
+@Component
+public class RecordHeaderConverter {
+
+    private final ApplicationConversionService conversionService = new ApplicationConversionService();
+
+    public RecordHeaderConverter(ListableBeanFactory beanFactory) {
+        ApplicationConversionService.addBeans(conversionService, beanFactory);
+    }
+
+    @Nullable
+    public String getString(ConsumerRecord<?, ?> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header == null ? null : convert(header.value(), String.class);
+    }
+
+    @Nullable
+    public <T> T get(ConsumerRecord<?, ?> record, String name, Class<T> type) {
+        return convert(getString(record, name), type);
+    }
+
+    /**
+     * Converts a header value as it is found in {@code KafkaHeaders.BATCH_CONVERTED_HEADERS}: the raw bytes, or the
+     * value that the header mapper already decoded.
+     */
+    @Nullable
+    public <T> T convert(@Nullable Object value, Class<T> type) {
+        if (value instanceof byte[] bytes) {
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return conversionService.convert(value, type);
+    }
+}
@@ -6,13 +6,16 @@ import nl.ing.lovebird.clienttokens.ClientUserToken;
 import nl.ing.lovebird.errorhandling.ErrorDTO;
 import nl.ing.lovebird.providerdomain.ServiceType;
 import nl.ing.lovebird.sitemanagement.exception.HttpException;
-import nl.ing.lovebird.sitemanagement.sites.ProvidersSites;
+import nl.ing.lovebird.sitemanagement.sites.ProvidersSitesPayload;
 import nl.ing.lovebird.sitemanagement.usersite.Step;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
@@ -161,9 +164,24 @@ public class ProviderRestClient {
         }
     }
 
-    public ProvidersSites getProvidersSites() throws HttpException {
+    /**
+     * Retrieve the sites-details unless they did not change since the response with the given ETag.
+     *
+     * @param eTag the ETag of the previously retrieved sites-details, or null to always retrieve them
+     * @return the raw sites-details, or empty if providers responded with 304 Not Modified
+     */
+    public Optional<ProvidersSitesPayload> getProvidersSitesIfChanged(@Nullable String eTag) throws HttpException {
+        var headers = new HttpHeaders();
+        if (eTag != null) {
+            headers.setIfNoneMatch(eTag);
+        }
         try {
-            return restTemplate.getForEntity("/sites-details", ProvidersSites.class).getBody();
+            ResponseEntity<byte[]> response = restTemplate.exchange("/sites-details", HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+            if (response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                return Optional.empty();
+            }
+            byte[] body = response.getBody() != null ? response.getBody() : new byte[0];
+            return Optional.of(new ProvidersSitesPayload(body, response.getHeaders().getETag()));
         } catch (HttpStatusCodeException e) {
             throw new HttpException(e.getRawStatusCode(), extractFunctionalErrorCode(e));
         }
@@ -0,0 +1,56 @@
+package nl.ing.lovebird.sitemanagement.providerrequest;
+
+import com.datastax.driver.mapping.annotations.ClusteringColumn;
+import com.datastax.driver.mapping.annotations.Column;
+import com.datastax.driver.mapping.annotations.PartitionKey;
+import com.datastax.driver.mapping.annotations.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import nl.ing.lovebird.sitemanagement.usersite.UserSiteActionType;
+
+import java.util.UUID;
+
+/**
+ * Copy of a {@link ProviderRequest} partitioned by user and activity, so the requests of one activity can be read
+ * without reading all requests of the user.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = ProviderRequestByActivity.TABLE_NAME)
+public class ProviderRequestByActivity {
+
+    public static final String TABLE_NAME = "provider_request_by_activity";
+
+    public static final String USER_ID_COLUMN = "user_id";
+    public static final String ACTIVITY_ID_COLUMN = "activity_id";
+    public static final String ID_COLUMN = "id";
+
+    @PartitionKey(0)
+    @Column(name = USER_ID_COLUMN)
+    private UUID userId;
+
+    @PartitionKey(1)
+    @Column(name = ACTIVITY_ID_COLUMN)
+    private UUID activityId;
+
+    @ClusteringColumn
+    @Column(name = ID_COLUMN)
+    private UUID id;
+
+    @Column(name = "user_site_id")
+    private UUID userSiteId;
+
+    @Column(name = "user_site_action_type")
+    private UserSiteActionType userSiteActionType;
+
+    static ProviderRequestByActivity from(ProviderRequest providerRequest) {
+        return new ProviderRequestByActivity(providerRequest.getUserId(), providerRequest.getActivityId(), providerRequest.getId(),
+                providerRequest.getUserSiteId(), providerRequest.getUserSiteActionType());
+    }
+
+    ProviderRequest toProviderRequest() {
+        return new ProviderRequest(id, activityId, userId, userSiteId, userSiteActionType);
+    }
+}
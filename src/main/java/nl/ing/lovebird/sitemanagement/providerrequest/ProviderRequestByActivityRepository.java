@@ -0,0 +1,34 @@
+package nl.ing.lovebird.sitemanagement.providerrequest;
+
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.querybuilder.Select;
+import nl.ing.lovebird.cassandra.CassandraRepository;
+import nl.ing.lovebird.sitemanagement.usersite.UserSiteActionType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+
+@Repository
+class ProviderRequestByActivityRepository extends CassandraRepository<ProviderRequestByActivity> {
+
+    @Autowired
+    ProviderRequestByActivityRepository(final Session session) {
+        super(session, ProviderRequestByActivity.class);
+        super.registerEnum(UserSiteActionType.class);
+    }
+
+    void saveForActivity(final ProviderRequestByActivity providerRequest) {
+        super.save(providerRequest);
+    }
+
+    List<ProviderRequestByActivity> find(final UUID userId, final UUID activityId) {
+        final Select query = createSelect();
+        query.where(eq(ProviderRequestByActivity.USER_ID_COLUMN, userId))
+                .and(eq(ProviderRequestByActivity.ACTIVITY_ID_COLUMN, activityId));
+        return select(query);
+    }
+}
@@ -6,12 +6,15 @@ import com.datastax.driver.core.querybuilder.Select;
 import nl.ing.lovebird.cassandra.CassandraRepository;
 import nl.ing.lovebird.sitemanagement.usersite.UserSiteActionType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import org.springframework.validation.annotation.Validated;
 
 import javax.validation.Valid;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -22,10 +25,16 @@ import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
 @Validated
 public class ProviderRequestRepository extends CassandraRepository<ProviderRequest> {
 
+    private final ProviderRequestByActivityRepository providerRequestByActivityRepository;
+    private final boolean readUserPartition;
+
     @Autowired
-    public ProviderRequestRepository(final Session session) {
+    public ProviderRequestRepository(final Session session, final ProviderRequestByActivityRepository providerRequestByActivityRepository,
+                                     @Value("${lovebird.providerRequests.readUserPartition:false}") final boolean readUserPartition) {
         super(session, ProviderRequest.class);
         super.registerEnum(UserSiteActionType.class);
+        this.providerRequestByActivityRepository = providerRequestByActivityRepository;
+        this.readUserPartition = readUserPartition;
     }
 
     public Optional<ProviderRequest> get(final UUID userId, final UUID id) {
@@ -35,16 +44,35 @@ public class ProviderRequestRepository extends CassandraRepository<ProviderReque
         return selectOne(selectByUidQuery);
     }
 
+    /**
+     * Reads the requests of the activity from {@link ProviderRequestByActivity#TABLE_NAME}, which only contains the
+     * requests of that activity.
+     * <p>
+     * Requests saved before that table existed are only in {@link ProviderRequest#TABLE_NAME}.  While
+     * {@code lovebird.providerRequests.readUserPartition} is set we also scan the partition of the user in that table
+     * and merge the results, so an activity that was running during the deploy gets all its requests.  Both tables
+     * expire their rows after an hour: switch the property off an hour after the deploy and remove it afterwards.
+     */
     public List<ProviderRequest> find(final UUID userid, final UUID activityId) {
+        Map<UUID, ProviderRequest> providerRequests = new LinkedHashMap<>();
+        providerRequestByActivityRepository.find(userid, activityId).stream()
+                .map(ProviderRequestByActivity::toProviderRequest)
+                .forEach(providerRequest -> providerRequests.put(providerRequest.getId(), providerRequest));
+        if (!readUserPartition) {
+            return new ArrayList<>(providerRequests.values());
+        }
+
         final Select query = QueryBuilder.select().from(ProviderRequest.TABLE_NAME);
         query.where(eq(ProviderRequest.USER_ID_COLUMN, userid));
-        return select(query).stream()
+        select(query).stream()
                 .filter(it -> it.getActivityId().equals(activityId))
-                .toList();
+                .forEach(providerRequest -> providerRequests.putIfAbsent(providerRequest.getId(), providerRequest));
+        return new ArrayList<>(providerRequests.values());
     }
 
     public void saveValidated(final @Valid ProviderRequest entity) {
         super.save(entity);
+        providerRequestByActivityRepository.saveForActivity(ProviderRequestByActivity.from(entity));
     }
 
 }
@@ -10,6 +10,7 @@ import nl.ing.lovebird.providershared.form.LoginSucceededDTO;
 import nl.ing.lovebird.providershared.form.ProviderServiceMAFResponseDTO;
 import nl.ing.lovebird.sitemanagement.exception.CallbackIdentifierNotKnownException;
 import nl.ing.lovebird.sitemanagement.legacy.logging.LogBaggage;
+import nl.ing.lovebird.sitemanagement.lib.spring.kafka.RecordHeaderConverter;
 import nl.ing.lovebird.sitemanagement.providercallback.ProviderCallbackAsyncService;
 import nl.ing.lovebird.sitemanagement.providerclient.FetchDataResultDTO;
 import nl.ing.lovebird.sitemanagement.providerclient.KafkaProducerService;
@@ -21,16 +22,16 @@ import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSite;
 import nl.ing.lovebird.sitemanagement.usersite.UserSiteService;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.lang.Nullable;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
 
+import static java.util.stream.Collectors.toSet;
 import static nl.ing.lovebird.clienttokens.constants.ClientTokenConstants.CLIENT_TOKEN_HEADER_NAME;
 
 @Slf4j
@@ -46,6 +47,7 @@ public class ProviderServiceResponseConsumer {
     private final ProviderCallbackAsyncService providerCallbackAsyncService;
     private final ObjectMapper objectMapper;
     private final UserSiteService userSiteService;
+    private final RecordHeaderConverter recordHeaderConverter;
 
     private String removeQuotesFromHeader(String header) {
         if (header == null) {
@@ -60,14 +62,102 @@ public class ProviderServiceResponseConsumer {
     }
 
     @KafkaListener(topicPattern = "${yolt.kafka.topics.providerAccounts.topic-name}",
-            concurrency = "${yolt.kafka.topics.providerAccounts.listener-concurrency}")
+            concurrency = "${yolt.kafka.topics.providerAccounts.listener-concurrency}",
+            autoStartup = "#{!${yolt.kafka.topics.providerAccounts.batch-listener:false}}")
     public void providerAccountsMessage(
             ConsumerRecord<?, byte[]> record,
             @Header(value = "payload-type", required = false) String payloadType,
             @Header(value = CLIENT_TOKEN_HEADER_NAME) final ClientUserToken clientUserToken) {
-        byte[] payload = record.value();
+        processMessage(new ProviderAccountsMessage(record.value(), removeQuotesFromHeader(payloadType), clientUserToken), null);
+    }
+
+    /**
+     * Batch variant of {@link #providerAccountsMessage}, started instead of it when
+     * {@code yolt.kafka.topics.providerAccounts.batch-listener} is enabled.
+     * <p>
+     * The records are grouped per user.  The groups are processed one after the other, and the messages of a user in the
+     * order in which they were produced.  The user-sites of the provider service responses are read up front with one
+     * query for the whole batch, see {@link #prefetchUserSites(Collection)}.
+     */
+    @KafkaListener(topicPattern = "${yolt.kafka.topics.providerAccounts.topic-name}",
+            concurrency = "${yolt.kafka.topics.providerAccounts.listener-concurrency}",
+            autoStartup = "${yolt.kafka.topics.providerAccounts.batch-listener:false}",
+            batch = "true")
+    public void providerAccountsMessages(List<ConsumerRecord<?, byte[]>> records) {
+        Map<UUID, List<ProviderAccountsMessage>> messagesPerUser = new LinkedHashMap<>();
+        for (ConsumerRecord<?, byte[]> record : records) {
+            ProviderAccountsMessage message = toMessage(record);
+            messagesPerUser.computeIfAbsent(message.userId(), userId -> new ArrayList<>()).add(message);
+        }
+
+        Map<ProviderAccountsMessage, PrefetchedResponse> prefetchedResponses = prefetchUserSites(messagesPerUser.values());
+        messagesPerUser.values().forEach(messages ->
+                messages.forEach(message -> processMessage(message, prefetchedResponses.get(message))));
+    }
 
-        payloadType = removeQuotesFromHeader(payloadType);
+    private ProviderAccountsMessage toMessage(ConsumerRecord<?, byte[]> record) {
+        ClientUserToken clientUserToken;
+        try {
+            clientUserToken = recordHeaderConverter.get(record, CLIENT_TOKEN_HEADER_NAME, ClientUserToken.class);
+        } catch (RuntimeException e) {
+            // The message is reported on the error topic when it turns out to need the client-token.
+            log.warn("Could not read the client-token of a record on partition {} at offset {}.", record.partition(), record.offset(), e);
+            clientUserToken = null;
+        }
+        return new ProviderAccountsMessage(record.value(), removeQuotesFromHeader(recordHeaderConverter.getString(record, "payload-type")), clientUserToken);
+    }
+
+    /**
+     * Reads the user-sites of the provider service responses with one query.  Processing a message can change the
+     * user-site it is about, so a user-site that is read up front is only used for the first response about it, and only
+     * if no other type of message of the user comes before that response.
+     * <p>
+     * The user-site can still be changed by someone else between this read and the processing of the response.  The
+     * response only changes the status of the user-site, with {@link UserSiteService#updateUserSiteStatus}, which checks
+     * the stored status and only writes the status columns, so such a change is not overwritten.
+     */
+    private Map<ProviderAccountsMessage, PrefetchedResponse> prefetchUserSites(Collection<List<ProviderAccountsMessage>> messagesPerUser) {
+        Map<ProviderAccountsMessage, PrefetchedResponse> prefetchedResponses = new IdentityHashMap<>();
+        for (List<ProviderAccountsMessage> messages : messagesPerUser) {
+            Set<UUID> userSiteIds = new HashSet<>();
+            for (ProviderAccountsMessage message : messages) {
+                Optional<PrefetchedResponse> prefetchedResponse = message.isProviderServiceResponse() ? findProviderRequest(message) : Optional.empty();
+                if (prefetchedResponse.isEmpty() || !userSiteIds.add(prefetchedResponse.get().providerRequest().getUserSiteId())) {
+                    break;
+                }
+                prefetchedResponses.put(message, prefetchedResponse.get());
+            }
+        }
+        if (prefetchedResponses.isEmpty()) {
+            return prefetchedResponses;
+        }
+
+        Map<UUID, PostgresUserSite> userSites = userSiteService.getUserSitesIncludingDeletedOnes(
+                prefetchedResponses.values().stream().map(r -> r.providerRequest().getUserId()).collect(toSet()),
+                prefetchedResponses.values().stream().map(r -> r.providerRequest().getUserSiteId()).collect(toSet()));
+        prefetchedResponses.replaceAll((message, r) ->
+                r.withUserSite(Optional.ofNullable(userSites.get(r.providerRequest().getUserSiteId()))
+                        .filter(userSite -> userSite.getUserId().equals(r.providerRequest().getUserId()))));
+        return prefetchedResponses;
+    }
+
+    private Optional<PrefetchedResponse> findProviderRequest(ProviderAccountsMessage message) {
+        if (message.clientUserToken() == null) {
+            return Optional.empty();
+        }
+        try {
+            FetchDataResultDTO providerServiceResponseDTO = deserializeValue(message.payload(), FetchDataResultDTO.class);
+            return providerRequestRepository.get(message.userId(), providerServiceResponseDTO.getProviderRequestId())
+                    .map(providerRequest -> new PrefetchedResponse(providerServiceResponseDTO, providerRequest, Optional.empty()));
+        } catch (RuntimeException e) { //NOSONAR : the message is processed, and the exception reported, one at a time later on.
+            return Optional.empty();
+        }
+    }
+
+    private void processMessage(ProviderAccountsMessage message, @Nullable PrefetchedResponse prefetchedResponse) {
+        byte[] payload = message.payload();
+        String payloadType = message.payloadType();
+        ClientUserToken clientUserToken = message.clientUserToken();
         try {
             if (ProviderMessageType.CALLBACK_RESPONSE.name().equals(payloadType)) {
                 // Applicable only for: Budget Insight, Saltedge.
@@ -82,6 +172,8 @@ public class ProviderServiceResponseConsumer {
             } else if (ProviderMessageType.NO_SUPPORTED_ACCOUNTS.name().equals(payloadType)) {
                 // Applicable for all providers.
                 processNoSupportedAccountDTO(clientUserToken, deserializeValue(payload, NoSupportedAccountDTO.class));
+            } else if (prefetchedResponse != null) {
+                processProviderServiceResponseMessage(clientUserToken, prefetchedResponse.response(), prefetchedResponse.providerRequest(), prefetchedResponse.userSite());
             } else /* if (ProviderMessageType.PROVIDER_SERVICE_RESPONSE.name().equals(payloadType)) */ { //NOSONAR
                 // Applicable only for: all providers.
                 processProviderServiceResponseMessage(clientUserToken, deserializeValue(payload, FetchDataResultDTO.class));
@@ -123,7 +215,14 @@ public class ProviderServiceResponseConsumer {
         ProviderRequest providerRequest = providerRequestRepository.get(clientUserToken.getUserIdClaim(), providerServiceResponseDTO.getProviderRequestId())
                 .orElseThrow(() -> new IllegalStateException(NO_PROVIDER_REQUEST_FOR_USER + clientUserToken.getUserIdClaim()));
 
-        Optional<PostgresUserSite> optionalUserSite = retrieveUserSite(providerRequest.getUserId(), providerRequest.getUserSiteId());
+        Optional<PostgresUserSite> optionalUserSite = userSiteService.findUserSiteIncludingDeletedOne(providerRequest.getUserId(), providerRequest.getUserSiteId());
+        processProviderServiceResponseMessage(clientUserToken, providerServiceResponseDTO, providerRequest, optionalUserSite);
+    }
+
+    private void processProviderServiceResponseMessage(final @NonNull ClientUserToken clientUserToken,
+                                                       final @NonNull FetchDataResultDTO providerServiceResponseDTO,
+                                                       final @NonNull ProviderRequest providerRequest,
+                                                       final Optional<PostgresUserSite> optionalUserSite) {
         try (LogBaggage b = LogBaggage.builder()
                 .userId(providerRequest.getUserId())
                 .userSiteId(providerRequest.getUserSiteId())
@@ -147,13 +246,6 @@ public class ProviderServiceResponseConsumer {
         scrapingDataProviderResponseProcessor.processMfaWithKnownCause(providerServiceMAFResponseDTO, providerRequest, clientUserToken);
     }
 
-    private Optional<PostgresUserSite> retrieveUserSite(@NonNull UUID userId, @NonNull UUID userSiteId) {
-        List<PostgresUserSite> userSites = userSiteService.getAllUserSitesIncludingDeletedOnes(userId);
-        return userSites.stream()
-                .filter(us -> userSiteId.equals(us.getUserSiteId()))
-                .findAny();
-    }
-
     private <T> T deserializeValue(final byte[] value, Class<T> clazz) {
         try {
             return objectMapper.readValue(value, clazz);
@@ -161,4 +253,26 @@ public class ProviderServiceResponseConsumer {
             throw new IllegalArgumentException("Unable to deserialize payload of string with length " + value.length + " to type " + clazz.getName());
         }
     }
+
+    private record ProviderAccountsMessage(byte[] payload, @Nullable String payloadType, @Nullable ClientUserToken clientUserToken) {
+
+        @Nullable
+        UUID userId() {
+            return clientUserToken == null ? null : clientUserToken.getUserIdClaim();
+        }
+
+        boolean isProviderServiceResponse() {
+            return !ProviderMessageType.CALLBACK_RESPONSE.name().equals(payloadType)
+                    && !ProviderMessageType.MFA.name().equals(payloadType)
+                    && !ProviderMessageType.LOGIN_SUCCEEDED.name().equals(payloadType)
+                    && !ProviderMessageType.NO_SUPPORTED_ACCOUNTS.name().equals(payloadType);
+        }
+    }
+
+    private record PrefetchedResponse(FetchDataResultDTO response, ProviderRequest providerRequest, Optional<PostgresUserSite> userSite) {
+
+        PrefetchedResponse withUserSite(Optional<PostgresUserSite> userSite) {
+            return new PrefetchedResponse(response, providerRequest, userSite);
+        }
+    }
 }
@@ -0,0 +1,13 @@
+package nl.ing.lovebird.sitemanagement.sites;
+
+import lombok.NonNull;
+import org.springframework.lang.Nullable;
+
+/**
+ * The raw response of providers/sites-details.  The body is deserialized into {@link ProvidersSites} only if it
+ * changed since the previous time we retrieved it.
+ *
+ * @param eTag the ETag of the response, if providers sent one
+ */
+public record ProvidersSitesPayload(@NonNull byte[] body, @Nullable String eTag) {
+}
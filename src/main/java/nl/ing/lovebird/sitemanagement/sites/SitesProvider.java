@@ -1,7 +1,11 @@
 package nl.ing.lovebird.sitemanagement.sites;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
@@ -11,9 +15,11 @@ import nl.ing.lovebird.sitemanagement.exception.SiteNotFoundException;
 import nl.ing.lovebird.sitemanagement.providerclient.ProviderRestClient;
 import nl.ing.lovebird.sitemanagement.providerresponse.ProviderServiceResponseConsumer;
 import org.springframework.context.SmartLifecycle;
+import org.springframework.lang.Nullable;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
@@ -27,14 +33,17 @@ public class SitesProvider implements SmartLifecycle {
 
     private final SitesMapper sitesMapper = new SitesMapper();
     private final ProviderRestClient providerRestClient;
+    private final ObjectMapper objectMapper;
     private final Clock clock;
     private final MeterRegistry meterRegistry;
 
-    private List<Site> sites = List.of();
-    private Map<UUID, Site> sitesById = Map.of();
+    /**
+     * The sites and the index by id are always replaced together, so a reader never sees a list and a map of a
+     * different version.
+     */
+    private volatile SitesSnapshot snapshot = SitesSnapshot.EMPTY;
 
     volatile boolean loaded = false;
-    private Instant lastLoaded = Instant.EPOCH;
 
     /**
      * By setting the lifecycle phase of this bean to a negative integer, we ensure that this service will be initialized
@@ -78,33 +87,59 @@ public class SitesProvider implements SmartLifecycle {
 
     /**
      * TODO make this non-public
+     * <p>
+     * The sites-details are only deserialized if they changed: we send the ETag of the previous response, and if
+     * providers does not support that we compare the hash of the payload with the hash of the previous payload.
      */
     public void update() {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String result = "failed";
         try {
-            var providersSites = providerRestClient.getProvidersSites();
+            var current = snapshot;
+            var payload = providerRestClient.getProvidersSitesIfChanged(current.eTag());
+            if (payload.isEmpty()) {
+                this.snapshot = current.reloadedAt(Instant.now(clock));
+                result = "unchanged";
+                return;
+            }
+            byte[] body = payload.get().body();
+            DistributionSummary.builder("site_details_payload_size")
+                    .description("size of the sites-details payload")
+                    .baseUnit("bytes")
+                    .register(meterRegistry)
+                    .record(body.length);
+
+            String contentHash = Hashing.sha256().hashBytes(body).toString();
+            if (contentHash.equals(current.contentHash())) {
+                this.snapshot = current.reloadedAt(Instant.now(clock)).withETag(payload.get().eTag());
+                result = "unchanged";
+                return;
+            }
 
-            Map<UUID, Site> siteAisDetails = providersSites
+            Map<UUID, Site> siteAisDetails = objectMapper.readValue(body, ProvidersSites.class)
                     .getRegisteredSites()
                     .stream()
                     .collect(Collectors.toMap(RegisteredSite::getId, sitesMapper::mapToSite));
 
-            this.sitesById = siteAisDetails;
-            this.sites = List.copyOf(siteAisDetails.values());
+            this.snapshot = new SitesSnapshot(List.copyOf(siteAisDetails.values()), Map.copyOf(siteAisDetails),
+                    payload.get().eTag(), contentHash, Instant.now(clock));
             this.loaded = true;
-            this.lastLoaded = Instant.now(clock);
+            result = "updated";
         } catch (HttpException e) {
             log.warn("Failed to call providers/sites-details failed with http_status={} and error_code={}", e.getHttpStatusCode(), e.getFunctionalErrorCode());
-        } catch (RuntimeException e) {
+        } catch (IOException | RuntimeException e) {
             log.warn("Failed to call providers/sites-details", e);
+        } finally {
+            sample.stop(meterRegistry.timer("site_details_reload_duration", "result", result));
         }
     }
 
     public List<Site> allSites() {
-        return sites;
+        return snapshot.sites();
     }
 
     public Site findByIdOrThrow(@NonNull UUID id) {
-        return Optional.ofNullable(sitesById.get(id)).orElseThrow(() -> new SiteNotFoundException("Site with id " + id + " does not exist."));
+        return Optional.ofNullable(snapshot.sitesById().get(id)).orElseThrow(() -> new SiteNotFoundException("Site with id " + id + " does not exist."));
     }
 
     /**
@@ -113,6 +148,7 @@ public class SitesProvider implements SmartLifecycle {
      */
     private void registerMetric() {
         Gauge.builder("site_details_age_minutes", () -> {
+            Instant lastLoaded = snapshot.lastLoaded();
             if (lastLoaded == Instant.EPOCH) {
                 return 0;
             }
@@ -122,4 +158,26 @@ public class SitesProvider implements SmartLifecycle {
                 .register(meterRegistry);
     }
 
+    /**
+     * @param eTag        the ETag of the sites-details response, if any
+     * @param contentHash the SHA-256 hash of the sites-details payload
+     * @param lastLoaded  the last time we verified that the sites are up to date
+     */
+    private record SitesSnapshot(List<Site> sites,
+                                 Map<UUID, Site> sitesById,
+                                 @Nullable String eTag,
+                                 @Nullable String contentHash,
+                                 Instant lastLoaded) {
+
+        static final SitesSnapshot EMPTY = new SitesSnapshot(List.of(), Map.of(), null, null, Instant.EPOCH);
+
+        SitesSnapshot reloadedAt(Instant now) {
+            return new SitesSnapshot(sites, sitesById, eTag, contentHash, now);
+        }
+
+        SitesSnapshot withETag(@Nullable String newETag) {
+            return new SitesSnapshot(sites, sitesById, newETag, contentHash, lastLoaded);
+        }
+    }
+
 }
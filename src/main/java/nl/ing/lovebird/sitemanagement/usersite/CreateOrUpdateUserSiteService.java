@@ -11,6 +11,7 @@ import nl.ing.lovebird.sitemanagement.configuration.SiteManagementDebugPropertie
 import nl.ing.lovebird.sitemanagement.exception.*;
 import nl.ing.lovebird.sitemanagement.externalconsent.ExternalConsentService;
 import nl.ing.lovebird.sitemanagement.forms.FormValidationException;
+import nl.ing.lovebird.sitemanagement.forms.FormValidationPlanCache;
 import nl.ing.lovebird.sitemanagement.forms.FormValidator;
 import nl.ing.lovebird.sitemanagement.legacy.logging.LogBaggage;
 import nl.ing.lovebird.sitemanagement.lib.OAuth2RedirectionURI;
@@ -57,6 +58,7 @@ public class CreateOrUpdateUserSiteService {
     private final SiteLoginService siteLoginService;
     private final ObjectMapper objectMapper;
     private final SiteManagementDebugProperties siteManagementDebugProperties;
+    private final FormValidationPlanCache formValidationPlanCache;
     private final SitesProvider sitesProvider;
     private final UserService userService;
 
@@ -216,7 +218,7 @@ public class CreateOrUpdateUserSiteService {
         try {
             FormStep formStep = objectMapper.readValue(session.getFormStep(), FormStep.class);
             Form form = formStep.getForm();
-            new FormValidator(false, siteManagementDebugProperties).validateValues(form, login.getFilledInUserSiteFormValues());
+            new FormValidator(false, siteManagementDebugProperties).validateValues(form, formValidationPlanCache.get(form), login.getFilledInUserSiteFormValues());
         } catch (IOException e) {
             throw new RuntimeException("Invalid form.", e);
         }
@@ -12,9 +12,14 @@ import javax.persistence.PersistenceContext;
 import java.sql.Date;
 import java.time.Clock;
 import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
+import static java.util.stream.Collectors.toSet;
+
 /**
  * This repository represents the database interface for operations on the {@link PostgresUserSiteLock} entity.
  */
@@ -73,6 +78,57 @@ public class PostgresUserSiteLockRepository {
 
         return isLocked;
     }
+
+    /**
+     * Attempt to lock multiple {@link PostgresUserSite}s for exclusive access in a single statement.
+     * <p/>
+     * Semantically equal to calling {@link #attemptLock(UUID, UUID)} for every user-site, but claims all locks
+     * in one round-trip and one transaction. User-sites that are currently locked (and whose lock has not yet expired)
+     * or that do not exist are skipped. The rows are claimed in user-site id order so concurrent callers with overlapping
+     * sets cannot deadlock on each other.
+     *
+     * @param userSiteIds the user-site ids
+     * @param activityId  the activity id (as meta data)
+     * @return the subset of <code>userSiteIds</code> for which the lock has been claimed
+     */
+    @Transactional
+    public Set<UUID> attemptLocks(final Collection<UUID> userSiteIds, final UUID activityId) {
+        if (userSiteIds.isEmpty()) {
+            return Set.of();
+        }
+
+        var sql = """
+                insert into user_site_lock (user_site_id, activity_id, locked_at)
+                    select us.id, :activityId, :now
+                        from user_site us
+                        where us.id in (:userSiteIds)
+                        order by us.id
+                    on conflict on constraint user_site_lock_pkey
+                        do update
+                            set activity_id  = :activityId,
+                                locked_at    = :now
+                            where user_site_lock.locked_at is null or
+                                  user_site_lock.locked_at <= :nowMin10Minutes
+                    returning cast(user_site_id as text)
+                """;
+
+        @SuppressWarnings("unchecked")
+        List<String> lockedUserSiteIds = entityManager.createNativeQuery(sql)
+                .setParameter("userSiteIds", userSiteIds)
+                .setParameter("activityId", activityId)
+                .setParameter("now", Date.from(clock.instant()))
+                .setParameter("nowMin10Minutes", Date.from(clock.instant().minus(10, ChronoUnit.MINUTES)))
+                .getResultList();
+
+        Set<UUID> locked = lockedUserSiteIds.stream()
+                .map(UUID::fromString)
+                .collect(toSet());
+
+        log.debug("{} out of {} user-sites successfully locked.", locked.size(), userSiteIds.size());
+
+        return locked;
+    }
+
     /**
      * Unlock a (potentially) locked {@link PostgresUserSite}.
      * <p/>
@@ -106,6 +162,36 @@ public class PostgresUserSiteLockRepository {
         return isUnlocked;
     }
 
+    /**
+     * Unlock multiple (potentially) locked {@link PostgresUserSite}s in a single statement.
+     * <p/>
+     * See {@link #unlockUserSite(UUID)} for the semantics of unlocking.
+     *
+     * @param userSiteIds the user-site ids to unlock
+     * @return the number of user-sites that were unlocked
+     */
+    @Transactional
+    public int unlockUserSites(final Collection<UUID> userSiteIds) {
+        if (userSiteIds.isEmpty()) {
+            return 0;
+        }
+
+        var sql = """
+                update user_site_lock
+                    set activity_id  = null,
+                        locked_at    = null
+                    where user_site_id in (:userSiteIds)
+                """;
+
+        int unlocked = entityManager.createNativeQuery(sql)
+                .setParameter("userSiteIds", userSiteIds)
+                .executeUpdate();
+
+        log.debug("{} out of {} user-sites successfully unlocked.", unlocked, userSiteIds.size());
+
+        return unlocked;
+    }
+
     /**
      * Return the potentially held {@link PostgresUserSiteLock}.
      *
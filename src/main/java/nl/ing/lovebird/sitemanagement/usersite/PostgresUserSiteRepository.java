@@ -5,6 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import nl.ing.lovebird.sitemanagement.lib.types.ClientId;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.data.jpa.repository.support.JpaEntityInformation;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
@@ -12,12 +13,12 @@ import org.springframework.util.Assert;
 import javax.persistence.*;
 import javax.validation.Valid;
 import java.math.BigInteger;
+import java.sql.Timestamp;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 
-import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.*;
 import static org.springframework.data.jpa.repository.support.JpaEntityInformationSupport.getEntityInformation;
 
@@ -108,6 +109,25 @@ public class PostgresUserSiteRepository {
         return (List<PostgresUserSite>) q.getResultList();
     }
 
+    /**
+     * Return the {@see UserSite}'s with the given ids, also the ones that are marked for deletion.  Ids that do not exist
+     * are left out.
+     *
+     * @param userIds     the user-ids of the user-sites
+     * @param userSiteIds the user site-ids
+     * @return the a {@see List} of {@see UserSite}'s
+     */
+    @Transactional
+    public List<PostgresUserSite> getUserSites(final Collection<UUID> userIds, final Collection<UUID> userSiteIds) {
+        if (userSiteIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return entityManager.createQuery("select p from PostgresUserSite p where p.userSiteId in :userSiteIds and p.userId in :userIds", PostgresUserSite.class)
+                .setParameter("userSiteIds", userSiteIds)
+                .setParameter("userIds", userIds)
+                .getResultList();
+    }
+
 
     @Transactional(readOnly = true)
     public List<PostgresUserSite> getUserSitesBySite(UUID siteId, int limit) {
@@ -150,6 +170,94 @@ public class PostgresUserSiteRepository {
         }
     }
 
+    /**
+     * Changes the status and reason of many user-sites of a user with one update statement, and clears their status
+     * timeout.
+     * <p>
+     * A user-site is only changed if it is not marked for deletion and if it does not have the new status and reason
+     * already.  The user-sites are locked before their current status is checked, so a concurrent change of the same
+     * user-site is never overwritten with a stale old status: the old status that is returned is the one that was
+     * replaced.
+     *
+     * @param userId           the user-id
+     * @param userSiteIds      the user site-ids
+     * @param connectionStatus the new status
+     * @param failureReason    the new reason
+     * @param updated          the new updated time
+     * @return the user-sites that were changed, with their old status and reason
+     */
+    @Transactional
+    public List<StatusTransition> updateStatuses(final UUID userId,
+                                                 final Collection<UUID> userSiteIds,
+                                                 @NonNull final ConnectionStatus connectionStatus,
+                                                 @Nullable final FailureReason failureReason,
+                                                 @NonNull final Instant updated) {
+        return updateStatuses(userId, userSiteIds, connectionStatus, failureReason, null, updated);
+    }
+
+    /**
+     * Like {@link #updateStatuses(UUID, Collection, ConnectionStatus, FailureReason, Instant)}, but sets the status
+     * timeout of the changed user-sites to the given one.  Only the status columns are written, so a caller with a stale
+     * copy of a user-site does not overwrite the other columns.
+     *
+     * @param statusTimeout the new status timeout, or null to clear it
+     */
+    @Transactional
+    public List<StatusTransition> updateStatuses(final UUID userId,
+                                                 final Collection<UUID> userSiteIds,
+                                                 @NonNull final ConnectionStatus connectionStatus,
+                                                 @Nullable final FailureReason failureReason,
+                                                 @Nullable final Instant statusTimeout,
+                                                 @NonNull final Instant updated) {
+        if (userSiteIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        var sql = """
+                with old as (
+                    select id, connection_status, failure_reason
+                        from user_site
+                        where user_id = :userId
+                          and id = any(cast(string_to_array(:userSiteIds, ',') as uuid[]))
+                          and is_deleted = false
+                          and (connection_status <> cast(:connectionStatus as user_site_connection_status_t)
+                               or failure_reason is distinct from cast(nullif(:failureReason, '') as user_site_failure_reason_t))
+                        for update
+                )
+                update user_site u
+                    set connection_status = cast(:connectionStatus as user_site_connection_status_t),
+                        failure_reason = cast(nullif(:failureReason, '') as user_site_failure_reason_t),
+                        status_timeout_time = cast(nullif(:statusTimeout, '') as timestamptz),
+                        updated = :updated
+                    from old
+                    where u.id = old.id
+                    returning cast(u.id as varchar), cast(u.site_id as varchar), cast(u.client_id as varchar), u.provider,
+                              cast(old.connection_status as varchar), cast(old.failure_reason as varchar)
+                """;
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = entityManager.createNativeQuery(sql)
+                .setParameter("userId", userId)
+                .setParameter("userSiteIds", userSiteIds.stream().map(UUID::toString).collect(joining(",")))
+                .setParameter("connectionStatus", connectionStatus.name())
+                // A null parameter is bound as bytea by hibernate, hence the empty string.
+                .setParameter("failureReason", failureReason == null ? "" : failureReason.name())
+                .setParameter("statusTimeout", statusTimeout == null ? "" : statusTimeout.toString())
+                .setParameter("updated", Timestamp.from(updated))
+                .getResultList();
+
+        return rows.stream()
+                .map(row -> new StatusTransition(
+                        userId,
+                        UUID.fromString((String) row[0]),
+                        UUID.fromString((String) row[1]),
+                        new ClientId(UUID.fromString((String) row[2])),
+                        (String) row[3],
+                        ConnectionStatus.valueOf((String) row[4]),
+                        row[5] == null ? null : FailureReason.valueOf((String) row[5])))
+                .toList();
+    }
+
     @Transactional(readOnly = true)
     public Set<ClientId> getClientIdsWithUserSite() {
         Query q = entityManager
@@ -160,21 +268,33 @@ public class PostgresUserSiteRepository {
                 .collect(toSet());
     }
 
+    /**
+     * Return one page of the distinct user-ids of the given clients that fall in the given range, ordered by user-id.
+     * <p>
+     * Callers that need all user-ids in the range should page through it by passing (the successor of) the last user-id of
+     * a page as <code>minInclusiveUUID</code> of the next call (keyset pagination).
+     *
+     * @param minInclusiveUUID the lower bound (inclusive)
+     * @param maxExclusive     the upper bound (exclusive)
+     * @param clientIds        the client-ids
+     * @param limit            the maximum number of user-ids to return
+     * @return at most <code>limit</code> user-ids, ordered ascending
+     */
     @Transactional(readOnly = true)
-    public List<UUID> getUserIdsBetween(UUID minInclusiveUUID, UUID maxExclusive, ClientId clientId) {
-        final int limit = 1000;
+    public List<UUID> getUserIdsBetween(UUID minInclusiveUUID, UUID maxExclusive, Collection<ClientId> clientIds, int limit) {
+        Assert.isTrue(limit > 0, "Limit must be greater then zero.");
+        if (clientIds.isEmpty()) {
+            return Collections.emptyList();
+        }
 
         Query q = entityManager
-                .createNativeQuery("select distinct cast(user_id as text) from user_site where is_deleted = false and user_id >= :minUuid AND user_id < :maxUuid and client_id = :clientId limit " + limit)
+                .createNativeQuery("select cast(user_id as text) from user_site where is_deleted = false and user_id >= :minUuid AND user_id < :maxUuid and client_id in (:clientIds) group by user_id order by user_id limit :limit")
                 .setParameter("minUuid", minInclusiveUUID)
                 .setParameter("maxUuid", maxExclusive)
-                .setParameter("clientId", clientId.unwrap());
+                .setParameter("clientIds", clientIds.stream().map(ClientId::unwrap).toList())
+                .setParameter("limit", limit);
 
-        List<String> resultList = (List<String>) q.getResultList();
-        if (resultList.size() == limit) {
-            log.error("We have fetched {} user ids for client {}. This is more then expected. Please fix this.", limit, clientId); //NOSHERIFF
-        }
-        return resultList.stream()
+        return ((List<String>) q.getResultList()).stream()
                 .map(UUID::fromString)
                 .toList();
     }
@@ -188,75 +308,6 @@ public class PostgresUserSiteRepository {
         log.info("Deleted {} user-sites with id  {}", deleted, userSiteId);
     }
 
-    /**
-     * @param clientId the client-id to get the connection totals for
-     * @return the connection info totals
-     */
-    @Transactional(readOnly = true)
-    public Map<UUID, UserSiteTotalsInfo> getUserSiteTotalsInfo(final ClientId clientId) {
-        Query q = entityManager
-                .createNativeQuery("SELECT CAST(site_id as varchar), CAST(COUNT(u.user_id) as integer) as connections, CAST(COUNT(distinct u.user_id) as integer) as users FROM user_site u WHERE u.client_id = ?1  GROUP BY u.site_id");
-        q.setParameter(1, clientId.unwrap());
-
-        return ((List<Object[]>) q.getResultList()).stream()
-                .map(record -> UserSiteTotalsInfo.builder()
-                        .siteId(UUID.fromString((String) record[0]))
-                        .nrOfUniqueConnections((Integer) record[1])
-                        .nrOfUniqueUsers((Integer) record[2])
-                        .build())
-                .collect(toMap(userSiteTotalsInfo -> userSiteTotalsInfo.siteId, identity()));
-    }
-
-    /**
-     * Output format:
-     * <pre>
-     *                    site_id                |       status       | status_count
-     * --------------------------------------+--------------------+--------------
-     *  8d25dc30-7dc9-11e8-adc0-fa7ae01bbebc | REFRESH_FINISHED   |         6096
-     *  33aca8b9-281a-4259-8492-1b37706af6db | REFRESH_FINISHED   |         8073
-     *  33aca8b9-281a-4259-8492-1b37706af6db | LOGIN_FAILED       |            2
-     *  ca8a362a-a351-4358-9f1c-a8b4b91ed65b | LOGIN_FAILED       |           49
-     *  33aca8b9-281a-4259-8492-1b37706af6db | UNKNOWN            |            1
-     *  8d25dc30-7dc9-11e8-adc0-fa7ae01bbebc | REFRESH_FAILED     |            1
-     *  ca8a362a-a351-4358-9f1c-a8b4b91ed65b | REFRESH_FAILED     |            7
-     *  8d25dc30-7dc9-11e8-adc0-fa7ae01bbebc | LOGIN_FAILED       |           74
-     *  8d25dc30-7dc9-11e8-adc0-fa7ae01bbebc | UNKNOWN            |           97
-     *  33aca8b9-281a-4259-8492-1b37706af6db | LOGIN_SUCCEEDED    |            7
-     *  33aca8b9-281a-4259-8492-1b37706af6db | INITIAL_PROCESSING |        15573
-     *  33aca8b9-281a-4259-8492-1b37706af6db | REFRESH_FAILED     |           47
-     * </pre>
-     * <p>
-     * Query plan:
-     * <pre>
-     *  HashAggregate  (cost=1760.64..1762.95 rows=231 width=36)
-     *    Output: site_id, status, count(status), count(user_id)
-     *    Group Key: user_site.site_id, user_site.status
-     *    ->  Seq Scan on public.user_site  (cost=0.00..1460.70 rows=29994 width=36)
-     *          Output: id, user_id, site_id, client_id, external_id, status, reason, status_timeout_time, created, updated, last_data_fetch, provider, migration_status, redirect_url_id, persisted_form_step_answers, version
-     *          Filter: (user_site.client_id = '43d71a36-cf05-47c6-a2ca-c426eb5537e3'::uuid)
-     * </pre>
-     *
-     * @param clientId the client-id
-     * @return a {@link List} of {@link UserSiteConnectionInfo}}'s per site
-     */
-    @Transactional(readOnly = true)
-    public Map<UUID, List<UserSiteConnectionInfo>> getConnectionStatusBySite(final ClientId clientId) {
-        Query q = entityManager
-                .createNativeQuery("select cast(site_id as varchar), connection_status, failure_reason, cast(count(*) as integer) as c from user_site where client_id = ?1 group by site_id, connection_status, failure_reason");
-        q.setParameter(1, clientId.unwrap());
-
-        // TODO
-        return ((List<Object[]>) q.getResultList()).stream()
-                .map(record -> UserSiteConnectionInfo.builder()
-                        .siteId(UUID.fromString((String) record[0]))
-                        .connectionStatus(ConnectionStatus.valueOf((String) record[1]))
-                        .failureReason(Optional.ofNullable((String) record[2]).map(FailureReason::valueOf).orElse(null))
-                        .count((Integer) record[3])
-                        .build())
-                .collect(groupingBy(o -> o.siteId, mapping(identity(), toList())));
-    }
-
-
     @Transactional(readOnly = true)
     public List<UniqueRefreshesPerClientInfo> getNumberOfRefreshesPerClient(int daysInPast) {
         var query = entityManager.createNativeQuery("SELECT cast(client_id as varchar), COUNT(distinct user_id) FROM user_site WHERE last_data_fetch >= ?1 GROUP BY client_id");
@@ -329,6 +380,18 @@ public class PostgresUserSiteRepository {
         }
     }
 
+    /**
+     * A user-site that was changed by {@link #updateStatuses}, with the status and reason it had before.
+     */
+    public record StatusTransition(@NonNull UUID userId,
+                                   @NonNull UUID userSiteId,
+                                   @NonNull UUID siteId,
+                                   @NonNull ClientId clientId,
+                                   @NonNull String provider,
+                                   @NonNull ConnectionStatus oldConnectionStatus,
+                                   @Nullable FailureReason oldFailureReason) {
+    }
+
     public static <T> Optional<T> some(T value) {
         return Optional.ofNullable(value);
     }
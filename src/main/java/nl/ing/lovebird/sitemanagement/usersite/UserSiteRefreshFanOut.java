@@ -0,0 +1,101 @@
+package nl.ing.lovebird.sitemanagement.usersite;
+
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static nl.ing.lovebird.sitemanagement.configuration.ApplicationConfiguration.USER_SITE_REFRESH_EXECUTOR;
+
+/**
+ * Triggers the data fetches of the user-sites of a single activity concurrently.
+ * <p>
+ * Every user-site of a refresh requires one or two blocking calls to providers (renewing the access means and
+ * triggering the data fetch).  Doing those one user-site at a time makes a user with five banks wait for five
+ * round-trips.  With this class the user-sites are processed by at most {@link #maxParallelismPerActivity} threads, the
+ * calling thread being one of them.  If the executor is saturated the calling thread simply processes more user-sites
+ * itself, so a busy pod degrades to the sequential behaviour instead of failing.
+ */
+@Slf4j
+@Component
+class UserSiteRefreshFanOut {
+
+    private final TaskExecutor executor;
+    private final int maxParallelismPerActivity;
+
+    UserSiteRefreshFanOut(@Qualifier(USER_SITE_REFRESH_EXECUTOR) TaskExecutor executor,
+                          @Value("${lovebird.userSiteRefresh.maxParallelismPerActivity:1}") int maxParallelismPerActivity) {
+        this.executor = executor;
+        this.maxParallelismPerActivity = maxParallelismPerActivity;
+    }
+
+    /**
+     * Perform the action for every user-site and wait until all are done.
+     * <p>
+     * This behaves like a for-loop: if the action throws for one user-site, the user-sites that were not started yet
+     * are skipped and the (first) exception is rethrown once the actions that were already running have finished.
+     */
+    void forEach(Collection<PostgresUserSite> userSites, Consumer<PostgresUserSite> action) {
+        int parallelism = Math.min(maxParallelismPerActivity, userSites.size());
+        if (parallelism <= 1) {
+            userSites.forEach(action);
+            return;
+        }
+
+        Queue<PostgresUserSite> remaining = new ConcurrentLinkedQueue<>(userSites);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Map<String, String> logContext = MDC.getCopyOfContextMap();
+        Runnable worker = () -> {
+            PostgresUserSite userSite;
+            while (failure.get() == null && (userSite = remaining.poll()) != null) {
+                try {
+                    action.accept(userSite);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        };
+
+        List<CompletableFuture<Void>> helpers = new ArrayList<>(parallelism - 1);
+        for (int i = 1; i < parallelism; i++) {
+            try {
+                helpers.add(CompletableFuture.runAsync(withLogContext(logContext, worker), executor));
+            } catch (TaskRejectedException e) {
+                log.debug("refresh: no thread available to fetch data concurrently, continuing with {} threads", i);
+                break;
+            }
+        }
+        worker.run();
+        helpers.forEach(CompletableFuture::join);
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private static Runnable withLogContext(Map<String, String> logContext, Runnable runnable) {
+        return () -> {
+            if (logContext != null) {
+                MDC.setContextMap(logContext);
+            }
+            try {
+                runnable.run();
+            } finally {
+                MDC.clear();
+            }
+        };
+    }
+}
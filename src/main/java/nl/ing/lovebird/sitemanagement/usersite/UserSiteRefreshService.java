@@ -10,6 +10,7 @@ import nl.ing.lovebird.providerdomain.AccountType;
 import nl.ing.lovebird.sitemanagement.SiteManagementMetrics;
 import nl.ing.lovebird.sitemanagement.accessmeans.AccessMeansHolder;
 import nl.ing.lovebird.sitemanagement.accessmeans.AccessMeansManager;
+import nl.ing.lovebird.sitemanagement.accessmeans.AccessMeansManager.StoredUserSiteAccessMeans;
 import nl.ing.lovebird.sitemanagement.accessmeans.CustomExpiredConsentFlowService;
 import nl.ing.lovebird.sitemanagement.accessmeans.UserSiteAccessMeans;
 import nl.ing.lovebird.sitemanagement.accountsandtransactions.AccountsAndTransactionsClient;
@@ -37,6 +38,8 @@ import java.time.Clock;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import static java.util.Collections.emptyList;
 import static java.util.stream.Collectors.toList;
@@ -91,6 +94,7 @@ public class UserSiteRefreshService {
     private final LastFetchedService lastFetchedService;
     private final ClientSiteService clientSiteService;
     private final AccountsAndTransactionsClient accountsAndTransactionsClient;
+    private final UserSiteRefreshFanOut userSiteRefreshFanOut;
 
     static final Collection<UserSiteActionType> userSiteActionTypesForMultipleUserSites = Set.of(UserSiteActionType.FLYWHEEL_REFRESH, UserSiteActionType.USER_REFRESH);
 
@@ -123,6 +127,27 @@ public class UserSiteRefreshService {
             @NonNull UserSiteActionType userSiteActionType,
             @Nullable String psuIpAddress,
             @Nullable UUID inProgressActivityId
+    ) {
+        return refreshUserSitesBlocking(userSites, oneOffAisUser, clientUserToken, userSiteActionType, psuIpAddress,
+                inProgressActivityId, userSite -> {
+                });
+    }
+
+    /**
+     * Like {@link #refreshUserSitesBlocking(Collection, boolean, ClientUserToken, UserSiteActionType, String, UUID)}.
+     *
+     * @param userSiteHandled called for every locked user-site once the calls to its provider are done, whether its
+     *                        data fetch was triggered or not, possibly on another thread.  It is not called for the
+     *                        user-sites that are skipped after an unexpected exception.
+     */
+    public Optional<UUID> refreshUserSitesBlocking(
+            @NonNull Collection<PostgresUserSite> userSites,
+            boolean oneOffAisUser,
+            @NonNull ClientUserToken clientUserToken,
+            @NonNull UserSiteActionType userSiteActionType,
+            @Nullable String psuIpAddress,
+            @Nullable UUID inProgressActivityId,
+            @NonNull Consumer<PostgresUserSite> userSiteHandled
     ) {
         return siteManagementMetrics.timeUserSitesRefresh(
                 () -> internalRefreshUserSitesBlocking(userSites,
@@ -130,7 +155,8 @@ public class UserSiteRefreshService {
                         clientUserToken,
                         userSiteActionType,
                         psuIpAddress,
-                        inProgressActivityId));
+                        inProgressActivityId,
+                        userSiteHandled));
     }
 
     public Optional<UUID> refreshUserSitesBlocking(
@@ -152,7 +178,8 @@ public class UserSiteRefreshService {
             @NonNull ClientUserToken clientUserToken,
             @NonNull UserSiteActionType userSiteActionType,
             @Nullable String psuIpAddress,
-            @Nullable UUID inProgressActivityId
+            @Nullable UUID inProgressActivityId,
+            @NonNull Consumer<PostgresUserSite> userSiteHandled
     ) {
         final List<PostgresUserSite> userSitesToRefresh = userSites.stream()
                 .filter(userSite -> !oneOffAisUser || userSite.getLastDataFetch() == null)
@@ -182,8 +209,8 @@ public class UserSiteRefreshService {
         // that we send the appropriate events so that listeners know a failure has occurred.
         boolean hasStartedActivity = false;
         // This collection keeps track of the UserSites for which a data fetch was triggered successfully, these
-        // can be excluded from error handling.
-        final Collection<UUID> dataFetchTriggeredForUserSiteIds = new ArrayList<>(lockedUserSites.size());
+        // can be excluded from error handling.  The data fetches are triggered concurrently, hence the concurrent set.
+        final Collection<UUID> dataFetchTriggeredForUserSiteIds = ConcurrentHashMap.newKeySet(lockedUserSites.size());
         try {
             // Send an activity event to signal the start of a data fetch.
             var event = createStartEvent(lockedUserSites, activityId, userSiteActionType, clientUserToken)
@@ -194,12 +221,17 @@ public class UserSiteRefreshService {
             // Keep some administration so the error handling code will know to send the appropriate messages in the event of a failure.
             hasStartedActivity = true;
 
-            for (final PostgresUserSite userSite : lockedUserSites) {
+            // Read the access means of all user-sites at once instead of one query per user-site.
+            final StoredUserSiteAccessMeans storedAccessMeans = lockedUserSites.size() > 1
+                    ? accessMeansManager.loadUserSiteAccessMeans(lockedUserSites.iterator().next().getUserId())
+                    : null;
+
+            userSiteRefreshFanOut.forEach(lockedUserSites, userSite -> {
                 try (LogBaggage ignored = new LogBaggage(userSite)) {
-                    Optional<AccessMeansHolder> accessMeans = getAccessMeans(userSite, activityId, clientUserToken, psuIpAddress);
+                    Optional<AccessMeansHolder> accessMeans = getAccessMeans(userSite, activityId, clientUserToken, psuIpAddress, storedAccessMeans);
                     if (accessMeans.isEmpty()) {
                         // The method getAccessMeans will have already called markAsFailed()
-                        continue;
+                        return;
                     }
                     if (!triggerDataFetch(
                             clientUserToken,
@@ -210,21 +242,23 @@ public class UserSiteRefreshService {
                             userSiteActionType,
                             psuIpAddress)) {
                         markAsFailed(userSite, clientUserToken, activityId, ConnectionStatus.CONNECTED, FailureReason.TECHNICAL_ERROR);
-                        continue;
+                        return;
                     }
                     dataFetchTriggeredForUserSiteIds.add(userSite.getUserSiteId());
+                } finally {
+                    userSiteHandled.accept(userSite);
                 }
-            }
+            });
         } catch (Exception e1) {
             log.error("refresh: unexpected exception", e1);
             try {
-                for (PostgresUserSite userSite : lockedUserSites) {
-                    if (dataFetchTriggeredForUserSiteIds.contains(userSite.getUserSiteId())) {
-                        // Everything went OK for this userSite.  No error handling required.
-                        continue;
-                    }
-                    userSiteService.unlock(userSite);
-                    userSiteService.updateUserSiteStatus(userSite, ConnectionStatus.CONNECTED, FailureReason.TECHNICAL_ERROR, null);
+                // Everything went OK for the userSites for which a data fetch was triggered.  No error handling required.
+                var failedUserSites = lockedUserSites.stream()
+                        .filter(userSite -> !dataFetchTriggeredForUserSiteIds.contains(userSite.getUserSiteId()))
+                        .collect(toList());
+                userSiteService.unlockAll(failedUserSites);
+                userSiteService.updateUserSiteStatuses(failedUserSites, ConnectionStatus.CONNECTED, FailureReason.TECHNICAL_ERROR);
+                for (PostgresUserSite userSite : failedUserSites) {
                     if (hasStartedActivity) {
                         // At this point we have a userSite that was included in the UserSiteStartEvent but for which
                         // no data fetch was triggered, we now need to send a message to make sure consumers will not
@@ -288,10 +322,8 @@ public class UserSiteRefreshService {
                 .filter(this::isUserSiteEligibleForDataFetch)
                 .toList();
 
-        // Subsequently lock everything that can be locked.
-        var lockedUserSites = eligibleUserSites.stream()
-                .filter(userSite -> userSiteService.attemptLock(userSite, activityId))
-                .collect(toList());
+        // Subsequently lock everything that can be locked (in one statement).
+        var lockedUserSites = userSiteService.attemptLockAll(eligibleUserSites, activityId);
 
         log.info("refresh: requested={}, eligible={}, locked={}. activityId={}", userSites.size(), eligibleUserSites.size(), lockedUserSites.size(), activityId);
         return Pair.of(activityId, lockedUserSites);
@@ -372,13 +404,15 @@ public class UserSiteRefreshService {
         }
     }
 
-    Optional<AccessMeansHolder> getAccessMeans(PostgresUserSite userSite, UUID activityId, ClientUserToken clientUserToken, String psuIpAddress) {
-        var accessMeansResult = accessMeansManager.retrieveValidAccessMeans(
-                clientUserToken,
-                userSite,
-                Instant.now(clock),
-                psuIpAddress
-        );
+    /**
+     * @param storedAccessMeans the access means of the user read beforehand, or null to read the access means of the
+     *                          user-site only
+     */
+    Optional<AccessMeansHolder> getAccessMeans(PostgresUserSite userSite, UUID activityId, ClientUserToken clientUserToken, String psuIpAddress,
+                                               @Nullable StoredUserSiteAccessMeans storedAccessMeans) {
+        var accessMeansResult = storedAccessMeans != null
+                ? accessMeansManager.retrieveValidAccessMeans(clientUserToken, userSite, Instant.now(clock), psuIpAddress, storedAccessMeans)
+                : accessMeansManager.retrieveValidAccessMeans(clientUserToken, userSite, Instant.now(clock), psuIpAddress);
 
         switch (accessMeansResult.getResultCode()) {
             case ACCESS_MEANS_DO_NOT_EXIST -> {
@@ -8,13 +8,11 @@ import nl.ing.lovebird.sitemanagement.exception.UserSiteNotFoundException;
 import nl.ing.lovebird.sitemanagement.lib.types.ClientId;
 import nl.ing.lovebird.sitemanagement.sites.Site;
 import nl.ing.lovebird.sitemanagement.sites.SitesProvider;
+import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteRepository.StatusTransition;
 import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteRepository.UserSiteConnectionInfo;
 import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteRepository.UserSiteTotalsInfo;
 import nl.ing.lovebird.sitemanagement.usersiteevent.UserSiteEventService;
 import org.apache.commons.lang3.tuple.Pair;
-import org.springframework.cache.annotation.CacheConfig;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.lang.Nullable;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
@@ -24,6 +22,7 @@ import java.time.Clock;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.lang.String.format;
@@ -33,7 +32,6 @@ import static nl.ing.lovebird.sitemanagement.usersite.UserSiteService.Generalize
 @Slf4j
 @Service
 @RequiredArgsConstructor
-@CacheConfig(cacheNames = "siteManagementUserSiteCache")
 public class UserSiteService {
 
     private final Clock clock;
@@ -43,6 +41,7 @@ public class UserSiteService {
     private final AccessMeansManager accessMeansManager;
     private final SiteManagementMetrics siteManagementMetrics;
     private final SitesProvider sitesProvider;
+    private final UserSiteStatisticsRepository userSiteStatisticsRepository;
 
     public List<PostgresUserSite> getNonDeletedUserSites(final UUID userId) {
         return postgresUserSiteRepository.getUserSites(userId).stream()
@@ -58,6 +57,21 @@ public class UserSiteService {
         return postgresUserSiteRepository.getUserSites(userId);
     }
 
+    /**
+     * Like {@link #getUserSite(UUID, UUID)}, but returns the user-site also when it is marked for deletion.
+     */
+    public Optional<PostgresUserSite> findUserSiteIncludingDeletedOne(final UUID userId, final UUID userSiteId) {
+        return postgresUserSiteRepository.getUserSite(userId, userSiteId);
+    }
+
+    /**
+     * The user-sites with the given ids of the given users, also the ones that are marked for deletion, by user-site id.
+     */
+    public Map<UUID, PostgresUserSite> getUserSitesIncludingDeletedOnes(final Collection<UUID> userIds, final Collection<UUID> userSiteIds) {
+        return postgresUserSiteRepository.getUserSites(userIds, userSiteIds).stream()
+                .collect(Collectors.toMap(PostgresUserSite::getUserSiteId, Function.identity()));
+    }
+
     /**
      * @deprecated Don't use this anymore. This assumes users <--> site is a 1..1 relationship, while we could have 1..*
      */
@@ -96,12 +110,18 @@ public class UserSiteService {
 
     /**
      * Change the status of a {@link PostgresUserSite}.
+     * <p>
+     * Only the status columns are written, with the guarded {@link PostgresUserSiteRepository#updateStatuses}, so the
+     * given user-site may be a stale copy: the change is checked against, and the metrics and statistics are moved from,
+     * the status that is stored.  A user-site that is marked for deletion, or that already has the status and reason, is
+     * not changed, and no metrics or events are sent for it.  The given object always gets the new status in-memory.
      *
      * @param userSite         the user site whose status will be changed
      * @param connectionStatus the new status to set
      * @param failureReason    the new reason to set
      * @param statusTimeout    the timeout of the STEP, for scraping sites only
      */
+    @Transactional
     public void updateUserSiteStatus(
             final PostgresUserSite userSite,
             @NonNull final ConnectionStatus connectionStatus,
@@ -112,31 +132,34 @@ public class UserSiteService {
             throw new IllegalArgumentException("Misuse: cannot set statusTimeout without also setting STEP_NEEDED.");
         }
 
-        if (userSite.getConnectionStatus() == connectionStatus && userSite.getFailureReason() == failureReason) {
+        Instant updated = Instant.now(clock);
+        List<StatusTransition> transitions = postgresUserSiteRepository.updateStatuses(userSite.getUserId(), List.of(userSite.getUserSiteId()),
+                connectionStatus, failureReason, statusTimeout, updated);
+
+        // Change object in-memory (status fields), also without a transition: the given user-site may be a stale copy
+        // that is saved as a whole later on, which would otherwise write the stale status back.
+        userSite.setConnectionStatus(connectionStatus);
+        userSite.setFailureReason(failureReason);
+        userSite.setStatusTimeoutTime(statusTimeout);
+        if (transitions.isEmpty()) {
             // Equal status and reason mean calling this function is a no-op.
             // Assumption: statusTimeout is never updated by itself.  We therefore don't check that field.
             return;
         }
 
         // Track status updates with a metric.  We assume that a reason is only ever updated if the status is also updated.
-        siteManagementMetrics.incrementUserSiteStatusUpdate(
-                userSite.getProvider(),
-                userSite.getConnectionStatus(), // Current status
-                userSite.getFailureReason(), // Current reason
+        transitions.forEach(transition -> siteManagementMetrics.incrementUserSiteStatusUpdate(
+                transition.provider(),
+                transition.oldConnectionStatus(), // Current status
+                transition.oldFailureReason(), // Current reason
                 connectionStatus, // New status
                 failureReason // New reason
-        );
-
-        // Change object in-memory (status fields).
-        userSite.setConnectionStatus(connectionStatus);
-        userSite.setFailureReason(failureReason);
-        userSite.setStatusTimeoutTime(statusTimeout);
-        userSite.setUpdated(Instant.now(clock));
+        ));
+        userSiteStatisticsRepository.statusesChanged(transitions, connectionStatus, failureReason);
+        userSite.setUpdated(updated);
 
-        // Change IUserSite in the database.
-        postgresUserSiteRepository.save(userSite);
-
-        // Send out an update over Kafka if the status has changed (after we have persisted it ourselves).
+        // Send out an update over Kafka if the status has changed.  The event is stored in the outbox in the same
+        // transaction, so it is only sent if the change is committed.
         userSiteEventService.publishUserSiteUpdate(userSite.getUserId(), userSite.getUserSiteId(), userSite.getSiteId());
     }
 
@@ -152,13 +175,81 @@ public class UserSiteService {
         postgresUserSiteRepository.save(userSite);
     }
 
+    /**
+     * Marks the (not deleted) user-sites of the user as connected, see {@link #updateUserSiteStatuses(UUID, Collection, ConnectionStatus, FailureReason)}.
+     * User-sites that do not exist or are marked for deletion are skipped.
+     */
+    @Transactional
     public void markUserSitesConnected(@NonNull UUID userId, @NonNull List<UUID> userSiteIds) {
-        userSiteIds.forEach(userSiteId -> {
-            try {
-                final PostgresUserSite userSite = getUserSite(userId, userSiteId);
-                updateUserSiteStatus(userSite, ConnectionStatus.CONNECTED, null, null);
-            } catch (UserSiteNotFoundException e) {
-                log.info("Could not find user site " + userSiteId + ". This was probably already deleted.", e);
+        updateUserSiteStatuses(userId, userSiteIds, ConnectionStatus.CONNECTED, null);
+    }
+
+    /**
+     * Change the status of many {@link PostgresUserSite}s of a user at once.  Like {@link #updateUserSiteStatus}, but
+     * with one update of all user-sites and one batch of events.  User-sites that do not exist, are marked for deletion
+     * or already have the status and reason are skipped.
+     *
+     * @param userId           the user-id
+     * @param userSiteIds      the user site-ids
+     * @param connectionStatus the new status to set
+     * @param failureReason    the new reason to set
+     * @return the user-sites whose status was changed
+     */
+    @Transactional
+    public List<StatusTransition> updateUserSiteStatuses(
+            @NonNull final UUID userId,
+            @NonNull final Collection<UUID> userSiteIds,
+            @NonNull final ConnectionStatus connectionStatus,
+            @Nullable final FailureReason failureReason
+    ) {
+        List<StatusTransition> transitions = postgresUserSiteRepository.updateStatuses(userId, userSiteIds, connectionStatus, failureReason, Instant.now(clock));
+        if (transitions.isEmpty()) {
+            return transitions;
+        }
+
+        // Track status updates with a metric, like a change of a single user-site.
+        transitions.forEach(transition -> siteManagementMetrics.incrementUserSiteStatusUpdate(
+                transition.provider(),
+                transition.oldConnectionStatus(), // Current status
+                transition.oldFailureReason(), // Current reason
+                connectionStatus, // New status
+                failureReason // New reason
+        ));
+        // Deleted user-sites are never changed, so all transitions are counted.
+        userSiteStatisticsRepository.statusesChanged(transitions, connectionStatus, failureReason);
+        userSiteEventService.publishUserSiteUpdates(transitions);
+        return transitions;
+    }
+
+    /**
+     * Like {@link #updateUserSiteStatuses(UUID, Collection, ConnectionStatus, FailureReason)}, for user-sites that are
+     * already loaded.  The given objects of the user-sites get the new status in-memory as well, also if they were not
+     * changed, like {@link #updateUserSiteStatus}.
+     *
+     * @param userSites        the user sites whose status will be changed
+     * @param connectionStatus the new status to set
+     * @param failureReason    the new reason to set
+     */
+    @Transactional
+    public void updateUserSiteStatuses(
+            @NonNull final Collection<PostgresUserSite> userSites,
+            @NonNull final ConnectionStatus connectionStatus,
+            @Nullable final FailureReason failureReason
+    ) {
+        Set<UUID> changedUserSiteIds = userSites.stream()
+                .collect(groupingBy(PostgresUserSite::getUserId, mapping(PostgresUserSite::getUserSiteId, toSet())))
+                .entrySet().stream()
+                .flatMap(userSiteIdsOfUser -> updateUserSiteStatuses(userSiteIdsOfUser.getKey(), userSiteIdsOfUser.getValue(), connectionStatus, failureReason).stream())
+                .map(StatusTransition::userSiteId)
+                .collect(toSet());
+
+        Instant updated = Instant.now(clock);
+        userSites.forEach(userSite -> {
+            userSite.setConnectionStatus(connectionStatus);
+            userSite.setFailureReason(failureReason);
+            userSite.setStatusTimeoutTime(null);
+            if (changedUserSiteIds.contains(userSite.getUserSiteId())) {
+                userSite.setUpdated(updated);
             }
         });
     }
@@ -176,6 +267,21 @@ public class UserSiteService {
         return userSiteLockRepository.attemptLock(userSite.getUserSiteId(), activityId);
     }
 
+    /**
+     * Tries to lock all given {@link PostgresUserSite}s in one go.
+     *
+     * @return the user sites that have been locked, user sites that were already locked are omitted.
+     */
+    public List<PostgresUserSite> attemptLockAll(final Collection<PostgresUserSite> userSites, final UUID activityId) {
+        if (userSites.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Set<UUID> lockedUserSiteIds = userSiteLockRepository.attemptLocks(toUserSiteIds(userSites), activityId);
+        return userSites.stream()
+                .filter(userSite -> lockedUserSiteIds.contains(userSite.getUserSiteId()))
+                .collect(toList());
+    }
+
     /**
      * Unlock a {@link PostgresUserSite}
      *
@@ -185,6 +291,25 @@ public class UserSiteService {
         userSiteLockRepository.unlockUserSite(userSite.getUserSiteId());
     }
 
+    /**
+     * Unlock all given {@link PostgresUserSite}s in one go.
+     *
+     * @param userSites the {@link PostgresUserSite}s to unlock
+     */
+    public void unlockAll(final Collection<PostgresUserSite> userSites) {
+        if (userSites.isEmpty()) {
+            return;
+        }
+        userSiteLockRepository.unlockUserSites(toUserSiteIds(userSites));
+    }
+
+    private static List<UUID> toUserSiteIds(final Collection<PostgresUserSite> userSites) {
+        return userSites.stream()
+                .map(PostgresUserSite::getUserSiteId)
+                .distinct()
+                .collect(toList());
+    }
+
     /**
      * Fetches the lock, without attempting to put a lock on the {@link PostgresUserSite}.
      */
@@ -201,8 +326,10 @@ public class UserSiteService {
         postgresUserSiteRepository.save(userSite); // not strictly needed because of @Transactional
     }
 
-    void createNew(PostgresUserSite userSite) {
+    @Transactional
+    public void createNew(PostgresUserSite userSite) {
         postgresUserSiteRepository.save(userSite);
+        userSiteStatisticsRepository.userSiteAdded(userSite);
         userSiteEventService.publishCreatedUserSite(userSite);
     }
 
@@ -237,25 +364,26 @@ public class UserSiteService {
     }
 
     /**
-     * Compile statistics for all user-sites for a give client. Statistics contain:
+     * Compile statistics for all (not deleted) user-sites for a give client. Statistics contain:
      * <ul>
      * <li>number of unique users</li>
      * <li>number of unique connections</li>
      * <li>number of occurrences per generalized status code</li>
      * </ul>
+     * The statistics are read from the counters in the {@link UserSiteStatisticsRepository}, so this is cheap and
+     * reflects every change made through this service.
      *
      * @param clientId the client to for which to retrieve the statistics
      * @return a list of {@link UserSiteStatistics}
      */
-    @Cacheable(unless = "#result.size()==0")
     @Transactional(readOnly = true)
     public List<UserSiteStatistics> getUserSiteStatistics(final @NonNull ClientId clientId) {
 
         Map<UUID, UserSiteTotalsInfo> connectionTotals
-                = postgresUserSiteRepository.getUserSiteTotalsInfo(clientId);
+                = userSiteStatisticsRepository.getUserSiteTotalsInfo(clientId);
 
         Map<UUID, List<UserSiteConnectionInfo>> connectionStatuses
-                = postgresUserSiteRepository.getConnectionStatusBySite(clientId);
+                = userSiteStatisticsRepository.getConnectionStatusBySite(clientId);
 
         // convert into a {@link GeneralizedConnectionStatus}
         Map<UUID, Map<GeneralizedConnectionStatus, Integer>> collect = connectionStatuses.entrySet().stream()
@@ -306,10 +434,22 @@ public class UserSiteService {
         return statuses;
     }
 
-    @CacheEvict(allEntries = true)
-    @Scheduled(fixedDelay = 60_000) /* 1 minute in milliseconds */
-    public void cacheEvict() {
-        log.debug("Evicting `usersite` cache.");
+    /**
+     * Adds the deltas of the user-site statistics to the counters, see {@link UserSiteStatisticsRepository#foldDeltas()}.
+     */
+    @Scheduled(fixedDelayString = "${lovebird.userSiteStatistics.foldInterval:PT10S}")
+    public void foldUserSiteStatistics() {
+        userSiteStatisticsRepository.foldDeltas();
+    }
+
+    /**
+     * Corrects the drift of the user-site statistics caused by changes that do not go through this service.
+     */
+    @Scheduled(cron = "${lovebird.userSiteStatistics.reconcileCron:0 23 * * * *}")
+    public void reconcileUserSiteStatistics() {
+        if (userSiteStatisticsRepository.reconcile()) {
+            log.info("Reconciled the user-site statistics.");
+        }
     }
 
     /**
@@ -324,8 +464,12 @@ public class UserSiteService {
         postgresUserSiteRepository.getUserSiteWithWriteLock(userId, userSiteId)
                 .ifPresentOrElse(
                         postgresUserSite -> {
+                            boolean wasDeleted = postgresUserSite.isDeleted();
                             postgresUserSite.markAsDeleted(clock);
                             postgresUserSiteRepository.save(postgresUserSite);
+                            if (!wasDeleted) {
+                                userSiteStatisticsRepository.userSiteDeleted(postgresUserSite);
+                            }
                             log.info("marked {} for deletion", postgresUserSite.getUserSiteId());
                         },
                         () -> log.error("Failed to mark user-site {} for deletion. User-site does not exist.", userSiteId));
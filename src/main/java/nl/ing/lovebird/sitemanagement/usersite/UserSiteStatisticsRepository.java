@@ -0,0 +1,302 @@
+package nl.ing.lovebird.sitemanagement.usersite;
+
+import nl.ing.lovebird.sitemanagement.lib.types.ClientId;
+import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteRepository.StatusTransition;
+import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteRepository.UserSiteConnectionInfo;
+import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteRepository.UserSiteTotalsInfo;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Counters of the (not deleted) user-sites per client, site, status and reason, and of the distinct users per client
+ * and site.
+ * <p>
+ * The transaction that creates, deletes or changes the status of a user-site adds a delta of the counters, so reading the
+ * statistics of a client does not have to scan all its user-sites.  The deltas are only ever inserted, so concurrent
+ * changes of the same counter do not wait for each other and cannot deadlock.  Reading sums the counters and the
+ * deltas, {@link #foldDeltas()} periodically adds the deltas to the counters.  Changes that bypass the
+ * {@link UserSiteService} (hard deletes) make the counters drift, {@link #reconcile()} corrects that periodically.
+ */
+@Repository
+public class UserSiteStatisticsRepository {
+
+    /**
+     * Arbitrary key of the advisory lock that makes sure only one pod folds or reconciles at a time.
+     */
+    private static final long RECONCILE_LOCK_KEY = 4_217_663_001L;
+
+    /**
+     * The number of user-sites per site, status and reason of the client: the counters plus the deltas.
+     */
+    private static final String STATUS_COUNTS_OF_CLIENT = """
+            select site_id, connection_status, failure_reason, sum(user_sites) as user_sites
+                from (select site_id, connection_status, failure_reason, user_sites
+                          from user_site_statistics_status where client_id = :clientId
+                      union all
+                      select site_id, connection_status, failure_reason, user_sites
+                          from user_site_statistics_status_delta where client_id = :clientId) s
+                group by site_id, connection_status, failure_reason
+                having sum(user_sites) > 0
+            """;
+
+    @PersistenceContext(unitName = "entityManager")
+    private final EntityManager entityManager;
+
+    public UserSiteStatisticsRepository(@Qualifier("entityManager") EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Counts a user-site that was just inserted.  Call this in the transaction that inserted it.
+     */
+    @Transactional
+    public void userSiteAdded(PostgresUserSite userSite) {
+        changeStatusCount(userSite.getClientId(), userSite.getSiteId(), userSite.getConnectionStatus(), userSite.getFailureReason(), 1);
+        changeUserCountIfOnlyUserSiteOfUser(userSite, 1);
+    }
+
+    /**
+     * Stops counting a user-site that was just marked as deleted.  Call this in the transaction that marked it.
+     */
+    @Transactional
+    public void userSiteDeleted(PostgresUserSite userSite) {
+        changeStatusCount(userSite.getClientId(), userSite.getSiteId(), userSite.getConnectionStatus(), userSite.getFailureReason(), -1);
+        changeUserCountIfOnlyUserSiteOfUser(userSite, -1);
+    }
+
+    /**
+     * Moves the user-sites that were changed by {@link PostgresUserSiteRepository#updateStatuses} from the counters of
+     * their old status and reason to the counter of their new status and reason.  The old status is the one that the
+     * update replaced, so a stale in-memory user-site cannot make the counters drift.  Every counter gets one delta, of
+     * the number of user-sites that moved from or to it.
+     */
+    @Transactional
+    public void statusesChanged(List<StatusTransition> transitions, ConnectionStatus newStatus, @Nullable FailureReason newReason) {
+        Map<StatusCounter, Integer> deltas = new HashMap<>();
+        for (StatusTransition transition : transitions) {
+            deltas.merge(new StatusCounter(transition.clientId(), transition.siteId(), transition.oldConnectionStatus(), transition.oldFailureReason()), -1, Integer::sum);
+            deltas.merge(new StatusCounter(transition.clientId(), transition.siteId(), newStatus, newReason), 1, Integer::sum);
+        }
+        deltas.forEach((counter, delta) -> {
+            if (delta != 0) {
+                changeStatusCount(counter.clientId(), counter.siteId(), counter.connectionStatus(), counter.failureReason(), delta);
+            }
+        });
+    }
+
+    /**
+     * @return the number of user-sites and users per site
+     */
+    @Transactional(readOnly = true)
+    public Map<UUID, UserSiteTotalsInfo> getUserSiteTotalsInfo(ClientId clientId) {
+        var sql = """
+                with status as (%s),
+                users as (
+                    select site_id, sum(users) as users
+                        from (select site_id, users from user_site_statistics_users where client_id = :clientId
+                              union all
+                              select site_id, users from user_site_statistics_users_delta where client_id = :clientId) u
+                        group by site_id
+                )
+                select cast(s.site_id as varchar), cast(sum(s.user_sites) as integer), cast(greatest(coalesce(max(u.users), 0), 0) as integer)
+                    from status s
+                    left join users u on u.site_id = s.site_id
+                    group by s.site_id
+                """.formatted(STATUS_COUNTS_OF_CLIENT);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = entityManager.createNativeQuery(sql)
+                .setParameter("clientId", clientId.unwrap())
+                .getResultList();
+
+        return rows.stream()
+                .map(row -> UserSiteTotalsInfo.builder()
+                        .siteId(UUID.fromString((String) row[0]))
+                        .nrOfUniqueConnections((Integer) row[1])
+                        .nrOfUniqueUsers((Integer) row[2])
+                        .build())
+                .collect(toMap(userSiteTotalsInfo -> userSiteTotalsInfo.siteId, identity()));
+    }
+
+    /**
+     * @return the number of user-sites per status and reason per site
+     */
+    @Transactional(readOnly = true)
+    public Map<UUID, List<UserSiteConnectionInfo>> getConnectionStatusBySite(ClientId clientId) {
+        var sql = """
+                with status as (%s)
+                select cast(site_id as varchar), connection_status, failure_reason, cast(user_sites as integer)
+                    from status
+                """.formatted(STATUS_COUNTS_OF_CLIENT);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = entityManager.createNativeQuery(sql)
+                .setParameter("clientId", clientId.unwrap())
+                .getResultList();
+
+        return rows.stream()
+                .map(row -> UserSiteConnectionInfo.builder()
+                        .siteId(UUID.fromString((String) row[0]))
+                        .connectionStatus(ConnectionStatus.valueOf((String) row[1]))
+                        .failureReason(Optional.of((String) row[2]).filter(reason -> !reason.isEmpty()).map(FailureReason::valueOf).orElse(null))
+                        .count((Integer) row[3])
+                        .build())
+                .collect(groupingBy(o -> o.siteId, mapping(identity(), toList())));
+    }
+
+    /**
+     * Adds the deltas to the counters and removes them, so reading does not have to sum many deltas.  Does nothing if
+     * another pod is already folding or reconciling.
+     *
+     * @return true if the deltas were folded
+     */
+    @Transactional
+    public boolean foldDeltas() {
+        if (!tryLock()) {
+            return false;
+        }
+
+        // A delete only removes the deltas that it sees, deltas that are committed meanwhile are left for the next fold.
+        entityManager.createNativeQuery("""
+                        with folded as (
+                            delete from user_site_statistics_status_delta
+                                returning client_id, site_id, connection_status, failure_reason, user_sites
+                        )
+                        insert into user_site_statistics_status (client_id, site_id, connection_status, failure_reason, user_sites)
+                            select client_id, site_id, connection_status, failure_reason, sum(user_sites)
+                                from folded
+                                group by client_id, site_id, connection_status, failure_reason
+                            on conflict (client_id, site_id, connection_status, failure_reason)
+                                do update set user_sites = user_site_statistics_status.user_sites + excluded.user_sites
+                        """)
+                .executeUpdate();
+        entityManager.createNativeQuery("""
+                        with folded as (
+                            delete from user_site_statistics_users_delta
+                                returning client_id, site_id, users
+                        )
+                        insert into user_site_statistics_users (client_id, site_id, users)
+                            select client_id, site_id, sum(users)
+                                from folded
+                                group by client_id, site_id
+                            on conflict (client_id, site_id)
+                                do update set users = user_site_statistics_users.users + excluded.users
+                        """)
+                .executeUpdate();
+        return true;
+    }
+
+    /**
+     * Recomputes all counters from the user_site table and removes the deltas.  Does nothing if another pod is already
+     * folding or reconciling.
+     * <p>
+     * All statements see the same snapshot: the deltas that are removed are exactly those of the changes that are
+     * counted, the deltas of changes that are committed meanwhile are kept.
+     *
+     * @return true if the counters were reconciled
+     */
+    @Transactional(isolation = Isolation.REPEATABLE_READ)
+    public boolean reconcile() {
+        if (!tryLock()) {
+            return false;
+        }
+
+        entityManager.createNativeQuery("""
+                        insert into user_site_statistics_status (client_id, site_id, connection_status, failure_reason, user_sites)
+                            select client_id, site_id, cast(connection_status as varchar), coalesce(cast(failure_reason as varchar), ''), count(*)
+                                from user_site
+                                where is_deleted = false
+                                group by client_id, site_id, connection_status, failure_reason
+                            on conflict (client_id, site_id, connection_status, failure_reason)
+                                do update set user_sites = excluded.user_sites
+                        """)
+                .executeUpdate();
+        entityManager.createNativeQuery("""
+                        delete from user_site_statistics_status s
+                            where not exists (select 1 from user_site u
+                                              where u.client_id = s.client_id and u.site_id = s.site_id and u.is_deleted = false
+                                                and cast(u.connection_status as varchar) = s.connection_status
+                                                and coalesce(cast(u.failure_reason as varchar), '') = s.failure_reason)
+                        """)
+                .executeUpdate();
+
+        entityManager.createNativeQuery("""
+                        insert into user_site_statistics_users (client_id, site_id, users)
+                            select client_id, site_id, count(distinct user_id)
+                                from user_site
+                                where is_deleted = false
+                                group by client_id, site_id
+                            on conflict (client_id, site_id)
+                                do update set users = excluded.users
+                        """)
+                .executeUpdate();
+        entityManager.createNativeQuery("""
+                        delete from user_site_statistics_users s
+                            where not exists (select 1 from user_site u
+                                              where u.client_id = s.client_id and u.site_id = s.site_id and u.is_deleted = false)
+                        """)
+                .executeUpdate();
+
+        entityManager.createNativeQuery("delete from user_site_statistics_status_delta").executeUpdate();
+        entityManager.createNativeQuery("delete from user_site_statistics_users_delta").executeUpdate();
+        return true;
+    }
+
+    private boolean tryLock() {
+        return (Boolean) entityManager.createNativeQuery("select pg_try_advisory_xact_lock(:key)")
+                .setParameter("key", RECONCILE_LOCK_KEY)
+                .getSingleResult();
+    }
+
+    private void changeStatusCount(ClientId clientId, UUID siteId, ConnectionStatus connectionStatus, @Nullable FailureReason failureReason, int delta) {
+        var sql = """
+                insert into user_site_statistics_status_delta (client_id, site_id, connection_status, failure_reason, user_sites)
+                    values (:clientId, :siteId, :connectionStatus, :failureReason, :delta)
+                """;
+
+        entityManager.createNativeQuery(sql)
+                .setParameter("clientId", clientId.unwrap())
+                .setParameter("siteId", siteId)
+                .setParameter("connectionStatus", connectionStatus.name())
+                .setParameter("failureReason", failureReason == null ? "" : failureReason.name())
+                .setParameter("delta", delta)
+                .executeUpdate();
+    }
+
+    private void changeUserCountIfOnlyUserSiteOfUser(PostgresUserSite userSite, int delta) {
+        var sql = """
+                insert into user_site_statistics_users_delta (client_id, site_id, users)
+                    select :clientId, :siteId, :delta
+                        where not exists (select 1 from user_site
+                                          where user_id = :userId and site_id = :siteId and id <> :userSiteId and is_deleted = false)
+                """;
+
+        entityManager.createNativeQuery(sql)
+                .setParameter("clientId", userSite.getClientId().unwrap())
+                .setParameter("siteId", userSite.getSiteId())
+                .setParameter("userId", userSite.getUserId())
+                .setParameter("userSiteId", userSite.getUserSiteId())
+                .setParameter("delta", delta)
+                .executeUpdate();
+    }
+
+    private record StatusCounter(ClientId clientId, UUID siteId, ConnectionStatus connectionStatus, @Nullable FailureReason failureReason) {
+    }
+}
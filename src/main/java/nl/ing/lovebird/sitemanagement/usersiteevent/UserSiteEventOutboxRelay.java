@@ -0,0 +1,239 @@
+package nl.ing.lovebird.sitemanagement.usersiteevent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import nl.ing.lovebird.clienttokens.requester.service.ClientTokenRequesterService;
+import nl.ing.lovebird.sitemanagement.usersiteevent.UserSiteEventOutboxRepository.OutboxEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static nl.ing.lovebird.clienttokens.constants.ClientTokenConstants.CLIENT_TOKEN_HEADER_NAME;
+
+/**
+ * Publishes the events in the {@link UserSiteEventOutboxRepository} on kafka.
+ * <p>
+ * The events of a batch are all handed to the producer before we wait for the acknowledgements, so the producer can
+ * combine them into a few requests (see linger.ms).  An event is removed from the outbox after it is acknowledged, so
+ * an event can be published more than once if we crash in between.  That is fine, consumers treat these events as a
+ * signal to (re)load the user-site.
+ * <p>
+ * Only the relay that holds the lease (see {@link UserSiteEventOutboxRepository#acquireRelayLease}) publishes, so the
+ * events of a user-site are published in order, also with several pods.  The holder renews the lease once
+ * {@link #leaseRenewInterval} has passed instead of before every batch, and a relay that finds nothing to publish (or
+ * no lease) polls less often, up to once every {@code maxIdleInterval}, so idle pods do not keep updating the lease row.
+ * <p>
+ * No transaction is open while we wait for kafka.  The relay runs on its own thread, so a slow broker does not hold up
+ * the other scheduled jobs, and publishes at most {@code maxBatchesPerPoll} batches per poll.  The client-user token of
+ * an event is requested when it is published, the outbox does not store tokens.
+ */
+@Slf4j
+@Component
+public class UserSiteEventOutboxRelay {
+
+    private final Clock clock;
+    private final UserSiteEventOutboxRepository outboxRepository;
+    private final KafkaTemplate<String, UserSiteEventAbstract> kafkaTemplate;
+    private final ClientTokenRequesterService clientTokenRequesterService;
+    private final String topic;
+    private final int batchSize;
+    private final int maxBatchesPerPoll;
+    private final Duration pollInterval;
+    private final Duration maxIdleInterval;
+    private final Duration sendTimeout;
+    private final Duration leaseDuration;
+    /**
+     * Half of the time the lease has left over after the longest send, so a batch never outlives the lease.
+     */
+    private final Duration leaseRenewInterval;
+    private final UUID relayId = UUID.randomUUID();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("user-site-event-outbox-"));
+    private final Counter publishedEvents;
+    private final Counter failedBatches;
+    private final Timer batchDuration;
+    private final AtomicLong lagMillis = new AtomicLong();
+    // Only used on the thread of the scheduler.
+    private boolean holdsLease;
+    private long leaseRenewAtNanos;
+    private Duration nextPollInterval;
+
+    public UserSiteEventOutboxRelay(Clock clock,
+                                    MeterRegistry meterRegistry,
+                                    UserSiteEventOutboxRepository outboxRepository,
+                                    KafkaTemplate<String, UserSiteEventAbstract> kafkaTemplate,
+                                    ClientTokenRequesterService clientTokenRequesterService,
+                                    @Value("${yolt.kafka.topics.user-site-events.topic-name}") String topic,
+                                    @Value("${lovebird.userSiteEventOutbox.batchSize:500}") int batchSize,
+                                    @Value("${lovebird.userSiteEventOutbox.maxBatchesPerPoll:10}") int maxBatchesPerPoll,
+                                    @Value("${lovebird.userSiteEventOutbox.pollInterval:PT0.2S}") Duration pollInterval,
+                                    @Value("${lovebird.userSiteEventOutbox.maxIdleInterval:PT2S}") Duration maxIdleInterval,
+                                    @Value("${lovebird.userSiteEventOutbox.sendTimeout:PT30S}") Duration sendTimeout,
+                                    @Value("${lovebird.userSiteEventOutbox.leaseDuration:PT1M}") Duration leaseDuration) {
+        if (leaseDuration.compareTo(sendTimeout) <= 0) {
+            // The lease must not expire while we wait for the acknowledgements, see leaseRenewInterval.
+            throw new IllegalArgumentException("lovebird.userSiteEventOutbox.leaseDuration must be longer than the sendTimeout");
+        }
+        this.clock = clock;
+        this.outboxRepository = outboxRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.clientTokenRequesterService = clientTokenRequesterService;
+        this.topic = topic;
+        this.batchSize = batchSize;
+        this.maxBatchesPerPoll = maxBatchesPerPoll;
+        this.pollInterval = pollInterval;
+        this.maxIdleInterval = maxIdleInterval;
+        this.nextPollInterval = pollInterval;
+        this.sendTimeout = sendTimeout;
+        this.leaseDuration = leaseDuration;
+        this.leaseRenewInterval = leaseDuration.minus(sendTimeout).dividedBy(2);
+        this.publishedEvents = meterRegistry.counter("user_site_event_outbox_published_events");
+        this.failedBatches = meterRegistry.counter("user_site_event_outbox_failed_batches");
+        this.batchDuration = meterRegistry.timer("user_site_event_outbox_batch_duration");
+        Gauge.builder("user_site_event_outbox_lag_seconds", lagMillis, millis -> millis.get() / 1000.0)
+                .description("age of the oldest event in the last batch that was taken from the outbox")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        scheduler.schedule(this::poll, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void poll() {
+        if (relay()) {
+            nextPollInterval = pollInterval;
+        } else {
+            Duration backOff = nextPollInterval.multipliedBy(2);
+            nextPollInterval = backOff.compareTo(maxIdleInterval) > 0 ? maxIdleInterval : backOff;
+        }
+        try {
+            scheduler.schedule(this::poll, nextPollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("The user-site event outbox relay is stopped.");
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+        try {
+            outboxRepository.releaseRelayLease(relayId);
+        } catch (RuntimeException e) {
+            log.warn("Failed to release the lease of the user-site event outbox relay, it will expire.", e);
+        }
+    }
+
+    /**
+     * Publishes the outbox, one batch after the other, until it is empty or {@code maxBatchesPerPoll} batches were
+     * published.  Does nothing if another relay holds the lease.
+     *
+     * @return whether any event was published, if not the next poll can wait a bit longer
+     */
+    boolean relay() {
+        boolean published = false;
+        try {
+            for (int batch = 0; batch < maxBatchesPerPoll; batch++) {
+                if (!holdLease()) {
+                    return published;
+                }
+                List<OutboxEvent> events = outboxRepository.findOldest(batchSize);
+                if (events.isEmpty()) {
+                    lagMillis.set(0);
+                    return published;
+                }
+                batchDuration.record(() -> publish(events));
+                outboxRepository.remove(events);
+                publishedEvents.increment(events.size());
+                published = true;
+                if (events.size() < batchSize) {
+                    return true;
+                }
+            }
+        } catch (RuntimeException e) {
+            // An exception would cancel the next runs of the scheduler.
+            failedBatches.increment();
+            log.error("Failed to publish the user-site events in the outbox, will retry.", e);
+        }
+        return published;
+    }
+
+    /**
+     * Takes the lease, or renews it if {@link #leaseRenewInterval} has passed since it was taken.  The time is taken
+     * before the update, so the lease lasts at least {@code leaseDuration} from then.
+     */
+    private boolean holdLease() {
+        long now = System.nanoTime();
+        if (holdsLease && now - leaseRenewAtNanos < 0) {
+            return true;
+        }
+        holdsLease = outboxRepository.acquireRelayLease(relayId, leaseDuration);
+        leaseRenewAtNanos = now + leaseRenewInterval.toNanos();
+        return holdsLease;
+    }
+
+    private void publish(List<OutboxEvent> events) {
+        Instant now = Instant.now(clock);
+        lagMillis.set(Math.max(0, Duration.between(events.get(0).createdAt(), now).toMillis()));
+
+        Map<List<UUID>, String> clientUserTokens = new HashMap<>();
+        List<Future<?>> futures = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+            futures.add(kafkaTemplate.send(toMessage(event, clientUserTokens)));
+        }
+
+        long deadline = System.nanoTime() + sendTimeout.toNanos();
+        try {
+            for (Future<?> future : futures) {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while publishing user-site events", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Failed to publish user-site events on topic " + topic, e);
+        }
+    }
+
+    /**
+     * @param clientUserTokens the serialized client-user tokens by client-id and user-id that were requested for the
+     *                         batch, the events of a user often come together
+     */
+    private Message<UserSiteEventAbstract> toMessage(OutboxEvent outboxEvent, Map<List<UUID>, String> clientUserTokens) {
+        UserSiteEventAbstract event = outboxEvent.event();
+        String clientUserToken = outboxEvent.clientId() == null ? null : clientUserTokens.computeIfAbsent(List.of(outboxEvent.clientId(), event.getUserId()),
+                key -> clientTokenRequesterService.getClientUserToken(outboxEvent.clientId(), event.getUserId()).getSerialized());
+        return MessageBuilder
+                .withPayload(event)
+                .setHeader("type", event.getType().name())
+                .setHeader(KafkaHeaders.TOPIC, topic)
+                .setHeader(KafkaHeaders.MESSAGE_KEY, event.getUserId().toString())
+                .setHeader(CLIENT_TOKEN_HEADER_NAME, clientUserToken)
+                .build();
+    }
+}
@@ -0,0 +1,180 @@
+package nl.ing.lovebird.sitemanagement.usersiteevent;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The outbox of the {@link UserSiteEventAbstract}s that still have to be published on kafka.
+ * <p>
+ * An event is added in the same transaction as the change of the user-site, so it is only published if the change is
+ * committed and it is not lost if we crash before it is published.  The {@link UserSiteEventOutboxRelay} that holds
+ * the lease publishes and removes the events.
+ * <p>
+ * The events are read in the order of their id, which is the order in which they were added and not the order in which
+ * they were committed: an event of a transaction that commits late can be published after events with a higher id.
+ * The events of one user-site are in order nonetheless if they are added after the row of the user-site is changed in
+ * the same transaction, as the lock on that row is held until the transaction commits.
+ * <p>
+ * Client tokens are not stored, only the client-id of the events that need one (see {@link OutboxEvent#clientId()}).
+ */
+@Repository
+public class UserSiteEventOutboxRepository {
+
+    /**
+     * Postgres allows 65535 parameters per statement, an event takes 5.
+     */
+    static final int MAX_EVENTS_PER_STATEMENT = 1000;
+
+    @PersistenceContext(unitName = "entityManager")
+    private final EntityManager entityManager;
+
+    public UserSiteEventOutboxRepository(@Qualifier("entityManager") EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Adds an event to the outbox.  Joins the transaction of the caller if there is one.
+     *
+     * @param clientId the client of the user, if the event has to be published with a client-user token
+     */
+    @Transactional
+    public void add(UserSiteEventAbstract event, @Nullable UUID clientId) {
+        var sql = """
+                insert into user_site_event_outbox (event_type, user_site_id, user_id, site_id, event_time, client_id)
+                    values (:eventType, :userSiteId, :userId, :siteId, :eventTime, cast(nullif(:clientId, '') as uuid))
+                """;
+
+        entityManager.createNativeQuery(sql)
+                .setParameter("eventType", event.getType().name())
+                .setParameter("userSiteId", event.getUserSiteId())
+                .setParameter("userId", event.getUserId())
+                .setParameter("siteId", event.getSiteId())
+                .setParameter("eventTime", Timestamp.from(event.getTime().toInstant()))
+                // A null parameter is bound as bytea by hibernate, hence the empty string.
+                .setParameter("clientId", clientId == null ? "" : clientId.toString())
+                .executeUpdate();
+    }
+
+    /**
+     * Adds events without a client-id to the outbox with one insert per {@value #MAX_EVENTS_PER_STATEMENT} events.
+     * Joins the transaction of the caller if there is one.
+     */
+    @Transactional
+    public void addAll(List<? extends UserSiteEventAbstract> events) {
+        for (int from = 0; from < events.size(); from += MAX_EVENTS_PER_STATEMENT) {
+            insert(events.subList(from, Math.min(from + MAX_EVENTS_PER_STATEMENT, events.size())));
+        }
+    }
+
+    private void insert(List<? extends UserSiteEventAbstract> events) {
+        var values = IntStream.range(0, events.size())
+                .mapToObj(i -> "(:eventType%1$d, :userSiteId%1$d, :userId%1$d, :siteId%1$d, :eventTime%1$d, null)".formatted(i))
+                .collect(Collectors.joining(", "));
+        Query query = entityManager.createNativeQuery(
+                "insert into user_site_event_outbox (event_type, user_site_id, user_id, site_id, event_time, client_id) values " + values);
+        for (int i = 0; i < events.size(); i++) {
+            UserSiteEventAbstract event = events.get(i);
+            query.setParameter("eventType" + i, event.getType().name())
+                    .setParameter("userSiteId" + i, event.getUserSiteId())
+                    .setParameter("userId" + i, event.getUserId())
+                    .setParameter("siteId" + i, event.getSiteId())
+                    .setParameter("eventTime" + i, Timestamp.from(event.getTime().toInstant()));
+        }
+        query.executeUpdate();
+    }
+
+    /**
+     * Takes or renews the lease of the relay.  Only the holder of the lease publishes the outbox, so the events of a
+     * user-site are published in order, also when several pods run a relay.
+     *
+     * @return whether the given relay holds the lease until {@code lease} from now
+     */
+    @Transactional
+    public boolean acquireRelayLease(UUID relay, Duration lease) {
+        var sql = """
+                update user_site_event_outbox_relay
+                    set owner = :relay, lease_until = now() + make_interval(secs => :leaseSeconds)
+                    where id = 1 and (owner = :relay or lease_until < now())
+                """;
+
+        return entityManager.createNativeQuery(sql)
+                .setParameter("relay", relay)
+                .setParameter("leaseSeconds", lease.toMillis() / 1000.0)
+                .executeUpdate() == 1;
+    }
+
+    /**
+     * Gives up the lease of the relay, if it holds it, so another pod can take over without waiting for it to expire.
+     */
+    @Transactional
+    public void releaseRelayLease(UUID relay) {
+        entityManager.createNativeQuery("update user_site_event_outbox_relay set owner = null, lease_until = now() where id = 1 and owner = :relay")
+                .setParameter("relay", relay)
+                .executeUpdate();
+    }
+
+    /**
+     * Reads the oldest events in the outbox.  The events are not locked, the relay removes them with
+     * {@link #remove(List)} once they are published.
+     */
+    @Transactional(readOnly = true)
+    public List<OutboxEvent> findOldest(int limit) {
+        var sql = """
+                select id, event_type, cast(user_site_id as text), cast(user_id as text), cast(site_id as text),
+                       event_time, cast(client_id as text), created_at
+                    from user_site_event_outbox
+                    order by id
+                    limit :limit
+                """;
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = entityManager.createNativeQuery(sql)
+                .setParameter("limit", limit)
+                .getResultList();
+        return rows.stream().map(UserSiteEventOutboxRepository::toOutboxEvent).toList();
+    }
+
+    @Transactional
+    public void remove(List<OutboxEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        entityManager.createNativeQuery("delete from user_site_event_outbox where id in (:ids)")
+                .setParameter("ids", events.stream().map(OutboxEvent::id).toList())
+                .executeUpdate();
+    }
+
+    private static OutboxEvent toOutboxEvent(Object[] row) {
+        UUID userSiteId = UUID.fromString((String) row[2]);
+        UUID userId = UUID.fromString((String) row[3]);
+        UUID siteId = UUID.fromString((String) row[4]);
+        var time = ((Timestamp) row[5]).toInstant().atZone(ZoneOffset.UTC);
+        UserSiteEventAbstract event = switch (EventType.valueOf((String) row[1])) {
+            case UPDATE_USER_SITE -> new UserSiteEventUpdate(userSiteId, userId, siteId, time);
+            case DELETE_USER_SITE -> new UserSiteEventDelete(userSiteId, userId, siteId, time);
+        };
+        UUID clientId = row[6] == null ? null : UUID.fromString((String) row[6]);
+        return new OutboxEvent(((Number) row[0]).longValue(), event, clientId, ((Timestamp) row[7]).toInstant());
+    }
+
+    /**
+     * @param clientId  the client of the user if the event is published with a client-user token, null otherwise
+     * @param createdAt the moment the event was added to the outbox
+     */
+    public record OutboxEvent(long id, UserSiteEventAbstract event, @Nullable UUID clientId, Instant createdAt) {
+    }
+}
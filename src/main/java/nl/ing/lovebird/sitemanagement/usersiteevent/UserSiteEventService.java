@@ -2,35 +2,34 @@ package nl.ing.lovebird.sitemanagement.usersiteevent;
 
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
-import nl.ing.lovebird.clienttokens.AbstractClientToken;
 import nl.ing.lovebird.clienttokens.ClientToken;
 import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSite;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.kafka.support.KafkaHeaders;
-import org.springframework.messaging.Message;
-import org.springframework.messaging.support.MessageBuilder;
+import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteRepository;
+import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteRepository.StatusTransition;
 import org.springframework.stereotype.Service;
 
 import java.time.Clock;
 import java.time.ZonedDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
-import static nl.ing.lovebird.clienttokens.constants.ClientTokenConstants.CLIENT_TOKEN_HEADER_NAME;
-
+/**
+ * Publishes the events about changes of {@link PostgresUserSite}s.
+ * <p>
+ * The events are added to the {@link UserSiteEventOutboxRepository} in the transaction of the caller, so call these
+ * methods in the transaction that changes the user-site.  The {@link UserSiteEventOutboxRelay} publishes them on kafka
+ * shortly after, so the caller never waits for kafka.
+ */
 @Slf4j
 @Service
 public class UserSiteEventService {
     private final Clock clock;
-    private final KafkaTemplate<String, UserSiteEventAbstract> kafkaTemplate;
-    private final String topic;
+    private final UserSiteEventOutboxRepository outboxRepository;
 
-    public UserSiteEventService(KafkaTemplate<String, UserSiteEventAbstract> kafkaTemplate,
-                                @Value("${yolt.kafka.topics.user-site-events.topic-name}") String topic,
+    public UserSiteEventService(UserSiteEventOutboxRepository outboxRepository,
                                 Clock clock) {
-        this.kafkaTemplate = kafkaTemplate;
-        this.topic = topic;
+        this.outboxRepository = outboxRepository;
         this.clock = clock;
     }
 
@@ -46,6 +45,17 @@ public class UserSiteEventService {
         publishEvent(updateEvent, null);
     }
 
+    /**
+     * Like {@link #publishUserSiteUpdate}, for all user-sites that were changed by
+     * {@link PostgresUserSiteRepository#updateStatuses}.  The events are added to the outbox together.
+     */
+    public void publishUserSiteUpdates(final List<StatusTransition> transitions) {
+        ZonedDateTime now = ZonedDateTime.now(clock);
+        outboxRepository.addAll(transitions.stream()
+                .map(transition -> new UserSiteEventUpdate(transition.userSiteId(), transition.userId(), transition.siteId(), now))
+                .toList());
+    }
+
     public void publishCreatedUserSite(final PostgresUserSite userSite) {
         UserSiteEventUpdate updateEvent = new UserSiteEventUpdate(userSite.getUserSiteId(),
                 userSite.getUserId(),
@@ -67,15 +77,6 @@ public class UserSiteEventService {
 
     private void publishEvent(final UserSiteEventAbstract event,
                               final ClientToken clientToken) {
-
-        Message<UserSiteEventAbstract> message = MessageBuilder
-                .withPayload(event)
-                .setHeader("type", event.getType().name())
-                .setHeader(KafkaHeaders.TOPIC, topic)
-                .setHeader(KafkaHeaders.MESSAGE_KEY, event.getUserId().toString())
-                .setHeader(CLIENT_TOKEN_HEADER_NAME, Optional.ofNullable(clientToken).map(AbstractClientToken::getSerialized).orElse(null))
-                .build();
-
-        kafkaTemplate.send(message);
+        outboxRepository.add(event, Optional.ofNullable(clientToken).map(ClientToken::getClientIdClaim).orElse(null));
     }
 }
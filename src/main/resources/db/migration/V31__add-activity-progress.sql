@@ -0,0 +1,10 @@
+CREATE TABLE activity_progress
+(
+    activity_id            uuid        PRIMARY KEY,
+    start_time             timestamptz NOT NULL,
+    expected_user_site_ids uuid[]      NOT NULL,
+    ingested_user_site_ids uuid[]      NOT NULL DEFAULT '{}',
+    failed_user_site_ids   uuid[]      NOT NULL DEFAULT '{}'
+);
+
+CREATE INDEX idx_activity_progress_start_time ON activity_progress (start_time);
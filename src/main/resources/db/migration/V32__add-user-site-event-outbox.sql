@@ -0,0 +1,21 @@
+CREATE TABLE user_site_event_outbox
+(
+    id           bigserial   PRIMARY KEY,
+    event_type   varchar(32) NOT NULL,
+    user_site_id uuid        NOT NULL,
+    user_id      uuid        NOT NULL,
+    site_id      uuid        NOT NULL,
+    event_time   timestamptz NOT NULL,
+    client_token text,
+    created_at   timestamptz NOT NULL DEFAULT now()
+);
+
+-- Only the pod that holds the lease publishes the user-site event outbox, so the events of a user are published in order.
+CREATE TABLE user_site_event_outbox_relay
+(
+    id          smallint    PRIMARY KEY,
+    owner       uuid,
+    lease_until timestamptz NOT NULL
+);
+
+INSERT INTO user_site_event_outbox_relay (id, owner, lease_until) VALUES (1, null, now());
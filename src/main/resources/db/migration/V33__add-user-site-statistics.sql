@@ -0,0 +1,55 @@
+-- Number of (not deleted) user-sites per client, site, status and reason.  An empty failure_reason means no reason.
+CREATE TABLE user_site_statistics_status
+(
+    client_id         uuid        NOT NULL,
+    site_id           uuid        NOT NULL,
+    connection_status varchar(32) NOT NULL,
+    failure_reason    varchar(32) NOT NULL DEFAULT '',
+    user_sites        integer     NOT NULL,
+    PRIMARY KEY (client_id, site_id, connection_status, failure_reason)
+);
+
+-- Number of distinct users that have a (not deleted) user-site per client and site.
+CREATE TABLE user_site_statistics_users
+(
+    client_id uuid    NOT NULL,
+    site_id   uuid    NOT NULL,
+    users     integer NOT NULL,
+    PRIMARY KEY (client_id, site_id)
+);
+
+INSERT INTO user_site_statistics_status (client_id, site_id, connection_status, failure_reason, user_sites)
+SELECT client_id, site_id, cast(connection_status as varchar), coalesce(cast(failure_reason as varchar), ''), count(*)
+FROM user_site
+WHERE is_deleted = false
+GROUP BY client_id, site_id, connection_status, failure_reason;
+
+INSERT INTO user_site_statistics_users (client_id, site_id, users)
+SELECT client_id, site_id, count(distinct user_id)
+FROM user_site
+WHERE is_deleted = false
+GROUP BY client_id, site_id;
+
+-- Changes of the user-site statistics that are not yet folded into the counters.  Writers only insert deltas, so
+-- concurrent changes of the same counter do not wait for each other and cannot deadlock.
+CREATE TABLE user_site_statistics_status_delta
+(
+    id                bigserial   PRIMARY KEY,
+    client_id         uuid        NOT NULL,
+    site_id           uuid        NOT NULL,
+    connection_status varchar(32) NOT NULL,
+    failure_reason    varchar(32) NOT NULL DEFAULT '',
+    user_sites        integer     NOT NULL
+);
+
+CREATE INDEX user_site_statistics_status_delta_client_id_idx ON user_site_statistics_status_delta (client_id);
+
+CREATE TABLE user_site_statistics_users_delta
+(
+    id        bigserial PRIMARY KEY,
+    client_id uuid      NOT NULL,
+    site_id   uuid      NOT NULL,
+    users     integer   NOT NULL
+);
+
+CREATE INDEX user_site_statistics_users_delta_client_id_idx ON user_site_statistics_users_delta (client_id);
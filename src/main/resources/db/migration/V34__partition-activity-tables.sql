@@ -0,0 +1,68 @@
+-- Partition activity and activity_events by day (UTC), so old activities can be removed by dropping a partition instead
+-- of deleting rows.  The partitions are created ahead of time by the application (ActivityPartitionService).  Rows that
+-- do not fall in a partition (i.e. events with a time far in the past) end up in the default partition.
+
+ALTER TABLE activity_events RENAME TO activity_events_old;
+ALTER TABLE activity_events_old RENAME CONSTRAINT activity_events_pkey TO activity_events_old_pkey;
+ALTER INDEX idx_activity_events_event_time RENAME TO idx_activity_events_old_event_time;
+ALTER INDEX idx_event_time_asc RENAME TO idx_event_time_asc_old;
+
+ALTER TABLE activity RENAME TO activity_old;
+ALTER TABLE activity_old RENAME CONSTRAINT activity_pkey TO activity_old_pkey;
+ALTER INDEX idx_activity_start_time RENAME TO idx_activity_old_start_time;
+ALTER INDEX idx_activity_time_by_user_id_asc RENAME TO idx_activity_old_time_by_user_id_asc;
+
+-- The partition key has to be part of the primary key.
+CREATE TABLE activity_events
+(
+    event_id    uuid        NOT NULL,
+    user_id     uuid        NOT NULL,
+    activity_id uuid        NOT NULL,
+    event       jsonb       NOT NULL,
+    event_time  timestamptz NOT NULL,
+    PRIMARY KEY (event_id, event_time)
+) PARTITION BY RANGE (event_time);
+
+CREATE INDEX idx_event_time_asc ON activity_events (activity_id, event_time ASC);
+CREATE TABLE activity_events_default PARTITION OF activity_events DEFAULT;
+
+CREATE TABLE activity
+(
+    id               uuid        NOT NULL,
+    user_id          uuid        NOT NULL,
+    start_time       timestamptz NOT NULL,
+    end_time         timestamptz,
+    start_event_type text        NOT NULL,
+    user_site_ids    uuid[]      NOT NULL,
+    PRIMARY KEY (id, start_time)
+) PARTITION BY RANGE (start_time);
+
+CREATE INDEX idx_activity_time_by_user_id_asc ON activity (user_id, start_time);
+CREATE TABLE activity_default PARTITION OF activity DEFAULT;
+
+-- Activities are kept for 7 days, create the partitions of the last 31 days to be safe and of the next 14 days.
+DO
+$$
+    DECLARE
+        day date;
+    BEGIN
+        FOR day IN SELECT generate_series((now() AT TIME ZONE 'UTC')::date - 31, (now() AT TIME ZONE 'UTC')::date + 14, interval '1 day')::date
+            LOOP
+                EXECUTE format('CREATE TABLE %I PARTITION OF activity_events FOR VALUES FROM (%L) TO (%L)',
+                               'activity_events_p' || to_char(day, 'YYYYMMDD'), day || ' 00:00:00+00', (day + 1) || ' 00:00:00+00');
+                EXECUTE format('CREATE TABLE %I PARTITION OF activity FOR VALUES FROM (%L) TO (%L)',
+                               'activity_p' || to_char(day, 'YYYYMMDD'), day || ' 00:00:00+00', (day + 1) || ' 00:00:00+00');
+            END LOOP;
+    END
+$$;
+
+INSERT INTO activity_events (event_id, user_id, activity_id, event, event_time)
+SELECT event_id, user_id, activity_id, event, event_time
+FROM activity_events_old;
+
+INSERT INTO activity (id, user_id, start_time, end_time, start_event_type, user_site_ids)
+SELECT id, user_id, start_time, end_time, start_event_type, user_site_ids
+FROM activity_old;
+
+DROP TABLE activity_events_old;
+DROP TABLE activity_old;
@@ -0,0 +1,7 @@
+CREATE TABLE batch_job_checkpoint
+(
+    job            varchar(128) PRIMARY KEY,
+    last_id        uuid         NOT NULL,
+    processed_rows bigint       NOT NULL,
+    updated_at     timestamptz  NOT NULL DEFAULT now()
+);
@@ -0,0 +1,12 @@
+-- The outbox stored the serialized client token of delete events in plain text.  It now only stores the client-id, the
+-- relay requests a client-user token for the client and the user of the event when it publishes the event.
+ALTER TABLE user_site_event_outbox ADD COLUMN client_id uuid;
+
+UPDATE user_site_event_outbox o
+    SET client_id = us.client_id, client_token = null
+    FROM user_site us
+    WHERE o.client_token IS NOT NULL AND us.id = o.user_site_id;
+
+UPDATE user_site_event_outbox SET client_token = null WHERE client_token IS NOT NULL;
+
+-- Pods of the previous version still write client_token until they are replaced, drop the column in a later release.
@@ -0,0 +1,151 @@
+package nl.ing.lovebird.sitemanagement.accessmeans;
+
+import com.yolt.securityutils.crypto.SecretKey;
+import nl.ing.lovebird.clienttokens.ClientUserToken;
+import nl.ing.lovebird.providershared.api.AuthenticationMeansReference;
+import nl.ing.lovebird.secretspipeline.VaultKeys;
+import nl.ing.lovebird.sitemanagement.SiteManagementMetrics;
+import nl.ing.lovebird.sitemanagement.accessmeans.AccessMeansManager.AccessMeansResult;
+import nl.ing.lovebird.sitemanagement.accessmeans.AccessMeansManager.StoredUserSiteAccessMeans;
+import nl.ing.lovebird.sitemanagement.clientconfiguration.ClientSiteService;
+import nl.ing.lovebird.sitemanagement.lib.types.ClientId;
+import nl.ing.lovebird.sitemanagement.nonlicensedclients.AuthenticationMeansFactory;
+import nl.ing.lovebird.sitemanagement.providercallback.UserExternalIdRepository;
+import nl.ing.lovebird.sitemanagement.providerclient.AccessMeansDTO;
+import nl.ing.lovebird.sitemanagement.providerclient.FormProviderRestClient;
+import nl.ing.lovebird.sitemanagement.providerclient.ProviderRestClient;
+import nl.ing.lovebird.sitemanagement.providerclient.RefreshAccessMeansDTO;
+import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSite;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static nl.ing.lovebird.sitemanagement.accessmeans.AesEncryptionUtil.decrypt;
+import static nl.ing.lovebird.sitemanagement.accessmeans.AesEncryptionUtil.encrypt;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AccessMeansManagerTest {
+
+    private static final SecretKey SECRET_KEY = SecretKey.from("a3f60fafc948035382fbe9ce7b4535c4".getBytes());
+    private static final String PROVIDER = "STARLINGBANK";
+
+    @Mock
+    private ClientSiteService clientSiteService;
+    @Mock
+    private AccessMeansRepository accessMeansRepository;
+    @Mock
+    private UserSiteAccessMeansRepository userSiteAccessMeansRepository;
+    @Mock
+    private FormProviderRestClient formProviderRestClient;
+    @Mock
+    private ProviderRestClient providerRestClient;
+    @Mock
+    private SiteManagementMetrics siteManagementMetrics;
+    @Mock
+    private UserExternalIdRepository userExternalIdRepository;
+    @Mock
+    private AuthenticationMeansFactory authenticationMeansFactory;
+    @Mock
+    private VaultKeys vaultKeys;
+    @Mock
+    private ClientUserToken clientUserToken;
+
+    private AccessMeansManager accessMeansManager;
+
+    private final Instant requestStartTime = Instant.now();
+    private PostgresUserSite userSite;
+
+    @BeforeEach
+    void setUp() {
+        when(vaultKeys.getSymmetricKey("encryption-key")).thenReturn(SECRET_KEY);
+        when(clientUserToken.getClientIdClaim()).thenReturn(UUID.randomUUID());
+        accessMeansManager = new AccessMeansManager(clientSiteService, accessMeansRepository, userSiteAccessMeansRepository, formProviderRestClient, providerRestClient,
+                siteManagementMetrics, userExternalIdRepository, authenticationMeansFactory, vaultKeys, Clock.systemUTC());
+
+        userSite = new PostgresUserSite();
+        userSite.setUserId(UUID.randomUUID());
+        userSite.setUserSiteId(UUID.randomUUID());
+        userSite.setSiteId(UUID.randomUUID());
+        userSite.setClientId(ClientId.random());
+        userSite.setRedirectUrlId(UUID.randomUUID());
+        userSite.setProvider(PROVIDER);
+    }
+
+    @Test
+    void retrieveValidAccessMeans_withPreloadedValidAccessMeans_returnsThemWithoutCallingProviders() {
+        UserSiteAccessMeans stored = userSiteAccessMeans(userSite.getUserSiteId(), "storedToken", requestStartTime.plus(1, ChronoUnit.HOURS));
+        StoredUserSiteAccessMeans storedUserSiteAccessMeans = preload(stored);
+
+        AccessMeansResult result = accessMeansManager.retrieveValidAccessMeans(clientUserToken, userSite, requestStartTime, null, storedUserSiteAccessMeans);
+
+        assertThat(result.getResultCode()).isEqualTo(AccessMeansResult.ResultCode.OK);
+        assertThat(result.getAccessMeans().getUserSiteAccessMeans()).isSameAs(stored);
+        verifyNoInteractions(providerRestClient);
+        verify(userSiteAccessMeansRepository, never()).get(any(), any(), any());
+        verify(userSiteAccessMeansRepository, never()).save(any());
+    }
+
+    @Test
+    void retrieveValidAccessMeans_withPreloadedExpiredAccessMeans_renewsAndSavesThem() throws Exception {
+        Instant created = Instant.parse("2021-01-01T00:00:00Z");
+        UserSiteAccessMeans stored = userSiteAccessMeans(userSite.getUserSiteId(), "storedToken", requestStartTime.minus(1, ChronoUnit.MINUTES));
+        stored.setCreated(created);
+        StoredUserSiteAccessMeans storedUserSiteAccessMeans = preload(stored);
+        AuthenticationMeansReference authenticationMeansReference = new AuthenticationMeansReference(userSite.getClientId().unwrap(), userSite.getRedirectUrlId());
+        when(authenticationMeansFactory.createAuthMeans(clientUserToken, userSite.getRedirectUrlId())).thenReturn(authenticationMeansReference);
+        Date renewedExpireTime = Date.from(requestStartTime.plus(1, ChronoUnit.HOURS));
+        when(providerRestClient.refreshAccessMeans(eq(PROVIDER), eq(userSite.getSiteId()), any(), eq(clientUserToken), anyBoolean()))
+                .thenReturn(new AccessMeansDTO(userSite.getUserId(), "renewedToken", new Date(), renewedExpireTime));
+
+        AccessMeansResult result = accessMeansManager.retrieveValidAccessMeans(clientUserToken, userSite, requestStartTime, "127.0.0.1", storedUserSiteAccessMeans);
+
+        assertThat(result.getResultCode()).isEqualTo(AccessMeansResult.ResultCode.OK);
+        UserSiteAccessMeans renewed = result.getAccessMeans().getUserSiteAccessMeans();
+        assertThat(decrypt(renewed.getAccessMeans(), SECRET_KEY)).isEqualTo("renewedToken");
+        assertThat(renewed.getExpireTime()).isEqualTo(renewedExpireTime);
+        assertThat(renewed.getCreated()).isEqualTo(created);
+
+        ArgumentCaptor<RefreshAccessMeansDTO> refreshCaptor = ArgumentCaptor.forClass(RefreshAccessMeansDTO.class);
+        verify(providerRestClient).refreshAccessMeans(eq(PROVIDER), eq(userSite.getSiteId()), refreshCaptor.capture(), eq(clientUserToken), anyBoolean());
+        assertThat(refreshCaptor.getValue().getAccessMeansDTO().getAccessMeansBlob()).isEqualTo("storedToken");
+        assertThat(refreshCaptor.getValue().getPsuIpAddress()).isEqualTo("127.0.0.1");
+        verify(userSiteAccessMeansRepository).save(renewed);
+        verify(userSiteAccessMeansRepository, never()).get(any(), any(), any());
+    }
+
+    @Test
+    void retrieveValidAccessMeans_withoutPreloadedAccessMeansForTheUserSite_returnsAccessMeansDoNotExist() {
+        StoredUserSiteAccessMeans storedUserSiteAccessMeans = preload(userSiteAccessMeans(UUID.randomUUID(), "otherToken", requestStartTime.plus(1, ChronoUnit.HOURS)));
+
+        AccessMeansResult result = accessMeansManager.retrieveValidAccessMeans(clientUserToken, userSite, requestStartTime, null, storedUserSiteAccessMeans);
+
+        assertThat(result.getResultCode()).isEqualTo(AccessMeansResult.ResultCode.ACCESS_MEANS_DO_NOT_EXIST);
+        assertThat(result.getAccessMeans()).isNull();
+        verifyNoInteractions(providerRestClient);
+        verify(userSiteAccessMeansRepository, never()).get(any(), any(), any());
+    }
+
+    private StoredUserSiteAccessMeans preload(UserSiteAccessMeans... userSiteAccessMeans) {
+        when(userSiteAccessMeansRepository.getForUser(userSite.getUserId())).thenReturn(List.of(userSiteAccessMeans));
+        return accessMeansManager.loadUserSiteAccessMeans(userSite.getUserId());
+    }
+
+    private UserSiteAccessMeans userSiteAccessMeans(UUID userSiteId, String accessMeans, Instant expireTime) {
+        return new UserSiteAccessMeans(userSite.getUserId(), userSiteId, PROVIDER, encrypt(accessMeans, SECRET_KEY), new Date(), Date.from(expireTime), Instant.EPOCH);
+    }
+}
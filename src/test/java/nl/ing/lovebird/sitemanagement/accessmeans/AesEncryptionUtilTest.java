@@ -5,7 +5,13 @@ import nl.ing.lovebird.sitemanagement.accessmeans.AesEncryptionUtil;
 import org.bouncycastle.util.encoders.Hex;
 import org.junit.jupiter.api.Test;
 
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class AesEncryptionUtilTest {
 
@@ -20,4 +26,46 @@ public class AesEncryptionUtilTest {
         assertThat(decryptedString).isEqualTo(input);
     }
 
-}
\ No newline at end of file
+    @Test
+    void encryptTwice_usesDifferentIvs() {
+        String input = "thisIsASecretString";
+
+        String first = AesEncryptionUtil.encrypt(input, secretKey);
+        String second = AesEncryptionUtil.encrypt(input, secretKey);
+
+        assertThat(first.substring(0, 64)).isNotEqualTo(second.substring(0, 64));
+        assertThat(AesEncryptionUtil.decrypt(first, secretKey)).isEqualTo(input);
+        assertThat(AesEncryptionUtil.decrypt(second, secretKey)).isEqualTo(input);
+    }
+
+    @Test
+    void decrypt_valueEncryptedWithStringHexEncoding_isReadCompatible() throws Exception {
+        // This is how the access means that are already stored in cassandra were encrypted.
+        String input = "{\"accessToken\":\"é-ü-€\"}";
+        byte[] iv = new byte[32];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", "BC");
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey.getKey(), new IvParameterSpec(iv));
+        byte[] encryptedBytes = cipher.doFinal(input.getBytes(StandardCharsets.UTF_8));
+        String stored = new String(Hex.encode(iv)) + new String(Hex.encode(encryptedBytes));
+
+        assertThat(AesEncryptionUtil.decrypt(stored, secretKey)).isEqualTo(input);
+        assertThat(AesEncryptionUtil.decrypt(stored.toUpperCase(), secretKey)).isEqualTo(input);
+    }
+
+    @Test
+    void decrypt_invalidHex_throws() {
+        String encrypted = AesEncryptionUtil.encrypt("thisIsASecretString", secretKey);
+
+        assertThatThrownBy(() -> AesEncryptionUtil.decrypt(encrypted.substring(1), secretKey))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Exception while decrypting");
+        assertThatThrownBy(() -> AesEncryptionUtil.decrypt("zz" + encrypted.substring(2), secretKey))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Exception while decrypting");
+        assertThatThrownBy(() -> AesEncryptionUtil.decrypt("abcd", secretKey))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Exception while decrypting");
+    }
+
+}
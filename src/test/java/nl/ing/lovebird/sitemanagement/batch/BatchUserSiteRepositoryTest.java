@@ -14,10 +14,12 @@ import javax.persistence.PersistenceContext;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
+import java.util.stream.IntStream;
 
 import static java.time.temporal.ChronoUnit.DAYS;
 import static java.time.temporal.ChronoUnit.MICROS;
@@ -29,6 +31,11 @@ import static org.assertj.core.api.Assertions.assertThat;
 @TestContainerDataJpaTest
 class BatchUserSiteRepositoryTest {
 
+    /**
+     * The order of the user-sites in postgres, which is not the order of {@link UUID#compareTo}.
+     */
+    private static final Comparator<PostgresUserSite> IN_ID_ORDER = Comparator.comparing(userSite -> userSite.getUserSiteId().toString());
+
     @Autowired
     PostgresUserSiteRepository repository;
 
@@ -49,6 +56,8 @@ class BatchUserSiteRepositoryTest {
         transactionTemplate.executeWithoutResult(transactionStatus -> {
             entityManager.createNativeQuery("truncate table user_site cascade")
                     .executeUpdate();
+            entityManager.createNativeQuery("truncate table batch_job_checkpoint")
+                    .executeUpdate();
         });
 
         seedWithNonExpired();
@@ -65,7 +74,7 @@ class BatchUserSiteRepositoryTest {
         final var userSite3 = repository.save(connectionStatusDisconnected(createRandomUserSite(clientId, siteId1, randomUUID())));
         final var userSite4 = repository.save(createRandomUserSite(clientId, siteId2, randomUUID()));
 
-        final var result = batchUserSiteRepository.disconnectUserSitesForSite(siteId1, false);
+        final var result = batchUserSiteRepository.disconnectUserSitesForSite(siteId1, false, progress(false));
 
         assertThat(result).isEqualTo(2L);
 
@@ -86,7 +95,7 @@ class BatchUserSiteRepositoryTest {
         final var userSite3 = repository.save(connectionStatusDisconnected(createRandomUserSite(clientId, siteId1, randomUUID())));
         final var userSite4 = repository.save(createRandomUserSite(clientId, siteId2, randomUUID()));
 
-        final var result = batchUserSiteRepository.disconnectUserSitesForSite(siteId1, true);
+        final var result = batchUserSiteRepository.disconnectUserSitesForSite(siteId1, true, progress(true));
 
         assertThat(result).isEqualTo(2L);
 
@@ -96,6 +105,33 @@ class BatchUserSiteRepositoryTest {
         assertThat(repository.getUserSite(userSite4.getUserId(), userSite4.getUserSiteId())).contains(userSite4);
     }
 
+    @Test
+    public void testDisconnectUserSitesForSiteMovesTheStatistics() {
+        final var clientId = ClientId.random();
+        final var siteId = randomUUID();
+
+        repository.save(createRandomUserSite(clientId, siteId, randomUUID()));
+        repository.save(createRandomUserSite(clientId, siteId, randomUUID()).toBuilder()
+                .failureReason(FailureReason.TECHNICAL_ERROR)
+                .build());
+        repository.save(connectionStatusDisconnected(createRandomUserSite(clientId, siteId, randomUUID())));
+
+        batchUserSiteRepository.disconnectUserSitesForSite(siteId, false, progress(false));
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> deltas = entityManager.createNativeQuery("""
+                        select connection_status, failure_reason, cast(sum(user_sites) as integer)
+                            from user_site_statistics_status_delta
+                            where client_id = :clientId
+                            group by connection_status, failure_reason""")
+                .setParameter("clientId", clientId.unwrap())
+                .getResultList();
+        assertThat(deltas).containsExactlyInAnyOrder(
+                new Object[]{"CONNECTED", "", -1},
+                new Object[]{"CONNECTED", "TECHNICAL_ERROR", -1},
+                new Object[]{"DISCONNECTED", "CONSENT_EXPIRED", 2});
+    }
+
     @Test
     public void testDisconnectUserSitesWithMigrationStatus() {
         final var clientId = ClientId.random();
@@ -106,7 +142,7 @@ class BatchUserSiteRepositoryTest {
         final var userSite4 = repository.save(createRandomUserSiteWithMigrationStatus(clientId, siteId, randomUUID(), MigrationStatus.MIGRATING_TO));
         final var userSite5 = repository.save(createRandomUserSiteWithMigrationStatus(clientId, siteId, randomUUID(), MigrationStatus.MIGRATING_FROM));
 
-        final var result = batchUserSiteRepository.disconnectUserSitesWithMigrationStatus(List.of(MigrationStatus.MIGRATING_TO, MigrationStatus.MIGRATING_FROM), false);
+        final var result = batchUserSiteRepository.disconnectUserSitesWithMigrationStatus(List.of(MigrationStatus.MIGRATING_TO, MigrationStatus.MIGRATING_FROM), false, progress(false));
 
         assertThat(result).isEqualTo(2L);
 
@@ -126,7 +162,7 @@ class BatchUserSiteRepositoryTest {
         final var userSite4 = repository.save(createRandomUserSiteWithMigrationStatus(clientId, siteId, randomUUID(), MigrationStatus.MIGRATING_TO));
         final var userSite5 = repository.save(createRandomUserSiteWithMigrationStatus(clientId, siteId, randomUUID(), MigrationStatus.MIGRATING_FROM));
 
-        final var result = batchUserSiteRepository.disconnectUserSitesWithMigrationStatus(List.of(MigrationStatus.MIGRATING_TO, MigrationStatus.MIGRATING_FROM), true);
+        final var result = batchUserSiteRepository.disconnectUserSitesWithMigrationStatus(List.of(MigrationStatus.MIGRATING_TO, MigrationStatus.MIGRATING_FROM), true, progress(true));
 
         assertThat(result).isEqualTo(2L);
 
@@ -153,7 +189,7 @@ class BatchUserSiteRepositoryTest {
         final var userSite7 = repository.save(createRandomUserSiteWithLastDataFetch(clientId, siteId, randomUUID(), tMin90d.minusSeconds(60), tMin90d.minusSeconds(60)));
         final var ppsUserSite = repository.save(createRandomUserSiteWithLastDataFetch(clientId, UUID.fromString("b1fa25e2-f696-45c1-b59b-59c5fd40c175"), randomUUID(), tMin90d.minusSeconds(60), tMin90d.minusSeconds(60)));
 
-        final var result = batchUserSiteRepository.disconnectUserSitesNotRefreshedFor90Days(false);
+        final var result = batchUserSiteRepository.disconnectUserSitesNotRefreshedFor90Days(false, progress(false));
 
         assertThat(result).isEqualTo(2L);
         assertThat(repository.getUserSite(userSite1.getUserId(), userSite1.getUserSiteId())).contains(userSite1);
@@ -186,7 +222,7 @@ class BatchUserSiteRepositoryTest {
         final var userSite6 = repository.save(createRandomUserSiteWithLastDataFetch(clientId, siteId, randomUUID(), null, tMin90d.minusSeconds(60)));
         final var userSite7 = repository.save(createRandomUserSiteWithLastDataFetch(clientId, siteId, randomUUID(), tMin90d.minusSeconds(60), tMin90d.minusSeconds(60)));
 
-        final var result = batchUserSiteRepository.disconnectUserSitesNotRefreshedFor90Days(true);
+        final var result = batchUserSiteRepository.disconnectUserSitesNotRefreshedFor90Days(true, progress(true));
 
         assertThat(result).isEqualTo(2L);
 
@@ -199,6 +235,69 @@ class BatchUserSiteRepositoryTest {
         assertThat(repository.getUserSite(userSite7.getUserId(), userSite7.getUserSiteId())).contains(userSite7);
     }
 
+    @Test
+    public void testDisconnectUserSitesForSiteInChunks() {
+        final var clientId = ClientId.random();
+        final var siteId = randomUUID();
+        final var userSites = IntStream.range(0, 7)
+                .mapToObj(i -> repository.save(createRandomUserSite(clientId, siteId, randomUUID())))
+                .toList();
+        final var progress = progress(false);
+
+        final var result = batchUserSiteRepository.disconnectUserSitesForSite(siteId, false, progress);
+
+        assertThat(result).isEqualTo(7L);
+        assertThat(progress.getRows()).isEqualTo(7L);
+        // The chunk size is 3 in the tests.
+        assertThat(progress.getChunks()).isEqualTo(3L);
+        assertThat(progress.getLastId()).isEqualTo(userSites.stream().max(IN_ID_ORDER).orElseThrow().getUserSiteId());
+        assertThat(progress.getFinishedAt()).isNotNull();
+        userSites.forEach(userSite -> assertThat(repository.getUserSite(userSite.getUserId(), userSite.getUserSiteId())).contains(disconnectedByRepository(userSite)));
+        assertThat(findCheckpoint(progress.getJob())).isEmpty();
+    }
+
+    @Test
+    public void testDisconnectUserSitesForSiteResumesAfterCheckpoint() {
+        final var clientId = ClientId.random();
+        final var siteId = randomUUID();
+        final var userSites = IntStream.range(0, 5)
+                .mapToObj(i -> repository.save(createRandomUserSite(clientId, siteId, randomUUID())))
+                .sorted(IN_ID_ORDER)
+                .toList();
+        final var progress = progress(false);
+        final var checkpoint = userSites.get(1).getUserSiteId();
+        saveCheckpoint(progress.getJob(), checkpoint);
+
+        final var result = batchUserSiteRepository.disconnectUserSitesForSite(siteId, false, progress);
+
+        assertThat(result).isEqualTo(3L);
+        assertThat(progress.getResumedAfter()).isEqualTo(checkpoint);
+        assertThat(repository.getUserSite(userSites.get(0).getUserId(), userSites.get(0).getUserSiteId())).contains(userSites.get(0));
+        assertThat(repository.getUserSite(userSites.get(1).getUserId(), userSites.get(1).getUserSiteId())).contains(userSites.get(1));
+        userSites.subList(2, 5).forEach(userSite -> assertThat(repository.getUserSite(userSite.getUserId(), userSite.getUserSiteId())).contains(disconnectedByRepository(userSite)));
+        assertThat(findCheckpoint(progress.getJob())).isEmpty();
+    }
+
+    @Test
+    public void testDisconnectUserSitesForSiteDryRunIgnoresCheckpoint() {
+        final var clientId = ClientId.random();
+        final var siteId = randomUUID();
+        final var userSites = IntStream.range(0, 5)
+                .mapToObj(i -> repository.save(createRandomUserSite(clientId, siteId, randomUUID())))
+                .sorted(IN_ID_ORDER)
+                .toList();
+        final var progress = progress(true);
+        final var checkpoint = userSites.get(1).getUserSiteId();
+        saveCheckpoint(progress.getJob(), checkpoint);
+
+        final var result = batchUserSiteRepository.disconnectUserSitesForSite(siteId, true, progress);
+
+        assertThat(result).isEqualTo(5L);
+        assertThat(progress.getResumedAfter()).isNull();
+        userSites.forEach(userSite -> assertThat(repository.getUserSite(userSite.getUserId(), userSite.getUserSiteId())).contains(userSite));
+        assertThat(findCheckpoint(progress.getJob())).contains(checkpoint);
+    }
+
     void seedWithNonExpired() {
 
         // not expired
@@ -211,6 +310,28 @@ class BatchUserSiteRepositoryTest {
                         .updated(clock.instant().minus(1, ChronoUnit.MINUTES)), userSite -> repository.save(userSite));
     }
 
+    private BatchJobProgress progress(boolean dryrun) {
+        return new BatchJobProgress(clock, "test-job", dryrun);
+    }
+
+    private void saveCheckpoint(String job, UUID lastId) {
+        transactionTemplate.executeWithoutResult(transactionStatus -> entityManager
+                .createNativeQuery("insert into batch_job_checkpoint (job, last_id, processed_rows) values (:job, :lastId, 2)")
+                .setParameter("job", job)
+                .setParameter("lastId", lastId)
+                .executeUpdate());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Optional<UUID> findCheckpoint(String job) {
+        return ((List<String>) entityManager.createNativeQuery("select cast(last_id as varchar) from batch_job_checkpoint where job = :job")
+                .setParameter("job", job)
+                .getResultList())
+                .stream()
+                .findFirst()
+                .map(UUID::fromString);
+    }
+
     public static <T> T random(T[] array) {
         int rnd = new Random().nextInt(array.length);
         return array[rnd];
@@ -1,5 +1,6 @@
 package nl.ing.lovebird.sitemanagement.batch;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import nl.ing.lovebird.providerdomain.AccountType;
 import nl.ing.lovebird.sitemanagement.SiteManagementMetrics;
 import nl.ing.lovebird.sitemanagement.legacy.aismigration.MigrationStatus;
@@ -9,12 +10,14 @@ import nl.ing.lovebird.sitemanagement.sites.Site;
 import nl.ing.lovebird.sitemanagement.sites.SiteCreatorUtil;
 import org.junit.jupiter.api.Test;
 
+import java.time.Clock;
 import java.util.List;
 import java.util.function.Consumer;
 
 import static nl.ing.lovebird.sitemanagement.lib.TestUtil.AIS_WITH_REDIRECT_STEPS;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -28,14 +31,15 @@ class DisconnectUnusableUserSitesServiceTest {
     private final BatchUserSiteRepository batchUserSiteRepository = mock(BatchUserSiteRepository.class);
     private final SiteService siteService = mock(SiteService.class);
     private final SiteManagementMetrics siteManagementMetrics = mock(SiteManagementMetrics.class);
+    private final BatchJobProgressTracker progressTracker = new BatchJobProgressTracker(Clock.systemUTC(), new SimpleMeterRegistry());
 
-    private final DisconnectUnusableUserSitesService systemUnderTest = new DisconnectUnusableUserSitesService(siteService, batchUserSiteRepository, siteManagementMetrics);
+    private final DisconnectUnusableUserSitesService systemUnderTest = new DisconnectUnusableUserSitesService(siteService, batchUserSiteRepository, siteManagementMetrics, progressTracker);
 
     @Test
     public void disconnectAllUnusable_happyFlow_disconnectsExpectedSites() {
         when(siteService.getSites()).thenReturn(List.of(NORMAL_SITE));
-        when(batchUserSiteRepository.disconnectUserSitesWithMigrationStatus(any(), eq(false))).thenReturn(1L);
-        when(batchUserSiteRepository.disconnectUserSitesNotRefreshedFor90Days(false)).thenReturn(2L);
+        when(batchUserSiteRepository.disconnectUserSitesWithMigrationStatus(any(), eq(false), any())).thenReturn(1L);
+        when(batchUserSiteRepository.disconnectUserSitesNotRefreshedFor90Days(eq(false), any())).thenReturn(2L);
 
         final var result = systemUnderTest.disconnectAllUnusable(false);
 
@@ -43,8 +47,8 @@ class DisconnectUnusableUserSitesServiceTest {
 
         verify(siteManagementMetrics, times(1)).incrementDisconnectedUserSiteNotRefreshedFor90Days(2L);
 
-        verify(batchUserSiteRepository).disconnectUserSitesWithMigrationStatus(List.of(MigrationStatus.MIGRATING_FROM, MigrationStatus.MIGRATING_TO), false);
-        verify(batchUserSiteRepository).disconnectUserSitesNotRefreshedFor90Days(false);
+        verify(batchUserSiteRepository).disconnectUserSitesWithMigrationStatus(eq(List.of(MigrationStatus.MIGRATING_FROM, MigrationStatus.MIGRATING_TO)), eq(false), progressOf(DisconnectUnusableUserSitesService.IN_MIGRATION_JOB));
+        verify(batchUserSiteRepository).disconnectUserSitesNotRefreshedFor90Days(eq(false), progressOf(DisconnectUnusableUserSitesService.NOT_REFRESHED_FOR_90_DAYS_JOB));
         verifyNoMoreInteractions(batchUserSiteRepository);
     }
 
@@ -57,17 +61,21 @@ class DisconnectUnusableUserSitesServiceTest {
         // they have not been refreshed for 90 days.
 
         when(siteService.getSites()).thenReturn(List.of(BLACKLISTED_SITE));
-        when(batchUserSiteRepository.disconnectUserSitesWithMigrationStatus(any(), eq(false))).thenReturn(0L);
-        when(batchUserSiteRepository.disconnectUserSitesNotRefreshedFor90Days(false)).thenReturn(0L);
+        when(batchUserSiteRepository.disconnectUserSitesWithMigrationStatus(any(), eq(false), any())).thenReturn(0L);
+        when(batchUserSiteRepository.disconnectUserSitesNotRefreshedFor90Days(eq(false), any())).thenReturn(0L);
 
         final var result = systemUnderTest.disconnectAllUnusable(false);
         assertThat(result.join()).isEqualTo(0);
 
-        verify(batchUserSiteRepository).disconnectUserSitesWithMigrationStatus(List.of(MigrationStatus.MIGRATING_FROM, MigrationStatus.MIGRATING_TO), false);
-        verify(batchUserSiteRepository).disconnectUserSitesNotRefreshedFor90Days(false);
+        verify(batchUserSiteRepository).disconnectUserSitesWithMigrationStatus(eq(List.of(MigrationStatus.MIGRATING_FROM, MigrationStatus.MIGRATING_TO)), eq(false), progressOf(DisconnectUnusableUserSitesService.IN_MIGRATION_JOB));
+        verify(batchUserSiteRepository).disconnectUserSitesNotRefreshedFor90Days(eq(false), progressOf(DisconnectUnusableUserSitesService.NOT_REFRESHED_FOR_90_DAYS_JOB));
         verifyNoMoreInteractions(batchUserSiteRepository);
     }
 
+    private static BatchJobProgress progressOf(String job) {
+        return argThat(progress -> progress.getJob().equals(job) && !progress.isDryrun());
+    }
+
     private static Site createRandomSite(String name, String provider, Consumer<Site> setters) {
         final var site = createRandomSite(name, provider);
         setters.accept(site);
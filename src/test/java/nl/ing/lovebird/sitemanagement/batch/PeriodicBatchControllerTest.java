@@ -10,8 +10,16 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(PeriodicBatchController.class)
@@ -32,6 +40,8 @@ class PeriodicBatchControllerTest {
     private BatchUserSiteDeleteService batchUserSiteDeleteService;
     @MockBean
     private ConsentTestingService consentTestingService;
+    @MockBean
+    private BatchJobProgressTracker batchJobProgressTracker;
 
     @Autowired
     private MockMvc mockMvc;
@@ -43,4 +53,22 @@ class PeriodicBatchControllerTest {
                 .andExpect(status().isAccepted());
         verify(diagnosticLoggingService).logNumberOfUniqueUserRefreshes(6);
     }
+
+    @Test
+    void testDisconnectUnusableUserSitesProgress() throws Exception {
+        var clock = Clock.fixed(Instant.parse("2022-01-01T10:00:00Z"), ZoneOffset.UTC);
+        var progress = new BatchJobProgress(clock, "disconnect-user-sites-in-migration", false);
+        var lastId = UUID.randomUUID();
+        progress.chunkProcessed(1000, lastId);
+        progress.finished();
+        when(batchJobProgressTracker.getLastRuns()).thenReturn(List.of(progress));
+
+        this.mockMvc.perform(get("/batch/user-sites/disconnect-unusable/progress"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].job").value("disconnect-user-sites-in-migration"))
+                .andExpect(jsonPath("$[0].dryrun").value(false))
+                .andExpect(jsonPath("$[0].lastId").value(lastId.toString()))
+                .andExpect(jsonPath("$[0].chunks").value(1))
+                .andExpect(jsonPath("$[0].rows").value(1000));
+    }
 }
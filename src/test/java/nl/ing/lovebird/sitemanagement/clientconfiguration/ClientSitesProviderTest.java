@@ -1,15 +1,35 @@
 package nl.ing.lovebird.sitemanagement.clientconfiguration;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
 import nl.ing.lovebird.sitemanagement.configuration.IntegrationTestContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import nl.ing.lovebird.sitemanagement.lib.ClientIds;
+import nl.ing.lovebird.sitemanagement.lib.types.ClientId;
+import org.awaitility.Durations;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
 import static org.springframework.http.HttpStatus.OK;
 
@@ -23,6 +43,9 @@ class ClientSitesProviderTest {
     @Autowired
     private ClientSitesProvider clientSitesProvider;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @Test
     public void when_AnHttpRequestFails_then_theClientSitesListIsNotUpdated() {
 
@@ -49,4 +72,95 @@ class ClientSitesProviderTest {
         assertThat(siteNumberAfterFailedUpdate).isEqualTo(8);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void when_theSitesOfAClientAreUpdated_then_onlyTheSitesOfThatClientAreReplaced() {
+        var otherClientId = UUID.randomUUID();
+        var site = new ClientSiteDTO(UUID.randomUUID(), "site", null, false);
+
+        clientSitesProvider.update(otherClientId, List.of(site));
+
+        assertThat(clientSitesProvider.getClientSites(new ClientId(otherClientId))).containsOnlyKeys(site.getId());
+        assertThat(clientSitesProvider.getClientSites(ClientIds.TEST_CLIENT)).isNotEmpty();
+    }
+
+    @Test
+    public void when_aRecentSnapshotExists_then_theClientSitesAreRestoredFromIt(@TempDir Path tempDir) throws Exception {
+        var clientId = UUID.randomUUID();
+        var site = new ClientSiteDTO(UUID.randomUUID(), "site", null, false);
+        Path snapshotFile = tempDir.resolve("client-sites.json");
+        objectMapper.writeValue(snapshotFile.toFile(), Map.of(clientId, List.of(site)));
+
+        var provider = createProvider(snapshotFile);
+
+        assertThat(provider.restoreSnapshot()).isTrue();
+        assertThat(provider.isRunning()).isTrue();
+        assertThat(provider.getClientSites(new ClientId(clientId))).containsOnlyKeys(site.getId());
+    }
+
+    @Test
+    public void when_theSnapshotIsTooOld_then_itIsNotRestored(@TempDir Path tempDir) throws Exception {
+        Path snapshotFile = tempDir.resolve("client-sites.json");
+        objectMapper.writeValue(snapshotFile.toFile(), Map.of(UUID.randomUUID(), List.of()));
+        Files.setLastModifiedTime(snapshotFile, FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+
+        var provider = createProvider(snapshotFile);
+
+        assertThat(provider.restoreSnapshot()).isFalse();
+        assertThat(provider.isRunning()).isFalse();
+    }
+
+    @Test
+    public void when_aClientIsUpdatedDuringAFullRetrieval_then_itsSitesAreNotOverwritten() throws Exception {
+        var slowClients = wireMockServer.stubFor(WireMock.get(urlMatching("/clients/internal/v2/sites-per-client"))
+                .willReturn(aResponse()
+                        .withBodyFile("clients/client-sites.json")
+                        .withHeader("content-type", "application/json")
+                        .withFixedDelay(1_000)
+                        .withStatus(OK.value())
+                ));
+        var clientId = UUID.randomUUID();
+        var site = new ClientSiteDTO(UUID.randomUUID(), "site", null, false);
+
+        var fullRetrieval = CompletableFuture.supplyAsync(clientSitesProvider::update);
+        Thread.sleep(200);
+        clientSitesProvider.update(clientId, List.of(site));
+
+        assertThat(fullRetrieval.get()).isTrue();
+        assertThat(clientSitesProvider.getClientSites(new ClientId(clientId))).containsOnlyKeys(site.getId());
+        assertThat(clientSitesProvider.getClientSites(ClientIds.TEST_CLIENT)).hasSize(8);
+        wireMockServer.removeStub(slowClients);
+    }
+
+    @Test
+    public void when_theRetrievalAfterARestoredSnapshotFails_then_itIsRetried(@TempDir Path tempDir) throws Exception {
+        Path snapshotFile = tempDir.resolve("client-sites.json");
+        objectMapper.writeValue(snapshotFile.toFile(), Map.of(UUID.randomUUID(), List.of()));
+        var failingClients = wireMockServer.stubFor(WireMock.get(urlMatching("/clients/internal/v2/sites-per-client"))
+                .inScenario("retry").whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse().withStatus(INTERNAL_SERVER_ERROR.value()))
+                .willSetStateTo("available"));
+        var recoveredClients = wireMockServer.stubFor(WireMock.get(urlMatching("/clients/internal/v2/sites-per-client"))
+                .inScenario("retry").whenScenarioStateIs("available")
+                .willReturn(aResponse()
+                        .withBodyFile("clients/client-sites.json")
+                        .withHeader("content-type", "application/json")
+                        .withStatus(OK.value())
+                ));
+
+        var provider = createProvider(snapshotFile);
+        provider.start();
+
+        assertThat(provider.getClientSites(ClientIds.TEST_CLIENT)).isEmpty();
+        await().atMost(Durations.FIVE_SECONDS)
+                .untilAsserted(() -> assertThat(provider.getClientSites(ClientIds.TEST_CLIENT)).hasSize(8));
+        provider.stop();
+        wireMockServer.removeStub(failingClients);
+        wireMockServer.removeStub(recoveredClients);
+    }
+
+    private ClientSitesProvider createProvider(Path snapshotFile) {
+        return new ClientSitesProvider(Clock.systemUTC(), new SimpleMeterRegistry(), objectMapper, new RestTemplateBuilder(),
+                "http://localhost:" + wireMockServer.port() + "/clients", snapshotFile.toString(), Duration.ofHours(1));
+    }
+
+}
@@ -0,0 +1,125 @@
+package nl.ing.lovebird.sitemanagement.configuration;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedThreadPerTaskExecutorTest {
+
+    private final Counter rejectedTasks = new SimpleMeterRegistry().counter("executor_rejected_tasks");
+
+    @Test
+    void execute_moreTasksThanMaxConcurrency_runsAtMostMaxConcurrencyAtOnce() throws InterruptedException {
+        var executor = new BoundedThreadPerTaskExecutor("test", 2, 10, task -> task, rejectedTasks);
+        var running = new AtomicInteger();
+        var maxRunning = new AtomicInteger();
+        var done = new CountDownLatch(6);
+
+        for (int i = 0; i < 6; i++) {
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(50);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(maxRunning.get()).isEqualTo(2);
+        assertThat(rejectedTasks.count()).isZero();
+    }
+
+    @Test
+    void execute_runningAndWaitingSlotsTaken_rejectsTask() throws InterruptedException {
+        var executor = new BoundedThreadPerTaskExecutor("test", 1, 1, task -> task, rejectedTasks);
+        var release = new CountDownLatch(1);
+        var done = new CountDownLatch(2);
+        Runnable blockingTask = () -> {
+            await(release);
+            done.countDown();
+        };
+
+        executor.execute(blockingTask);
+        executor.execute(blockingTask);
+
+        assertThatThrownBy(() -> executor.execute(() -> {
+        })).isInstanceOf(TaskRejectedException.class);
+        assertThat(rejectedTasks.count()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void execute_appliesTaskDecorator() throws InterruptedException {
+        var decorated = new CountDownLatch(1);
+        var executor = new BoundedThreadPerTaskExecutor("test", 1, 0, task -> () -> {
+            decorated.countDown();
+            task.run();
+        }, rejectedTasks);
+
+        executor.execute(() -> {
+        });
+
+        assertThat(decorated.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void submit_interruptedWhileWaitingToRun_cancelsTheFuture() throws Exception {
+        var executor = new BoundedThreadPerTaskExecutor("interrupted", 1, 1, task -> task, rejectedTasks);
+        var release = new CountDownLatch(1);
+        executor.execute(() -> await(release));
+
+        Future<?> waiting = executor.submit(() -> {
+        });
+        Thread waitingThread = awaitThreadWaitingForPermit("interrupted-");
+        waitingThread.interrupt();
+
+        assertThatThrownBy(() -> waiting.get(5, TimeUnit.SECONDS)).isInstanceOf(CancellationException.class);
+        release.countDown();
+    }
+
+    private static Thread awaitThreadWaitingForPermit(String threadNamePrefix) throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            var waiting = Thread.getAllStackTraces().entrySet().stream()
+                    .filter(thread -> thread.getKey().getName().startsWith(threadNamePrefix))
+                    .filter(thread -> Arrays.stream(thread.getValue()).anyMatch(frame -> frame.getClassName().equals(Semaphore.class.getName())))
+                    .map(Map.Entry::getKey)
+                    .findFirst();
+            if (waiting.isPresent()) {
+                return waiting.get();
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("No thread is waiting for a permit");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
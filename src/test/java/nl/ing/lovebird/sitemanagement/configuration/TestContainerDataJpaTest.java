@@ -2,11 +2,15 @@ package nl.ing.lovebird.sitemanagement.configuration;
 
 import nl.ing.lovebird.postgres.test.EnableExternalPostgresTestDatabase;
 import nl.ing.lovebird.sitemanagement.batch.BatchUserSiteRepository;
+import nl.ing.lovebird.sitemanagement.health.ActivityPartitionRepository;
+import nl.ing.lovebird.sitemanagement.health.ActivityProgressRepository;
 import nl.ing.lovebird.sitemanagement.health.ActivityRepository;
+import nl.ing.lovebird.sitemanagement.health.EventBatchRepository;
 import nl.ing.lovebird.sitemanagement.health.EventRepository;
 import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteLockRepository;
 import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteMaintenanceRepository;
 import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteRepository;
+import nl.ing.lovebird.sitemanagement.usersiteevent.UserSiteEventOutboxRepository;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
@@ -40,7 +44,11 @@ import java.lang.annotation.Target;
         PostgresEntityManagerConfiguration.class,
         PostgresUserSiteLockRepository.class,
         EventRepository.class,
+        EventBatchRepository.class,
         ActivityRepository.class,
+        ActivityProgressRepository.class,
+        ActivityPartitionRepository.class,
+        UserSiteEventOutboxRepository.class,
         MutableTestClockConfiguration.class
 })
 @EnableExternalPostgresTestDatabase
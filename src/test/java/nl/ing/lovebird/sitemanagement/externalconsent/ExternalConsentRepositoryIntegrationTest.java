@@ -12,6 +12,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -99,6 +100,22 @@ public class ExternalConsentRepositoryIntegrationTest {
         assertFalse(repository.findBy(existing.getUserId(), existing.getSiteId(), existing.getUserSiteId()).isPresent());
     }
 
+    @Test
+    void findAllBy_returnsOnlyTheConsentsOfTheUser() {
+        UUID userId = UUID.randomUUID();
+        ExternalConsent first = new ExternalConsent(userId, UUID.randomUUID(), UUID.randomUUID(), "2018-07", Instant.now(systemUTC()), Instant.now(systemUTC()), null);
+        ExternalConsent second = new ExternalConsent(userId, UUID.randomUUID(), UUID.randomUUID(), "2018-07", Instant.now(systemUTC()), Instant.now(systemUTC()), "externalId");
+        ExternalConsent ofOtherUser = new ExternalConsent(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), "2018-07", Instant.now(systemUTC()), Instant.now(systemUTC()), null);
+        repository.persist(first);
+        repository.persist(second);
+        repository.persist(ofOtherUser);
+
+        List<ExternalConsent> consents = repository.findAllBy(userId);
+
+        assertThat(consents).extracting(ExternalConsent::getUserSiteId)
+                .containsExactlyInAnyOrder(first.getUserSiteId(), second.getUserSiteId());
+    }
+
     private long countAll(final Session session) {
         Select select = QueryBuilder.select().countAll().from(ExternalConsent.TABLE_NAME);
 
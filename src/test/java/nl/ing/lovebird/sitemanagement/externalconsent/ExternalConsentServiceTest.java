@@ -35,6 +35,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static java.time.Clock.fixed;
 import static java.time.Clock.systemUTC;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.*;
@@ -205,4 +206,24 @@ public class ExternalConsentServiceTest {
         wireMockServer.verify(0, anyRequestedFor(anyUrl()));
     }
 
-}
\ No newline at end of file
+    @Test
+    void findAllByUserId_keysTheConsentsBySiteAndUserSite() {
+        // Given
+        final UUID userId = UUID.randomUUID();
+        final UUID userSiteId = UUID.randomUUID();
+        final UUID siteId = UUID.randomUUID();
+        final UUID otherSiteId = UUID.randomUUID();
+        ExternalConsent consent = new ExternalConsent(userId, siteId, userSiteId, "2018-07", Instant.now(clock), Instant.now(clock), null);
+        ExternalConsent consentOfOtherSite = new ExternalConsent(userId, otherSiteId, userSiteId, "2018-08", Instant.now(clock), Instant.now(clock), null);
+        when(consentRepository.findAllBy(userId)).thenReturn(List.of(consent, consentOfOtherSite));
+
+        // When
+        Map<ExternalConsentService.ConsentKey, ExternalConsent> consents = subject.findAllByUserId(userId);
+
+        // Then
+        assertThat(consents).containsOnly(
+                entry(new ExternalConsentService.ConsentKey(siteId, userSiteId), consent),
+                entry(new ExternalConsentService.ConsentKey(otherSiteId, userSiteId), consentOfOtherSite));
+    }
+
+}
@@ -0,0 +1,138 @@
+package nl.ing.lovebird.sitemanagement.flywheel;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.ing.lovebird.clienttokens.ClientUserToken;
+import nl.ing.lovebird.clienttokens.requester.service.ClientTokenRequesterService;
+import nl.ing.lovebird.sitemanagement.accessmeans.AccessMeansManager;
+import nl.ing.lovebird.sitemanagement.legacy.aismigration.MigrationStatus;
+import nl.ing.lovebird.sitemanagement.lib.types.ClientId;
+import nl.ing.lovebird.sitemanagement.users.StatusType;
+import nl.ing.lovebird.sitemanagement.users.User;
+import nl.ing.lovebird.sitemanagement.users.UserService;
+import nl.ing.lovebird.sitemanagement.usersite.ConnectionStatus;
+import nl.ing.lovebird.sitemanagement.usersite.FailureReason;
+import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSite;
+import nl.ing.lovebird.sitemanagement.usersite.UserSiteService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static java.time.Clock.systemUTC;
+import static java.util.Collections.emptyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AccessMeansRenewalServiceTest {
+
+    private final UUID userId = UUID.randomUUID();
+    private final UUID clientId = UUID.randomUUID();
+    private final Instant renewBefore = Instant.now().plusSeconds(600);
+
+    @Mock
+    private InternalFlywheelProperties flywheelProperties;
+    @Mock
+    private FlywheelPlanner flywheelPlanner;
+    @Mock
+    private UserService userService;
+    @Mock
+    private UserSiteService userSiteService;
+    @Mock
+    private AccessMeansManager accessMeansManager;
+    @Mock
+    private ClientTokenRequesterService clientTokenRequesterService;
+
+    private AccessMeansRenewalService subject;
+
+    @BeforeEach
+    void setUp() {
+        var providerLimiter = new FlywheelProviderLimiter(systemUTC(), new FlywheelDispatchProperties(), new SimpleMeterRegistry());
+        subject = new AccessMeansRenewalService(systemUTC(), new AccessMeansRenewalProperties(), flywheelProperties, flywheelPlanner,
+                userService, userSiteService, accessMeansManager, clientTokenRequesterService, providerLimiter, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void renewForUser_accessMeansExpireBeforeFlywheelSlot_areRenewed() {
+        var expiring = createUserSite("YOLT_PROVIDER", ConnectionStatus.CONNECTED, null);
+        var notExpiring = createUserSite("YOLT_PROVIDER", ConnectionStatus.CONNECTED, null);
+        var clientUserToken = new ClientUserToken("client-token", null);
+
+        when(accessMeansManager.findUserSitesWithAccessMeansExpiringBefore(userId, renewBefore)).thenReturn(Set.of(expiring.getUserSiteId()));
+        when(userService.getUser(userId)).thenReturn(Optional.of(new User(userId, null, new ClientId(clientId), StatusType.ACTIVE, false)));
+        when(userSiteService.getNonDeletedUserSites(userId)).thenReturn(List.of(expiring, notExpiring));
+        when(flywheelProperties.getBlacklistedProviders()).thenReturn(emptyList());
+        when(clientTokenRequesterService.getClientUserToken(clientId, userId)).thenReturn(clientUserToken);
+        when(userSiteService.attemptLock(eq(expiring), any())).thenReturn(true);
+        when(accessMeansManager.renewAccessMeansExpiringBefore(clientUserToken, expiring, renewBefore))
+                .thenReturn(new AccessMeansManager.AccessMeansResult(AccessMeansManager.AccessMeansResult.ResultCode.OK));
+
+        subject.renewForUser(userId, renewBefore);
+
+        verify(accessMeansManager).renewAccessMeansExpiringBefore(clientUserToken, expiring, renewBefore);
+        verify(accessMeansManager, never()).renewAccessMeansExpiringBefore(any(), eq(notExpiring), any());
+        verify(userSiteService).unlock(expiring);
+    }
+
+    @Test
+    void renewForUser_userSiteIsLockedByARefresh_isNotRenewed() {
+        var userSite = createUserSite("YOLT_PROVIDER", ConnectionStatus.CONNECTED, null);
+        var clientUserToken = new ClientUserToken("client-token", null);
+
+        when(accessMeansManager.findUserSitesWithAccessMeansExpiringBefore(userId, renewBefore)).thenReturn(Set.of(userSite.getUserSiteId()));
+        when(userService.getUser(userId)).thenReturn(Optional.of(new User(userId, null, new ClientId(clientId), StatusType.ACTIVE, false)));
+        when(userSiteService.getNonDeletedUserSites(userId)).thenReturn(List.of(userSite));
+        when(flywheelProperties.getBlacklistedProviders()).thenReturn(emptyList());
+        when(clientTokenRequesterService.getClientUserToken(clientId, userId)).thenReturn(clientUserToken);
+        when(userSiteService.attemptLock(eq(userSite), any())).thenReturn(false);
+
+        subject.renewForUser(userId, renewBefore);
+
+        verify(accessMeansManager, never()).renewAccessMeansExpiringBefore(any(), any(), any());
+        verify(userSiteService, never()).unlock(any());
+    }
+
+    @Test
+    void renewForUser_noExpiringAccessMeans_doesNothing() {
+        when(accessMeansManager.findUserSitesWithAccessMeansExpiringBefore(userId, renewBefore)).thenReturn(Set.of());
+
+        subject.renewForUser(userId, renewBefore);
+
+        verifyNoMoreInteractions(userService, userSiteService, clientTokenRequesterService);
+        verify(accessMeansManager, never()).renewAccessMeansExpiringBefore(any(), any(), any());
+    }
+
+    @Test
+    void renewForUser_userSiteNeedsUserAction_isNotRenewed() {
+        var userSite = createUserSite("YOLT_PROVIDER", ConnectionStatus.DISCONNECTED, FailureReason.AUTHENTICATION_FAILED);
+
+        when(accessMeansManager.findUserSitesWithAccessMeansExpiringBefore(userId, renewBefore)).thenReturn(Set.of(userSite.getUserSiteId()));
+        when(userService.getUser(userId)).thenReturn(Optional.of(new User(userId, null, new ClientId(clientId), StatusType.ACTIVE, false)));
+        when(userSiteService.getNonDeletedUserSites(userId)).thenReturn(List.of(userSite));
+        lenient().when(flywheelProperties.getBlacklistedProviders()).thenReturn(emptyList());
+
+        subject.renewForUser(userId, renewBefore);
+
+        verifyNoInteractions(clientTokenRequesterService);
+        verify(accessMeansManager, never()).renewAccessMeansExpiringBefore(any(), any(), any());
+    }
+
+    private PostgresUserSite createUserSite(String provider, ConnectionStatus connectionStatus, FailureReason failureReason) {
+        final PostgresUserSite userSite = new PostgresUserSite();
+        userSite.setUserId(userId);
+        userSite.setUserSiteId(UUID.randomUUID());
+        userSite.setProvider(provider);
+        userSite.setSiteId(UUID.randomUUID());
+        userSite.setConnectionStatus(connectionStatus);
+        userSite.setFailureReason(failureReason);
+        userSite.setMigrationStatus(MigrationStatus.NONE);
+        userSite.setClientId(new ClientId(clientId));
+        return userSite;
+    }
+}
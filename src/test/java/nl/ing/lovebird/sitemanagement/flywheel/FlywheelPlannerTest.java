@@ -0,0 +1,166 @@
+package nl.ing.lovebird.sitemanagement.flywheel;
+
+import nl.ing.lovebird.sitemanagement.lib.MutableClock;
+import nl.ing.lovebird.sitemanagement.lib.types.ClientId;
+import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FlywheelPlannerTest {
+
+    private static final LocalDateTime FIXED_POINT_IN_TIME = LocalDateTime.of(2021, 3, 1, 12, 0, 10);
+
+    @Mock
+    private PostgresUserSiteRepository postgresUserSiteRepository;
+
+    private final MutableClock clock = new MutableClock();
+    private final UserRefreshProperties userRefreshProperties = new UserRefreshProperties();
+    private FlywheelPlanner subject;
+
+    @BeforeEach
+    void beforeEach() {
+        clock.asFixed(FIXED_POINT_IN_TIME);
+        userRefreshProperties.setRefreshesPerDay(new HashMap<>());
+        userRefreshProperties.setDefaultRefreshesPerDay(1);
+        subject = new FlywheelPlanner(clock, postgresUserSiteRepository, userRefreshProperties, new FlywheelUserUUIDRangeSelector());
+    }
+
+    @Test
+    void given_clientsWithDifferentRefreshesPerDay_when_planning_then_clientsAreGroupedPerTier() {
+        var defaultClient1 = ClientId.random();
+        var defaultClient2 = ClientId.random();
+        var fourTimesADayClient = ClientId.random();
+        var neverRefreshedClient = ClientId.random();
+        userRefreshProperties.getRefreshesPerDay().put(fourTimesADayClient.unwrap(), 4);
+        userRefreshProperties.getRefreshesPerDay().put(neverRefreshedClient.unwrap(), 0);
+        when(postgresUserSiteRepository.getClientIdsWithUserSite()).thenReturn(Set.of(defaultClient1, defaultClient2, fourTimesADayClient, neverRefreshedClient));
+
+        Map<Integer, Set<ClientId>> tiers = subject.getClientIdsByRefreshesPerDay();
+
+        assertThat(tiers).containsOnlyKeys(1, 4);
+        assertThat(tiers.get(1)).containsExactlyInAnyOrder(defaultClient1, defaultClient2);
+        assertThat(tiers.get(4)).containsExactly(fourTimesADayClient);
+    }
+
+    @Test
+    void given_clientsInTwoTiers_when_streamingUsers_then_oneQueryPerTierIsExecuted() {
+        var defaultClient1 = ClientId.random();
+        var defaultClient2 = ClientId.random();
+        var twiceADayClient = ClientId.random();
+        var user1 = UUID.randomUUID();
+        var user2 = UUID.randomUUID();
+        userRefreshProperties.getRefreshesPerDay().put(twiceADayClient.unwrap(), 2);
+        when(postgresUserSiteRepository.getClientIdsWithUserSite()).thenReturn(Set.of(defaultClient1, defaultClient2, twiceADayClient));
+        when(postgresUserSiteRepository.getUserIdsBetween(any(), any(), eq(Set.of(defaultClient1, defaultClient2)), anyInt())).thenReturn(List.of(user1));
+        when(postgresUserSiteRepository.getUserIdsBetween(any(), any(), eq(Set.of(twiceADayClient)), anyInt())).thenReturn(List.of(user2));
+
+        List<UUID> userIds = subject.usersToRefresh(LocalTime.of(12, 0, 10)).toList();
+
+        assertThat(userIds).containsExactlyInAnyOrder(user1, user2);
+        verify(postgresUserSiteRepository, times(2)).getUserIdsBetween(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void given_noSpreadWindow_when_scheduling_then_allUsersAreDispatchedAtTheStartOfTheMinute() {
+        var client = ClientId.random();
+        var user = UUID.randomUUID();
+        when(postgresUserSiteRepository.getClientIdsWithUserSite()).thenReturn(Set.of(client));
+        when(postgresUserSiteRepository.getUserIdsBetween(any(), any(), eq(Set.of(client)), anyInt())).thenReturn(List.of(user));
+
+        List<FlywheelPlanner.ScheduledUser> scheduled = subject.scheduleUsersToRefresh(LocalTime.of(12, 0, 10)).toList();
+
+        assertThat(scheduled).containsExactly(new FlywheelPlanner.ScheduledUser(user, Duration.ZERO));
+    }
+
+    @Test
+    void given_spreadWindow_when_scheduling_then_usersOfAllTiersAreSpreadOverTheWindowInOrder() {
+        var now = LocalTime.of(12, 0, 10);
+        var selector = new FlywheelUserUUIDRangeSelector();
+        var defaultClient = ClientId.random();
+        var twiceADayClient = ClientId.random();
+        userRefreshProperties.getRefreshesPerDay().put(twiceADayClient.unwrap(), 2);
+        userRefreshProperties.setSpreadWindow(Duration.ofSeconds(40));
+        var defaultTierUsers = List.of(pointInRange(selector.getUUIRange(1, now), 1, 4), pointInRange(selector.getUUIRange(1, now), 3, 4));
+        var twiceADayTierUser = pointInRange(selector.getUUIRange(2, now), 1, 2);
+        when(postgresUserSiteRepository.getClientIdsWithUserSite()).thenReturn(Set.of(defaultClient, twiceADayClient));
+        when(postgresUserSiteRepository.getUserIdsBetween(any(), any(), eq(Set.of(defaultClient)), anyInt())).thenReturn(defaultTierUsers);
+        when(postgresUserSiteRepository.getUserIdsBetween(any(), any(), eq(Set.of(twiceADayClient)), anyInt())).thenReturn(List.of(twiceADayTierUser));
+
+        List<FlywheelPlanner.ScheduledUser> scheduled = subject.scheduleUsersToRefresh(now).toList();
+
+        assertThat(scheduled).containsExactly(
+                new FlywheelPlanner.ScheduledUser(defaultTierUsers.get(0), Duration.ofSeconds(10)),
+                new FlywheelPlanner.ScheduledUser(twiceADayTierUser, Duration.ofSeconds(20)),
+                new FlywheelPlanner.ScheduledUser(defaultTierUsers.get(1), Duration.ofSeconds(30))
+        );
+    }
+
+    @Test
+    void given_usersAtTheEdgesOfTheRange_when_computingOffset_then_offsetStaysWithinTheWindow() {
+        var range = new FlywheelUserUUIDRangeSelector().getUUIRange(1, LocalTime.NOON);
+
+        assertThat(FlywheelPlanner.offsetWithinWindow(range, range.left(), Duration.ofMinutes(1))).isZero();
+        assertThat(FlywheelPlanner.offsetWithinWindow(range, range.right(), Duration.ofMinutes(1))).isEqualTo(Duration.ofMillis(59_999));
+    }
+
+    private static UUID pointInRange(FlywheelUserUUIDRangeSelector.UUIDRange range, int numerator, int denominator) {
+        BigInteger left = FlywheelUserUUIDRangeSelector.toBigInt(range.left());
+        BigInteger width = FlywheelUserUUIDRangeSelector.toBigInt(range.right()).subtract(left);
+        // Round up, so the offset of the user is not truncated to the millisecond before.
+        BigInteger distance = width.multiply(BigInteger.valueOf(numerator)).add(BigInteger.valueOf(denominator - 1)).divide(BigInteger.valueOf(denominator));
+        return FlywheelUserUUIDRangeSelector.fromBigInt(left.add(distance));
+    }
+
+    @Test
+    void given_consecutiveMinutes_when_planning_then_clientIdsAreOnlyQueriedOncePerCacheDuration() {
+        userRefreshProperties.setClientIdsCacheDuration(Duration.ofMinutes(10));
+        when(postgresUserSiteRepository.getClientIdsWithUserSite()).thenReturn(Set.of(ClientId.random()));
+
+        subject.getClientIdsByRefreshesPerDay();
+        clock.asFixed(FIXED_POINT_IN_TIME.plusMinutes(9));
+        subject.getClientIdsByRefreshesPerDay();
+        verify(postgresUserSiteRepository, times(1)).getClientIdsWithUserSite();
+
+        clock.asFixed(FIXED_POINT_IN_TIME.plusMinutes(10));
+        subject.getClientIdsByRefreshesPerDay();
+        verify(postgresUserSiteRepository, times(2)).getClientIdsWithUserSite();
+    }
+
+    @Test
+    void when_refreshing_ItShouldNotCrashForAnyMinuteOfTheDay_And_ShouldAlwaysRequestAProperRange() {
+        Set<ClientId> clientIds = Set.of(ClientId.random());
+        for (LocalDateTime localDateTime = LocalDateTime.MIN.plusSeconds(10); localDateTime.getDayOfMonth() == LocalDateTime.MIN.getDayOfMonth(); localDateTime = localDateTime.plusMinutes(1)) {
+            subject.usersToRefreshForTier(1, clientIds, localDateTime.toLocalTime()).toList();
+            ArgumentCaptor<UUID> lowerBound = ArgumentCaptor.forClass(UUID.class);
+            ArgumentCaptor<UUID> upperBound = ArgumentCaptor.forClass(UUID.class);
+            verify(postgresUserSiteRepository).getUserIdsBetween(lowerBound.capture(), upperBound.capture(), eq(clientIds), anyInt());
+            // This next assertion is really wonky... because comparison of UUID in postgres and Java works in a different way.
+            // In postgress uuid('802d82d8-2d82-d82d-82d8-2d82d82d8258') > uuid('7fffffff-ffff-ffff-ffff-ffffffffff80') = true.
+            // In java, UUID.fromString("802d82d8-2d82-d82d-82d8-2d82d82d8258").compareTo(UUID.fromString("7fffffff-ffff-ffff-ffff-ffffffffff80")) = -1
+            // This is because in java the most significant bits (repr. as long) flip to negative at some point, making it small than.
+            // https://bugs.openjdk.java.net/browse/JDK-7025832
+            assertThat(new BigInteger(lowerBound.getValue().toString().replace("-", ""), 16).compareTo(
+                    new BigInteger(upperBound.getValue().toString().replace("-", ""), 16))).isEqualTo(-1);
+            Mockito.clearInvocations(postgresUserSiteRepository);
+        }
+    }
+}
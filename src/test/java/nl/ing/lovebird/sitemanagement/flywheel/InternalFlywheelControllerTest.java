@@ -10,6 +10,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
@@ -18,8 +19,10 @@ import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -32,9 +35,12 @@ public class InternalFlywheelControllerTest {
     @Mock
     private InternalFlywheelService internalFlyWheelService;
 
+    @Mock
+    private AccessMeansRenewalService accessMeansRenewalService;
+
     @BeforeEach
     void setUp() {
-        final InternalFlywheelController controller = new InternalFlywheelController(Clock.systemUTC(), internalFlyWheelService);
+        final InternalFlywheelController controller = new InternalFlywheelController(Clock.systemUTC(), internalFlyWheelService, accessMeansRenewalService);
 
         mockMvc = MockMvcBuilders.standaloneSetup(controller).setControllerAdvice(new ExceptionHandlers(new ExceptionHandlingService("SM"), "SM")).build();
     }
@@ -51,6 +57,18 @@ public class InternalFlywheelControllerTest {
         verify(internalFlyWheelService).refreshUserSitesAsync(any());
     }
 
+    @Test
+    void testRefreshAllUserSitesWhenBatchExecutorIsFull() throws Exception {
+        when(accessMeansRenewalService.isEnabled()).thenReturn(true);
+        doThrow(new TaskRejectedException("full")).when(internalFlyWheelService).refreshUserSitesAsync(any());
+
+        mockMvc.perform(post("/flywheel/internal"))
+                .andExpect(status().isAccepted());
+
+        verify(internalFlyWheelService).refreshUserSitesAsync(any());
+        verify(accessMeansRenewalService).renewAheadOfFlywheelAsync(any());
+    }
+
     @Test
     void refreshAllUserSitesForASpecificUser() throws Exception {
         final UUID userId = UUID.randomUUID();
@@ -60,4 +78,15 @@ public class InternalFlywheelControllerTest {
 
         verify(internalFlyWheelService).forceRefreshUserSitesForSpecificUserAsync(eq(userId));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testRefreshAllUserSitesAlsoRenewsAccessMeansWhenEnabled() throws Exception {
+        when(accessMeansRenewalService.isEnabled()).thenReturn(true);
+
+        mockMvc.perform(post("/flywheel/internal"))
+                .andExpect(status().isAccepted());
+
+        verify(internalFlyWheelService).refreshUserSitesAsync(any());
+        verify(accessMeansRenewalService).renewAheadOfFlywheelAsync(any());
+    }
+}
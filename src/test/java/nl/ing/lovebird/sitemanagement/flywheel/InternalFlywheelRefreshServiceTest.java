@@ -1,5 +1,6 @@
 package nl.ing.lovebird.sitemanagement.flywheel;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import nl.ing.lovebird.clienttokens.ClientUserToken;
 import nl.ing.lovebird.clienttokens.requester.service.ClientTokenRequesterService;
 import nl.ing.lovebird.sitemanagement.legacy.aismigration.MigrationStatus;
@@ -14,13 +15,17 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import static java.time.Clock.systemUTC;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static nl.ing.lovebird.sitemanagement.lib.TestUtil.createYoltProviderSite;
 import static nl.ing.lovebird.sitemanagement.usersite.UserSiteActionType.FLYWHEEL_REFRESH;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -40,13 +45,17 @@ class InternalFlywheelRefreshServiceTest {
     @Mock
     private InternalFlywheelProperties properties;
 
+    private final FlywheelDispatchProperties dispatchProperties = new FlywheelDispatchProperties();
+    private FlywheelProviderLimiter providerLimiter;
     private InternalFlywheelRefreshService subject;
 
     private final Site yoltProviderSite = createYoltProviderSite();
 
     @BeforeEach
     void setUp() {
-        subject = new InternalFlywheelRefreshService(systemUTC(), userSiteService, properties, clientTokenRequesterService, userSiteRefreshService);
+        providerLimiter = new FlywheelProviderLimiter(systemUTC(), dispatchProperties, new SimpleMeterRegistry());
+        subject = new InternalFlywheelRefreshService(systemUTC(), userSiteService, properties, clientTokenRequesterService,
+                userSiteRefreshService, providerLimiter);
     }
 
     @Test
@@ -60,8 +69,8 @@ class InternalFlywheelRefreshServiceTest {
 
         subject.refreshForUser(userId, false, false);
 
-        verify(userSiteRefreshService).refreshUserSitesBlocking(singletonList(activeUserSite), false,
-                clientUserToken, FLYWHEEL_REFRESH, null, null);
+        verify(userSiteRefreshService).refreshUserSitesBlocking(eq(singletonList(activeUserSite)), eq(false),
+                eq(clientUserToken), eq(FLYWHEEL_REFRESH), isNull(), isNull(), any());
     }
 
     @Test
@@ -75,8 +84,8 @@ class InternalFlywheelRefreshServiceTest {
 
         subject.refreshForUser(userId, true, true);
 
-        verify(userSiteRefreshService).refreshUserSitesBlocking(singletonList(activeUserSite), true,
-                clientUserToken, FLYWHEEL_REFRESH, null, null);
+        verify(userSiteRefreshService).refreshUserSitesBlocking(eq(singletonList(activeUserSite)), eq(true),
+                eq(clientUserToken), eq(FLYWHEEL_REFRESH), isNull(), isNull(), any());
     }
 
     @Test
@@ -92,6 +101,46 @@ class InternalFlywheelRefreshServiceTest {
     }
 
 
+    @Test
+    void refreshForUser_providerAtItsLimit_userSiteShouldNotBeRefreshed() {
+        var activeUserSite = createUserSite(yoltProviderSite.getId(), null);
+        dispatchProperties.setMaxConcurrentRequests(Map.of(activeUserSite.getProvider(), 0));
+
+        when(userSiteService.getNonDeletedUserSites(userId)).thenReturn(singletonList(activeUserSite));
+        when(properties.getBlacklistedProviders()).thenReturn(emptyList());
+
+        subject.refreshForUser(userId, false, false);
+
+        verifyNoMoreInteractions(userSiteService, clientTokenRequesterService, userSiteRefreshService, properties);
+    }
+
+    @Test
+    void refreshForUser_userSitesOfTwoProviders_releasesEachProviderOnceItsUserSitesAreHandled() {
+        var clientUserToken = new ClientUserToken("client-token", null);
+        var userSiteA = createUserSite(yoltProviderSite.getId(), null).toBuilder().userSiteId(UUID.randomUUID()).provider("PROVIDER_A").build();
+        var userSiteB = createUserSite(yoltProviderSite.getId(), null).toBuilder().userSiteId(UUID.randomUUID()).provider("PROVIDER_B").build();
+        dispatchProperties.setMaxConcurrentRequests(Map.of("PROVIDER_A", 1, "PROVIDER_B", 1));
+
+        when(userSiteService.getNonDeletedUserSites(userId)).thenReturn(List.of(userSiteA, userSiteB));
+        when(properties.getBlacklistedProviders()).thenReturn(emptyList());
+        when(clientTokenRequesterService.getClientUserToken(clientId, userId)).thenReturn(clientUserToken);
+        when(userSiteRefreshService.refreshUserSitesBlocking(any(), anyBoolean(), any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            Consumer<PostgresUserSite> userSiteHandled = invocation.getArgument(6);
+            userSiteHandled.accept(userSiteA);
+
+            // Provider B is still busy with the refresh, provider A is available to the other flywheel workers again.
+            assertThat(providerLimiter.tryAcquire("PROVIDER_B", 1)).isFalse();
+            assertThat(providerLimiter.tryAcquire("PROVIDER_A", 1)).isTrue();
+            providerLimiter.release("PROVIDER_A");
+            return Optional.empty();
+        });
+
+        subject.refreshForUser(userId, false, false);
+
+        // Provider B was released after the refresh, although its user-site was not handled.
+        assertThat(providerLimiter.tryAcquire("PROVIDER_B", 1)).isTrue();
+    }
+
     @Test
     void refreshForUser_blacklistedProvider_userSiteShouldNotBeRefreshed() {
         var activeUserSite = createUserSite(yoltProviderSite.getId(), null);
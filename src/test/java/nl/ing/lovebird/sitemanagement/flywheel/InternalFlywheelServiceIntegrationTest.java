@@ -17,6 +17,8 @@ import org.testcontainers.shaded.com.google.common.collect.Sets;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.HashSet;
@@ -54,7 +56,8 @@ class InternalFlywheelServiceIntegrationTest {
 
     private final UserService mockUserService = mock(UserService.class);
     private final SiteService mockSiteService = mock(SiteService.class);
-    private final InternalFlywheelRefreshService internalFlywheelRefreshService = mock(InternalFlywheelRefreshService.class);
+    private final FlywheelDispatcher flywheelDispatcher = mock(FlywheelDispatcher.class);
+    private final FlywheelDispatchScheduler dispatchScheduler = mock(FlywheelDispatchScheduler.class);
 
     private InternalFlywheelService internalFlywheelService;
 
@@ -65,6 +68,14 @@ class InternalFlywheelServiceIntegrationTest {
         transactionTemplate.executeWithoutResult(transactionStatus -> entityManager.createNativeQuery("truncate table user_site cascade")
                 .executeUpdate());
 
+        // The dispatch scheduler runs every task straight away, so dispatch all users at the start of their minute.
+        userRefreshProperties.setSpreadWindow(Duration.ZERO);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(dispatchScheduler).schedule(any(), any());
+        lenient().when(flywheelDispatcher.tryDispatch(any(), anyBoolean(), anyBoolean())).thenReturn(true);
+
         // We don't care about the user, as long as it exists and not blocked.
         lenient().when(mockUserService.getUser(any())).thenAnswer(a -> {
             UUID userId = a.getArgument(0);
@@ -76,8 +87,8 @@ class InternalFlywheelServiceIntegrationTest {
      * This is explicitly cramped into 1 test instead of using a parameterized test, because it's quite costly to simulate the flywheel for 1 day.
      * This is due to the fact that it runs 1440 (24 * 60) minutes/times.
      * In each time it does a couple of queries:
-     * - get all clients
-     * - for each client get the user-ids
+     * - get all clients (cached)
+     * - for each refresh tier get the user-ids
      */
 //    @Test
     @Disabled("this test took too much time, although it is actually proof that the flywheel works. You can run it in case you need to troubleshoot something")
@@ -96,8 +107,9 @@ class InternalFlywheelServiceIntegrationTest {
         userRefreshProperties.getRefreshesPerDay().put(client2RefreshADay.unwrap(), 2);
         userRefreshProperties.getRefreshesPerDay().put(client3RefreshADay.unwrap(), 3);
         userRefreshProperties.getRefreshesPerDay().put(client4RefreshADay.unwrap(), 4);
-        internalFlywheelService = new InternalFlywheelService(internalFlywheelProperties, mockUserService, postgresUserSiteRepository,
-                braveTracer, mockSiteService, internalFlywheelRefreshService, userRefreshProperties, new FlywheelUserUUIDRangeSelector());
+        internalFlywheelService = new InternalFlywheelService(Clock.systemUTC(), internalFlywheelProperties, mockUserService,
+                braveTracer, mockSiteService, flywheelDispatcher, new FlywheelPlanner(Clock.systemUTC(), postgresUserSiteRepository, userRefreshProperties, new FlywheelUserUUIDRangeSelector()),
+                dispatchScheduler);
 
         bulkPersistPostgresUserSites(2, client1RefreshADay, randomUUID(), () -> userIdClient1,
                 (builder, i) -> builder, userSite -> postgresUserSiteRepository.save(userSite));
@@ -110,10 +122,10 @@ class InternalFlywheelServiceIntegrationTest {
 
         simulateFlywheelForADay();
 
-        verify(internalFlywheelRefreshService, times(1)).refreshForUser(eq(userIdClient1), anyBoolean(), anyBoolean());
-        verify(internalFlywheelRefreshService, times(2)).refreshForUser(eq(userIdClient2), anyBoolean(), anyBoolean());
-        verify(internalFlywheelRefreshService, times(3)).refreshForUser(eq(userIdClient3), anyBoolean(), anyBoolean());
-        verify(internalFlywheelRefreshService, times(4)).refreshForUser(eq(userIdClient4), anyBoolean(), anyBoolean());
+        verify(flywheelDispatcher, times(1)).tryDispatch(eq(userIdClient1), anyBoolean(), anyBoolean());
+        verify(flywheelDispatcher, times(2)).tryDispatch(eq(userIdClient2), anyBoolean(), anyBoolean());
+        verify(flywheelDispatcher, times(3)).tryDispatch(eq(userIdClient3), anyBoolean(), anyBoolean());
+        verify(flywheelDispatcher, times(4)).tryDispatch(eq(userIdClient4), anyBoolean(), anyBoolean());
     }
 
 //    @Test
@@ -151,14 +163,15 @@ class InternalFlywheelServiceIntegrationTest {
         // We now expect 501 * 3 + 500 * 4 = 3503 refreshes for a day.
         userRefreshProperties.getRefreshesPerDay().put(ClientIds.ACCOUNTING_CLIENT.unwrap(), 3);
         userRefreshProperties.getRefreshesPerDay().put(ClientIds.TEST_CLIENT.unwrap(), 4);
-        internalFlywheelService = new InternalFlywheelService(internalFlywheelProperties, mockUserService, postgresUserSiteRepository,
-                braveTracer, mockSiteService, internalFlywheelRefreshService, userRefreshProperties, new FlywheelUserUUIDRangeSelector());
+        internalFlywheelService = new InternalFlywheelService(Clock.systemUTC(), internalFlywheelProperties, mockUserService,
+                braveTracer, mockSiteService, flywheelDispatcher, new FlywheelPlanner(Clock.systemUTC(), postgresUserSiteRepository, userRefreshProperties, new FlywheelUserUUIDRangeSelector()),
+                dispatchScheduler);
 
 
         simulateFlywheelForADay();
 
         ArgumentCaptor<UUID> userIdCapture = ArgumentCaptor.forClass(UUID.class);
-        verify(internalFlywheelRefreshService, times(3503)).refreshForUser(userIdCapture.capture(), anyBoolean(), anyBoolean());
+        verify(flywheelDispatcher, times(3503)).tryDispatch(userIdCapture.capture(), anyBoolean(), anyBoolean());
         Assertions.assertThat(Sets.newHashSet(userIdCapture.getAllValues())).containsExactlyInAnyOrderElementsOf(userIdsWithUserSite);
     }
 
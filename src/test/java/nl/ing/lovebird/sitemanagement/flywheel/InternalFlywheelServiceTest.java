@@ -5,6 +5,7 @@ import brave.Tracing;
 import brave.handler.SpanHandler;
 
 import nl.ing.lovebird.sitemanagement.lib.ClientIds;
+import nl.ing.lovebird.sitemanagement.lib.MutableClock;
 import nl.ing.lovebird.sitemanagement.lib.TestUtil;
 import nl.ing.lovebird.sitemanagement.lib.types.ClientId;
 import nl.ing.lovebird.sitemanagement.site.SiteService;
@@ -17,17 +18,20 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
-import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.math.BigInteger;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.StreamSupport;
 
-import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -42,7 +46,9 @@ class InternalFlywheelServiceTest {
     @Mock
     private SiteService siteService;
     @Mock
-    private InternalFlywheelRefreshService internalFlywheelRefreshService;
+    private FlywheelDispatcher flywheelDispatcher;
+    @Mock
+    private FlywheelDispatchScheduler dispatchScheduler;
 
     private UserRefreshProperties userRefreshProperties = new UserRefreshProperties();
     private InternalFlywheelService subject;
@@ -54,8 +60,13 @@ class InternalFlywheelServiceTest {
         userRefreshProperties.setRefreshesPerDay(new HashMap<>());
         userRefreshProperties.setDefaultRefreshesPerDay(1);
         FlywheelUserUUIDRangeSelector flywheelUserUUIDRangeSelector = new FlywheelUserUUIDRangeSelector();
-        subject = new InternalFlywheelService(properties, userService, postgresUserSiteRepository, tracer, siteService, internalFlywheelRefreshService,
-                userRefreshProperties, flywheelUserUUIDRangeSelector);
+        FlywheelPlanner flywheelPlanner = new FlywheelPlanner(Clock.systemUTC(), postgresUserSiteRepository, userRefreshProperties, flywheelUserUUIDRangeSelector);
+        subject = new InternalFlywheelService(Clock.systemUTC(), properties, userService, tracer, siteService, flywheelDispatcher, flywheelPlanner, dispatchScheduler);
+        lenient().doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(dispatchScheduler).schedule(any(), any());
+        lenient().when(flywheelDispatcher.tryDispatch(any(), anyBoolean(), anyBoolean())).thenReturn(true);
     }
 
     @Test
@@ -69,8 +80,7 @@ class InternalFlywheelServiceTest {
 
         when(properties.isEnabled()).thenReturn(true);
         when(postgresUserSiteRepository.getClientIdsWithUserSite()).thenReturn(Set.of(clientId, ClientIds.YTS_CREDIT_SCORING_APP));
-        when(postgresUserSiteRepository.getUserIdsBetween(any(), any(), eq(clientId))).thenReturn(List.of(activeUserId, blockedUserId, activeAisUserIdNotFetchedBefore));
-        when(postgresUserSiteRepository.getUserIdsBetween(any(), any(), eq(ClientIds.YTS_CREDIT_SCORING_APP))).thenReturn(List.of(activeYoltAppUserId));
+        when(postgresUserSiteRepository.getUserIdsBetween(any(), any(), eq(Set.of(clientId, ClientIds.YTS_CREDIT_SCORING_APP)), anyInt())).thenReturn(List.of(activeUserId, blockedUserId, activeAisUserIdNotFetchedBefore, activeYoltAppUserId));
 
         when(userService.getUser(activeUserId)).thenReturn(Optional.of(new User(activeUserId, Instant.now().minus(11, ChronoUnit.DAYS), clientId, StatusType.ACTIVE, false)));
         when(userService.getUser(blockedUserId)).thenReturn(Optional.of(new User(blockedUserId, null, clientId, StatusType.BLOCKED, false)));
@@ -79,9 +89,9 @@ class InternalFlywheelServiceTest {
 
         subject.refreshUserSitesAsync(now);
 
-        verify(internalFlywheelRefreshService).refreshForUser(activeUserId, false, false);
-        verify(internalFlywheelRefreshService).refreshForUser(activeAisUserIdNotFetchedBefore, true, false);
-        verify(internalFlywheelRefreshService).refreshForUser(activeYoltAppUserId, false, false);
+        verify(flywheelDispatcher).tryDispatch(activeUserId, false, false);
+        verify(flywheelDispatcher).tryDispatch(activeAisUserIdNotFetchedBefore, true, false);
+        verify(flywheelDispatcher).tryDispatch(activeYoltAppUserId, false, false);
 
     }
 
@@ -91,7 +101,7 @@ class InternalFlywheelServiceTest {
         var userId = UUID.randomUUID();
         when(properties.isEnabled()).thenReturn(true);
         when(postgresUserSiteRepository.getClientIdsWithUserSite()).thenReturn(Set.of(ClientIds.TEST_CLIENT));
-        when(postgresUserSiteRepository.getUserIdsBetween(any(), any(), eq(ClientIds.TEST_CLIENT))).thenReturn(List.of(userId));
+        when(postgresUserSiteRepository.getUserIdsBetween(any(), any(), eq(Set.of(ClientIds.TEST_CLIENT)), anyInt())).thenReturn(List.of(userId));
 
         when(userService.getUser(userId)).thenReturn(Optional.empty());
 
@@ -107,13 +117,88 @@ class InternalFlywheelServiceTest {
 
         when(properties.isEnabled()).thenReturn(true);
         when(postgresUserSiteRepository.getClientIdsWithUserSite()).thenReturn(Set.of(clientId));
-        when(postgresUserSiteRepository.getUserIdsBetween(any(), any(), eq(clientId))).thenReturn(List.of(userId));
+        when(postgresUserSiteRepository.getUserIdsBetween(any(), any(), eq(Set.of(clientId)), anyInt())).thenReturn(List.of(userId));
         when(userService.getUser(userId)).thenReturn(Optional.of(new User(userId, null,
                 clientId, StatusType.BLOCKED, false)));
 
         subject.refreshUserSitesAsync(now);
 
-        verifyNoMoreInteractions(properties, userService, siteService, internalFlywheelRefreshService);
+        verifyNoMoreInteractions(properties, userService, siteService, flywheelDispatcher);
+    }
+
+    @Test
+    void refreshUserSitesAsync_withSpreadWindow_schedulesUsersWithinTheWindow() {
+        var now = LocalTime.now();
+        var userId = new FlywheelUserUUIDRangeSelector().getUUIRange(1, now).right();
+        var clientId = new ClientId(UUID.randomUUID());
+        userRefreshProperties.setSpreadWindow(Duration.ofSeconds(50));
+
+        when(properties.isEnabled()).thenReturn(true);
+        when(postgresUserSiteRepository.getClientIdsWithUserSite()).thenReturn(Set.of(clientId));
+        when(postgresUserSiteRepository.getUserIdsBetween(any(), any(), eq(Set.of(clientId)), anyInt())).thenReturn(List.of(userId));
+        reset(dispatchScheduler);
+
+        subject.refreshUserSitesAsync(now);
+
+        ArgumentCaptor<Runnable> run = ArgumentCaptor.forClass(Runnable.class);
+        verify(dispatchScheduler).schedule(run.capture(), eq(Duration.ZERO));
+        run.getValue().run();
+
+        verify(dispatchScheduler).schedule(same(run.getValue()), argThat(delay -> delay.compareTo(Duration.ZERO) > 0 && delay.compareTo(Duration.ofSeconds(50)) < 0));
+        verifyNoInteractions(userService, flywheelDispatcher);
+    }
+
+    @Test
+    void processRefreshesForCurrentMinute_dispatcherSaturated_readsNoFurtherUsersAndStopsAtTheEndOfTheMinute() {
+        var clock = new MutableClock();
+        var start = LocalDateTime.of(2026, 1, 1, 12, 0, 10);
+        clock.asFixed(start);
+        var planner = mock(FlywheelPlanner.class);
+        subject = new InternalFlywheelService(clock, properties, userService, tracer, siteService, flywheelDispatcher, planner, dispatchScheduler);
+
+        // A minute with a million users that are all due straight away.
+        var usersRead = new AtomicInteger();
+        var closed = new AtomicBoolean();
+        Iterator<FlywheelPlanner.ScheduledUser> users = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return usersRead.get() < 1_000_000;
+            }
+
+            @Override
+            public FlywheelPlanner.ScheduledUser next() {
+                usersRead.incrementAndGet();
+                return new FlywheelPlanner.ScheduledUser(UUID.randomUUID(), Duration.ZERO);
+            }
+        };
+        when(planner.scheduleUsersToRefresh(start.toLocalTime()))
+                .thenReturn(StreamSupport.stream(Spliterators.spliteratorUnknownSize(users, Spliterator.ORDERED), false).onClose(() -> closed.set(true)));
+        when(userService.getUser(any())).thenAnswer(invocation -> Optional.of(new User(invocation.<UUID>getArgument(0), null, ClientIds.TEST_CLIENT, StatusType.ACTIVE, false)));
+
+        // The workers take 3 users and never finish.
+        var capacity = new AtomicInteger(3);
+        when(flywheelDispatcher.tryDispatch(any(), anyBoolean(), anyBoolean())).thenAnswer(invocation -> capacity.getAndDecrement() > 0);
+
+        Deque<Runnable> scheduled = new ArrayDeque<>();
+        reset(dispatchScheduler);
+        doAnswer(invocation -> scheduled.add(invocation.getArgument(0))).when(dispatchScheduler).schedule(any(), any());
+
+        subject.processRefreshesForCurrentMinute(start.toLocalTime());
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(scheduled).hasSize(1);
+            scheduled.poll().run();
+        }
+        assertThat(scheduled).hasSize(1);
+        assertThat(usersRead.get()).isEqualTo(4);
+        assertThat(closed).isFalse();
+
+        clock.asFixed(start.plusMinutes(1));
+        scheduled.poll().run();
+
+        assertThat(scheduled).isEmpty();
+        assertThat(usersRead.get()).isEqualTo(4);
+        assertThat(closed).isTrue();
     }
 
     @Test
@@ -122,7 +207,7 @@ class InternalFlywheelServiceTest {
 
         subject.refreshUserSitesAsync(LocalTime.now());
 
-        verifyNoMoreInteractions(properties, userService, siteService, internalFlywheelRefreshService);
+        verifyNoMoreInteractions(properties, userService, siteService, flywheelDispatcher);
     }
 
     @Test
@@ -131,7 +216,7 @@ class InternalFlywheelServiceTest {
 
         subject.refreshUserSitesAsync(LocalTime.now());
 
-        verifyNoMoreInteractions(properties, userService, siteService, internalFlywheelRefreshService);
+        verifyNoMoreInteractions(properties, userService, siteService, flywheelDispatcher);
     }
 
     @Test
@@ -142,8 +227,8 @@ class InternalFlywheelServiceTest {
 
         subject.forceRefreshUserSitesForSpecificUserAsync(userId);
 
-        verify(internalFlywheelRefreshService).refreshForUser(userId, false, true);
-        verifyNoMoreInteractions(properties, userService, siteService, internalFlywheelRefreshService);
+        verify(flywheelDispatcher).dispatch(userId, false, true);
+        verifyNoMoreInteractions(properties, userService, siteService, flywheelDispatcher);
     }
 
     @Test
@@ -154,26 +239,7 @@ class InternalFlywheelServiceTest {
 
         subject.forceRefreshUserSitesForSpecificUserAsync(userId);
 
-        verifyNoMoreInteractions(properties, userService, siteService, internalFlywheelRefreshService);
-    }
-
-    @Test
-    void when_refreshing_ItShouldNotCrashForAnyMinuteOfTheDay_And_ShouldAlwaysRequestAProperRange() {
-        ClientId clientId = ClientId.random();
-        for (LocalDateTime localDateTime = LocalDateTime.MIN.plusSeconds(10); localDateTime.getDayOfMonth() == LocalDateTime.MIN.getDayOfMonth(); localDateTime = localDateTime.plusMinutes(1)) {
-            subject.usersToRefreshForClient(clientId, localDateTime.toLocalTime());
-            ArgumentCaptor<UUID> lowerBound = ArgumentCaptor.forClass(UUID.class);
-            ArgumentCaptor<UUID> upperBound = ArgumentCaptor.forClass(UUID.class);
-            verify(postgresUserSiteRepository).getUserIdsBetween(lowerBound.capture(), upperBound.capture(), eq(clientId));
-            // This next assertion is really wonky... because comparison of UUID in postgres and Java works in a different way.
-            // In postgress uuid('802d82d8-2d82-d82d-82d8-2d82d82d8258') > uuid('7fffffff-ffff-ffff-ffff-ffffffffff80') = true.
-            // In java, UUID.fromString("802d82d8-2d82-d82d-82d8-2d82d82d8258").compareTo(UUID.fromString("7fffffff-ffff-ffff-ffff-ffffffffff80")) = -1
-            // This is because in java the most significant bits (repr. as long) flip to negative at some point, making it small than.
-            // https://bugs.openjdk.java.net/browse/JDK-7025832
-            assertThat(new BigInteger(lowerBound.getValue().toString().replace("-", ""), 16).compareTo(
-                    new BigInteger(upperBound.getValue().toString().replace("-", ""), 16))).isEqualTo(-1);
-            Mockito.clearInvocations(postgresUserSiteRepository);
-        }
+        verifyNoMoreInteractions(properties, userService, siteService, flywheelDispatcher);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,76 @@
+package nl.ing.lovebird.sitemanagement.flywheel;
+
+import nl.ing.lovebird.sitemanagement.lib.MutableClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final LocalDateTime start = LocalDateTime.of(2021, 3, 1, 12, 0);
+
+    @BeforeEach
+    void setUp() {
+        clock.asFixed(start);
+    }
+
+    @Test
+    void tryAcquire_tokensAvailable_takesThem() {
+        var bucket = new TokenBucket(clock, 2);
+
+        assertThat(bucket.tryAcquire(1)).isTrue();
+        assertThat(bucket.tryAcquire(1)).isTrue();
+    }
+
+    @Test
+    void tryAcquire_bucketEmpty_givesUpUntilRefilled() {
+        var bucket = new TokenBucket(clock, 2);
+        bucket.tryAcquire(2);
+
+        assertThat(bucket.tryAcquire(1)).isFalse();
+
+        clock.asFixed(start.plusNanos(500_000_000));
+
+        assertThat(bucket.tryAcquire(1)).isTrue();
+        assertThat(bucket.tryAcquire(1)).isFalse();
+    }
+
+    @Test
+    void tryAcquire_afterIdling_refillsUpToCapacity() {
+        var bucket = new TokenBucket(clock, 2);
+        bucket.tryAcquire(2);
+
+        clock.asFixed(start.plusMinutes(1));
+
+        assertThat(bucket.tryAcquire(2)).isTrue();
+        assertThat(bucket.tryAcquire(1)).isFalse();
+    }
+
+    @Test
+    void tryAcquire_moreThanTheCapacity_takesThemFromAFullBucketAndRepaysTheDebt() {
+        var bucket = new TokenBucket(clock, 2);
+
+        assertThat(bucket.tryAcquire(4)).isTrue();
+
+        // The two tokens above the capacity are paid off first.
+        clock.asFixed(start.plusSeconds(1));
+        assertThat(bucket.tryAcquire(1)).isFalse();
+        clock.asFixed(start.plusSeconds(2));
+        assertThat(bucket.tryAcquire(2)).isTrue();
+    }
+
+    @Test
+    void tryAcquire_rateBelowOnePerSecond_stillAllowsSingleToken() {
+        var bucket = new TokenBucket(clock, 0.5);
+
+        assertThat(bucket.tryAcquire(1)).isTrue();
+        assertThat(bucket.tryAcquire(1)).isFalse();
+
+        clock.asFixed(start.plusSeconds(2));
+        assertThat(bucket.tryAcquire(1)).isTrue();
+    }
+}
@@ -0,0 +1,61 @@
+package nl.ing.lovebird.sitemanagement.flywheel;
+
+import nl.ing.lovebird.sitemanagement.lib.types.ClientId;
+import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserIdRangeIteratorTest {
+
+    private static final UUID MIN = UUID.fromString("00000000-0000-0000-0000-000000000000");
+    private static final UUID MAX = UUID.fromString("ffffffff-ffff-ffff-ffff-ffffffffffff");
+    private static final FlywheelUserUUIDRangeSelector.UUIDRange RANGE = new FlywheelUserUUIDRangeSelector.UUIDRange(MIN, MAX);
+
+    @Mock
+    private PostgresUserSiteRepository postgresUserSiteRepository;
+
+    private final Set<ClientId> clientIds = Set.of(ClientId.random());
+
+    @Test
+    void given_moreUsersThanFitInAPage_when_streaming_then_allPagesAreFetchedStartingAfterTheLastUserOfThePreviousPage() {
+        var user1 = UUID.fromString("00000000-0000-0000-0000-000000000001");
+        var user2 = UUID.fromString("7fffffff-ffff-ffff-ffff-ffffffffffff");
+        var user3 = UUID.fromString("80000000-0000-0000-0000-000000000000");
+        when(postgresUserSiteRepository.getUserIdsBetween(MIN, MAX, clientIds, 2)).thenReturn(List.of(user1, user2));
+        when(postgresUserSiteRepository.getUserIdsBetween(user3, MAX, clientIds, 2)).thenReturn(List.of(user3));
+
+        List<UUID> userIds = UserIdRangeIterator.stream(postgresUserSiteRepository, clientIds, RANGE, 2).toList();
+
+        assertThat(userIds).containsExactly(user1, user2, user3);
+        verify(postgresUserSiteRepository, times(2)).getUserIdsBetween(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void given_exactlyAFullPage_when_streaming_then_anEmptyPageEndsTheIteration() {
+        var user1 = UUID.fromString("00000000-0000-0000-0000-000000000001");
+        var user2 = UUID.fromString("00000000-0000-0000-0000-000000000002");
+        when(postgresUserSiteRepository.getUserIdsBetween(MIN, MAX, clientIds, 2)).thenReturn(List.of(user1, user2));
+        when(postgresUserSiteRepository.getUserIdsBetween(UUID.fromString("00000000-0000-0000-0000-000000000003"), MAX, clientIds, 2)).thenReturn(List.of());
+
+        List<UUID> userIds = UserIdRangeIterator.stream(postgresUserSiteRepository, clientIds, RANGE, 2).toList();
+
+        assertThat(userIds).containsExactly(user1, user2);
+    }
+
+    @Test
+    void given_aStreamThatIsNotConsumed_then_nothingIsFetched() {
+        UserIdRangeIterator.stream(postgresUserSiteRepository, clientIds, RANGE, 2);
+
+        verifyNoInteractions(postgresUserSiteRepository);
+    }
+}
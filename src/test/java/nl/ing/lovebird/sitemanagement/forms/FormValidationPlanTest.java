@@ -0,0 +1,107 @@
+package nl.ing.lovebird.sitemanagement.forms;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.ing.lovebird.providershared.form.*;
+import nl.ing.lovebird.sitemanagement.configuration.SiteManagementDebugProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FormValidationPlanTest {
+
+    private final FormValidator formValidator = new FormValidator(false, new SiteManagementDebugProperties());
+
+    @Test
+    void fingerprintIsTheSameForFormsThatValidateTheSame() {
+        Form form = new Form(TestFormUtil.createAllVariationsOfFormComponents(), null, null);
+        Form sameForm = new Form(TestFormUtil.createAllVariationsOfFormComponents(), null, null);
+        Form otherDisplayNames = new Form(List.of(new TextField("user", "User name", 20, 10, false, null, false)), null, null);
+        Form sameOtherDisplayNames = new Form(List.of(new TextField("user", "Username", 30, 10, false, null, false)), null, null);
+
+        assertThat(FormValidationPlan.fingerprint(form)).isEqualTo(FormValidationPlan.fingerprint(sameForm));
+        assertThat(FormValidationPlan.fingerprint(otherDisplayNames)).isEqualTo(FormValidationPlan.fingerprint(sameOtherDisplayNames));
+    }
+
+    @Test
+    void fingerprintDiffersForFormsThatValidateDifferently() {
+        String fingerprint = FormValidationPlan.fingerprint(new Form(List.of(new TextField("user", "User", 20, 10, false, null, false)), null, null));
+
+        assertThat(FormValidationPlan.fingerprint(new Form(List.of(new TextField("user", "User", 20, 11, false, null, false)), null, null)))
+                .isNotEqualTo(fingerprint);
+        assertThat(FormValidationPlan.fingerprint(new Form(List.of(new TextField("user", "User", 20, 10, true, null, false)), null, null)))
+                .isNotEqualTo(fingerprint);
+        assertThat(FormValidationPlan.fingerprint(new Form(List.of(new TextField("user", "User", 20, 10, false, "[a-z]*", false)), null, null)))
+                .isNotEqualTo(fingerprint);
+        assertThat(FormValidationPlan.fingerprint(new Form(List.of(new TextField("other-user", "User", 20, 10, false, null, false)), null, null)))
+                .isNotEqualTo(fingerprint);
+        assertThat(FormValidationPlan.fingerprint(new Form(List.of(new PasswordField("user", "User", 20, 10, false, null)), null, null)))
+                .isNotEqualTo(fingerprint);
+    }
+
+    @Test
+    void cacheReusesThePlanOfAFormWithTheSameFingerprint() {
+        FormValidationPlanCache cache = new FormValidationPlanCache(new SimpleMeterRegistry(), 10);
+        Form form = new Form(TestFormUtil.createTextFieldAndChoiceComponent(), null, null);
+        Form sameForm = new Form(TestFormUtil.createTextFieldAndChoiceComponent(), null, null);
+
+        assertThat(cache.get(form)).isSameAs(cache.get(sameForm));
+    }
+
+    @Test
+    void cacheRecordsHitsAndMisses() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        FormValidationPlanCache cache = new FormValidationPlanCache(meterRegistry, 10);
+        Form form = new Form(TestFormUtil.createTextFieldAndChoiceComponent(), null, null);
+
+        cache.get(form);
+        cache.get(form);
+        cache.get(form);
+
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "form_validation_plans").tag("result", "miss").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "form_validation_plans").tag("result", "hit").functionCounter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void planCanBeReusedForManyValidations() throws FormValidationException {
+        Form form = new Form(List.of(new TextField("user", "User", 20, 10, false, "[a-z]*", false)), null, null);
+        FormValidationPlan plan = FormValidationPlan.compile(form);
+
+        FilledInUserSiteFormValues valid = new FilledInUserSiteFormValues();
+        valid.add("user", "abc");
+        FilledInUserSiteFormValues invalid = new FilledInUserSiteFormValues();
+        invalid.add("user", "ABC");
+
+        formValidator.validateValues(form, plan, valid);
+        assertThatThrownBy(() -> formValidator.validateValues(form, plan, invalid))
+                .isInstanceOf(FormValidationException.class)
+                .hasMessageContaining("The value of field with id user does not match regex [a-z]*");
+        formValidator.validateValues(form, plan, valid);
+    }
+
+    @Test
+    void permutationsAreTheSameOnEveryFailure() {
+        Form form = new Form(TestFormUtil.createAllVariationsOfFormComponents(), null, null);
+        FormValidationPlan plan = FormValidationPlan.compile(form);
+        FilledInUserSiteFormValues values = new FilledInUserSiteFormValues();
+        values.add("user1", "bla");
+        values.add("password1", "bla");
+
+        Throwable first = catchFormValidationException(form, plan, values);
+        Throwable second = catchFormValidationException(form, plan, values);
+
+        assertThat(first.getMessage()).contains("You must at least fill in one of the following set of fields");
+        assertThat(second.getMessage()).isEqualTo(first.getMessage());
+    }
+
+    private Throwable catchFormValidationException(Form form, FormValidationPlan plan, FilledInUserSiteFormValues values) {
+        try {
+            formValidator.validateValues(form, plan, values);
+        } catch (FormValidationException e) {
+            return e;
+        }
+        throw new AssertionError("Expected a FormValidationException");
+    }
+}
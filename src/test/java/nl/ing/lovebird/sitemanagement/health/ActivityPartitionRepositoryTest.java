@@ -0,0 +1,56 @@
+package nl.ing.lovebird.sitemanagement.health;
+
+import nl.ing.lovebird.activityevents.events.UpdateUserSiteEvent;
+import nl.ing.lovebird.sitemanagement.configuration.TestContainerDataJpaTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@TestContainerDataJpaTest
+class ActivityPartitionRepositoryTest {
+
+    @Autowired
+    private ActivityPartitionRepository activityPartitionRepository;
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Test
+    void createAndDropPartition() {
+        var day = LocalDate.of(2099, 1, 1);
+
+        activityPartitionRepository.createPartition(ActivityEvent.TABLE, day);
+        // Creating it again is a no-op.
+        activityPartitionRepository.createPartition(ActivityEvent.TABLE, day);
+        assertThat(activityPartitionRepository.findPartitionDays(ActivityEvent.TABLE)).contains(day);
+
+        activityPartitionRepository.dropPartition(ActivityEvent.TABLE, day);
+        assertThat(activityPartitionRepository.findPartitionDays(ActivityEvent.TABLE)).doesNotContain(day);
+    }
+
+    @Test
+    void eventWithoutPartition_isStoredInAndDeletedFromDefaultPartition() {
+        var eventTime = Instant.parse("2001-02-03T04:05:06Z");
+        var activityId = UUID.randomUUID();
+        var userId = UUID.randomUUID();
+        var updateUserSiteEvent = new UpdateUserSiteEvent(userId, UUID.randomUUID(), activityId, "site-name", eventTime.atZone(ZoneOffset.UTC), UUID.randomUUID());
+        eventRepository.save(new ActivityEvent(UUID.randomUUID(), activityId, userId, updateUserSiteEvent, eventTime));
+        assertThat(eventRepository.countByActivityId(activityId)).isEqualTo(1);
+
+        assertThat(activityPartitionRepository.deleteFromDefaultPartitionBefore(ActivityEvent.TABLE, eventTime.plusSeconds(1))).isPositive();
+
+        assertThat(eventRepository.countByActivityId(activityId)).isZero();
+    }
+
+    @Test
+    void unknownTable_isRejected() {
+        assertThatThrownBy(() -> activityPartitionRepository.findPartitionDays("user_site"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,96 @@
+package nl.ing.lovebird.sitemanagement.health;
+
+import nl.ing.lovebird.sitemanagement.configuration.TestContainerDataJpaTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@TestContainerDataJpaTest
+class ActivityProgressRepositoryTest {
+
+    @Autowired
+    private ActivityProgressRepository activityProgressRepository;
+
+    @Test
+    void markIngestedAndFailed_trackedActivity_returnsUpdatedProgress() {
+        var activityId = UUID.randomUUID();
+        var userSite1 = UUID.randomUUID();
+        var userSite2 = UUID.randomUUID();
+        activityProgressRepository.create(activityId, Instant.now(), List.of(userSite1, userSite2));
+
+        var afterIngestion = activityProgressRepository.markIngested(activityId, userSite1);
+        assertThat(afterIngestion).contains(new ActivityProgress(activityId, Set.of(userSite1, userSite2), Set.of(userSite1), Set.of()));
+        assertThat(afterIngestion.get().allUserSitesProcessed()).isFalse();
+
+        var afterFailure = activityProgressRepository.markFailed(activityId, userSite2);
+        assertThat(afterFailure).contains(new ActivityProgress(activityId, Set.of(userSite1, userSite2), Set.of(userSite1), Set.of(userSite2)));
+        assertThat(afterFailure.get().allUserSitesProcessed()).isTrue();
+    }
+
+    @Test
+    void markIngested_sameUserSiteTwice_isOnlyAddedOnce() {
+        var activityId = UUID.randomUUID();
+        var userSite = UUID.randomUUID();
+        activityProgressRepository.create(activityId, Instant.now(), List.of(userSite));
+
+        activityProgressRepository.markIngested(activityId, userSite);
+        var progress = activityProgressRepository.markIngested(activityId, userSite);
+
+        assertThat(progress).contains(new ActivityProgress(activityId, Set.of(userSite), Set.of(userSite), Set.of()));
+    }
+
+    @Test
+    void markIngested_manyUserSites_addsEachOnlyOnce() {
+        var activityId = UUID.randomUUID();
+        var userSite1 = UUID.randomUUID();
+        var userSite2 = UUID.randomUUID();
+        var userSite3 = UUID.randomUUID();
+        activityProgressRepository.create(activityId, Instant.now(), List.of(userSite1, userSite2, userSite3));
+        activityProgressRepository.markIngested(activityId, userSite1);
+
+        var progress = activityProgressRepository.markIngested(activityId, List.of(userSite1, userSite2, userSite2, userSite3));
+
+        assertThat(progress).contains(new ActivityProgress(activityId, Set.of(userSite1, userSite2, userSite3), Set.of(userSite1, userSite2, userSite3), Set.of()));
+        assertThat(progress.get().allUserSitesProcessed()).isTrue();
+    }
+
+    @Test
+    void create_activityAlreadyTracked_keepsExistingProgress() {
+        var activityId = UUID.randomUUID();
+        var userSite = UUID.randomUUID();
+        activityProgressRepository.create(activityId, Instant.now(), List.of(userSite));
+        activityProgressRepository.markIngested(activityId, userSite);
+
+        activityProgressRepository.create(activityId, Instant.now(), List.of(userSite));
+
+        assertThat(activityProgressRepository.markFailed(activityId, userSite))
+                .contains(new ActivityProgress(activityId, Set.of(userSite), Set.of(userSite), Set.of(userSite)));
+    }
+
+    @Test
+    void markIngested_untrackedActivity_returnsEmpty() {
+        assertThat(activityProgressRepository.markIngested(UUID.randomUUID(), UUID.randomUUID())).isEqualTo(Optional.empty());
+    }
+
+    @Test
+    void deleteOlderThanDays_removesOnlyOldActivities() {
+        var oldActivityId = UUID.randomUUID();
+        var newActivityId = UUID.randomUUID();
+        var userSite = UUID.randomUUID();
+        activityProgressRepository.create(oldActivityId, Instant.now().minus(8, ChronoUnit.DAYS), List.of(userSite));
+        activityProgressRepository.create(newActivityId, Instant.now(), List.of(userSite));
+
+        activityProgressRepository.deleteOlderThanDays(7);
+
+        assertThat(activityProgressRepository.markIngested(oldActivityId, userSite)).isEmpty();
+        assertThat(activityProgressRepository.markIngested(newActivityId, userSite)).isPresent();
+    }
+}
@@ -1,5 +1,6 @@
 package nl.ing.lovebird.sitemanagement.health;
 
+import nl.ing.lovebird.activityevents.events.IngestionFinishedEvent;
 import nl.ing.lovebird.activityevents.events.UpdateUserSiteEvent;
 import nl.ing.lovebird.sitemanagement.configuration.TestContainerDataJpaTest;
 import nl.ing.lovebird.sitemanagement.health.ActivityEvent;
@@ -11,6 +12,7 @@ import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.List;
 import java.util.UUID;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
@@ -21,6 +23,12 @@ class EventRepositoryTest {
     @Autowired
     private EventRepository eventRepository;
 
+    @Autowired
+    private EventBatchRepository eventBatchRepository;
+
+    @Autowired
+    private ActivityProgressRepository activityProgressRepository;
+
     @Test
     void canSaveAPostgresActivityEvent() {
         var activityId = UUID.randomUUID();
@@ -40,4 +48,50 @@ class EventRepositoryTest {
                 .isEqualTo(event);
     }
 
+    @Test
+    void canInsertManyPostgresActivityEventsAtOnce() {
+        var activityId = UUID.randomUUID();
+        var userId = UUID.randomUUID();
+        var time = ZonedDateTime.now(Clock.fixed(Instant.ofEpochMilli(1618925809L), ZoneId.of("UTC")));
+
+        var events = List.of(
+                new ActivityEvent(UUID.randomUUID(), activityId, userId, new UpdateUserSiteEvent(userId, UUID.randomUUID(), activityId, "site-name", time, UUID.randomUUID()), time.toInstant()),
+                new ActivityEvent(UUID.randomUUID(), activityId, userId, IngestionFinishedEvent.builder()
+                        .userId(userId)
+                        .activityId(activityId)
+                        .userSiteId(UUID.randomUUID())
+                        .time(time.plusSeconds(1))
+                        .build(), time.plusSeconds(1).toInstant()));
+
+        eventBatchRepository.insertAll(events);
+
+        assertThat(eventRepository.findAllByActivityIdOrderByEventTimeAsc(activityId)).isEqualTo(events);
+    }
+
+    @Test
+    void readsTheEventsOfAnActivityFromBeforeItsStart() {
+        var activityId = UUID.randomUUID();
+        var userId = UUID.randomUUID();
+        var start = ZonedDateTime.now(Clock.fixed(Instant.ofEpochMilli(1618925809L), ZoneId.of("UTC")));
+        activityProgressRepository.create(activityId, start.toInstant(), List.of(UUID.randomUUID()));
+
+        var startEvent = new ActivityEvent(UUID.randomUUID(), activityId, userId, new UpdateUserSiteEvent(userId, UUID.randomUUID(), activityId, "site-name", start, UUID.randomUUID()), start.toInstant());
+        var eventJustBeforeTheStart = new ActivityEvent(UUID.randomUUID(), activityId, userId, IngestionFinishedEvent.builder()
+                .userId(userId)
+                .activityId(activityId)
+                .userSiteId(UUID.randomUUID())
+                .time(start.minusMinutes(5))
+                .build(), start.minusMinutes(5).toInstant());
+        var eventBeforeTheStart = new ActivityEvent(UUID.randomUUID(), activityId, userId, IngestionFinishedEvent.builder()
+                .userId(userId)
+                .activityId(activityId)
+                .userSiteId(UUID.randomUUID())
+                .time(start.minusDays(3))
+                .build(), start.minusDays(3).toInstant());
+        eventBatchRepository.insertAll(List.of(startEvent, eventJustBeforeTheStart, eventBeforeTheStart));
+
+        assertThat(eventRepository.findAllByActivityIdOrderByEventTimeAsc(activityId)).isEqualTo(List.of(eventBeforeTheStart, eventJustBeforeTheStart, startEvent));
+        assertThat(eventRepository.findFirstByActivityIdOrderByEventTimeAsc(activityId)).contains(eventBeforeTheStart);
+        assertThat(eventRepository.countByActivityId(activityId)).isEqualTo(3);
+    }
 }
@@ -5,7 +5,9 @@ import nl.ing.lovebird.activityevents.events.RefreshedUserSiteEvent;
 import nl.ing.lovebird.activityevents.events.serializer.ActivityEventSerializer;
 import nl.ing.lovebird.clienttokens.ClientUserToken;
 import nl.ing.lovebird.sitemanagement.health.HealthMetrics;
+import nl.ing.lovebird.sitemanagement.health.activities.ActivityService.ClientUserTokenAndEvent;
 import nl.ing.lovebird.sitemanagement.health.dspipeline.UserContext;
+import nl.ing.lovebird.sitemanagement.lib.spring.kafka.RecordHeaderConverter;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -13,9 +15,13 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
+import static nl.ing.lovebird.clienttokens.constants.ClientTokenConstants.CLIENT_TOKEN_HEADER_NAME;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class ActivitiesConsumerTest {
@@ -29,6 +35,9 @@ class ActivitiesConsumerTest {
     @Mock
     private HealthMetrics healthMetrics;
 
+    @Mock
+    private RecordHeaderConverter recordHeaderConverter;
+
     @InjectMocks
     private ActivitiesConsumer consumer;
 
@@ -45,4 +54,34 @@ class ActivitiesConsumerTest {
         verify(healthMetrics).incrementReceivedActivityEventOfType(event.getType());
         verify(activityService).handleEvent(clientUserToken, event);
     }
+
+    @Test
+    void batchConsumerShouldPassOverTheEventsPerActivityInOrder() {
+        var userId = UUID.randomUUID();
+        var activityId = UUID.randomUUID();
+        var otherActivityId = UUID.randomUUID();
+        var first = refreshedUserSiteEvent(userId, activityId);
+        var other = refreshedUserSiteEvent(userId, otherActivityId);
+        var second = refreshedUserSiteEvent(userId, activityId);
+        var wrongKey = refreshedUserSiteEvent(userId, activityId);
+        Map<String, Object> headers = Map.of(CLIENT_TOKEN_HEADER_NAME, "serialized-client-token".getBytes());
+        when(recordHeaderConverter.convert(headers.get(CLIENT_TOKEN_HEADER_NAME), ClientUserToken.class)).thenReturn(clientUserToken);
+
+        consumer.activityUpdates(
+                List.of(key(userId, activityId), key(userId, otherActivityId), key(userId, activityId), key(userId, otherActivityId)),
+                List.of(headers, headers, headers, headers),
+                List.of(first, other, second, wrongKey));
+
+        verify(activityService).handleEvents(activityId, List.of(new ClientUserTokenAndEvent(clientUserToken, first), new ClientUserTokenAndEvent(clientUserToken, second)));
+        verify(activityService).handleEvents(otherActivityId, List.of(new ClientUserTokenAndEvent(clientUserToken, other)));
+    }
+
+    private static String key(UUID userId, UUID activityId) {
+        return ActivityEventSerializer.serialize(new ActivityEventKey(userId, activityId, new UUID(0, 0)));
+    }
+
+    private static RefreshedUserSiteEvent refreshedUserSiteEvent(UUID userId, UUID activityId) {
+        return new RefreshedUserSiteEvent(userId, activityId, ZonedDateTime.parse("2019-07-11T14:52:34.501+02:00"),
+                UUID.randomUUID(), null, null, null);
+    }
 }
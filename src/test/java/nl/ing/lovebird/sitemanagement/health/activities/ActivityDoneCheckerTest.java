@@ -2,12 +2,14 @@ package nl.ing.lovebird.sitemanagement.health.activities;
 
 import nl.ing.lovebird.activityevents.events.AbstractEvent;
 import nl.ing.lovebird.activityevents.events.IngestionFinishedEvent;
+import nl.ing.lovebird.sitemanagement.health.ActivityProgress;
 import nl.ing.lovebird.sitemanagement.health.dspipeline.RefreshPeriod;
 import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import static nl.ing.lovebird.sitemanagement.health.activities.ActivityEventTestHelper.*;
@@ -147,4 +149,36 @@ public class ActivityDoneCheckerTest {
 
         assertThrows(IllegalActivityStateException.class, () -> ActivityDoneChecker.isLastProcessedUserSite(activityEvents, refreshedEvent));
     }
+
+    @Test
+    public void isActivityDone_progress_allUserSitesIngestedOrFailed() {
+        UUID ingestedUserSiteId = UUID.randomUUID();
+        UUID failedUserSiteId = UUID.randomUUID();
+        AbstractEvent refreshedEvent = createRefreshedEvent(ACTIVITY_ID, failedUserSiteId);
+
+        var progress = new ActivityProgress(ACTIVITY_ID, Set.of(ingestedUserSiteId, failedUserSiteId), Set.of(ingestedUserSiteId), Set.of(failedUserSiteId));
+
+        assertTrue(ActivityDoneChecker.isLastProcessedUserSite(progress, refreshedEvent));
+    }
+
+    @Test
+    public void isActivityDone_progress_userSitePending() {
+        UUID ingestedUserSiteId = UUID.randomUUID();
+        UUID pendingUserSiteId = UUID.randomUUID();
+        AbstractEvent ingestionFinishedEvent = createIngestionFinishedEvent(ACTIVITY_ID, ingestedUserSiteId, refreshPeriod);
+
+        var progress = new ActivityProgress(ACTIVITY_ID, Set.of(ingestedUserSiteId, pendingUserSiteId), Set.of(ingestedUserSiteId), Set.of());
+
+        assertFalse(ActivityDoneChecker.isLastProcessedUserSite(progress, ingestionFinishedEvent));
+    }
+
+    @Test
+    public void isActivityDone_progress_noExpectedUserSites() {
+        UUID userSiteId = UUID.randomUUID();
+        AbstractEvent ingestionFinishedEvent = createIngestionFinishedEvent(ACTIVITY_ID, userSiteId, refreshPeriod);
+
+        var progress = new ActivityProgress(ACTIVITY_ID, Set.of(), Set.of(userSiteId), Set.of());
+
+        assertThrows(IllegalActivityStateException.class, () -> ActivityDoneChecker.isLastProcessedUserSite(progress, ingestionFinishedEvent));
+    }
 }
@@ -0,0 +1,119 @@
+package nl.ing.lovebird.sitemanagement.health.activities;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.ing.lovebird.activityevents.EventType;
+import nl.ing.lovebird.activityevents.events.AbstractEvent;
+import nl.ing.lovebird.sitemanagement.health.ActivityEvent;
+import nl.ing.lovebird.sitemanagement.health.dspipeline.RefreshPeriod;
+import nl.ing.lovebird.sitemanagement.lib.MutableClock;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static java.time.temporal.ChronoUnit.MILLIS;
+import static nl.ing.lovebird.sitemanagement.health.activities.ActivityEventTestHelper.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ActivityEventCacheTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2021, 3, 1, 12, 0);
+
+    private final MutableClock clock = new MutableClock();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ActivityEventCache cache;
+
+    @BeforeEach
+    void setUp() {
+        clock.asFixed(NOW);
+        cache = new ActivityEventCache(clock, meterRegistry, 2, Duration.ofMinutes(10), Duration.ofMinutes(1));
+    }
+
+    @Test
+    void get_upToDateEntry_isAHit() {
+        var activityId = UUID.randomUUID();
+        var startEvent = toActivityEvent(createStartEvent(activityId, UUID.randomUUID()));
+        cache.put(activityId, List.of(startEvent));
+
+        assertThat(cache.get(activityId, 1)).contains(List.of(startEvent.getEvent()));
+        assertThat(meterRegistry.counter("activity_events_cache_requests", "result", "hit").count()).isEqualTo(1);
+    }
+
+    @Test
+    void get_eventStoredByAnotherPod_isAMiss() {
+        var activityId = UUID.randomUUID();
+        cache.put(activityId, List.of(toActivityEvent(createStartEvent(activityId, UUID.randomUUID()))));
+
+        assertThat(cache.get(activityId, 2)).isEmpty();
+        assertThat(meterRegistry.counter("activity_events_cache_requests", "result", "miss").count()).isEqualTo(1);
+    }
+
+    @Test
+    void append_cachedActivity_addsTheEvent() {
+        var activityId = UUID.randomUUID();
+        var userSiteId = UUID.randomUUID();
+        var startEvent = toActivityEvent(createStartEvent(activityId, userSiteId));
+        var ingestionFinishedEvent = toActivityEvent(createIngestionFinishedEvent(activityId, userSiteId, new RefreshPeriod(null, null)));
+        cache.put(activityId, List.of(startEvent));
+
+        cache.append(ingestionFinishedEvent);
+
+        assertThat(cache.get(activityId, 2)).contains(List.of(startEvent.getEvent(), ingestionFinishedEvent.getEvent()));
+    }
+
+    @Test
+    void append_eventAlreadyCached_isIgnored() {
+        var activityId = UUID.randomUUID();
+        var startEvent = toActivityEvent(createStartEvent(activityId, UUID.randomUUID()));
+        cache.put(activityId, List.of(startEvent));
+
+        cache.append(startEvent);
+
+        assertThat(cache.get(activityId, 1)).contains(List.of(startEvent.getEvent()));
+    }
+
+    @Test
+    void append_activityNotCached_cachesNothing() {
+        var activityId = UUID.randomUUID();
+
+        cache.append(toActivityEvent(createStartEvent(activityId, UUID.randomUUID())));
+
+        assertThat(cache.get(activityId, 1)).isEmpty();
+    }
+
+    @Test
+    void get_finishedActivity_expiresEarlier() {
+        var activityId = UUID.randomUUID();
+        var startEvent = toActivityEvent(createStartEvent(activityId, UUID.randomUUID()));
+        cache.put(activityId, List.of(startEvent));
+        cache.append(toActivityEvent(createAggregationFinishedEvent(activityId, EventType.REFRESH_USER_SITES, List.of())));
+
+        clock.asFixed(NOW.plusSeconds(59));
+        assertThat(cache.get(activityId, 2)).isPresent();
+        clock.asFixed(NOW.plusMinutes(1));
+        assertThat(cache.get(activityId, 2)).isEmpty();
+    }
+
+    @Test
+    void put_moreActivitiesThanMax_evictsLeastRecentlyUsed() {
+        var activity1 = UUID.randomUUID();
+        var activity2 = UUID.randomUUID();
+        var activity3 = UUID.randomUUID();
+        cache.put(activity1, List.of(toActivityEvent(createStartEvent(activity1, UUID.randomUUID()))));
+        cache.put(activity2, List.of(toActivityEvent(createStartEvent(activity2, UUID.randomUUID()))));
+        cache.get(activity1, 1);
+
+        cache.put(activity3, List.of(toActivityEvent(createStartEvent(activity3, UUID.randomUUID()))));
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get(activity1, 1)).isPresent();
+        assertThat(cache.get(activity2, 1)).isEmpty();
+    }
+
+    private static ActivityEvent toActivityEvent(AbstractEvent event) {
+        return new ActivityEvent(UUID.randomUUID(), event.getActivityId(), event.getUserId(), event, event.getTime().toInstant().truncatedTo(MILLIS));
+    }
+}
@@ -0,0 +1,83 @@
+package nl.ing.lovebird.sitemanagement.health.activities;
+
+import nl.ing.lovebird.sitemanagement.configuration.IntegrationTestContext;
+import nl.ing.lovebird.sitemanagement.health.ActivityProgressRepository;
+import nl.ing.lovebird.sitemanagement.health.EventRepository;
+import nl.ing.lovebird.sitemanagement.health.dspipeline.RefreshPeriod;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+
+import java.util.List;
+import java.util.UUID;
+
+import static nl.ing.lovebird.sitemanagement.health.activities.ActivityEventTestHelper.createIngestionFinishedEvent;
+import static nl.ing.lovebird.sitemanagement.health.activities.ActivityEventTestHelper.createStartEvent;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+
+@IntegrationTestContext
+class ActivityEventServiceIntegrationTest {
+
+    @Autowired
+    ActivityEventService activityEventService;
+    @Autowired
+    EventRepository eventRepository;
+    @Autowired
+    ActivityEventCache activityEventCache;
+    @SpyBean
+    ActivityProgressRepository activityProgressRepository;
+
+    @Test
+    void storeEventAndUpdateProgress_progressCannotBeUpdated_doesNotStoreTheEvent() {
+        var activityId = UUID.randomUUID();
+        var userSiteId = UUID.randomUUID();
+        var event = createIngestionFinishedEvent(activityId, userSiteId, new RefreshPeriod(null, null));
+        doThrow(new IllegalStateException("connection reset")).when(activityProgressRepository).markIngested(activityId, userSiteId);
+
+        assertThatThrownBy(() -> activityEventService.storeEventAndUpdateProgress(event))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(eventRepository.countByActivityId(activityId)).isZero();
+    }
+
+    @Test
+    void storeEventAndUpdateProgress_transactionRollsBack_doesNotAppendTheEventToTheCache() {
+        var activityId = UUID.randomUUID();
+        var userSiteId = UUID.randomUUID();
+        activityEventService.storeEvent(createStartEvent(activityId, userSiteId));
+        assertThat(activityEventService.getAllEvents(activityId)).hasSize(1);
+        var event = createIngestionFinishedEvent(activityId, userSiteId, new RefreshPeriod(null, null));
+        doThrow(new IllegalStateException("connection reset")).doCallRealMethod().when(activityProgressRepository).markIngested(activityId, userSiteId);
+
+        assertThatThrownBy(() -> activityEventService.storeEventAndUpdateProgress(event))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(activityEventCache.get(activityId, 1)).hasValueSatisfying(events -> assertThat(events).hasSize(1));
+
+        activityEventService.storeEventAndUpdateProgress(event);
+
+        assertThat(activityEventCache.get(activityId, 2)).hasValueSatisfying(events -> assertThat(events).last().isEqualTo(event));
+    }
+
+    @Test
+    void storeEventsAndUpdateProgress_progressCannotBeUpdated_doesNotStoreTheEventsSoTheyCanBeStoredOneAtATime() {
+        var activityId = UUID.randomUUID();
+        var events = List.of(
+                createIngestionFinishedEvent(activityId, UUID.randomUUID(), new RefreshPeriod(null, null)),
+                createIngestionFinishedEvent(activityId, UUID.randomUUID(), new RefreshPeriod(null, null)));
+        doThrow(new IllegalStateException("connection reset")).when(activityProgressRepository).markIngested(eq(activityId), anyCollection());
+
+        assertThatThrownBy(() -> activityEventService.storeEventsAndUpdateProgress(activityId, events))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(eventRepository.countByActivityId(activityId)).isZero();
+
+        events.forEach(activityEventService::storeEventAndUpdateProgress);
+
+        assertThat(eventRepository.countByActivityId(activityId)).isEqualTo(2);
+    }
+}
@@ -2,22 +2,37 @@ package nl.ing.lovebird.sitemanagement.health.activities;
 
 import nl.ing.lovebird.activityevents.events.UpdateUserSiteEvent;
 import nl.ing.lovebird.sitemanagement.health.ActivityEvent;
+import nl.ing.lovebird.sitemanagement.health.ActivityProgress;
+import nl.ing.lovebird.sitemanagement.health.ActivityProgressRepository;
+import nl.ing.lovebird.sitemanagement.health.EventBatchRepository;
 import nl.ing.lovebird.sitemanagement.health.EventRepository;
+import nl.ing.lovebird.sitemanagement.health.dspipeline.RefreshPeriod;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
+import static java.time.temporal.ChronoUnit.MILLIS;
 import static java.util.UUID.randomUUID;
+import static nl.ing.lovebird.sitemanagement.health.activities.ActivityEventTestHelper.createIngestionFinishedEvent;
+import static nl.ing.lovebird.sitemanagement.health.activities.ActivityEventTestHelper.createStartEvent;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -30,6 +45,12 @@ class ActivityEventServiceTest {
 
     @Mock
     private EventRepository eventRepository;
+    @Mock
+    private EventBatchRepository eventBatchRepository;
+    @Mock
+    private ActivityProgressRepository activityProgressRepository;
+    @Mock
+    private ActivityEventCache activityEventCache;
 
     @InjectMocks
     private ActivityEventService activityEventService;
@@ -57,6 +78,38 @@ class ActivityEventServiceTest {
                 .isNotNull();
     }
 
+    @Test
+    void storeEvent_inTransaction_appendsToCacheOnlyAfterCommit() {
+        var event = new UpdateUserSiteEvent(randomUUID(), randomUUID(), randomUUID(), "sitename", EVENT_TIMESTAMP_ZONED_DATETIME, randomUUID());
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            activityEventService.storeEvent(event);
+            verify(activityEventCache, never()).append(any());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            verify(activityEventCache).append(any());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void storeEvent_inTransactionThatRollsBack_doesNotAppendToCache() {
+        var event = new UpdateUserSiteEvent(randomUUID(), randomUUID(), randomUUID(), "sitename", EVENT_TIMESTAMP_ZONED_DATETIME, randomUUID());
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            activityEventService.storeEvent(event);
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        verify(activityEventCache, never()).append(any());
+    }
+
     @Test
     void getAllEvents_whenEventsAreInPostgres_willReturnThem() {
         var eventId = randomUUID();
@@ -68,7 +121,66 @@ class ActivityEventServiceTest {
         var postgresEvents = activityEventService.getAllEvents(activityId);
 
         assertThat(postgresEvents.get(0)).isEqualTo(updateUserSiteEvent);
+        verify(activityEventCache).put(eq(activityId), any());
+    }
+
+    @Test
+    void getAllEvents_whenCachedEventsAreUpToDate_willNotLoadThemFromPostgres() {
+        var activityId = randomUUID();
+        var updateUserSiteEvent = new UpdateUserSiteEvent(randomUUID(), UUID.randomUUID(), activityId, "site-name", EVENT_TIMESTAMP_ZONED_DATETIME, UUID.randomUUID());
+        when(eventRepository.countByActivityId(activityId)).thenReturn(1L);
+        when(activityEventCache.get(activityId, 1L)).thenReturn(Optional.of(List.of(updateUserSiteEvent)));
+
+        var events = activityEventService.getAllEvents(activityId);
+
+        assertThat(events.get(0)).isEqualTo(updateUserSiteEvent);
+        verify(eventRepository, never()).findAllByActivityIdOrderByEventTimeAsc(any());
 
     }
 
+    @Test
+    void storeEvent_userSiteStartEvent_startsTrackingProgress() {
+        var activityId = randomUUID();
+        var userSiteId = randomUUID();
+        var startEvent = createStartEvent(activityId, userSiteId);
+
+        activityEventService.storeEvent(startEvent);
+
+        verify(eventRepository).save(any(ActivityEvent.class));
+        verify(activityProgressRepository).create(activityId, startEvent.getTime().toInstant().truncatedTo(MILLIS), startEvent.getUserSiteIds());
+    }
+
+    @Test
+    void storeEventAndUpdateProgress_ingestionFinishedEvent_marksUserSiteIngested() {
+        var activityId = randomUUID();
+        var userSiteId = randomUUID();
+        var event = createIngestionFinishedEvent(activityId, userSiteId, new RefreshPeriod(null, null));
+        var progress = new ActivityProgress(activityId, Set.of(userSiteId), Set.of(userSiteId), Set.of());
+        when(activityProgressRepository.markIngested(activityId, userSiteId)).thenReturn(Optional.of(progress));
+
+        var result = activityEventService.storeEventAndUpdateProgress(event);
+
+        verify(eventRepository).save(any(ActivityEvent.class));
+        assertThat(result).isEqualTo(Optional.of(progress));
+    }
+
+    @Test
+    void storeEventsAndUpdateProgress_ingestionFinishedEvents_storesThemTogether() {
+        var activityId = randomUUID();
+        var userSiteId1 = randomUUID();
+        var userSiteId2 = randomUUID();
+        var event1 = createIngestionFinishedEvent(activityId, userSiteId1, new RefreshPeriod(null, null));
+        var event2 = createIngestionFinishedEvent(activityId, userSiteId2, new RefreshPeriod(null, null));
+        var progress = new ActivityProgress(activityId, Set.of(userSiteId1, userSiteId2), Set.of(userSiteId1, userSiteId2), Set.of());
+        when(activityProgressRepository.markIngested(activityId, List.of(userSiteId1, userSiteId2))).thenReturn(Optional.of(progress));
+
+        var result = activityEventService.storeEventsAndUpdateProgress(activityId, List.of(event1, event2));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ActivityEvent>> storedEvents = ArgumentCaptor.forClass(List.class);
+        verify(eventBatchRepository).insertAll(storedEvents.capture());
+        assertThat(storedEvents.getValue().stream().map(ActivityEvent::getEvent).toList()).isEqualTo(List.of(event1, event2));
+        verify(eventRepository, never()).save(any(ActivityEvent.class));
+        assertThat(result).isEqualTo(Optional.of(progress));
+    }
 }
@@ -0,0 +1,85 @@
+package nl.ing.lovebird.sitemanagement.health.activities;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.ing.lovebird.sitemanagement.health.Activity;
+import nl.ing.lovebird.sitemanagement.health.ActivityEvent;
+import nl.ing.lovebird.sitemanagement.health.ActivityPartitionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ActivityPartitionServiceTest {
+
+    private static final Instant NOW = Instant.parse("2021-06-10T13:00:00Z");
+    private static final LocalDate TODAY = LocalDate.of(2021, 6, 10);
+
+    @Mock
+    private ActivityPartitionRepository activityPartitionRepository;
+
+    private ActivityPartitionService activityPartitionService;
+
+    @BeforeEach
+    void setUp() {
+        activityPartitionService = new ActivityPartitionService(Clock.fixed(NOW, ZoneOffset.UTC), new SimpleMeterRegistry(), activityPartitionRepository, 2);
+    }
+
+    @Test
+    void createPartitionsAhead_createsOnlyMissingPartitions() {
+        when(activityPartitionRepository.findPartitionDays(Activity.TABLE)).thenReturn(List.of(TODAY, TODAY.plusDays(1), TODAY.plusDays(2)));
+        when(activityPartitionRepository.findPartitionDays(ActivityEvent.TABLE)).thenReturn(List.of(TODAY));
+
+        activityPartitionService.createPartitionsAhead();
+
+        verify(activityPartitionRepository, never()).createPartition(eq(Activity.TABLE), any());
+        verify(activityPartitionRepository, never()).createPartition(ActivityEvent.TABLE, TODAY);
+        verify(activityPartitionRepository).createPartition(ActivityEvent.TABLE, TODAY.plusDays(1));
+        verify(activityPartitionRepository).createPartition(ActivityEvent.TABLE, TODAY.plusDays(2));
+        verify(activityPartitionRepository, never()).createPartition(ActivityEvent.TABLE, TODAY.plusDays(3));
+    }
+
+    @Test
+    void createPartitionsAhead_failure_continuesWithOtherPartitions() {
+        when(activityPartitionRepository.findPartitionDays(anyString())).thenReturn(List.of());
+        doThrow(new IllegalStateException("rows in default partition")).when(activityPartitionRepository).createPartition(ActivityEvent.TABLE, TODAY);
+
+        activityPartitionService.createPartitionsAhead();
+
+        verify(activityPartitionRepository).createPartition(ActivityEvent.TABLE, TODAY.plusDays(2));
+        verify(activityPartitionRepository).createPartition(Activity.TABLE, TODAY.plusDays(2));
+    }
+
+    @Test
+    void dropPartitionsOlderThanDays_dropsOnlyPartitionsThatAreEntirelyOlder() {
+        // The cutoff is 2021-06-07T13:00:00Z.
+        when(activityPartitionRepository.findPartitionDays(anyString())).thenReturn(List.of(TODAY.minusDays(5), TODAY.minusDays(4), TODAY.minusDays(3), TODAY));
+
+        int dropped = activityPartitionService.dropPartitionsOlderThanDays(3);
+
+        assertThat(dropped).isEqualTo(4);
+        for (String table : List.of(Activity.TABLE, ActivityEvent.TABLE)) {
+            verify(activityPartitionRepository).dropPartition(table, TODAY.minusDays(5));
+            verify(activityPartitionRepository).dropPartition(table, TODAY.minusDays(4));
+            verify(activityPartitionRepository, never()).dropPartition(table, TODAY.minusDays(3));
+            verify(activityPartitionRepository, never()).dropPartition(table, TODAY);
+            verify(activityPartitionRepository).deleteFromDefaultPartitionBefore(table, Instant.parse("2021-06-07T13:00:00Z"));
+        }
+    }
+}
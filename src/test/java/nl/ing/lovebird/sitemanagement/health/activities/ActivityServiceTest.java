@@ -4,7 +4,7 @@ import nl.ing.lovebird.activityevents.EventType;
 import nl.ing.lovebird.activityevents.events.*;
 import nl.ing.lovebird.activityevents.events.TransactionsEnrichmentFinishedEvent.UserSiteInfo;
 import nl.ing.lovebird.clienttokens.ClientUserToken;
-import nl.ing.lovebird.sitemanagement.health.ActivityRepository;
+import nl.ing.lovebird.sitemanagement.health.ActivityProgress;
 import nl.ing.lovebird.sitemanagement.health.dspipeline.RefreshPeriod;
 import nl.ing.lovebird.sitemanagement.health.webhook.ClientWebhookService;
 import nl.ing.lovebird.sitemanagement.usersite.ConnectionStatus;
@@ -26,6 +26,8 @@ import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import static java.util.UUID.randomUUID;
@@ -51,7 +53,7 @@ public class ActivityServiceTest {
     @Mock
     private ClientWebhookService clientWebhookService;
     @Mock
-    private ActivityRepository activityRepository;
+    private ActivityPartitionService activityPartitionService;
     @Mock
     private PipelineService pipelineService;
     @Mock
@@ -66,7 +68,7 @@ public class ActivityServiceTest {
     public void setup() {
         activityService = new ActivityService(
                 Clock.systemUTC(),
-                activityRepository,
+                activityPartitionService,
                 activityEventService,
                 aggregationFinishedService,
                 clientWebhookService,
@@ -198,6 +200,58 @@ public class ActivityServiceTest {
         assertThat(actualEvents).isEqualTo(expectedEvents);
     }
 
+    @Test
+    public void handleIngestionFinishedEvent_withProgressAndOtherUserSitesPending_pushesDataSavedWithOnlyTheStartEvent() {
+        UUID userId = randomUUID();
+        UUID pendingUserSiteId = randomUUID();
+        RefreshUserSitesEvent startEvent = createStartEvent(ACTIVITY_ID, USER_SITE_ID, pendingUserSiteId);
+        IngestionFinishedEvent ingestionFinishedEvent = createIngestionFinishedEvent(ACTIVITY_ID, USER_SITE_ID, new RefreshPeriod(null, null));
+
+        when(clientUserToken.getUserIdClaim()).thenReturn(userId);
+        when(activityEventService.storeEventAndUpdateProgress(ingestionFinishedEvent)).thenReturn(Optional.of(
+                new ActivityProgress(ACTIVITY_ID, Set.of(USER_SITE_ID, pendingUserSiteId), Set.of(USER_SITE_ID), Set.of())));
+        when(activityEventService.getStartEvent(ACTIVITY_ID)).thenReturn(Optional.of(startEvent));
+
+        activityService.handleEvent(clientUserToken, ingestionFinishedEvent);
+
+        verify(clientWebhookService).push(clientUserToken, List.of(startEvent), ingestionFinishedEvent);
+        verify(activityEventService, never()).getAllEvents(any());
+        verifyNoInteractions(aggregationFinishedService);
+    }
+
+    @Test
+    public void handleIngestionFinishedEvent_withProgressAndLastUserSite_triggersAggregationFinished() {
+        UUID userId = randomUUID();
+        RefreshUserSitesEvent startEvent = createStartEvent(ACTIVITY_ID, USER_SITE_ID);
+        IngestionFinishedEvent ingestionFinishedEvent = createIngestionFinishedEvent(ACTIVITY_ID, USER_SITE_ID, new RefreshPeriod(null, null));
+
+        when(clientUserToken.getUserIdClaim()).thenReturn(userId);
+        when(activityEventService.storeEventAndUpdateProgress(ingestionFinishedEvent)).thenReturn(Optional.of(
+                new ActivityProgress(ACTIVITY_ID, Set.of(USER_SITE_ID), Set.of(USER_SITE_ID), Set.of())));
+        mockEventsSaved(ACTIVITY_ID, startEvent, ingestionFinishedEvent);
+
+        activityService.handleEvent(clientUserToken, ingestionFinishedEvent);
+
+        verify(aggregationFinishedService).trigger(clientUserToken, ACTIVITY_ID, List.of(startEvent, ingestionFinishedEvent));
+        verify(clientWebhookService).push(clientUserToken, List.of(startEvent, ingestionFinishedEvent), ingestionFinishedEvent);
+        verify(activityEventService, times(1)).getAllEvents(ACTIVITY_ID);
+    }
+
+    @Test
+    public void handleFailedRefresh_withProgressAndAllUserSitesFailed_finishesActivity() {
+        RefreshUserSitesEvent startEvent = createStartEvent(ACTIVITY_ID, USER_SITE_ID);
+        when(activityEventService.storeEventAndUpdateProgress(any(RefreshedUserSiteEvent.class))).thenReturn(Optional.of(
+                new ActivityProgress(ACTIVITY_ID, Set.of(USER_SITE_ID), Set.of(), Set.of(USER_SITE_ID))));
+        mockEventsSaved(ACTIVITY_ID, startEvent);
+
+        activityService.handleFailedRefresh(clientUserToken, ACTIVITY_ID, USER_SITE_ID, ConnectionStatus.DISCONNECTED,
+                FailureReason.TECHNICAL_ERROR, RefreshedUserSiteEvent.Status.FAILED);
+
+        verify(clientWebhookService).push(eq(clientUserToken), eq(List.of(startEvent)), any(RefreshedUserSiteEvent.class));
+        verify(persistedActivityService).setEndTimeIfActivityFailed(any(RefreshedUserSiteEvent.class));
+        verifyNoInteractions(aggregationFinishedService);
+    }
+
     private void mockEventsSaved(UUID activityId, AbstractEvent... events) {
         when(activityEventService.getAllEvents(activityId)).thenReturn(List.of(events));
     }
@@ -255,4 +309,78 @@ public class ActivityServiceTest {
                 transactionsEnrichmentFinishedEvent);
         verify(persistedActivityService).updateSuccessfullyFinishedActivity(transactionsEnrichmentFinishedEvent);
     }
+
+    @Test
+    public void handleEvents_ingestionFinishedEventsOfTheLastUserSites_areStoredTogetherAndTriggerAggregationFinishedOnce() {
+        UUID userId = randomUUID();
+        UUID otherUserSiteId = randomUUID();
+        RefreshUserSitesEvent startEvent = createStartEvent(ACTIVITY_ID, USER_SITE_ID, otherUserSiteId);
+        IngestionFinishedEvent first = createIngestionFinishedEvent(ACTIVITY_ID, USER_SITE_ID, new RefreshPeriod(null, null));
+        IngestionFinishedEvent second = createIngestionFinishedEvent(ACTIVITY_ID, otherUserSiteId, new RefreshPeriod(null, null));
+
+        when(clientUserToken.getUserIdClaim()).thenReturn(userId);
+        when(activityEventService.storeEventsAndUpdateProgress(ACTIVITY_ID, List.of(first, second))).thenReturn(Optional.of(
+                new ActivityProgress(ACTIVITY_ID, Set.of(USER_SITE_ID, otherUserSiteId), Set.of(USER_SITE_ID, otherUserSiteId), Set.of())));
+        when(activityEventService.getStartEvent(ACTIVITY_ID)).thenReturn(Optional.of(startEvent));
+        mockEventsSaved(ACTIVITY_ID, startEvent, first, second);
+
+        activityService.handleEvents(ACTIVITY_ID, List.of(
+                new ActivityService.ClientUserTokenAndEvent(clientUserToken, first),
+                new ActivityService.ClientUserTokenAndEvent(clientUserToken, second)));
+
+        verify(activityEventService, never()).storeEventAndUpdateProgress(any());
+        verify(aggregationFinishedService).trigger(clientUserToken, ACTIVITY_ID, List.of(startEvent, first, second));
+        verify(clientWebhookService).push(clientUserToken, List.of(startEvent), first);
+        verify(clientWebhookService).push(clientUserToken, List.of(startEvent, first, second), second);
+        verify(activityEventService, times(1)).getAllEvents(ACTIVITY_ID);
+    }
+
+    @Test
+    public void handleEvents_ingestionFinishedEventsOfAnActivityWithoutProgress_triggerAggregationFinishedOnce() {
+        UUID userId = randomUUID();
+        UUID otherUserSiteId = randomUUID();
+        RefreshUserSitesEvent startEvent = createStartEvent(ACTIVITY_ID, USER_SITE_ID, otherUserSiteId);
+        IngestionFinishedEvent first = createIngestionFinishedEvent(ACTIVITY_ID, USER_SITE_ID, new RefreshPeriod(null, null));
+        IngestionFinishedEvent second = createIngestionFinishedEvent(ACTIVITY_ID, otherUserSiteId, new RefreshPeriod(null, null));
+
+        when(clientUserToken.getUserIdClaim()).thenReturn(userId);
+        when(activityEventService.storeEventsAndUpdateProgress(ACTIVITY_ID, List.of(first, second))).thenReturn(Optional.empty());
+        when(activityEventService.getStartEvent(ACTIVITY_ID)).thenReturn(Optional.of(startEvent));
+        mockEventsSaved(ACTIVITY_ID, startEvent, first, second);
+
+        activityService.handleEvents(ACTIVITY_ID, List.of(
+                new ActivityService.ClientUserTokenAndEvent(clientUserToken, first),
+                new ActivityService.ClientUserTokenAndEvent(clientUserToken, second)));
+
+        verify(aggregationFinishedService, times(1)).trigger(clientUserToken, ACTIVITY_ID, List.of(startEvent, first, second));
+        verify(clientWebhookService).push(clientUserToken, List.of(startEvent), first);
+        verify(clientWebhookService).push(clientUserToken, List.of(startEvent, first, second), second);
+        verify(activityEventService, times(1)).getAllEvents(ACTIVITY_ID);
+    }
+
+    @Test
+    public void handleEvents_ingestionFinishedEventsCannotBeStoredTogether_handlesThemOneAtATime() {
+        UUID userId = randomUUID();
+        UUID otherUserSiteId = randomUUID();
+        RefreshUserSitesEvent startEvent = createStartEvent(ACTIVITY_ID, USER_SITE_ID, otherUserSiteId);
+        IngestionFinishedEvent first = createIngestionFinishedEvent(ACTIVITY_ID, USER_SITE_ID, new RefreshPeriod(null, null));
+        IngestionFinishedEvent second = createIngestionFinishedEvent(ACTIVITY_ID, otherUserSiteId, new RefreshPeriod(null, null));
+
+        when(clientUserToken.getUserIdClaim()).thenReturn(userId);
+        when(activityEventService.storeEventsAndUpdateProgress(ACTIVITY_ID, List.of(first, second))).thenThrow(new IllegalStateException("connection reset"));
+        when(activityEventService.storeEventAndUpdateProgress(first)).thenReturn(Optional.of(
+                new ActivityProgress(ACTIVITY_ID, Set.of(USER_SITE_ID, otherUserSiteId), Set.of(USER_SITE_ID), Set.of())));
+        when(activityEventService.storeEventAndUpdateProgress(second)).thenReturn(Optional.of(
+                new ActivityProgress(ACTIVITY_ID, Set.of(USER_SITE_ID, otherUserSiteId), Set.of(USER_SITE_ID, otherUserSiteId), Set.of())));
+        when(activityEventService.getStartEvent(ACTIVITY_ID)).thenReturn(Optional.of(startEvent));
+        mockEventsSaved(ACTIVITY_ID, startEvent, first, second);
+
+        activityService.handleEvents(ACTIVITY_ID, List.of(
+                new ActivityService.ClientUserTokenAndEvent(clientUserToken, first),
+                new ActivityService.ClientUserTokenAndEvent(clientUserToken, second)));
+
+        verify(clientWebhookService).push(clientUserToken, List.of(startEvent), first);
+        verify(aggregationFinishedService).trigger(clientUserToken, ACTIVITY_ID, List.of(startEvent, first, second));
+        verify(clientWebhookService).push(clientUserToken, List.of(startEvent, first, second), second);
+    }
 }
@@ -17,6 +17,7 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
@@ -27,6 +28,7 @@ import static java.util.UUID.randomUUID;
 import static nl.ing.lovebird.sitemanagement.accountsandtransactions.dtos.AccountDTOv1.AccountType.CURRENT_ACCOUNT;
 import static nl.ing.lovebird.sitemanagement.accountsandtransactions.dtos.AccountDTOv1.AccountType.SAVINGS_ACCOUNT;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 
 @IntegrationTestContext
@@ -115,7 +117,7 @@ public class AccountsServiceTest {
                         .withHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON_VALUE)));
 
         ClientUserToken clientUserToken = testClientTokens.createClientUserToken(UUID.randomUUID(), UUID.randomUUID(), userId);
-        List<AccountGroup> accountGroups = accountsService.getAccountGroups(clientUserToken);
+        List<AccountGroup> accountGroups = accountsService.getAccountGroups(clientUserToken, Duration.ofSeconds(2));
         assertThat(accountGroups).containsExactlyInAnyOrder(
                 new AccountGroup(SAVINGS_ACCOUNT, Collections.singletonList(Account.builder()
                         .id(new UUID(0, 1))
@@ -130,4 +132,19 @@ public class AccountsServiceTest {
                         .updated(Date.from(Instant.now(clock)))
                         .build())));
     }
+
+    @Test
+    public void shouldGiveUpOnTheAccountGroupsAfterTheTimeout() {
+        UUID userId = randomUUID();
+        WireMock.stubFor(WireMock.get(urlEqualTo(accountsUriBuilder.buildAndExpand(userId).toUriString()))
+                .willReturn(WireMock.ok()
+                        .withBody("[]")
+                        .withHeader(HttpHeaders.CONTENT_TYPE, APPLICATION_JSON_VALUE)
+                        .withFixedDelay(2000)));
+
+        ClientUserToken clientUserToken = testClientTokens.createClientUserToken(UUID.randomUUID(), UUID.randomUUID(), userId);
+        assertThatThrownBy(() -> accountsService.getAccountGroups(clientUserToken, Duration.ofMillis(100)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Timeout");
+    }
 }
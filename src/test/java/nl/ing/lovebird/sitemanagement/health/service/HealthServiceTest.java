@@ -15,19 +15,27 @@ import nl.ing.lovebird.sitemanagement.site.SiteService;
 import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSite;
 import nl.ing.lovebird.sitemanagement.usersite.UserSiteNeededAction;
 import nl.ing.lovebird.sitemanagement.usersite.UserSiteService;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 
+import java.time.Duration;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeoutException;
 
 import static java.util.UUID.randomUUID;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -43,9 +51,13 @@ class HealthServiceTest {
     @Mock
     private SiteService siteService;
 
-    @InjectMocks
     private HealthService healthService;
 
+    @BeforeEach
+    void setUp() {
+        healthService = new HealthService(accountsService, legacyUserSiteService, userSiteService, siteService, new SyncTaskExecutor(), Duration.ofSeconds(5));
+    }
+
     @Test
     void testGetUserHealth() {
         UUID userId = UUID.randomUUID();
@@ -65,10 +77,9 @@ class HealthServiceTest {
         var siteOneName = "Site one";
         var siteTwoName = "Site two";
 
-        when(accountsService.getAccountGroups(any())).thenReturn(accountGroups);
+        when(accountsService.getAccountGroups(any(), any())).thenReturn(accountGroups);
         when(userSiteService.getNonDeletedUserSites(userId)).thenReturn(List.of(userSiteOne, userSiteTwo));
-        when(legacyUserSiteService.createUserSiteDTO(userSiteOne)).thenReturn(legacyUserSiteOne);
-        when(legacyUserSiteService.createUserSiteDTO(userSiteTwo)).thenReturn(legacyUserSiteTwo);
+        when(legacyUserSiteService.createUserSiteDTOs(userId, List.of(userSiteOne, userSiteTwo))).thenReturn(List.of(legacyUserSiteOne, legacyUserSiteTwo));
         when(siteService.getSiteName(legacyUserSiteOne.getSiteId())).thenReturn(siteOneName);
         when(siteService.getSiteName(legacyUserSiteTwo.getSiteId())).thenReturn(siteTwoName);
 
@@ -91,6 +102,48 @@ class HealthServiceTest {
         assertThat(userHealth.getUserSites()).containsExactly(expectedUserSiteWithAccountsOne, expectedUserSiteWithAccountsTwo);
     }
 
+    @Test
+    void testGetUserHealthFetchesAccountsOnCallingThreadIfExecutorIsFull() {
+        UUID userId = UUID.randomUUID();
+        var clientUserToken = mock(ClientUserToken.class);
+        when(clientUserToken.getUserIdClaim()).thenReturn(userId);
+        var accountGroups = List.of(getDummyAccountGroupOfTypeFor(AccountType.CURRENT_ACCOUNT, randomUUID()));
+        when(accountsService.getAccountGroups(eq(clientUserToken), any())).thenReturn(accountGroups);
+        TaskExecutor fullExecutor = task -> {
+            throw new TaskRejectedException("full");
+        };
+        healthService = new HealthService(accountsService, legacyUserSiteService, userSiteService, siteService, fullExecutor, Duration.ofSeconds(5));
+
+        var userHealth = healthService.getUserHealth(clientUserToken);
+
+        assertThat(userHealth.getAccountGroups()).isEqualTo(accountGroups);
+    }
+
+    @Test
+    void testGetUserHealthFetchesAccountsWithTheTimeLeftUntilTheDeadline() {
+        var clientUserToken = mock(ClientUserToken.class);
+        when(clientUserToken.getUserIdClaim()).thenReturn(UUID.randomUUID());
+        when(accountsService.getAccountGroups(eq(clientUserToken), argThat(timeout -> !timeout.isNegative() && timeout.compareTo(Duration.ofSeconds(5)) <= 0)))
+                .thenReturn(List.of());
+
+        var userHealth = healthService.getUserHealth(clientUserToken);
+
+        assertThat(userHealth.getAccountGroups()).isEmpty();
+    }
+
+    @Test
+    void testGetUserHealthFailsIfAccountsAreNotFetchedBeforeDeadline() {
+        var clientUserToken = mock(ClientUserToken.class);
+        when(clientUserToken.getUserIdClaim()).thenReturn(UUID.randomUUID());
+        TaskExecutor neverRunningExecutor = task -> {
+        };
+        healthService = new HealthService(accountsService, legacyUserSiteService, userSiteService, siteService, neverRunningExecutor, Duration.ofMillis(10));
+
+        assertThatThrownBy(() -> healthService.getUserHealth(clientUserToken))
+                .isInstanceOf(IllegalStateException.class)
+                .hasCauseInstanceOf(TimeoutException.class);
+    }
+
     private LegacyUserSiteDTO getDummyLegacySite() {
         return new LegacyUserSiteDTO(randomUUID(), randomUUID(), LegacyUserSiteStatusCode.UNKNOWN,
                 LegacyUserSiteStatusReason.SITE_ERROR, 5L, UserSiteNeededAction.TRIGGER_REFRESH, null, MigrationStatus.MIGRATING_TO,
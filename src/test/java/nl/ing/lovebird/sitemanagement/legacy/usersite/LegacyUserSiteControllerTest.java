@@ -480,17 +480,17 @@ class LegacyUserSiteControllerTest {
 
         when(userSiteService.getNonDeletedUserSites(eq(randomUserId))).thenReturn(userSites);
 
-        when(legacyUserSiteService.createUserSiteDTO(userSites.get(0))).thenReturn(LegacyUserSiteDTO.builder()
-                .id(userSiteId1)
-                .siteId(siteId1)
-                .status(LOGIN_SUCCEEDED)
-                .build());
-
-        when(legacyUserSiteService.createUserSiteDTO(userSites.get(1))).thenReturn(LegacyUserSiteDTO.builder()
-                .id(userSiteId2)
-                .siteId(siteId2)
-                .status(LOGIN_SUCCEEDED)
-                .build());
+        when(legacyUserSiteService.createUserSiteDTOs(randomUserId, userSites)).thenReturn(List.of(
+                LegacyUserSiteDTO.builder()
+                        .id(userSiteId1)
+                        .siteId(siteId1)
+                        .status(LOGIN_SUCCEEDED)
+                        .build(),
+                LegacyUserSiteDTO.builder()
+                        .id(userSiteId2)
+                        .siteId(siteId2)
+                        .status(LOGIN_SUCCEEDED)
+                        .build()));
 
 
         this.mockMvc.perform(get("/user-sites/me")
@@ -523,7 +523,7 @@ class LegacyUserSiteControllerTest {
 
         verify(userSiteService).getNonDeletedUserSites(randomUserId);
 
-        verify(legacyUserSiteService, times(2)).createUserSiteDTO(any());
+        verify(legacyUserSiteService).createUserSiteDTOs(randomUserId, userSites);
     }
 
 
@@ -540,14 +540,14 @@ class LegacyUserSiteControllerTest {
 
         when(userSiteService.getNonDeletedUserSites(eq(randomUserId))).thenReturn(userSites);
 
-        when(legacyUserSiteService.createUserSiteDTO(any())).thenReturn(LegacyUserSiteDTO.builder()
+        when(legacyUserSiteService.createUserSiteDTOs(eq(randomUserId), any())).thenReturn(List.of(LegacyUserSiteDTO.builder()
                 .id(randomUserSiteId)
                 .siteId(randomSiteId)
                 .status(LOGIN_FAILED)
                 .migrationStatus(MigrationStatus.NONE)
                 .action(LOGIN_AGAIN)
                 .reason(TOKEN_EXPIRED)
-                .build());
+                .build()));
 
         this.mockMvc.perform(get("/user-sites/me")
                 .headers(headers)
@@ -569,7 +569,7 @@ class LegacyUserSiteControllerTest {
 
         verify(userSiteService).getNonDeletedUserSites(randomUserId);
 
-        verify(legacyUserSiteService).createUserSiteDTO(any());
+        verify(legacyUserSiteService).createUserSiteDTOs(eq(randomUserId), any());
     }
 
     @Test
@@ -676,13 +676,13 @@ class LegacyUserSiteControllerTest {
 
         when(userSiteService.getNonDeletedUserSites(eq(randomUserId))).thenReturn(userSites);
 
-        when(legacyUserSiteService.createUserSiteDTO(any())).thenReturn(LegacyUserSiteDTO.builder()
+        when(legacyUserSiteService.createUserSiteDTOs(eq(randomUserId), any())).thenReturn(List.of(LegacyUserSiteDTO.builder()
                 .id(randomUserSiteId)
                 .siteId(randomSiteId)
                 .status(LOGIN_FAILED)
                 .migrationStatus(MigrationStatus.NONE)
                 .reason(INCORRECT_CREDENTIALS)
-                .build());
+                .build()));
 
 
         this.mockMvc.perform(get("/user-sites/me")
@@ -717,13 +717,13 @@ class LegacyUserSiteControllerTest {
         final String dummySiteName = "OekiepoekieBank";
         when(siteService.getSite(randomSiteId)).thenReturn(createDummySite(randomSiteId, dummySiteName));
 
-        when(legacyUserSiteService.createUserSiteDTO(any())).thenReturn(LegacyUserSiteDTO.builder()
+        when(legacyUserSiteService.createUserSiteDTOs(eq(randomUserId), any())).thenReturn(List.of(LegacyUserSiteDTO.builder()
                 .id(randomUserSiteId)
                 .siteId(randomSiteId)
                 .status(LOGIN_FAILED)
                 .migrationStatus(MigrationStatus.NONE)
                 .reason(INCORRECT_CREDENTIALS)
-                .build());
+                .build()));
 
 
         this.mockMvc.perform(get("/user-sites/me")
@@ -940,12 +940,12 @@ class LegacyUserSiteControllerTest {
 
         when(userSiteService.getNonDeletedUserSites(randomUserId)).thenReturn(List.of(userSite));
 
-        when(legacyUserSiteService.createUserSiteDTO(any())).thenReturn(LegacyUserSiteDTO.builder()
+        when(legacyUserSiteService.createUserSiteDTOs(eq(randomUserId), any())).thenReturn(List.of(LegacyUserSiteDTO.builder()
                 .id(randomUserSiteId)
                 .siteId(randomSiteId)
                 .lastDataFetch(date)
                 .statusTimeoutSeconds(0L)
-                .build());
+                .build()));
 
 
         mockMvc.perform(get("/user-sites/me")
@@ -957,7 +957,7 @@ class LegacyUserSiteControllerTest {
                         formatDateInGmt("yyyy-MM-dd'T'HH:mm:ss.SSSZ", date))
                 ));
 
-        verify(legacyUserSiteService).createUserSiteDTO(any());
+        verify(legacyUserSiteService).createUserSiteDTOs(eq(randomUserId), any());
     }
 
     private Site createDummySite(UUID siteId, String siteName) {
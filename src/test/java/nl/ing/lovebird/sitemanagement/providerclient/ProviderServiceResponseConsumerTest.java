@@ -10,6 +10,7 @@ import nl.ing.lovebird.sitemanagement.providerrequest.ProviderRequest;
 import nl.ing.lovebird.sitemanagement.providerrequest.ProviderRequestRepository;
 import nl.ing.lovebird.sitemanagement.providerresponse.GenericDataProviderResponseProcessor;
 import nl.ing.lovebird.sitemanagement.providerresponse.ProviderServiceResponseConsumer;
+import nl.ing.lovebird.sitemanagement.lib.spring.kafka.RecordHeaderConverter;
 import nl.ing.lovebird.sitemanagement.providerresponse.ScrapingDataProviderResponseProcessor;
 import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSite;
 import nl.ing.lovebird.sitemanagement.usersite.UserSiteActionType;
@@ -23,9 +24,14 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
+import static nl.ing.lovebird.clienttokens.constants.ClientTokenConstants.CLIENT_TOKEN_HEADER_NAME;
+import static nl.ing.lovebird.providershared.ProviderServiceResponseStatus.FINISHED;
 import static nl.ing.lovebird.sitemanagement.usersite.UserSiteActionType.USER_REFRESH;
 import static org.mockito.Mockito.*;
 
@@ -50,6 +56,8 @@ public class ProviderServiceResponseConsumerTest {
     @Mock
     private UserSiteService userSiteService;
     @Mock
+    private RecordHeaderConverter recordHeaderConverter;
+    @Mock
     private ClientUserToken clientUserToken;
 
     private ProviderServiceResponseConsumer subject;
@@ -58,7 +66,7 @@ public class ProviderServiceResponseConsumerTest {
     void setUp() {
         subject = new ProviderServiceResponseConsumer(providerRequestRepository, genericDataProviderResponseProcessor,
                 scrapingDataProviderResponseProcessor, kafkaProducerService, providerCallbackAsyncService, objectMapper,
-                userSiteService);
+                userSiteService, recordHeaderConverter);
         when(clientUserToken.getUserIdClaim()).thenReturn(userId);
     }
 
@@ -96,4 +104,68 @@ public class ProviderServiceResponseConsumerTest {
 
         verify(genericDataProviderResponseProcessor).processNoSupportedAccountsMessage(userId, userSiteId, USER_SITE_ACTION_TYPE);
     }
+
+    @Test
+    void providerServiceResponse_looksUpTheUserSiteOfTheProviderRequest() throws Exception {
+        byte[] fakePayload = "{}".getBytes();
+        ConsumerRecord record = mock(ConsumerRecord.class);
+        when(record.value()).thenReturn(fakePayload);
+        FetchDataResultDTO fetchDataResultDTO = new FetchDataResultDTO(providerRequestId, FINISHED);
+        when(objectMapper.readValue(fakePayload, FetchDataResultDTO.class)).thenReturn(fetchDataResultDTO);
+        when(providerRequestRepository.get(userId, providerRequestId))
+                .thenReturn(Optional.of(new ProviderRequest(providerRequestId, activityId, userId, userSiteId, USER_SITE_ACTION_TYPE)));
+        PostgresUserSite userSite = new PostgresUserSite();
+        when(userSiteService.findUserSiteIncludingDeletedOne(userId, userSiteId)).thenReturn(Optional.of(userSite));
+
+        subject.providerAccountsMessage(record, null, clientUserToken);
+
+        verify(genericDataProviderResponseProcessor).process(userSiteId, Optional.of(userSite), FINISHED, USER_SITE_ACTION_TYPE, activityId, clientUserToken);
+        verify(userSiteService, never()).getAllUserSitesIncludingDeletedOnes(any());
+    }
+
+    @Test
+    void providerServiceResponses_batch_readsTheUserSitesOfTheFirstResponsesOfAUserAtOnce() throws Exception {
+        UUID secondUserSiteId = UUID.randomUUID();
+        UUID secondProviderRequestId = UUID.randomUUID();
+        ConsumerRecord first = providerServiceResponseRecord(providerRequestId);
+        ConsumerRecord second = providerServiceResponseRecord(secondProviderRequestId);
+        // A second response about the first user-site has to see the changes of the first one.
+        ConsumerRecord third = providerServiceResponseRecord(providerRequestId);
+        when(providerRequestRepository.get(userId, providerRequestId))
+                .thenReturn(Optional.of(new ProviderRequest(providerRequestId, activityId, userId, userSiteId, USER_SITE_ACTION_TYPE)));
+        when(providerRequestRepository.get(userId, secondProviderRequestId))
+                .thenReturn(Optional.of(new ProviderRequest(secondProviderRequestId, activityId, userId, secondUserSiteId, USER_SITE_ACTION_TYPE)));
+        PostgresUserSite userSite = userSite(userSiteId);
+        PostgresUserSite secondUserSite = userSite(secondUserSiteId);
+        when(userSiteService.getUserSitesIncludingDeletedOnes(Set.of(userId), Set.of(userSiteId, secondUserSiteId)))
+                .thenReturn(Map.of(userSiteId, userSite, secondUserSiteId, secondUserSite));
+        PostgresUserSite refreshedUserSite = userSite(userSiteId);
+        refreshedUserSite.setExternalId("refreshed");
+        when(userSiteService.findUserSiteIncludingDeletedOne(userId, userSiteId)).thenReturn(Optional.of(refreshedUserSite));
+
+        subject.providerAccountsMessages(List.of(first, second, third));
+
+        var inOrder = inOrder(genericDataProviderResponseProcessor);
+        inOrder.verify(genericDataProviderResponseProcessor).process(userSiteId, Optional.of(userSite), FINISHED, USER_SITE_ACTION_TYPE, activityId, clientUserToken);
+        inOrder.verify(genericDataProviderResponseProcessor).process(secondUserSiteId, Optional.of(secondUserSite), FINISHED, USER_SITE_ACTION_TYPE, activityId, clientUserToken);
+        inOrder.verify(genericDataProviderResponseProcessor).process(userSiteId, Optional.of(refreshedUserSite), FINISHED, USER_SITE_ACTION_TYPE, activityId, clientUserToken);
+        verify(userSiteService).getUserSitesIncludingDeletedOnes(any(), any());
+        verify(userSiteService).findUserSiteIncludingDeletedOne(userId, userSiteId);
+    }
+
+    private ConsumerRecord providerServiceResponseRecord(UUID providerRequestId) throws Exception {
+        byte[] fakePayload = providerRequestId.toString().getBytes();
+        ConsumerRecord record = mock(ConsumerRecord.class);
+        when(record.value()).thenReturn(fakePayload);
+        when(recordHeaderConverter.get(record, CLIENT_TOKEN_HEADER_NAME, ClientUserToken.class)).thenReturn(clientUserToken);
+        when(objectMapper.readValue(fakePayload, FetchDataResultDTO.class)).thenReturn(new FetchDataResultDTO(providerRequestId, FINISHED));
+        return record;
+    }
+
+    private PostgresUserSite userSite(UUID userSiteId) {
+        PostgresUserSite userSite = new PostgresUserSite();
+        userSite.setUserId(userId);
+        userSite.setUserSiteId(userSiteId);
+        return userSite;
+    }
 }
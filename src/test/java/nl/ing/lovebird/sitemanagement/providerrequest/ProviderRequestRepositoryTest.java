@@ -37,6 +37,36 @@ public class ProviderRequestRepositoryTest {
 
     }
 
+    @Test
+    void find_multipleActivitiesOfTheSameUser_returnsOnlyTheRequestsOfTheActivity() {
+        UUID userId = UUID.randomUUID();
+        UUID activityId = UUID.randomUUID();
+
+        ProviderRequest request1 = new ProviderRequest(UUID.randomUUID(), activityId, userId, UUID.randomUUID(), UserSiteActionType.USER_REFRESH);
+        ProviderRequest request2 = new ProviderRequest(UUID.randomUUID(), activityId, userId, UUID.randomUUID(), UserSiteActionType.USER_REFRESH);
+        ProviderRequest otherActivityRequest = new ProviderRequest(UUID.randomUUID(), UUID.randomUUID(), userId, UUID.randomUUID(), UserSiteActionType.USER_REFRESH);
+        providerRequestRepository.saveValidated(request1);
+        providerRequestRepository.saveValidated(request2);
+        providerRequestRepository.saveValidated(otherActivityRequest);
+
+        assertThat(providerRequestRepository.find(userId, activityId)).containsExactlyInAnyOrder(request1, request2);
+        assertThat(providerRequestRepository.find(userId, UUID.randomUUID())).isEmpty();
+    }
+
+    @Test
+    void find_requestsOfTheActivityInBothTables_returnsTheRequestsOfBothTables() {
+        UUID userId = UUID.randomUUID();
+        UUID activityId = UUID.randomUUID();
+
+        ProviderRequest legacyRequest = new ProviderRequest(UUID.randomUUID(), activityId, userId, UUID.randomUUID(), UserSiteActionType.USER_REFRESH);
+        ProviderRequest request = new ProviderRequest(UUID.randomUUID(), activityId, userId, UUID.randomUUID(), UserSiteActionType.USER_REFRESH);
+        // Saved before provider_request_by_activity existed.
+        providerRequestRepository.save(legacyRequest);
+        providerRequestRepository.saveValidated(request);
+
+        assertThat(providerRequestRepository.find(userId, activityId)).containsExactlyInAnyOrder(legacyRequest, request);
+    }
+
     @Test
     void testValidation() {
         assertThatThrownBy(() -> {
@@ -18,9 +18,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.util.*;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.NOT_MODIFIED;
 import static org.springframework.http.HttpStatus.OK;
 
 @IntegrationTestContext
@@ -95,6 +97,50 @@ class SitesProviderTest {
         assertThat(siteNumberAfterFailure).isEqualTo(2);
     }
 
+    @Test
+    public void update_samePayloadIsNotParsedAgain() throws JsonProcessingException {
+
+        wireMockServer.stubFor(WireMock.get(urlMatching("/providers/sites-details"))
+                .willReturn(aResponse()
+                        .withBody(objectMapper.writeValueAsString(createExampleProvidersSites(2)))
+                        .withHeader("content-type", "application/json")
+                        .withStatus(OK.value())
+                ));
+
+        sitesProvider.update();
+        List<Site> sitesAfterFirstUpdate = sitesProvider.allSites();
+
+        sitesProvider.update();
+
+        assertThat(sitesProvider.allSites()).isSameAs(sitesAfterFirstUpdate);
+    }
+
+    @Test
+    public void update_sitesAreKeptWhenProvidersRespondsNotModified() throws JsonProcessingException {
+
+        wireMockServer.stubFor(WireMock.get(urlMatching("/providers/sites-details"))
+                .willReturn(aResponse()
+                        .withBody(objectMapper.writeValueAsString(createExampleProvidersSites(3)))
+                        .withHeader("content-type", "application/json")
+                        .withHeader("ETag", "\"v1\"")
+                        .withStatus(OK.value())
+                ));
+
+        sitesProvider.update();
+        List<Site> sitesAfterFirstUpdate = sitesProvider.allSites();
+
+        wireMockServer.stubFor(WireMock.get(urlMatching("/providers/sites-details"))
+                .withHeader("If-None-Match", equalTo("\"v1\""))
+                .willReturn(aResponse()
+                        .withStatus(NOT_MODIFIED.value())
+                ));
+
+        sitesProvider.update();
+
+        assertThat(sitesAfterFirstUpdate).hasSize(3);
+        assertThat(sitesProvider.allSites()).isSameAs(sitesAfterFirstUpdate);
+    }
+
     private ProvidersSites createExampleProvidersSites(int numberOfSites) {
         List<RegisteredSite> sites = new ArrayList<>();
         for (int i = 0; i < numberOfSites; i++) {
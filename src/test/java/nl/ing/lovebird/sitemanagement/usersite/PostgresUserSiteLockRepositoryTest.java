@@ -11,7 +11,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import static java.util.UUID.randomUUID;
@@ -190,6 +192,69 @@ public class PostgresUserSiteLockRepositoryTest {
         assertThat(userSiteLockRepository.get(userSiteId)).isEmpty();
     }
 
+    @Test
+    void shouldLockOnlyUnlockedUserSitesInBulk() {
+        UUID userId = randomUUID();
+        UUID alreadyLockedUserSiteId = randomUUID();
+        UUID unlockedUserSiteId = randomUUID();
+        UUID nonExistingUserSiteId = randomUUID();
+        UUID activityId = randomUUID();
+
+        createPostgresUserSite(userId, alreadyLockedUserSiteId);
+        createPostgresUserSite(userId, unlockedUserSiteId);
+
+        assertThat(userSiteLockRepository.attemptLock(alreadyLockedUserSiteId, randomUUID())).isTrue();
+
+        Set<UUID> locked = userSiteLockRepository.attemptLocks(List.of(alreadyLockedUserSiteId, unlockedUserSiteId, nonExistingUserSiteId), activityId);
+        assertThat(locked).containsExactly(unlockedUserSiteId);
+
+        assertThat(userSiteLockRepository.get(unlockedUserSiteId))
+                .map(PostgresUserSiteLock::getActivityId)
+                .contains(activityId);
+    }
+
+    @Test
+    void shouldSucceedBulkLockWhenLocksExpired() {
+        UUID userId = randomUUID();
+        UUID userSiteId1 = randomUUID();
+        UUID userSiteId2 = randomUUID();
+
+        createPostgresUserSite(userId, userSiteId1);
+        createPostgresUserSite(userId, userSiteId2);
+
+        assertThat(userSiteLockRepository.attemptLocks(List.of(userSiteId1, userSiteId2), randomUUID()))
+                .containsExactlyInAnyOrder(userSiteId1, userSiteId2);
+        assertThat(userSiteLockRepository.attemptLocks(List.of(userSiteId1, userSiteId2), randomUUID()))
+                .isEmpty();
+
+        // move time 10 minutes in the future
+        clock.asFixed(FIXED_POINT_IN_TIME.plus(10, ChronoUnit.MINUTES));
+
+        assertThat(userSiteLockRepository.attemptLocks(List.of(userSiteId1, userSiteId2), randomUUID()))
+                .containsExactlyInAnyOrder(userSiteId1, userSiteId2);
+    }
+
+    @Test
+    void shouldUnlockInBulk() {
+        UUID userId = randomUUID();
+        UUID userSiteId1 = randomUUID();
+        UUID userSiteId2 = randomUUID();
+
+        createPostgresUserSite(userId, userSiteId1);
+        createPostgresUserSite(userId, userSiteId2);
+
+        userSiteLockRepository.attemptLocks(List.of(userSiteId1, userSiteId2), randomUUID());
+
+        assertThat(userSiteLockRepository.unlockUserSites(List.of(userSiteId1, userSiteId2))).isEqualTo(2);
+        assertThat(userSiteLockRepository.get(userSiteId1)).isEmpty();
+        assertThat(userSiteLockRepository.get(userSiteId2)).isEmpty();
+    }
+
+    @Test
+    void shouldDoNothingForEmptyBulkLockAndUnlock() {
+        assertThat(userSiteLockRepository.attemptLocks(List.of(), randomUUID())).isEmpty();
+        assertThat(userSiteLockRepository.unlockUserSites(List.of())).isZero();
+    }
 
     private void createPostgresUserSite(final UUID userId, final UUID userSiteId) {
         bulkPersistPostgresUserSites(1, ClientId.random(), randomUUID(), () -> userId,
@@ -4,7 +4,6 @@ import nl.ing.lovebird.sitemanagement.configuration.TestContainerDataJpaTest;
 import nl.ing.lovebird.sitemanagement.flywheel.FlywheelUserUUIDRangeSelectorTest;
 import nl.ing.lovebird.sitemanagement.lib.ClientIds;
 import nl.ing.lovebird.sitemanagement.lib.types.ClientId;
-import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteRepository.UserSiteConnectionInfo;
 import org.hibernate.AssertionFailure;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,9 +15,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import java.time.Clock;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -137,106 +134,6 @@ class PostgresUserSiteRepositoryTest {
                         "  Where: PL/pgSQL function enforce_deleted_constraints_fn() line 8 at RAISE");
     }
 
-    @Test
-    void shouldReturnNrOfConnectedUsers() {
-        ClientId clientId = ClientId.random();
-        UUID siteId = UUID.randomUUID();
-        UUID userId = UUID.randomUUID();
-
-        bulkPersistPostgresUserSites(31, clientId, siteId, () -> userId,
-                (builder, i) -> builder.connectionStatus(ConnectionStatus.CONNECTED), postgresUserSite -> repository.save(postgresUserSite));
-
-        assertThat(repository.getUserSiteTotalsInfo(clientId))
-                .containsEntry(siteId, PostgresUserSiteRepository.UserSiteTotalsInfo.builder()
-                        .siteId(siteId)
-                        .nrOfUniqueConnections(31)
-                        .nrOfUniqueUsers(1)
-                        .build());
-    }
-
-    @Test
-    void shouldReturnConnectionStateTotals() {
-
-        ClientId clientId = ClientId.random();
-        UUID siteId = randomUUID();
-
-        bulkPersistPostgresUserSites(31, clientId, siteId, UUID::randomUUID,
-                (builder, i) -> builder.lastDataFetch(clock.instant().minus(i, ChronoUnit.DAYS))
-                        .connectionStatus(ConnectionStatus.CONNECTED), postgresUserSite -> repository.save(postgresUserSite));
-
-        bulkPersistPostgresUserSites(21, clientId, siteId, UUID::randomUUID,
-                (builder, i) -> builder
-                        .lastDataFetch(clock.instant().minus(i, ChronoUnit.DAYS))
-                        .connectionStatus(ConnectionStatus.DISCONNECTED), postgresUserSite -> repository.save(postgresUserSite));
-
-        bulkPersistPostgresUserSites(11, clientId, siteId, UUID::randomUUID,
-                (builder, i) -> builder
-                        .lastDataFetch(clock.instant().minus(i, ChronoUnit.DAYS))
-                        .connectionStatus(ConnectionStatus.CONNECTED)
-                        .failureReason(FailureReason.TECHNICAL_ERROR), postgresUserSite -> repository.save(postgresUserSite));
-
-        bulkPersistPostgresUserSites(1, clientId, siteId, UUID::randomUUID,
-                (builder, i) -> builder
-                        .lastDataFetch(clock.instant().minus(i, ChronoUnit.DAYS))
-                        .connectionStatus(ConnectionStatus.STEP_NEEDED), postgresUserSite -> repository.save(postgresUserSite));
-
-        Map<UUID, List<UserSiteConnectionInfo>> connectionStateTotals = repository.getConnectionStatusBySite(clientId);
-
-        assertThat(connectionStateTotals).containsKey(siteId);
-        assertThat(connectionStateTotals.get(siteId)).containsExactlyInAnyOrder(
-                UserSiteConnectionInfo.builder()
-                        .siteId(siteId)
-                        .connectionStatus(ConnectionStatus.CONNECTED)
-                        .count(31)
-                        .build(),
-                UserSiteConnectionInfo.builder()
-                        .siteId(siteId)
-                        .connectionStatus(ConnectionStatus.DISCONNECTED)
-                        .count(21)
-                        .build(),
-                UserSiteConnectionInfo.builder()
-                        .siteId(siteId)
-                        .connectionStatus(ConnectionStatus.CONNECTED)
-                        .failureReason(FailureReason.TECHNICAL_ERROR)
-                        .count(11)
-                        .build(),
-                UserSiteConnectionInfo.builder()
-                        .siteId(siteId)
-                        .connectionStatus(ConnectionStatus.STEP_NEEDED)
-                        .count(1)
-                        .build()
-        );
-    }
-
-    @Test
-    void shouldOnlyReturnStatisticsForClient() {
-
-        ClientId clientId = ClientId.random();
-        UUID siteId = UUID.randomUUID();
-
-        // insert user-sites for `client-id`
-        bulkPersistPostgresUserSites(5, clientId, siteId, UUID::randomUUID,
-                (builder, i) -> builder
-                        .lastDataFetch(clock.instant().minus(i, ChronoUnit.DAYS))
-                        .connectionStatus(ConnectionStatus.STEP_NEEDED), postgresUserSite -> repository.save(postgresUserSite));
-
-        // insert user-sites for other (random) clients
-        bulkPersistPostgresUserSites(31, ClientId.random(), siteId, UUID::randomUUID, (builder, i) -> builder, postgresUserSite -> repository.save(postgresUserSite));
-        bulkPersistPostgresUserSites(31, ClientId.random(), siteId, UUID::randomUUID, (builder, i) -> builder, postgresUserSite -> repository.save(postgresUserSite));
-        bulkPersistPostgresUserSites(31, ClientId.random(), siteId, UUID::randomUUID, (builder, i) -> builder, postgresUserSite -> repository.save(postgresUserSite));
-        bulkPersistPostgresUserSites(31, ClientId.random(), siteId, UUID::randomUUID, (builder, i) -> builder, postgresUserSite -> repository.save(postgresUserSite));
-        bulkPersistPostgresUserSites(31, ClientId.random(), siteId, UUID::randomUUID, (builder, i) -> builder, postgresUserSite -> repository.save(postgresUserSite));
-
-        Map<UUID, List<UserSiteConnectionInfo>> connectionStatusBySiteForClient = repository.getConnectionStatusBySite(clientId);
-
-        assertThat(connectionStatusBySiteForClient.get(siteId)).containsExactlyInAnyOrder(
-                UserSiteConnectionInfo.builder()
-                        .siteId(siteId)
-                        .connectionStatus(ConnectionStatus.STEP_NEEDED)
-                        .count(5)
-                        .build());
-    }
-
     @Test
     void shouldReturnCountsOfUniqueUsersWithActiveUserSitePerClient() {
         UUID userId1 = UUID.randomUUID();
@@ -270,7 +167,8 @@ class PostgresUserSiteRepositoryTest {
         List<UUID> userIdsBetween = repository.getUserIdsBetween(
                 UUID.fromString("00000000-0000-0000-0000-000000000000"),
                 UUID.fromString("ffffffff-ffff-ffff-ffff-ffffffffffff"),
-                ClientIds.TEST_CLIENT);
+                Set.of(ClientIds.TEST_CLIENT),
+                1000);
 
         assertThat(userIdsBetween).hasSize(10);
     }
@@ -288,11 +186,35 @@ class PostgresUserSiteRepositoryTest {
         List<UUID> userIdsBetween = repository.getUserIdsBetween(
                 UUID.fromString("00000000-0000-0000-0000-000000000000"), // Inclusive
                 UUID.fromString("00000000-0000-0000-0000-000000000004"),// Exclusive
-                ClientIds.TEST_CLIENT);
+                Set.of(ClientIds.TEST_CLIENT),
+                1000);
 
         assertThat(userIdsBetween).hasSize(4);
     }
 
+    @Test
+    void when_queryingForUserIdsBetweenUUIDWithLimit_then_shouldReturnFirstPageOfDistinctOrderedUserIds() {
+        bulkPersistPostgresUserSites(2, ClientIds.TEST_CLIENT, UUID.randomUUID(), () -> UUID.fromString("00000000-0000-0000-0000-000000000003"), (builder, i) -> builder, postgresUserSite -> repository.save(postgresUserSite));
+        bulkPersistPostgresUserSites(1, ClientIds.TEST_CLIENT, UUID.randomUUID(), () -> UUID.fromString("00000000-0000-0000-0000-000000000001"), (builder, i) -> builder, postgresUserSite -> repository.save(postgresUserSite));
+        bulkPersistPostgresUserSites(1, ClientIds.TEST_CLIENT, UUID.randomUUID(), () -> UUID.fromString("00000000-0000-0000-0000-000000000002"), (builder, i) -> builder, postgresUserSite -> repository.save(postgresUserSite));
+
+        List<UUID> firstPage = repository.getUserIdsBetween(
+                UUID.fromString("00000000-0000-0000-0000-000000000000"),
+                UUID.fromString("ffffffff-ffff-ffff-ffff-ffffffffffff"),
+                Set.of(ClientIds.TEST_CLIENT),
+                2);
+        assertThat(firstPage).containsExactly(
+                UUID.fromString("00000000-0000-0000-0000-000000000001"),
+                UUID.fromString("00000000-0000-0000-0000-000000000002"));
+
+        List<UUID> secondPage = repository.getUserIdsBetween(
+                UUID.fromString("00000000-0000-0000-0000-000000000003"),
+                UUID.fromString("ffffffff-ffff-ffff-ffff-ffffffffffff"),
+                Set.of(ClientIds.TEST_CLIENT),
+                2);
+        assertThat(secondPage).containsExactly(UUID.fromString("00000000-0000-0000-0000-000000000003"));
+    }
+
     /**
      * See {@link nl.ing.lovebird.sitemanagement.flywheel.FlywheelUserUUIDRangeSelectorTest#uuidCompare}
      */
@@ -306,7 +228,7 @@ class PostgresUserSiteRepositoryTest {
 
 
 
-        List<UUID> userIdsBetween = repository.getUserIdsBetween(smallerUUID, thebiggerUUID, ClientIds.TEST_CLIENT);
+        List<UUID> userIdsBetween = repository.getUserIdsBetween(smallerUUID, thebiggerUUID, Set.of(ClientIds.TEST_CLIENT), 1000);
 
         // strange.
         assertThat(smallerUUID).isGreaterThan(thebiggerUUID);
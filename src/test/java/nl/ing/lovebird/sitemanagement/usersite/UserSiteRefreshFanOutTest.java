@@ -0,0 +1,81 @@
+package nl.ing.lovebird.sitemanagement.usersite;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class UserSiteRefreshFanOutTest {
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void forEach_multipleUserSites_processesThemConcurrently() {
+        var fanOut = new UserSiteRefreshFanOut(new ConcurrentTaskExecutor(executorService), 3);
+        var userSites = List.of(mock(PostgresUserSite.class), mock(PostgresUserSite.class), mock(PostgresUserSite.class));
+        var allStarted = new CountDownLatch(3);
+        Set<PostgresUserSite> processed = ConcurrentHashMap.newKeySet();
+
+        fanOut.forEach(userSites, userSite -> {
+            allStarted.countDown();
+            try {
+                // Only succeeds if all user-sites are being processed at the same time.
+                assertThat(allStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            processed.add(userSite);
+        });
+
+        assertThat(processed).containsExactlyInAnyOrderElementsOf(userSites);
+    }
+
+    @Test
+    void forEach_executorSaturated_callingThreadProcessesAllUserSites() {
+        var fanOut = new UserSiteRefreshFanOut(task -> {
+            throw new TaskRejectedException("no threads available");
+        }, 3);
+        var userSites = List.of(mock(PostgresUserSite.class), mock(PostgresUserSite.class), mock(PostgresUserSite.class));
+        var callingThread = Thread.currentThread();
+        Set<PostgresUserSite> processed = ConcurrentHashMap.newKeySet();
+
+        fanOut.forEach(userSites, userSite -> {
+            assertThat(Thread.currentThread()).isSameAs(callingThread);
+            processed.add(userSite);
+        });
+
+        assertThat(processed).containsExactlyInAnyOrderElementsOf(userSites);
+    }
+
+    @Test
+    void forEach_actionThrows_remainingUserSitesAreSkippedAndExceptionIsRethrown() {
+        var fanOut = new UserSiteRefreshFanOut(new SyncTaskExecutor(), 1);
+        var userSites = List.of(mock(PostgresUserSite.class), mock(PostgresUserSite.class), mock(PostgresUserSite.class));
+        Set<PostgresUserSite> processed = ConcurrentHashMap.newKeySet();
+
+        assertThatThrownBy(() -> fanOut.forEach(userSites, userSite -> {
+            processed.add(userSite);
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class).hasMessage("boom");
+
+        assertThat(processed).containsExactly(userSites.get(0));
+    }
+}
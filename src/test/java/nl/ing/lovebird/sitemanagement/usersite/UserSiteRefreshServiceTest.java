@@ -39,13 +39,22 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
 
 import java.sql.Date;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static java.time.Clock.systemUTC;
 import static java.util.Arrays.asList;
@@ -118,7 +127,8 @@ class UserSiteRefreshServiceTest {
                 authenticationMeansFactory,
                 new LastFetchedService(clock),
                 clientSiteService,
-                accountsAndTransactionsClient
+                accountsAndTransactionsClient,
+                new UserSiteRefreshFanOut(new SyncTaskExecutor(), 1)
         );
 
         when(clientUserToken.getClientIdClaim()).thenReturn(UUID.randomUUID());
@@ -138,7 +148,7 @@ class UserSiteRefreshServiceTest {
                         new UserSiteAccessMeans(UUID.randomUUID(), UUID.randomUUID(), "YOLT_PROVIDER", encrypt("hoi", KEY), new java.util.Date(), new java.util.Date(), Instant.EPOCH),
                         KEY
                 )));
-        when(userSiteService.attemptLock(any(), any())).thenReturn(true);
+        when(userSiteService.attemptLockAll(any(), any())).then(invocation -> new ArrayList<>(invocation.<Collection<PostgresUserSite>>getArgument(0)));
         when(authenticationMeansFactory.createAuthMeans(clientUserToken, userSite.getRedirectUrlId())).thenReturn(new AuthenticationMeansReference(userSite.getClientId().unwrap(), userSite.getRedirectUrlId()));
 
         // when refreshing
@@ -149,7 +159,7 @@ class UserSiteRefreshServiceTest {
         // .. and an appropriate UserSiteStartEvent is sent
         verify(activityService).startActivity(eq(clientUserToken), any(RefreshUserSitesEvent.class));
         // .. and the user site is locked
-        verify(userSiteService).attemptLock(any(), any());
+        verify(userSiteService).attemptLockAll(eq(List.of(userSite)), any());
         // .. and the status is set to INITIAL_PROCESSING
         verify(userSiteService).updateUserSiteStatus(any(), eq(ConnectionStatus.CONNECTED), isNull(), any());
     }
@@ -159,9 +169,11 @@ class UserSiteRefreshServiceTest {
     void given_MultipleUserSites_when_Refresh_then_AllUserSitesAreRefreshed() {
         // given two userssites with valid access means that can both be locked
         PostgresUserSite userSiteA = createUserSite();
-        PostgresUserSite userSiteB = createUserSite();
-        when(userSiteService.attemptLock(any(), any())).thenReturn(true);
-        when(accessMeansManager.retrieveValidAccessMeans(any(), any(), any(), any()))
+        PostgresUserSite userSiteB = createUserSite().toBuilder().userId(userSiteA.getUserId()).build();
+        var storedAccessMeans = mock(AccessMeansManager.StoredUserSiteAccessMeans.class);
+        when(userSiteService.attemptLockAll(any(), any())).then(invocation -> new ArrayList<>(invocation.<Collection<PostgresUserSite>>getArgument(0)));
+        when(accessMeansManager.loadUserSiteAccessMeans(userSiteA.getUserId())).thenReturn(storedAccessMeans);
+        when(accessMeansManager.retrieveValidAccessMeans(any(), any(), any(), any(), eq(storedAccessMeans)))
                 .thenReturn(new AccessMeansManager.AccessMeansResult(AccessMeansHolder.fromUserSiteAccessMeans(
                         new UserSiteAccessMeans(UUID.randomUUID(), UUID.randomUUID(), "YOLT_PROVIDER", encrypt("hoi", KEY), new java.util.Date(), new java.util.Date(), Instant.EPOCH),
                         KEY
@@ -171,16 +183,73 @@ class UserSiteRefreshServiceTest {
         // when refreshing
         subject.refreshUserSitesBlocking(asList(userSiteA, userSiteB), false, clientUserToken, USER_REFRESH, null, null);
 
-        // then a data fetch is triggered twice ...
+        // then the access means of both user sites are read at once ...
+        verify(accessMeansManager).loadUserSiteAccessMeans(userSiteA.getUserId());
+        verify(accessMeansManager, never()).retrieveValidAccessMeans(any(), any(), any(), any());
+        // .. and a data fetch is triggered twice ...
         verify(providerRestClient, times(2)).fetchData(any(), any(), any(), any(), any(boolean.class));
         // .. and an appropriate UserSiteStartEvent is sent
         verify(activityService).startActivity(eq(clientUserToken), any(RefreshUserSitesEvent.class));
         // .. and the user site is locked
-        verify(userSiteService, times(2)).attemptLock(any(), any());
+        verify(userSiteService).attemptLockAll(eq(asList(userSiteA, userSiteB)), any());
         // .. and the status is set to INITIAL_PROCESSING
         verify(userSiteService, times(2)).updateUserSiteStatus(any(), eq(ConnectionStatus.CONNECTED), isNull(), any());
     }
 
+    @Test
+    @SneakyThrows
+    void given_MultipleUserSitesRefreshedConcurrentlyAndOneFails_when_Refresh_then_TheOthersAreRefreshedAndOnlyTheFailedOneIsUnlocked() {
+        var executorService = Executors.newFixedThreadPool(2);
+        try {
+            subject = new UserSiteRefreshService(systemUTC(), providerRequestRepository, formProviderRestClient, accessMeansManager,
+                    customExpiredConsentFlowService, userService, userSiteService, siteService, activityService, siteManagementMetrics,
+                    providerRestClient, authenticationMeansFactory, new LastFetchedService(systemUTC()), clientSiteService,
+                    accountsAndTransactionsClient, new UserSiteRefreshFanOut(new ConcurrentTaskExecutor(executorService), 3));
+
+            // given three user-sites that can be locked, of which the access means of one cannot be renewed
+            PostgresUserSite userSiteA = createUserSite();
+            PostgresUserSite failingUserSite = createUserSite().toBuilder().userId(userSiteA.getUserId()).build();
+            PostgresUserSite userSiteC = createUserSite().toBuilder().userId(userSiteA.getUserId()).build();
+            var storedAccessMeans = mock(AccessMeansManager.StoredUserSiteAccessMeans.class);
+            var accessMeans = AccessMeansHolder.fromUserSiteAccessMeans(
+                    new UserSiteAccessMeans(UUID.randomUUID(), UUID.randomUUID(), "YOLT_PROVIDER", encrypt("hoi", KEY), new java.util.Date(), new java.util.Date(), Instant.EPOCH),
+                    KEY);
+            var allStarted = new CountDownLatch(3);
+            when(userSiteService.attemptLockAll(any(), any())).then(invocation -> new ArrayList<>(invocation.<Collection<PostgresUserSite>>getArgument(0)));
+            when(accessMeansManager.loadUserSiteAccessMeans(userSiteA.getUserId())).thenReturn(storedAccessMeans);
+            when(accessMeansManager.retrieveValidAccessMeans(any(), any(), any(), any(), eq(storedAccessMeans))).then(invocation -> {
+                // Only succeeds if the user-sites are being processed at the same time.
+                allStarted.countDown();
+                assertThat(allStarted.await(5, TimeUnit.SECONDS)).isTrue();
+                return failingUserSite.equals(invocation.getArgument(1))
+                        ? new AccessMeansManager.AccessMeansResult(UNKNOWN_ERROR)
+                        : new AccessMeansManager.AccessMeansResult(accessMeans);
+            });
+            when(authenticationMeansFactory.createAuthMeans(eq(clientUserToken), any())).thenReturn(new AuthenticationMeansReference(UUID.randomUUID(), UUID.randomUUID()));
+            Set<PostgresUserSite> handled = ConcurrentHashMap.newKeySet();
+
+            // when refreshing
+            subject.refreshUserSitesBlocking(asList(userSiteA, failingUserSite, userSiteC), false, clientUserToken, USER_REFRESH, null, null, handled::add);
+
+            // then every user-site is handled ...
+            assertThat(handled).containsExactlyInAnyOrder(userSiteA, failingUserSite, userSiteC);
+            // ... a data fetch is triggered for the other two ...
+            verify(providerRestClient, times(2)).fetchData(any(), any(), any(), any(), any(boolean.class));
+            verify(userSiteService, times(2)).updateUserSiteStatus(any(), eq(ConnectionStatus.CONNECTED), isNull(), any());
+            // ... only the failed user-site is unlocked and marked as failed ...
+            verify(userSiteService).unlock(failingUserSite);
+            verify(userSiteService).updateUserSiteStatus(failingUserSite, ConnectionStatus.CONNECTED, FailureReason.TECHNICAL_ERROR, null);
+            verify(activityService).handleFailedRefresh(eq(clientUserToken), any(), eq(failingUserSite), eq(RefreshedUserSiteEvent.Status.FAILED));
+            verify(activityService, times(1)).handleFailedRefresh(any(), any(), any(), any());
+            verify(userSiteService, times(1)).unlock(any());
+            // ... and the triggered user-sites are not touched by the error handling.
+            verify(userSiteService, never()).unlockAll(any());
+            verify(userSiteService, never()).updateUserSiteStatuses(any(), any(), any());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
     // </editor-fold>
 
     // <editor-fold desc="Edge cases." defaultstate="collapsed">
@@ -265,7 +334,7 @@ class UserSiteRefreshServiceTest {
         // given a user site ...
         PostgresUserSite userSite = createUserSite();
         // .. that cannot be locked (because it is already locked)
-        when(userSiteService.attemptLock(any(), any())).thenReturn(false);
+        when(userSiteService.attemptLockAll(any(), any())).thenReturn(emptyList());
         // when refreshing
         subject.refreshUserSitesBlocking(singleton(userSite), false, clientUserToken, USER_REFRESH, null, null);
 
@@ -300,7 +369,7 @@ class UserSiteRefreshServiceTest {
         PostgresUserSite userSite = createUserSite();
         when(accessMeansManager.retrieveValidAccessMeans(any(),  any(), any(), any()))
                 .thenReturn(new AccessMeansManager.AccessMeansResult(UNKNOWN_ERROR));
-        when(userSiteService.attemptLock(any(), any())).thenReturn(true);
+        when(userSiteService.attemptLockAll(any(), any())).then(invocation -> new ArrayList<>(invocation.<Collection<PostgresUserSite>>getArgument(0)));
 
         // when refreshing
         subject.refreshUserSitesBlocking(singleton(userSite), false, clientUserToken, USER_REFRESH, null, null);
@@ -319,7 +388,7 @@ class UserSiteRefreshServiceTest {
         when(customExpiredConsentFlowService.shouldDisconnectOnConsentExpired(userSite)).thenReturn(true);
         when(accessMeansManager.retrieveValidAccessMeans(any(), any(), any(), any()))
                 .thenReturn(new AccessMeansManager.AccessMeansResult(DIRECT_CONNECTION_PROVIDER_ERROR_COULD_NOT_RENEW_BECAUSE_CONSENT_EXPIRED));
-        when(userSiteService.attemptLock(any(), any())).thenReturn(true);
+        when(userSiteService.attemptLockAll(any(), any())).then(invocation -> new ArrayList<>(invocation.<Collection<PostgresUserSite>>getArgument(0)));
 
         // when refreshing
         subject.refreshUserSitesBlocking(singleton(userSite),  false, clientUserToken, USER_REFRESH, null, null);
@@ -338,7 +407,7 @@ class UserSiteRefreshServiceTest {
         when(customExpiredConsentFlowService.shouldDisconnectOnConsentExpired(userSite)).thenReturn(false);
         when(accessMeansManager.retrieveValidAccessMeans(any(), any(), any(), any()))
                 .thenReturn(new AccessMeansManager.AccessMeansResult(DIRECT_CONNECTION_PROVIDER_ERROR_COULD_NOT_RENEW_BECAUSE_CONSENT_EXPIRED));
-        when(userSiteService.attemptLock(any(), any())).thenReturn(true);
+        when(userSiteService.attemptLockAll(any(), any())).then(invocation -> new ArrayList<>(invocation.<Collection<PostgresUserSite>>getArgument(0)));
 
         // when refreshing
         subject.refreshUserSitesBlocking(singleton(userSite),  false, clientUserToken, USER_REFRESH, null, null);
@@ -364,7 +433,7 @@ class UserSiteRefreshServiceTest {
                         mock(SecretKey.class)
                 )));
         when(clientUserToken.getUserIdClaim()).thenReturn(userSite.getUserId());
-        when(userSiteService.attemptLock(any(), any())).thenReturn(true);
+        when(userSiteService.attemptLockAll(any(), any())).then(invocation -> new ArrayList<>(invocation.<Collection<PostgresUserSite>>getArgument(0)));
         when(authenticationMeansFactory.createAuthMeans(eq(clientUserToken), any())).thenReturn(new AuthenticationMeansReference(UUID.randomUUID(), UUID.randomUUID()));
 
         // ... but for which fetching data fails
@@ -397,7 +466,7 @@ class UserSiteRefreshServiceTest {
     void given_UnexpectedExceptionWhenSendingUserSiteStartEvent_when_Refresh_then_ErrorIsHandledGracefully() {
         // given a user site that can be locked ...
         PostgresUserSite userSite = createUserSite();
-        when(userSiteService.attemptLock(any(), any())).thenReturn(true);
+        when(userSiteService.attemptLockAll(any(), any())).then(invocation -> new ArrayList<>(invocation.<Collection<PostgresUserSite>>getArgument(0)));
         // ... but for which sending the UserSiteStartEvent fails because of a technical error
         doThrow(new RuntimeException()).when(activityService).startActivity(eq(clientUserToken), any(RefreshUserSitesEvent.class));
 
@@ -406,9 +475,9 @@ class UserSiteRefreshServiceTest {
 
         // then the error is handled gracefully ...
         // ... status is set to UNKNOWN
-        verify(userSiteService).updateUserSiteStatus(eq(userSite), eq(ConnectionStatus.CONNECTED), eq(FailureReason.TECHNICAL_ERROR), any());
+        verify(userSiteService).updateUserSiteStatuses(List.of(userSite), ConnectionStatus.CONNECTED, FailureReason.TECHNICAL_ERROR);
         // ... the user site is unlocked
-        verify(userSiteService).unlock(userSite);
+        verify(userSiteService).unlockAll(List.of(userSite));
         // ... an activityEvent is **not** sent
         verify(activityService, never()).handleFailedRefresh(eq(clientUserToken), any(), any(), any());
     }
@@ -419,7 +488,7 @@ class UserSiteRefreshServiceTest {
         // given a user site that can be locked ...
         PostgresUserSite userSite = createUserSite();
         when(clientUserToken.getUserIdClaim()).thenReturn(userSite.getUserId());
-        when(userSiteService.attemptLock(any(), any())).thenReturn(true);
+        when(userSiteService.attemptLockAll(any(), any())).then(invocation -> new ArrayList<>(invocation.<Collection<PostgresUserSite>>getArgument(0)));
         // ... but for which updating the status to INITIAL_PROCESSING fails because of a technical error
         doThrow(new RuntimeException()).when(userSiteService).updateUserSiteStatus(eq(userSite), eq(ConnectionStatus.CONNECTED), isNull(), any());
 
@@ -428,9 +497,9 @@ class UserSiteRefreshServiceTest {
 
         // then the error is handled gracefully ...
         // ... status is set to UNKNOWN
-        verify(userSiteService).updateUserSiteStatus(eq(userSite), eq(ConnectionStatus.CONNECTED), eq(FailureReason.TECHNICAL_ERROR), any());
+        verify(userSiteService).updateUserSiteStatuses(List.of(userSite), ConnectionStatus.CONNECTED, FailureReason.TECHNICAL_ERROR);
         // ... the user site is unlocked
-        verify(userSiteService).unlock(userSite);
+        verify(userSiteService).unlockAll(List.of(userSite));
         // ... two activityEvent are sent
         var startEventCaptor = ArgumentCaptor.forClass(StartEvent.class);
 
@@ -455,7 +524,7 @@ class UserSiteRefreshServiceTest {
                         new UserSiteAccessMeans(UUID.randomUUID(), UUID.randomUUID(), "YOLT_PROVIDER", encrypt("hi", KEY), new java.util.Date(), new java.util.Date(), Instant.EPOCH),
                         KEY
                 )));
-        when(userSiteService.attemptLock(any(), any())).thenReturn(true);
+        when(userSiteService.attemptLockAll(any(), any())).then(invocation -> new ArrayList<>(invocation.<Collection<PostgresUserSite>>getArgument(0)));
         when(authenticationMeansFactory.createAuthMeans(clientUserToken, nonFetchedUserSite.getRedirectUrlId())).thenReturn(new AuthenticationMeansReference(nonFetchedUserSite.getClientId().unwrap(), nonFetchedUserSite.getRedirectUrlId()));
 
         // when refreshing
@@ -472,7 +541,7 @@ class UserSiteRefreshServiceTest {
         assertThat(refreshEventCaptor.getValue().getUserSiteIds()).containsOnly(nonFetchedUserSite.getUserSiteId());
 
         // .. and the user site is locked
-        verify(userSiteService).attemptLock(eq(nonFetchedUserSite), any());
+        verify(userSiteService).attemptLockAll(eq(List.of(nonFetchedUserSite)), any());
 
         // .. and the status is set to INITIAL_PROCESSING
         verify(userSiteService).updateUserSiteStatus(eq(nonFetchedUserSite), eq(ConnectionStatus.CONNECTED), isNull(), any());
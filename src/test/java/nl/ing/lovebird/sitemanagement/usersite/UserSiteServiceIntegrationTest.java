@@ -9,7 +9,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -140,4 +142,83 @@ public class UserSiteServiceIntegrationTest {
 
         assertThat(connectedUserSiteIds).containsExactlyInAnyOrder(toBeConnectedUserSite1, toBeConnectedUserSite2);
     }
+
+    @Test
+    public void testUpdateUserSiteStatusOfAStaleUserSiteOnlyWritesTheStatus() {
+
+        ClientId clientId = ClientId.random();
+        UUID userId = UUID.randomUUID();
+        UUID siteId = UUID.randomUUID();
+        PostgresUserSite userSite = bulkPersistUserSites(1, clientId, siteId, UUID::randomUUID, (builder, i) -> builder.userId(userId), created -> {
+            userSiteRepository.save(created);
+            return created;
+        }).get(0);
+
+        // Read a copy of the user-site, and change the user-site after that.
+        PostgresUserSite stale = userSiteService.getUserSite(userId, userSite.getUserSiteId());
+        Instant lastDataFetch = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        userSiteService.updateLastDataFetch(userSiteService.getUserSite(userId, userSite.getUserSiteId()), lastDataFetch);
+
+        Instant statusTimeout = Instant.now().plus(Duration.ofMinutes(15)).truncatedTo(ChronoUnit.SECONDS);
+        userSiteService.updateUserSiteStatus(stale, ConnectionStatus.STEP_NEEDED, null, statusTimeout);
+
+        PostgresUserSite stored = userSiteService.getUserSite(userId, userSite.getUserSiteId());
+        assertThat(stored.getConnectionStatus()).isEqualTo(ConnectionStatus.STEP_NEEDED);
+        assertThat(stored.getStatusTimeoutTime()).isEqualTo(statusTimeout);
+        assertThat(stored.getLastDataFetch()).isEqualTo(lastDataFetch);
+    }
+
+    @Test
+    public void testUpdateUserSiteStatusWithoutATransitionStillChangesTheStaleUserSiteInMemory() {
+
+        ClientId clientId = ClientId.random();
+        UUID userId = UUID.randomUUID();
+        UUID siteId = UUID.randomUUID();
+        PostgresUserSite userSite = bulkPersistUserSites(1, clientId, siteId, UUID::randomUUID, (builder, i) ->
+                builder.userId(userId)
+                        .connectionStatus(ConnectionStatus.DISCONNECTED)
+                        .failureReason(FailureReason.TECHNICAL_ERROR), created -> {
+            userSiteRepository.save(created);
+            return created;
+        }).get(0);
+
+        // Read a copy of the user-site, and connect the user-site after that.
+        PostgresUserSite stale = userSiteService.getUserSite(userId, userSite.getUserSiteId());
+        userSiteService.updateUserSiteStatus(userSiteService.getUserSite(userId, userSite.getUserSiteId()), ConnectionStatus.CONNECTED, null, null);
+
+        // Not a transition, but the copy is saved as a whole after that.
+        userSiteService.updateUserSiteStatus(stale, ConnectionStatus.CONNECTED, null, null);
+        userSiteService.updateLastDataFetch(stale, Instant.now().truncatedTo(ChronoUnit.SECONDS));
+
+        PostgresUserSite stored = userSiteService.getUserSite(userId, userSite.getUserSiteId());
+        assertThat(stored.getConnectionStatus()).isEqualTo(ConnectionStatus.CONNECTED);
+        assertThat(stored.getFailureReason()).isNull();
+    }
+
+    @Test
+    public void testUpdateUserSiteStatusesWithoutATransitionStillChangesTheStaleUserSitesInMemory() {
+
+        ClientId clientId = ClientId.random();
+        UUID userId = UUID.randomUUID();
+        UUID siteId = UUID.randomUUID();
+        PostgresUserSite userSite = bulkPersistUserSites(1, clientId, siteId, UUID::randomUUID, (builder, i) ->
+                builder.userId(userId)
+                        .connectionStatus(ConnectionStatus.DISCONNECTED)
+                        .failureReason(FailureReason.TECHNICAL_ERROR), created -> {
+            userSiteRepository.save(created);
+            return created;
+        }).get(0);
+
+        // Read a copy of the user-site, and connect the user-site after that.
+        PostgresUserSite stale = userSiteService.getUserSite(userId, userSite.getUserSiteId());
+        userSiteService.markUserSitesConnected(userId, List.of(userSite.getUserSiteId()));
+
+        // Not a transition, but the copy is saved as a whole after that.
+        userSiteService.updateUserSiteStatuses(List.of(stale), ConnectionStatus.CONNECTED, null);
+        userSiteService.updateUserSitePersistedFields(stale, Map.of());
+
+        PostgresUserSite stored = userSiteService.getUserSite(userId, userSite.getUserSiteId());
+        assertThat(stored.getConnectionStatus()).isEqualTo(ConnectionStatus.CONNECTED);
+        assertThat(stored.getFailureReason()).isNull();
+    }
 }
@@ -50,6 +50,8 @@ public class UserSiteServiceMockIntegrationTest {
     private SiteManagementMetrics siteManagementMetrics;
     @Mock
     private SitesProvider sitesProvider;
+    @Mock
+    private UserSiteStatisticsRepository userSiteStatisticsRepository;
 
     private UserSiteService userSiteService;
 
@@ -59,7 +61,7 @@ public class UserSiteServiceMockIntegrationTest {
     @BeforeEach
     void setUp() {
         userSiteService = new UserSiteService(systemUTC(), postgresUserSiteRepository,
-                userSiteLockRepository, userSiteEventService, null, siteManagementMetrics, sitesProvider);
+                userSiteLockRepository, userSiteEventService, null, siteManagementMetrics, sitesProvider, userSiteStatisticsRepository);
 
         when(postgresUserSiteRepository.getUserSite(any(UUID.class), any(UUID.class))).thenAnswer(invocationOnMock -> {
             UUID userId = (UUID) invocationOnMock.getArguments()[0];
@@ -0,0 +1,250 @@
+package nl.ing.lovebird.sitemanagement.usersite;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import nl.ing.lovebird.sitemanagement.configuration.IntegrationTestContext;
+import nl.ing.lovebird.sitemanagement.exception.SiteNotFoundException;
+import nl.ing.lovebird.sitemanagement.flows.lib.TestProviderSites;
+import nl.ing.lovebird.sitemanagement.flows.lib.FauxProvidersService;
+import nl.ing.lovebird.sitemanagement.flows.lib.WiremockStubManager;
+import nl.ing.lovebird.sitemanagement.lib.types.ClientId;
+import nl.ing.lovebird.sitemanagement.sites.ProvidersSites;
+import nl.ing.lovebird.sitemanagement.sites.Site;
+import nl.ing.lovebird.sitemanagement.sites.SitesProvider;
+import nl.ing.lovebird.sitemanagement.users.StatusType;
+import nl.ing.lovebird.sitemanagement.users.User;
+import nl.ing.lovebird.sitemanagement.users.UserService;
+import nl.ing.lovebird.sitemanagement.usersite.PostgresUserSiteRepository.StatusTransition;
+import nl.ing.lovebird.sitemanagement.usersite.UserSiteService.UserSiteStatistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Clock;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static nl.ing.lovebird.sitemanagement.usersite.UserSiteService.GeneralizedConnectionStatus.*;
+import static nl.ing.lovebird.sitemanagement.usersite.UserSiteTestUtil.createRandomUserSite;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@IntegrationTestContext
+public class UserSiteStatisticsIntegrationTest {
+
+    private static final UUID ABN_AMRO_ID = TestProviderSites.ABN_AMRO.getId();
+
+    @Autowired
+    private Clock clock;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private UserSiteService userSiteService;
+    @Autowired
+    private PostgresUserSiteRepository postgresUserSiteRepository;
+    @Autowired
+    private SitesProvider sitesProvider;
+    @Autowired
+    private WireMockServer wireMockServer;
+
+    @BeforeEach
+    public void onBefore() {
+        FauxProvidersService.setupProviderSitesStub(wireMockServer, new ProvidersSites(
+                        List.of(TestProviderSites.ABN_AMRO),
+                        Collections.emptyList()
+                )
+        );
+        sitesProvider.update();
+    }
+
+    @AfterEach
+    public void cleanup() {
+        WiremockStubManager.clearFlowStubs(wireMockServer);
+    }
+
+    @Test
+    void shouldReturnStatisticsOfCreatedUserSites() {
+        UUID userId = UUID.randomUUID();
+        ClientId clientId = ClientId.random();
+        Site site = getSite(ABN_AMRO_ID.toString()); // ABN
+
+        userService.saveUser(new User(userId, clock.instant(), clientId, StatusType.ACTIVE, false));
+
+        IntStream.range(0, 31)
+                .mapToObj(i -> createRandomUserSite(clientId, site.getId(), userId).toBuilder()
+                        .lastDataFetch(clock.instant().minus(i, ChronoUnit.DAYS))
+                        .build())
+                .forEach(userSite -> userSiteService.createNew(userSite));
+
+        List<UserSiteStatistics> userSiteStatistics = userSiteService.getUserSiteStatistics(clientId);
+        assertThat(userSiteStatistics).usingElementComparatorIgnoringFields("compiledAt").containsExactly(
+                UserSiteStatistics.builder()
+                        .siteId(site.getId())
+                        .siteName("ABN AMRO")
+                        .nrOfUniqueUsers(1)
+                        .nrOfUniqueConnections(31)
+                        .connectionStatuses(Map.of(ACTIVE, 31, ERROR, 0, UNABLE_TO_LOGIN, 0, OTHER, 0))
+                        .compiledAt(ZonedDateTime.now(clock))
+                        .build());
+
+        assertThat(userSiteService.getUserSiteStatistics(ClientId.random())).isEmpty();
+    }
+
+    @Test
+    void shouldReflectStatusChangesAndDeletesImmediately() {
+        ClientId clientId = ClientId.random();
+        Site site = getSite(ABN_AMRO_ID.toString()); // ABN
+        UUID userId1 = UUID.randomUUID();
+        UUID userId2 = UUID.randomUUID();
+        userService.saveUser(new User(userId1, clock.instant(), clientId, StatusType.ACTIVE, false));
+        userService.saveUser(new User(userId2, clock.instant(), clientId, StatusType.ACTIVE, false));
+
+        PostgresUserSite userSite1 = createRandomUserSite(clientId, site.getId(), userId1);
+        PostgresUserSite userSite2 = createRandomUserSite(clientId, site.getId(), userId1);
+        PostgresUserSite userSite3 = createRandomUserSite(clientId, site.getId(), userId2);
+        List.of(userSite1, userSite2, userSite3).forEach(userSiteService::createNew);
+
+        userSiteService.updateUserSiteStatus(postgresUserSiteRepository.getUserSite(userId1, userSite1.getUserSiteId()).orElseThrow(),
+                ConnectionStatus.DISCONNECTED, FailureReason.AUTHENTICATION_FAILED, null);
+        userSiteService.updateUserSiteStatus(postgresUserSiteRepository.getUserSite(userId1, userSite2.getUserSiteId()).orElseThrow(),
+                ConnectionStatus.CONNECTED, FailureReason.TECHNICAL_ERROR, null);
+
+        assertThat(userSiteService.getUserSiteStatistics(clientId)).singleElement().satisfies(statistics -> {
+            assertThat(statistics.nrOfUniqueUsers).isEqualTo(2);
+            assertThat(statistics.nrOfUniqueConnections).isEqualTo(3);
+            assertThat(statistics.connectionStatuses).isEqualTo(Map.of(ACTIVE, 1, ERROR, 1, UNABLE_TO_LOGIN, 1, OTHER, 0));
+        });
+
+        userSiteService.markAsDeleted(userId2, userSite3.getUserSiteId());
+        // Marking a user-site as deleted twice should not count it twice.
+        userSiteService.markAsDeleted(userId2, userSite3.getUserSiteId());
+
+        assertThat(userSiteService.getUserSiteStatistics(clientId)).singleElement().satisfies(statistics -> {
+            assertThat(statistics.nrOfUniqueUsers).isEqualTo(1);
+            assertThat(statistics.nrOfUniqueConnections).isEqualTo(2);
+            assertThat(statistics.connectionStatuses).isEqualTo(Map.of(ACTIVE, 0, ERROR, 1, UNABLE_TO_LOGIN, 1, OTHER, 0));
+        });
+    }
+
+    @Test
+    void shouldReflectBulkStatusChanges() {
+        ClientId clientId = ClientId.random();
+        Site site = getSite(ABN_AMRO_ID.toString()); // ABN
+        UUID userId = UUID.randomUUID();
+        userService.saveUser(new User(userId, clock.instant(), clientId, StatusType.ACTIVE, false));
+
+        PostgresUserSite userSite1 = createRandomUserSite(clientId, site.getId(), userId);
+        PostgresUserSite userSite2 = createRandomUserSite(clientId, site.getId(), userId);
+        PostgresUserSite deletedUserSite = createRandomUserSite(clientId, site.getId(), userId);
+        List.of(userSite1, userSite2, deletedUserSite).forEach(userSiteService::createNew);
+        userSiteService.updateUserSiteStatus(postgresUserSiteRepository.getUserSite(userId, userSite2.getUserSiteId()).orElseThrow(),
+                ConnectionStatus.CONNECTED, FailureReason.TECHNICAL_ERROR, null);
+        userSiteService.markAsDeleted(userId, deletedUserSite.getUserSiteId());
+
+        List<UUID> userSiteIds = List.of(userSite1.getUserSiteId(), userSite2.getUserSiteId(), deletedUserSite.getUserSiteId(), UUID.randomUUID());
+        List<StatusTransition> transitions = userSiteService.updateUserSiteStatuses(userId, userSiteIds,
+                ConnectionStatus.DISCONNECTED, FailureReason.AUTHENTICATION_FAILED);
+
+        assertThat(transitions).extracting(StatusTransition::userSiteId, StatusTransition::oldConnectionStatus, StatusTransition::oldFailureReason)
+                .containsExactlyInAnyOrder(
+                        tuple(userSite1.getUserSiteId(), ConnectionStatus.CONNECTED, null),
+                        tuple(userSite2.getUserSiteId(), ConnectionStatus.CONNECTED, FailureReason.TECHNICAL_ERROR));
+        assertThat(postgresUserSiteRepository.getUserSite(userId, deletedUserSite.getUserSiteId()).orElseThrow().getConnectionStatus())
+                .isEqualTo(ConnectionStatus.CONNECTED);
+        assertThat(userSiteService.getUserSiteStatistics(clientId)).singleElement().satisfies(statistics -> {
+            assertThat(statistics.nrOfUniqueConnections).isEqualTo(2);
+            assertThat(statistics.connectionStatuses).isEqualTo(Map.of(ACTIVE, 0, ERROR, 0, UNABLE_TO_LOGIN, 2, OTHER, 0));
+        });
+
+        // Changing them to the same status again is a no-op.
+        assertThat(userSiteService.updateUserSiteStatuses(userId, userSiteIds, ConnectionStatus.DISCONNECTED, FailureReason.AUTHENTICATION_FAILED))
+                .isEmpty();
+        assertThat(userSiteService.getUserSiteStatistics(clientId)).singleElement()
+                .satisfies(statistics -> assertThat(statistics.connectionStatuses).isEqualTo(Map.of(ACTIVE, 0, ERROR, 0, UNABLE_TO_LOGIN, 2, OTHER, 0)));
+    }
+
+    @Test
+    void shouldMoveTheStatisticsFromTheStoredStatusWhenTheUserSiteIsStale() {
+        ClientId clientId = ClientId.random();
+        Site site = getSite(ABN_AMRO_ID.toString()); // ABN
+        UUID userId = UUID.randomUUID();
+        userService.saveUser(new User(userId, clock.instant(), clientId, StatusType.ACTIVE, false));
+        PostgresUserSite userSite = createRandomUserSite(clientId, site.getId(), userId);
+        userSiteService.createNew(userSite);
+
+        PostgresUserSite stale = postgresUserSiteRepository.getUserSite(userId, userSite.getUserSiteId()).orElseThrow();
+        userSiteService.updateUserSiteStatuses(userId, List.of(userSite.getUserSiteId()), ConnectionStatus.DISCONNECTED, FailureReason.AUTHENTICATION_FAILED);
+        // The stale user-site is still connected in-memory.
+        userSiteService.updateUserSiteStatus(stale, ConnectionStatus.CONNECTED, FailureReason.TECHNICAL_ERROR, null);
+
+        assertThat(userSiteService.getUserSiteStatistics(clientId)).singleElement().satisfies(statistics -> {
+            assertThat(statistics.nrOfUniqueConnections).isEqualTo(1);
+            assertThat(statistics.connectionStatuses).isEqualTo(Map.of(ACTIVE, 0, ERROR, 1, UNABLE_TO_LOGIN, 0, OTHER, 0));
+        });
+    }
+
+    @Test
+    void shouldKeepTheStatisticsWhenFoldingTheDeltas() {
+        ClientId clientId = ClientId.random();
+        Site site = getSite(ABN_AMRO_ID.toString()); // ABN
+        UUID userId = UUID.randomUUID();
+        userService.saveUser(new User(userId, clock.instant(), clientId, StatusType.ACTIVE, false));
+        PostgresUserSite userSite1 = createRandomUserSite(clientId, site.getId(), userId);
+        PostgresUserSite userSite2 = createRandomUserSite(clientId, site.getId(), userId);
+        List.of(userSite1, userSite2).forEach(userSiteService::createNew);
+        userSiteService.updateUserSiteStatus(postgresUserSiteRepository.getUserSite(userId, userSite1.getUserSiteId()).orElseThrow(),
+                ConnectionStatus.DISCONNECTED, FailureReason.AUTHENTICATION_FAILED, null);
+
+        userSiteService.foldUserSiteStatistics();
+
+        assertThat(userSiteService.getUserSiteStatistics(clientId)).singleElement().satisfies(statistics -> {
+            assertThat(statistics.nrOfUniqueUsers).isEqualTo(1);
+            assertThat(statistics.nrOfUniqueConnections).isEqualTo(2);
+            assertThat(statistics.connectionStatuses).isEqualTo(Map.of(ACTIVE, 1, ERROR, 0, UNABLE_TO_LOGIN, 1, OTHER, 0));
+        });
+
+        // Changes after the fold are added to the folded counters.
+        userSiteService.markAsDeleted(userId, userSite2.getUserSiteId());
+
+        assertThat(userSiteService.getUserSiteStatistics(clientId)).singleElement().satisfies(statistics -> {
+            assertThat(statistics.nrOfUniqueUsers).isEqualTo(1);
+            assertThat(statistics.nrOfUniqueConnections).isEqualTo(1);
+            assertThat(statistics.connectionStatuses).isEqualTo(Map.of(ACTIVE, 0, ERROR, 0, UNABLE_TO_LOGIN, 1, OTHER, 0));
+        });
+    }
+
+    @Test
+    void shouldCorrectDriftWhenReconciling() {
+        ClientId clientId = ClientId.random();
+        Site site = getSite(ABN_AMRO_ID.toString()); // ABN
+        UUID userId = UUID.randomUUID();
+        userService.saveUser(new User(userId, clock.instant(), clientId, StatusType.ACTIVE, false));
+        userSiteService.createNew(createRandomUserSite(clientId, site.getId(), userId));
+        // Bypasses the statistics.
+        postgresUserSiteRepository.save(createRandomUserSite(clientId, site.getId(), userId).toBuilder()
+                .connectionStatus(ConnectionStatus.DISCONNECTED)
+                .failureReason(FailureReason.CONSENT_EXPIRED)
+                .build());
+
+        assertThat(userSiteService.getUserSiteStatistics(clientId)).singleElement()
+                .satisfies(statistics -> assertThat(statistics.nrOfUniqueConnections).isEqualTo(1));
+
+        userSiteService.reconcileUserSiteStatistics();
+
+        assertThat(userSiteService.getUserSiteStatistics(clientId)).singleElement().satisfies(statistics -> {
+            assertThat(statistics.nrOfUniqueUsers).isEqualTo(1);
+            assertThat(statistics.nrOfUniqueConnections).isEqualTo(2);
+            assertThat(statistics.connectionStatuses).isEqualTo(Map.of(ACTIVE, 1, ERROR, 0, UNABLE_TO_LOGIN, 1, OTHER, 0));
+        });
+    }
+
+    private Site getSite(final String id) {
+        return sitesProvider.allSites()
+                .stream()
+                .filter(registeredSite -> UUID.fromString(id).equals(registeredSite.getId()))
+                .findFirst()
+                .orElseThrow(() -> new SiteNotFoundException("Site with id " + id + " does not exist."));
+    }
+}
@@ -0,0 +1,166 @@
+package nl.ing.lovebird.sitemanagement.usersiteevent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.ing.lovebird.clienttokens.ClientUserToken;
+import nl.ing.lovebird.clienttokens.requester.service.ClientTokenRequesterService;
+import nl.ing.lovebird.sitemanagement.usersiteevent.UserSiteEventOutboxRepository.OutboxEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.messaging.Message;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static java.util.UUID.randomUUID;
+import static nl.ing.lovebird.clienttokens.constants.ClientTokenConstants.CLIENT_TOKEN_HEADER_NAME;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserSiteEventOutboxRelayTest {
+
+    private static final int BATCH_SIZE = 2;
+    private static final int MAX_BATCHES_PER_POLL = 3;
+    private static final Duration SEND_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration LEASE_DURATION = Duration.ofMinutes(1);
+
+    @Mock
+    private UserSiteEventOutboxRepository outboxRepository;
+    @Mock
+    private KafkaTemplate<String, UserSiteEventAbstract> kafkaTemplate;
+    @Mock
+    private ClientTokenRequesterService clientTokenRequesterService;
+
+    private UserSiteEventOutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        relay = relay(LEASE_DURATION);
+    }
+
+    @Test
+    void relay_withoutLease_doesNotPublish() {
+        when(outboxRepository.acquireRelayLease(any(), eq(LEASE_DURATION))).thenReturn(false);
+
+        assertThat(relay.relay()).isFalse();
+
+        verify(outboxRepository, never()).findOldest(anyInt());
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    void relay_emptyOutbox_keepsTheLeaseWithoutRenewingItOnEveryPoll() {
+        when(outboxRepository.acquireRelayLease(any(), eq(LEASE_DURATION))).thenReturn(true);
+        when(outboxRepository.findOldest(BATCH_SIZE)).thenReturn(List.of());
+
+        assertThat(relay.relay()).isFalse();
+        assertThat(relay.relay()).isFalse();
+        assertThat(relay.relay()).isFalse();
+
+        verify(outboxRepository, times(1)).acquireRelayLease(any(), eq(LEASE_DURATION));
+        verify(outboxRepository, times(3)).findOldest(BATCH_SIZE);
+    }
+
+    @Test
+    void relay_stopsAfterTheMaximumNumberOfBatches() {
+        when(outboxRepository.acquireRelayLease(any(), eq(LEASE_DURATION))).thenReturn(true);
+        List<OutboxEvent> first = events(1, 2);
+        List<OutboxEvent> second = events(3, 4);
+        List<OutboxEvent> third = events(5, 6);
+        when(outboxRepository.findOldest(BATCH_SIZE)).thenReturn(first, second, third, events(7, 8));
+        when(kafkaTemplate.send(any(Message.class))).thenAnswer(invocation -> acknowledged());
+
+        assertThat(relay.relay()).isTrue();
+
+        InOrder inOrder = inOrder(outboxRepository, kafkaTemplate);
+        inOrder.verify(outboxRepository).acquireRelayLease(any(), eq(LEASE_DURATION));
+        for (List<OutboxEvent> batch : List.of(first, second, third)) {
+            inOrder.verify(outboxRepository).findOldest(BATCH_SIZE);
+            inOrder.verify(kafkaTemplate, times(BATCH_SIZE)).send(any(Message.class));
+            inOrder.verify(outboxRepository).remove(batch);
+        }
+        verify(outboxRepository, times(1)).acquireRelayLease(any(), any());
+        verify(outboxRepository, times(MAX_BATCHES_PER_POLL)).findOldest(BATCH_SIZE);
+    }
+
+    @Test
+    void relay_leaseWithoutTimeToSpare_renewsTheLeaseBeforeEveryBatch() {
+        // The lease has to be renewed as soon as it was taken.
+        Duration leaseDuration = SEND_TIMEOUT.plusNanos(1);
+        relay = relay(leaseDuration);
+        when(outboxRepository.acquireRelayLease(any(), eq(leaseDuration))).thenReturn(true);
+        when(outboxRepository.findOldest(BATCH_SIZE)).thenReturn(events(1, 2), events(3, 4), events(5, 6));
+        when(kafkaTemplate.send(any(Message.class))).thenAnswer(invocation -> acknowledged());
+
+        relay.relay();
+
+        verify(outboxRepository, times(MAX_BATCHES_PER_POLL)).acquireRelayLease(any(), eq(leaseDuration));
+    }
+
+    @Test
+    void relay_eventWithClientId_isPublishedWithAClientUserTokenRequestedForTheClientAndUser() {
+        when(outboxRepository.acquireRelayLease(any(), eq(LEASE_DURATION))).thenReturn(true);
+        var clientId = randomUUID();
+        var delete = new UserSiteEventDelete(randomUUID(), randomUUID(), randomUUID(), ZonedDateTime.now(ZoneOffset.UTC));
+        when(outboxRepository.findOldest(BATCH_SIZE)).thenReturn(List.of(new OutboxEvent(1, delete, clientId, Instant.EPOCH)));
+        ClientUserToken clientUserToken = mock(ClientUserToken.class);
+        when(clientUserToken.getSerialized()).thenReturn("serialized-client-user-token");
+        when(clientTokenRequesterService.getClientUserToken(clientId, delete.getUserId())).thenReturn(clientUserToken);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<UserSiteEventAbstract>> message = ArgumentCaptor.forClass(Message.class);
+        when(kafkaTemplate.send(message.capture())).thenAnswer(invocation -> acknowledged());
+
+        relay.relay();
+
+        assertThat(message.getValue().getHeaders().get(CLIENT_TOKEN_HEADER_NAME)).isEqualTo("serialized-client-user-token");
+    }
+
+    @Test
+    void relay_sendFails_keepsTheEvents() {
+        when(outboxRepository.acquireRelayLease(any(), eq(LEASE_DURATION))).thenReturn(true);
+        when(outboxRepository.findOldest(BATCH_SIZE)).thenReturn(events(1, 2));
+        when(kafkaTemplate.send(any(Message.class))).thenAnswer(invocation -> {
+            var future = new SettableListenableFuture<SendResult<String, UserSiteEventAbstract>>();
+            future.setException(new IllegalStateException("kafka is down"));
+            return future;
+        });
+
+        relay.relay();
+
+        verify(outboxRepository, never()).remove(any());
+    }
+
+    private UserSiteEventOutboxRelay relay(Duration leaseDuration) {
+        return new UserSiteEventOutboxRelay(Clock.systemUTC(), new SimpleMeterRegistry(), outboxRepository, kafkaTemplate, clientTokenRequesterService,
+                "userSiteEvents", BATCH_SIZE, MAX_BATCHES_PER_POLL, Duration.ofMillis(200), Duration.ofSeconds(2), SEND_TIMEOUT, leaseDuration);
+    }
+
+    private static SettableListenableFuture<SendResult<String, UserSiteEventAbstract>> acknowledged() {
+        var future = new SettableListenableFuture<SendResult<String, UserSiteEventAbstract>>();
+        future.set(null);
+        return future;
+    }
+
+    private static List<OutboxEvent> events(long fromId, long toId) {
+        var time = ZonedDateTime.of(2021, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        return LongStream.rangeClosed(fromId, toId)
+                .mapToObj(id -> new OutboxEvent(id, new UserSiteEventUpdate(randomUUID(), randomUUID(), randomUUID(), time), null, Instant.EPOCH))
+                .toList();
+    }
+}
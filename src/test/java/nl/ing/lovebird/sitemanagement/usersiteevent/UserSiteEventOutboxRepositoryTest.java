@@ -0,0 +1,116 @@
+package nl.ing.lovebird.sitemanagement.usersiteevent;
+
+import nl.ing.lovebird.sitemanagement.configuration.TestContainerDataJpaTest;
+import nl.ing.lovebird.sitemanagement.usersiteevent.UserSiteEventOutboxRepository.OutboxEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static java.util.UUID.randomUUID;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+@TestContainerDataJpaTest
+class UserSiteEventOutboxRepositoryTest {
+
+    @Autowired
+    private UserSiteEventOutboxRepository outboxRepository;
+
+    private final UUID relay = randomUUID();
+    private final UUID otherRelay = randomUUID();
+
+    @BeforeEach
+    void emptyOutbox() {
+        List<OutboxEvent> events;
+        while (!(events = outboxRepository.findOldest(100)).isEmpty()) {
+            // Remove the events of other tests.
+            outboxRepository.remove(events);
+        }
+    }
+
+    @AfterEach
+    void releaseLeases() {
+        outboxRepository.releaseRelayLease(relay);
+        outboxRepository.releaseRelayLease(otherRelay);
+    }
+
+    @Test
+    void findOldest_returnsEventsInOrderAndRemoveRemovesThem() {
+        var time = ZonedDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.MILLIS);
+        var update = new UserSiteEventUpdate(randomUUID(), randomUUID(), randomUUID(), time);
+        var delete = new UserSiteEventDelete(randomUUID(), randomUUID(), randomUUID(), time);
+        var clientId = randomUUID();
+        outboxRepository.add(update, null);
+        outboxRepository.add(delete, clientId);
+
+        List<OutboxEvent> oldest = outboxRepository.findOldest(10);
+
+        assertThat(oldest).extracting(OutboxEvent::event).containsExactly(update, delete);
+        assertThat(oldest).extracting(OutboxEvent::clientId).containsExactly(null, clientId);
+        // Reading does not remove the events, that is left to the relay once they are published.
+        assertThat(outboxRepository.findOldest(10)).isEqualTo(oldest);
+
+        outboxRepository.remove(oldest);
+        assertThat(outboxRepository.findOldest(10)).isEmpty();
+    }
+
+    @Test
+    void findOldest_limit_returnsOldestEventsFirst() {
+        var time = ZonedDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.MILLIS);
+        var first = new UserSiteEventUpdate(randomUUID(), randomUUID(), randomUUID(), time);
+        var second = new UserSiteEventUpdate(randomUUID(), randomUUID(), randomUUID(), time);
+        outboxRepository.add(first, null);
+        outboxRepository.add(second, null);
+
+        List<OutboxEvent> published = new ArrayList<>();
+        published.addAll(outboxRepository.findOldest(1));
+        outboxRepository.remove(published);
+        published.addAll(outboxRepository.findOldest(1));
+
+        assertThat(published).extracting(OutboxEvent::event).containsExactly(first, second);
+    }
+
+    @Test
+    void addAll_addsEventsInOrder() {
+        var time = ZonedDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.MILLIS);
+        List<UserSiteEventUpdate> events = IntStream.range(0, UserSiteEventOutboxRepository.MAX_EVENTS_PER_STATEMENT + 1)
+                .mapToObj(i -> new UserSiteEventUpdate(randomUUID(), randomUUID(), randomUUID(), time))
+                .toList();
+        outboxRepository.addAll(events);
+
+        List<OutboxEvent> oldest = outboxRepository.findOldest(events.size());
+        assertThat(oldest).extracting(OutboxEvent::event).containsExactlyElementsOf(events);
+        assertThat(oldest).extracting(OutboxEvent::clientId).containsOnlyNulls();
+    }
+
+    @Test
+    void acquireRelayLease_onlyOneRelayHoldsTheLease() {
+        assertThat(outboxRepository.acquireRelayLease(relay, Duration.ofMinutes(1))).isTrue();
+        assertThat(outboxRepository.acquireRelayLease(otherRelay, Duration.ofMinutes(1))).isFalse();
+        // The holder renews the lease.
+        assertThat(outboxRepository.acquireRelayLease(relay, Duration.ofMinutes(1))).isTrue();
+
+        outboxRepository.releaseRelayLease(relay);
+
+        assertThat(outboxRepository.acquireRelayLease(otherRelay, Duration.ofMinutes(1))).isTrue();
+        assertThat(outboxRepository.acquireRelayLease(relay, Duration.ofMinutes(1))).isFalse();
+    }
+
+    @Test
+    void acquireRelayLease_leaseExpired_anotherRelayTakesOver() {
+        assertThat(outboxRepository.acquireRelayLease(relay, Duration.ZERO)).isTrue();
+
+        await().untilAsserted(() -> assertThat(outboxRepository.acquireRelayLease(otherRelay, Duration.ofMinutes(1))).isTrue());
+        assertThat(outboxRepository.acquireRelayLease(relay, Duration.ofMinutes(1))).isFalse();
+    }
+}